@@ -26,6 +26,9 @@ plugins {
 
   // Publishing to Maven Central
   alias(libs.plugins.com.vanniktech.maven.publish)
+
+  // Benchmarks in src/jmh/java; run them with: ./gradlew jmh
+  alias(libs.plugins.me.champeau.jmh)
 }
 
 repositories {
@@ -146,6 +149,32 @@ tasks.named<JacocoReport>("jacocoTestReport") {
   }
 }
 
+// Benchmarks
+
+jmh {
+  jmhVersion = libs.versions.jmh.get()
+  jvmArgsAppend.addAll(addExportsArgs)
+  // Report the allocation rate as well as the time.
+  profilers.add("gc")
+  // Machine-readable results, for comparing releases.
+  resultFormat = "JSON"
+  resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+  // Run only some benchmarks with a regular expression, for example:
+  //   ./gradlew jmh -PjmhIncludes=JavacParseBenchmark.parseFile
+  val jmhIncludes = project.findProperty("jmhIncludes")
+  if (jmhIncludes != null) {
+    includes.add(jmhIncludes.toString())
+  }
+}
+
+// The Checker Framework and Error Prone check the hand-written benchmarks in src/jmh/java, but not
+// the code that JMH generates from them.
+tasks.named<JavaCompile>("jmhCompileGeneratedClasses") {
+  options.errorprone.isEnabled = false
+  options.compilerArgs.add("-proc:none")
+  options.compilerArgs.remove("-Werror")
+}
+
 // Code formatting
 
 spotless {
@@ -371,6 +400,18 @@ javadocWebUpload.configure { dependsOn(requireJavadoc) }
 // so keep the `shadowRuntimeElements` variant out of the Gradle module metadata.
 shadow { addShadowVariantIntoJavaComponent = false }
 
+// `java -jar ...-all.jar` runs the parse server.  The Add-Exports attribute takes the place of the
+// --add-exports command-line options.
+tasks.named<Jar>("shadowJar") {
+  manifest {
+    attributes(
+      "Main-Class" to "org.plumelib.javacparse.JavacParseServer",
+      "Add-Exports" to
+        javacInternalPackages.joinToString(" ") { "jdk.compiler/com.sun.tools.javac.$it" },
+    )
+  }
+}
+
 // Make the published archives byte-for-byte reproducible.
 tasks.withType<AbstractArchiveTask>().configureEach {
   isPreserveFileTimestamps = false
@@ -0,0 +1,252 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCReturn;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Position;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Java code for benchmarks, drawn from a corpus of sample files that is bundled with the benchmarks
+ * (in {@code src/jmh/resources}). Compilation units and type declarations of a given size are
+ * assembled from the members of the samples' top-level classes; snippets (methods, expressions, and
+ * type uses) are taken from the samples as they are.
+ */
+final class Corpus {
+
+  /** The names of the sample files, which are resources in the {@code corpus} directory. */
+  private static final List<String> FILES = List.of("CsvReader.java", "LruMap.java", "Shapes.java");
+
+  /** The start of every assembled compilation unit. */
+  private static final String HEADER =
+      """
+      package org.example;
+
+      import java.io.*;
+      import java.util.*;
+
+      """;
+
+  /** The members of the samples' top-level classes, each with its preceding comments. */
+  private final List<String> members = new ArrayList<>();
+
+  /** The methods in the samples that have a body, shortest first. */
+  private final List<String> methods = new ArrayList<>();
+
+  /** The initializers and returned values in the samples, shortest first. */
+  private final List<String> expressions = new ArrayList<>();
+
+  /** The types of the variables and methods in the samples, shortest first. */
+  private final List<String> typeUses = new ArrayList<>();
+
+  /**
+   * Reads and parses the sample files.
+   *
+   * @throws IOException if a sample file cannot be read
+   */
+  Corpus() throws IOException {
+    for (String file : FILES) {
+      String text;
+      try (InputStream in = Corpus.class.getResourceAsStream("corpus/" + file)) {
+        if (in == null) {
+          throw new IOException("Missing corpus file " + file);
+        }
+        text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      }
+      JavacParseResult<CompilationUnitTree> result = JavacParse.parseCompilationUnit(text);
+      if (result.hasParseError()) {
+        throw new Error(file + ": " + result.getParseErrorMessages());
+      }
+      addSnippets(text, (JCCompilationUnit) result.tree());
+    }
+    Comparator<String> byLength = Comparator.comparingInt(String::length);
+    methods.sort(byLength);
+    expressions.sort(byLength);
+    typeUses.sort(byLength);
+  }
+
+  /**
+   * Adds the members and snippets of a parsed sample file.
+   *
+   * @param text the contents of the sample file
+   * @param cu the parsed sample file
+   */
+  @SuppressWarnings("index") // the positions of a tree lie within the text that was parsed
+  private void addSnippets(String text, JCCompilationUnit cu) {
+    EndPosTable endPositions = cu.endPositions;
+    for (JCTree def : cu.defs) {
+      if (def instanceof JCClassDecl c) {
+        // The samples' class headers contain no braces.
+        int start = text.indexOf('{', c.pos) + 1;
+        for (JCTree member : c.defs) {
+          int end = TreeInfo.getEndPos(member, endPositions);
+          // A constructor is named for its class, so it is not valid in the assembled class.
+          if (!TreeInfo.isConstructor(member)) {
+            members.add(text.substring(start, end));
+          }
+          start = end;
+        }
+      }
+    }
+    new TreeScanner() {
+      @Override
+      public void visitMethodDef(JCMethodDecl tree) {
+        // A constructor has no result type.
+        if (tree.body != null && tree.restype != null) {
+          add(methods, tree);
+        }
+        if (tree.restype != null && !tree.restype.toString().equals("void")) {
+          add(typeUses, tree.restype);
+        }
+        super.visitMethodDef(tree);
+      }
+
+      @Override
+      public void visitVarDef(JCVariableDecl tree) {
+        // The type and initializer of an enum constant are not in the source code.
+        if ((tree.mods.flags & Flags.ENUM) == 0) {
+          add(typeUses, tree.vartype);
+          add(expressions, tree.init);
+        }
+        super.visitVarDef(tree);
+      }
+
+      @Override
+      public void visitReturn(JCReturn tree) {
+        add(expressions, tree.expr);
+        super.visitReturn(tree);
+      }
+
+      /**
+       * Adds the source code of a tree to a list, if the tree is in the source code.
+       *
+       * @param snippets a list of snippets
+       * @param tree a tree in the sample file, or null
+       */
+      private void add(List<String> snippets, @Nullable JCTree tree) {
+        // A tree that is shared, such as the type of "b" in "int a, b;", has no end position.
+        if (tree != null && TreeInfo.getEndPos(tree, endPositions) != Position.NOPOS) {
+          snippets.add(
+              text.substring(TreeInfo.getStartPos(tree), TreeInfo.getEndPos(tree, endPositions)));
+        }
+      }
+    }.scan(cu);
+  }
+
+  /**
+   * Returns a compilation unit with at most the given number of lines. It is as long as possible,
+   * given that it consists of a package declaration, imports, and a class.
+   *
+   * @param lines the maximum number of lines
+   * @return a compilation unit with at most {@code lines} lines
+   */
+  String compilationUnit(int lines) {
+    return HEADER + typeDeclaration(lines - lineCount(HEADER));
+  }
+
+  /**
+   * Returns a class declaration with at most the given number of lines. Its members are drawn from
+   * the samples, cyclically, skipping each one that would make the class too long.
+   *
+   * @param lines the maximum number of lines
+   * @return a class declaration with at most {@code lines} lines
+   */
+  String typeDeclaration(int lines) {
+    StringBuilder result = new StringBuilder("public class Assembled {");
+    // The first and last lines.
+    int count = 2;
+    boolean added = true;
+    while (added) {
+      added = false;
+      for (String member : members) {
+        int memberLines = lineCount(member);
+        if (count + memberLines <= lines) {
+          result.append(member);
+          count += memberLines;
+          added = true;
+        }
+      }
+    }
+    return result.append("\n}\n").toString();
+  }
+
+  /**
+   * Returns a method from the samples.
+   *
+   * @param size the size of the method: "small", "medium", or "large"
+   * @return a method of the given size
+   */
+  String method(String size) {
+    return select(methods, size);
+  }
+
+  /**
+   * Returns an expression from the samples.
+   *
+   * @param size the size of the expression: "small", "medium", or "large"
+   * @return an expression of the given size
+   */
+  String expression(String size) {
+    return select(expressions, size);
+  }
+
+  /**
+   * Returns all the expressions in the samples.
+   *
+   * @return all the expressions in the samples, shortest first
+   */
+  List<String> expressions() {
+    return Collections.unmodifiableList(expressions);
+  }
+
+  /**
+   * Returns a type use from the samples.
+   *
+   * @param size the size of the type use: "small", "medium", or "large"
+   * @return a type use of the given size
+   */
+  String typeUse(String size) {
+    return select(typeUses, size);
+  }
+
+  /**
+   * Returns the shortest, median, or longest element of a list that is sorted by length.
+   *
+   * @param snippets a non-empty list, sorted by length
+   * @param size "small", "medium", or "large"
+   * @return the shortest, median, or longest element of {@code snippets}
+   */
+  private static String select(List<String> snippets, String size) {
+    return switch (size) {
+      case "small" -> snippets.get(0);
+      case "medium" -> snippets.get(snippets.size() / 2);
+      case "large" -> snippets.get(snippets.size() - 1);
+      default -> throw new IllegalArgumentException("Bad size: " + size);
+    };
+  }
+
+  /**
+   * Returns the number of line terminators in a string.
+   *
+   * @param s a string
+   * @return the number of line terminators in {@code s}
+   */
+  private static int lineCount(String s) {
+    return (int) s.chars().filter(c -> c == '\n').count();
+  }
+}
@@ -0,0 +1,285 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures each of the static parse methods of {@link JavacParse}, on inputs from tiny snippets to
+ * 10,000-line files. The inputs are drawn from a {@link Corpus} of sample Java code. Both
+ * throughput and average time are measured; {@code ./gradlew jmh} also measures allocation (with
+ * JMH's "gc" profiler) and writes the results as JSON.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JavacParseBenchmark {
+
+  /** Creates a JavacParseBenchmark. */
+  public JavacParseBenchmark() {}
+
+  /** A compilation unit and a type declaration of a given size, and a file holding the former. */
+  @State(Scope.Benchmark)
+  public static class FileInput {
+
+    /** The maximum number of lines of the inputs. */
+    @Param({"10", "100", "1000", "10000"})
+    public int lines;
+
+    /** A compilation unit. */
+    String compilationUnit = "";
+
+    /** A type declaration. */
+    String typeDeclaration = "";
+
+    /** The name of a file that contains {@link #compilationUnit}. */
+    String filename = "";
+
+    /** Creates a FileInput. */
+    public FileInput() {}
+
+    /**
+     * Creates the inputs.
+     *
+     * @throws IOException if the corpus cannot be read or the file cannot be written
+     */
+    @Setup
+    public void setUp() throws IOException {
+      Corpus corpus = new Corpus();
+      compilationUnit = corpus.compilationUnit(lines);
+      typeDeclaration = corpus.typeDeclaration(lines);
+      Path file = Files.createTempFile("Assembled", ".java");
+      Files.writeString(file, compilationUnit);
+      filename = file.toString();
+    }
+
+    /**
+     * Deletes the file.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+      Files.deleteIfExists(Path.of(filename));
+    }
+  }
+
+  /** A method, an expression, and a type use of a given size. */
+  @State(Scope.Benchmark)
+  public static class SnippetInput {
+
+    /** The size of the inputs: the shortest, median, or longest of their kind in the corpus. */
+    @Param({"small", "medium", "large"})
+    public String size = "small";
+
+    /** A method. */
+    String method = "";
+
+    /** An expression. */
+    String expression = "";
+
+    /** A type use. */
+    String typeUse = "";
+
+    /** Creates a SnippetInput. */
+    public SnippetInput() {}
+
+    /**
+     * Creates the inputs.
+     *
+     * @throws IOException if the corpus cannot be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+      Corpus corpus = new Corpus();
+      method = corpus.method(size);
+      expression = corpus.expression(size);
+      typeUse = corpus.typeUse(size);
+    }
+  }
+
+  /** Many expressions, for the batch methods. */
+  @State(Scope.Benchmark)
+  public static class BatchInput {
+
+    /** The number of expressions. */
+    @Param({"100", "10000"})
+    public int count = 100;
+
+    /** The expressions: the corpus's expressions, repeated as needed. */
+    List<String> expressions = List.of();
+
+    /** Creates a BatchInput. */
+    public BatchInput() {}
+
+    /**
+     * Creates the inputs.
+     *
+     * @throws IOException if the corpus cannot be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+      List<String> all = new Corpus().expressions();
+      List<String> result = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        result.add(all.get(i % all.size()));
+      }
+      expressions = result;
+    }
+  }
+
+  /**
+   * Parses a file.
+   *
+   * @param input the file
+   * @return the parse result
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> parseFile(FileInput input) throws IOException {
+    return JavacParse.parseFile(input.filename);
+  }
+
+  /**
+   * Parses a compilation unit.
+   *
+   * @param input the compilation unit
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(FileInput input) {
+    return JavacParse.parseCompilationUnit(input.compilationUnit);
+  }
+
+  /**
+   * Parses a compilation unit, retaining neither doc comments, nor end positions, nor the line map.
+   * Compare with {@link #parseCompilationUnit}.
+   *
+   * @param input the compilation unit
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnitTreeOnly(FileInput input) {
+    return JavacParse.parseCompilationUnit(input.compilationUnit, ParseOptions.TREE_ONLY);
+  }
+
+  /**
+   * Parses a compilation unit without its method bodies. Compare with {@link
+   * #parseCompilationUnit}.
+   *
+   * @param input the compilation unit
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnitSkeleton(FileInput input) {
+    return JavacParse.parseCompilationUnit(
+        input.compilationUnit,
+        ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.SKIP));
+  }
+
+  /**
+   * Parses a compilation unit with lazy method bodies, none of which is used. Compare with {@link
+   * #parseCompilationUnit}.
+   *
+   * @param input the compilation unit
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnitLazy(FileInput input) {
+    return JavacParse.parseCompilationUnit(
+        input.compilationUnit,
+        ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.LAZY));
+  }
+
+  /**
+   * Parses a type declaration.
+   *
+   * @param input the type declaration
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<ClassTree> parseTypeDeclaration(FileInput input) {
+    return JavacParse.parseTypeDeclaration(input.typeDeclaration);
+  }
+
+  /**
+   * Parses a method.
+   *
+   * @param input the method
+   * @return the parse tree
+   */
+  @Benchmark
+  public MethodTree parseMethod(SnippetInput input) {
+    return JavacParse.parseMethod(input.method);
+  }
+
+  /**
+   * Parses an expression.
+   *
+   * @param input the expression
+   * @return the parse tree
+   */
+  @Benchmark
+  public ExpressionTree parseExpression(SnippetInput input) {
+    return JavacParse.parseExpression(input.expression);
+  }
+
+  /**
+   * Parses a type use.
+   *
+   * @param input the type use
+   * @return the parse tree
+   */
+  @Benchmark
+  public Tree parseTypeUse(SnippetInput input) {
+    return JavacParse.parseTypeUse(input.typeUse);
+  }
+
+  /**
+   * Parses many expressions, with one call per expression.
+   *
+   * @param input the expressions
+   * @return the parse trees
+   */
+  @Benchmark
+  public List<ExpressionTree> parseExpressionEach(BatchInput input) {
+    List<ExpressionTree> result = new ArrayList<>(input.expressions.size());
+    for (String expression : input.expressions) {
+      result.add(JavacParse.parseExpression(expression));
+    }
+    return result;
+  }
+
+  /**
+   * Parses many expressions, with one call for all of them.
+   *
+   * @param input the expressions
+   * @return the parse results
+   */
+  @Benchmark
+  public List<SnippetResult<ExpressionTree>> parseExpressions(BatchInput input) {
+    return JavacParse.parseExpressions(input.expressions);
+  }
+}
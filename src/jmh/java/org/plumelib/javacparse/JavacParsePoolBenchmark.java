@@ -0,0 +1,73 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a {@link JavacParsePool} that is shared by one thread per available
+ * processor. To see how throughput scales with the number of threads, override the thread count
+ * (JMH's {@code -t} option) with 1, 2, 4, and so on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class JavacParsePoolBenchmark {
+
+  /** Creates a JavacParsePoolBenchmark. */
+  public JavacParsePoolBenchmark() {}
+
+  /** A small compilation unit. */
+  private static final String COMPILATION_UNIT =
+      """
+      package p;
+      import java.util.List;
+      class C { int f; List<String> m(int x) { return List.of("" + x + f); } }
+      """;
+
+  /** A pool that is shared by all the benchmark threads. */
+  @State(Scope.Benchmark)
+  @InheritableMustCall("close")
+  public static class PoolState {
+
+    /** The pool. */
+    @Owning final JavacParsePool pool = new JavacParsePool();
+
+    /** Creates a PoolState. */
+    public PoolState() {}
+
+    /** Closes the pool. */
+    @TearDown
+    @EnsuresCalledMethods(value = "this.pool", methods = "close")
+    public void close() {
+      pool.close();
+    }
+  }
+
+  /**
+   * Parses a compilation unit with the pool.
+   *
+   * @param state the pool
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> compilationUnit(PoolState state) {
+    return state.pool.parseCompilationUnit(COMPILATION_UNIT);
+  }
+}
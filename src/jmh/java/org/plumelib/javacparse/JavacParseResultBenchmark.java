@@ -0,0 +1,99 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the methods of {@link JavacParseResult} that inspect the diagnostics, chiefly in the
+ * common case of a parse without errors, which should cost next to nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JavacParseResultBenchmark {
+
+  /** Creates a JavacParseResultBenchmark. */
+  public JavacParseResultBenchmark() {}
+
+  /** The results of a parse without diagnostics and of one with errors. */
+  @State(Scope.Benchmark)
+  public static class Results {
+
+    /** The result of a parse without diagnostics. */
+    final JavacParseResult<CompilationUnitTree> valid =
+        JavacParse.parseCompilationUnit("class C { int f; void m() { f++; } }");
+
+    /** The result of a parse with errors. */
+    final JavacParseResult<CompilationUnitTree> invalid =
+        JavacParse.parseCompilationUnit("class C { int f = ; void () {} }");
+
+    /** Creates a Results. */
+    public Results() {}
+  }
+
+  /**
+   * Creates a result without diagnostics, as every parse without errors does.
+   *
+   * @param results the results
+   * @return the new result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> newResultNoErrors(Results results) {
+    return new JavacParseResult<>(results.valid.tree(), results.valid.diagnostics());
+  }
+
+  /**
+   * Checks a result without diagnostics for errors.
+   *
+   * @param results the results
+   * @return true if the result has an error
+   */
+  @Benchmark
+  public boolean hasParseErrorNoErrors(Results results) {
+    return results.valid.hasParseError();
+  }
+
+  /**
+   * Gets the error messages of a result without diagnostics.
+   *
+   * @param results the results
+   * @return the error messages
+   */
+  @Benchmark
+  public String getParseErrorMessagesNoErrors(Results results) {
+    return results.valid.getParseErrorMessages();
+  }
+
+  /**
+   * Checks a result with errors for errors.
+   *
+   * @param results the results
+   * @return true if the result has an error
+   */
+  @Benchmark
+  public boolean hasParseErrorWithErrors(Results results) {
+    return results.invalid.hasParseError();
+  }
+
+  /**
+   * Gets the error messages of a result with errors.
+   *
+   * @param results the results
+   * @return the error messages
+   */
+  @Benchmark
+  public String getParseErrorMessagesWithErrors(Results results) {
+    return results.invalid.getParseErrorMessages();
+  }
+}
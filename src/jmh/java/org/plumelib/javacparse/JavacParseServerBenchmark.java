@@ -0,0 +1,258 @@
+package org.plumelib.javacparse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.mustcall.qual.CreatesMustCallFor;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of a {@link JavacParseServer} as its clients see it: the time from writing a
+ * request to a Unix-domain socket to reading the whole response. Each benchmark thread is a client
+ * with its own connection, which sends one request at a time. JMH reports the percentiles of the
+ * latency (p50, p90, p99, and so on). To see how latency grows with the number of concurrent
+ * clients, override the thread count (JMH's {@code -t} option) with 1, 2, 4, and so on.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JavacParseServerBenchmark {
+
+  /** Creates a JavacParseServerBenchmark. */
+  public JavacParseServerBenchmark() {}
+
+  /** A server that listens on a socket in a temporary directory. */
+  @State(Scope.Benchmark)
+  @InheritableMustCall("tearDown")
+  public static class ServerState {
+
+    /** The server, with one worker thread per available processor. */
+    @Owning
+    final JavacParseServer server =
+        new JavacParseServer(Runtime.getRuntime().availableProcessors(), null);
+
+    /** The directory that contains the socket. */
+    @MonotonicNonNull Path dir = null;
+
+    /** The socket. */
+    @MonotonicNonNull Path socket = null;
+
+    /** The thread that accepts connections. */
+    @MonotonicNonNull Thread listener = null;
+
+    /** Creates a ServerState. */
+    public ServerState() {}
+
+    /**
+     * Starts the server, and waits until it accepts connections on its socket.
+     *
+     * @throws IOException if the directory cannot be created
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+      dir = Files.createTempDirectory("JavacParseServerBenchmark");
+      Path socket = dir.resolve("server.sock");
+      this.socket = socket;
+      CountDownLatch listening = new CountDownLatch(1);
+      listener =
+          new Thread(
+              () -> {
+                try {
+                  server.serve(socket, listening::countDown);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              });
+      listener.start();
+      listening.await();
+    }
+
+    /**
+     * Stops the server and deletes the directory.
+     *
+     * @throws IOException if the directory cannot be deleted
+     * @throws InterruptedException if interrupted while waiting for the server to stop
+     */
+    @TearDown
+    @EnsuresCalledMethods(value = "this.server", methods = "close")
+    public void tearDown() throws IOException, InterruptedException {
+      server.close();
+      if (listener != null) {
+        listener.join();
+      }
+      if (dir != null) {
+        Files.deleteIfExists(dir);
+      }
+    }
+  }
+
+  /** A client: one connection to the server. */
+  @State(Scope.Thread)
+  @InheritableMustCall("tearDown")
+  public static class ClientState {
+
+    /** The connection, or null before {@link #setUp}. */
+    @Owning @Nullable SocketChannel channel = null;
+
+    /** Writes requests to the connection. */
+    @MonotonicNonNull OutputStream requests = null;
+
+    /** Reads responses from the connection. */
+    @MonotonicNonNull BufferedReader responses = null;
+
+    /** A request to parse a compilation unit of about 200 lines and return its summary. */
+    String summaryRequest = "";
+
+    /** A request to parse a compilation unit of about 200 lines and return its tree. */
+    String treeRequest = "";
+
+    /** A request to parse a medium-sized expression and return its tree. */
+    String expressionRequest = "";
+
+    /** Creates a ClientState. */
+    public ClientState() {}
+
+    /**
+     * Connects to the server and creates the requests.
+     *
+     * @param server the server
+     * @throws IOException if the corpus cannot be read or the connection fails
+     */
+    @Setup
+    @CreatesMustCallFor("this")
+    public void setUp(ServerState server) throws IOException {
+      Corpus corpus = new Corpus();
+      String compilationUnit = JavacParseServer.escape(corpus.compilationUnit(200));
+      summaryRequest = "s\tCOMPILATION_UNIT\tSUMMARY\tSOURCE\t" + compilationUnit + "\n";
+      treeRequest = "t\tCOMPILATION_UNIT\tTREE\tSOURCE\t" + compilationUnit + "\n";
+      expressionRequest =
+          "e\tEXPRESSION\tTREE\tSOURCE\t"
+              + JavacParseServer.escape(corpus.expression("medium"))
+              + "\n";
+      SocketChannel c = SocketChannel.open(StandardProtocolFamily.UNIX);
+      channel = c;
+      c.connect(UnixDomainSocketAddress.of(castNonNull(server.socket)));
+      requests = new JavacParseServer.ChannelOutputStream(c);
+      responses =
+          new BufferedReader(
+              new InputStreamReader(
+                  new JavacParseServer.ChannelInputStream(c), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a request and reads its response.
+     *
+     * @param request the request, including its line terminator
+     * @return the number of characters in the response
+     * @throws IOException if the connection fails
+     */
+    int roundTrip(String request) throws IOException {
+      castNonNull(requests).write(request.getBytes(StandardCharsets.UTF_8));
+      BufferedReader reader = castNonNull(responses);
+      String header = reader.readLine();
+      if (header == null) {
+        throw new IOException("The server closed the connection");
+      }
+      String[] fields = header.split("\t", -1);
+      if (!fields[1].equals("OK")) {
+        throw new IOException("The request failed: " + header);
+      }
+      int length = header.length();
+      for (int i = Integer.parseInt(fields[2]); i > 0; i--) {
+        length += castNonNull(reader.readLine()).length();
+      }
+      return length;
+    }
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException if the connection cannot be closed
+     */
+    @TearDown
+    @EnsuresCalledMethods(value = "this.channel", methods = "close")
+    public void tearDown() throws IOException {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Returns its argument, which must not be null.
+   *
+   * @param <T> the type of the argument
+   * @param o a value that is not null
+   * @return {@code o}
+   */
+  @SuppressWarnings("nullness:return") // the argument is not null
+  private static <T> T castNonNull(@Nullable T o) {
+    return o;
+  }
+
+  /**
+   * Parses a compilation unit and receives its summary.
+   *
+   * @param client the connection
+   * @return the number of characters in the response
+   * @throws IOException if the connection fails
+   */
+  @Benchmark
+  public int compilationUnitSummary(ClientState client) throws IOException {
+    return client.roundTrip(client.summaryRequest);
+  }
+
+  /**
+   * Parses a compilation unit and receives its tree.
+   *
+   * @param client the connection
+   * @return the number of characters in the response
+   * @throws IOException if the connection fails
+   */
+  @Benchmark
+  public int compilationUnitTree(ClientState client) throws IOException {
+    return client.roundTrip(client.treeRequest);
+  }
+
+  /**
+   * Parses an expression and receives its tree.
+   *
+   * @param client the connection
+   * @return the number of characters in the response
+   * @throws IOException if the connection fails
+   */
+  @Benchmark
+  public int expression(ClientState client) throws IOException {
+    return client.roundTrip(client.expressionRequest);
+  }
+}
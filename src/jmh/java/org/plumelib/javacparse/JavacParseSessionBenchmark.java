@@ -0,0 +1,429 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the per-parse cost of the static methods of {@link JavacParse}, which set up javac
+ * afresh for each parse, with that of a {@link JavacParseSession}, which reuses its setup. Also
+ * compares parsing files with {@link JavacParseSession#parseFile} and with a {@link SourceBuffer};
+ * run with JMH's "gc" profiler to see the difference in allocation. Also measures parsing one
+ * method of a file with {@link JavacParseSession#parseFileMember} and {@link
+ * JavacParseSession#parseFileRange}, parsing each method body of a file with {@link
+ * JavacParseSession#parseBody}, and re-parsing a file after an edit within one method with {@link
+ * JavacParseSession#reparseCompilationUnit}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JavacParseSessionBenchmark {
+
+  /** Creates a JavacParseSessionBenchmark. */
+  public JavacParseSessionBenchmark() {}
+
+  /** A small expression. */
+  private static final String EXPRESSION = "foo.bar(1 + 2, baz)";
+
+  /** A small type use. */
+  private static final String TYPE_USE = "Map<String, List<? extends Number>>";
+
+  /** A small compilation unit. */
+  private static final String COMPILATION_UNIT =
+      """
+      package p;
+      import java.util.List;
+      class C { int f; List<String> m(int x) { return List.of("" + x + f); } }
+      """;
+
+  /** The options that skip method bodies. */
+  private static final ParseOptions SKIP_BODIES =
+      ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.SKIP);
+
+  /** A session that lives as long as the benchmark thread. */
+  @State(Scope.Thread)
+  @InheritableMustCall("close")
+  public static class SessionState {
+
+    /** The session. */
+    @Owning final JavacParseSession session = new JavacParseSession();
+
+    /** Creates a SessionState. */
+    public SessionState() {}
+
+    /** Closes the session. */
+    @TearDown
+    @EnsuresCalledMethods(value = "this.session", methods = "close")
+    public void close() {
+      session.close();
+    }
+  }
+
+  /** A file from the corpus, and a buffer to read it into. */
+  @State(Scope.Thread)
+  public static class FileState {
+
+    /** The maximum number of lines of the file. */
+    @Param({"100", "10000"})
+    public int lines;
+
+    /** A file that contains a compilation unit. */
+    Path file = Path.of("");
+
+    /** The name of {@link #file}. */
+    String filename = "";
+
+    /** A buffer that is reused for every parse. */
+    final SourceBuffer buffer = new SourceBuffer();
+
+    /** The last method of the file. */
+    MemberSelector lastMethod = MemberSelector.parse("Assembled");
+
+    /** An offset within the last method of the file. */
+    int lastMethodOffset = 0;
+
+    /** Creates a FileState. */
+    public FileState() {}
+
+    /**
+     * Creates the file.
+     *
+     * @throws IOException if the corpus cannot be read or the file cannot be written
+     */
+    @Setup
+    public void setUp() throws IOException {
+      file = Files.createTempFile("Assembled", ".java");
+      Files.writeString(file, new Corpus().compilationUnit(lines));
+      filename = file.toString();
+      JCCompilationUnit cu = (JCCompilationUnit) JavacParse.parseFile(filename).tree();
+      JCClassDecl c = (JCClassDecl) cu.defs.last();
+      for (JCTree member : c.defs) {
+        if (member instanceof JCMethodDecl m && m.body != null) {
+          List<String> parameterTypes = new ArrayList<>();
+          for (JCVariableDecl param : m.params) {
+            parameterTypes.add(param.vartype.toString());
+          }
+          lastMethod = new MemberSelector(List.of("Assembled"), m.name.toString(), parameterTypes);
+          lastMethodOffset = m.body.pos;
+        }
+      }
+    }
+
+    /**
+     * Deletes the file.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /** A compilation unit that is edited within a method in its middle, and its parse result. */
+  @State(Scope.Thread)
+  public static class EditState {
+
+    /** The maximum number of lines of the compilation unit. */
+    @Param({"100", "10000"})
+    public int lines;
+
+    /** The contents of the compilation unit, before the edit. */
+    String text = "";
+
+    /** The index, just after the "{" of a method body, at which the edit inserts a space. */
+    int offset = 0;
+
+    /** The result of parsing the current contents, which the next edit re-parses. */
+    @Nullable JavacParseResult<CompilationUnitTree> result = null;
+
+    /** True if the space has been inserted, so that the next edit removes it. */
+    boolean inserted = false;
+
+    /** Creates an EditState. */
+    public EditState() {}
+
+    /**
+     * Creates and parses the compilation unit.
+     *
+     * @throws IOException if the corpus cannot be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+      text = new Corpus().compilationUnit(lines);
+      result = JavacParse.parseCompilationUnit(text);
+      JCClassDecl c = (JCClassDecl) ((JCCompilationUnit) result.tree()).defs.last();
+      List<JCMethodDecl> methods = new ArrayList<>();
+      for (JCTree member : c.defs) {
+        if (member instanceof JCMethodDecl m && m.body != null) {
+          methods.add(m);
+        }
+      }
+      offset = methods.get(methods.size() / 2).body.pos + 1;
+    }
+
+    /**
+     * Inserts a space at {@link #offset}, or removes the space that the previous edit inserted,
+     * and re-parses the compilation unit.
+     *
+     * @param session the session
+     * @return the result of re-parsing the edited compilation unit
+     * @throws IOException if the compilation unit cannot be re-parsed
+     */
+    JavacParseResult<CompilationUnitTree> edit(JavacParseSession session) throws IOException {
+      JavacParseResult<CompilationUnitTree> previous = result;
+      if (previous == null) {
+        throw new IllegalStateException("Not set up");
+      }
+      result =
+          inserted
+              ? session.reparseCompilationUnit(previous, offset, 1, "")
+              : session.reparseCompilationUnit(previous, offset, 0, " ");
+      inserted = !inserted;
+      return result;
+    }
+  }
+
+  /**
+   * Parses an expression with the static method.
+   *
+   * @return the parse tree
+   */
+  @Benchmark
+  public ExpressionTree expressionStatic() {
+    return JavacParse.parseExpression(EXPRESSION);
+  }
+
+  /**
+   * Parses an expression with a session.
+   *
+   * @param state the session
+   * @return the parse tree
+   */
+  @Benchmark
+  public ExpressionTree expressionSession(SessionState state) {
+    return state.session.parseExpression(EXPRESSION);
+  }
+
+  /**
+   * Validates an expression with a session. Compare with {@link #expressionSession}.
+   *
+   * @param state the session
+   * @return true if the expression is valid
+   */
+  @Benchmark
+  public boolean expressionValidate(SessionState state) {
+    return state.session.isValidExpression(EXPRESSION);
+  }
+
+  /**
+   * Parses a type use with the static method.
+   *
+   * @return the parse tree
+   */
+  @Benchmark
+  public Tree typeUseStatic() {
+    return JavacParse.parseTypeUse(TYPE_USE);
+  }
+
+  /**
+   * Parses a type use with a session.
+   *
+   * @param state the session
+   * @return the parse tree
+   */
+  @Benchmark
+  public Tree typeUseSession(SessionState state) {
+    return state.session.parseTypeUse(TYPE_USE);
+  }
+
+  /**
+   * Parses a compilation unit with the static method.
+   *
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> compilationUnitStatic() {
+    return JavacParse.parseCompilationUnit(COMPILATION_UNIT);
+  }
+
+  /**
+   * Parses a compilation unit with a session.
+   *
+   * @param state the session
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> compilationUnitSession(SessionState state) {
+    return state.session.parseCompilationUnit(COMPILATION_UNIT);
+  }
+
+  /**
+   * Validates a compilation unit with a session. Compare with {@link #compilationUnitSession}.
+   *
+   * @param state the session
+   * @return true if the compilation unit is valid
+   */
+  @Benchmark
+  public boolean compilationUnitValidate(SessionState state) {
+    return state.session.isValidCompilationUnit(COMPILATION_UNIT);
+  }
+
+  /**
+   * Parses a file with a session.
+   *
+   * @param state the session
+   * @param file the file
+   * @return the parse result
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> fileSession(SessionState state, FileState file)
+      throws IOException {
+    return state.session.parseFile(file.filename);
+  }
+
+  /**
+   * Parses a file with a session, reading it into a reused {@link SourceBuffer}. Compare with
+   * {@link #fileSession}.
+   *
+   * @param state the session
+   * @param file the file
+   * @return the parse result
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> fileBuffer(SessionState state, FileState file)
+      throws IOException {
+    file.buffer.readFile(file.file);
+    return state.session.parseCompilationUnit(file.buffer);
+  }
+
+  /**
+   * Parses a file with a session, skipping its method bodies, and then parses each body. Compare
+   * with {@link #fileSession}.
+   *
+   * @param state the session
+   * @param file the file
+   * @return the number of statements in the bodies
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public int fileAllBodies(SessionState state, FileState file) throws IOException {
+    JavacParseResult<CompilationUnitTree> result =
+        state.session.parseFile(file.filename, SKIP_BODIES);
+    List<JCMethodDecl> methods = new ArrayList<>();
+    addMethods(((JCCompilationUnit) result.tree()).defs, methods);
+    int statements = 0;
+    for (JCMethodDecl m : methods) {
+      statements += ((JCBlock) state.session.parseBody(result.tree(), m).tree()).stats.size();
+    }
+    return statements;
+  }
+
+  /**
+   * Adds the methods that have bodies, in the given trees and the classes nested within them, to a
+   * list. It does not look within method bodies.
+   *
+   * @param trees trees
+   * @param methods the list to add to
+   */
+  private static void addMethods(
+      com.sun.tools.javac.util.List<JCTree> trees, List<JCMethodDecl> methods) {
+    for (JCTree tree : trees) {
+      if (tree instanceof JCClassDecl c) {
+        addMethods(c.defs, methods);
+      } else if (tree instanceof JCMethodDecl m && m.body != null) {
+        methods.add(m);
+      }
+    }
+  }
+
+  /**
+   * Parses the last method of a file, by name, with a session. Compare with {@link #fileSession}.
+   *
+   * @param state the session
+   * @param file the file
+   * @return the parse result
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public @Nullable JavacParseResult<Tree> fileMember(SessionState state, FileState file)
+      throws IOException {
+    return state.session.parseFileMember(file.filename, file.lastMethod);
+  }
+
+  /**
+   * Parses the last method of a file, by an offset within it, with a session. Compare with {@link
+   * #fileSession}.
+   *
+   * @param state the session
+   * @param file the file
+   * @return the parse result
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public @Nullable JavacParseResult<Tree> fileRange(SessionState state, FileState file)
+      throws IOException {
+    int offset = file.lastMethodOffset;
+    return state.session.parseFileRange(file.filename, offset, offset);
+  }
+
+  /**
+   * Edits a method in the middle of a compilation unit and re-parses the compilation unit, which
+   * re-parses only the method.
+   *
+   * @param state the session
+   * @param edit the compilation unit
+   * @return the parse result
+   * @throws IOException if the compilation unit cannot be re-parsed
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> reparseEdit(SessionState state, EditState edit)
+      throws IOException {
+    return edit.edit(state.session);
+  }
+
+  /**
+   * Parses the compilation unit that {@link #reparseEdit} edits, as a whole. Compare with {@link
+   * #reparseEdit}.
+   *
+   * @param state the session
+   * @param edit the compilation unit
+   * @return the parse result
+   */
+  @Benchmark
+  public JavacParseResult<CompilationUnitTree> reparseWhole(SessionState state, EditState edit) {
+    return state.session.parseCompilationUnit(edit.text);
+  }
+}
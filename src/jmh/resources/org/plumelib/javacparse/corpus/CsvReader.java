@@ -0,0 +1,218 @@
+/*
+ * A reader for comma-separated values, in the style of older Java code.
+ */
+package org.example.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads records from comma-separated text, as described by RFC 4180. A field may be enclosed in
+ * double quotes, in which case it may contain commas, line breaks, and doubled double quotes.
+ *
+ * <pre>
+ * CsvReader in = new CsvReader(new FileReader("data.csv"), ',');
+ * try {
+ *   String[] header = in.readRecord();
+ *   ...
+ * } finally {
+ *   in.close();
+ * }
+ * </pre>
+ */
+public class CsvReader implements Closeable {
+
+  /** Thrown when the input is not well-formed. */
+  public static class MalformedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long line;
+
+    public MalformedException(String message, long line) {
+      super(message + " at line " + line);
+      this.line = line;
+    }
+
+    public long getLine() {
+      return line;
+    }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 13;
+  private static final char QUOTE = '"';
+
+  private final Reader in;
+  private final char separator;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private long line = 1;
+  private boolean closed;
+  private Map<String, Integer> columns;
+
+  public CsvReader(Reader in, char separator) {
+    if (separator == QUOTE || separator == '\n' || separator == '\r') {
+      throw new IllegalArgumentException("bad separator: " + separator);
+    }
+    this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+    this.separator = separator;
+  }
+
+  public CsvReader(InputStream in, Charset charset) {
+    this(new InputStreamReader(in, charset), ',');
+  }
+
+  /**
+   * Reads the header record, which names the columns. Afterward, {@link #column} maps names to
+   * indices.
+   *
+   * @return the column names
+   * @throws IOException if the input cannot be read or is malformed
+   */
+  public String[] readHeader() throws IOException {
+    String[] header = readRecord();
+    if (header == null) {
+      throw new MalformedException("missing header", line);
+    }
+    Map<String, Integer> map = new HashMap<String, Integer>();
+    for (int i = 0; i < header.length; i++) {
+      if (map.put(header[i], Integer.valueOf(i)) != null) {
+        throw new MalformedException("duplicate column \"" + header[i] + "\"", line);
+      }
+    }
+    columns = Collections.unmodifiableMap(map);
+    return header;
+  }
+
+  public int column(String name) {
+    if (columns == null) {
+      throw new IllegalStateException("readHeader() has not been called");
+    }
+    Integer index = columns.get(name);
+    return index == null ? -1 : index.intValue();
+  }
+
+  /**
+   * Reads the next record.
+   *
+   * @return the fields of the next record, or null at the end of the input
+   * @throws IOException if the input cannot be read or is malformed
+   */
+  public String[] readRecord() throws IOException {
+    if (closed) {
+      throw new IOException("closed");
+    }
+    int c = read();
+    if (c < 0) {
+      return null;
+    }
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    boolean afterQuote = false;
+    scan:
+    while (true) {
+      if (quoted) {
+        if (c < 0) {
+          throw new MalformedException("unterminated quoted field", line);
+        } else if (c == QUOTE) {
+          int next = read();
+          if (next == QUOTE) {
+            field.append(QUOTE);
+          } else {
+            quoted = false;
+            afterQuote = true;
+            c = next;
+            continue;
+          }
+        } else {
+          if (c == '\n') {
+            line++;
+          }
+          field.append((char) c);
+        }
+      } else {
+        switch (c) {
+          case -1:
+          case '\n':
+            line++;
+            // fall through
+          case '\r':
+            fields.add(field.toString());
+            if (c == '\r' && peek() == '\n') {
+              read();
+              line++;
+            }
+            break scan;
+          case QUOTE:
+            if (field.length() != 0 || afterQuote) {
+              throw new MalformedException("quote in unquoted field", line);
+            }
+            quoted = true;
+            break;
+          default:
+            if (c == separator) {
+              fields.add(field.toString());
+              field.setLength(0);
+              afterQuote = false;
+            } else if (afterQuote) {
+              throw new MalformedException("text after closing quote", line);
+            } else {
+              field.append((char) c);
+            }
+        }
+      }
+      c = read();
+    }
+    return fields.toArray(new String[fields.size()]);
+  }
+
+  public long getLine() {
+    return line;
+  }
+
+  private int read() throws IOException {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position++];
+  }
+
+  private int peek() throws IOException {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position];
+  }
+
+  private boolean fill() throws IOException {
+    int n;
+    do {
+      n = in.read(buffer, 0, buffer.length);
+    } while (n == 0);
+    if (n < 0) {
+      return false;
+    }
+    position = 0;
+    limit = n;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package org.example.collect;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A map that holds at most a fixed number of entries. When a new entry would exceed that number,
+ * the least recently used entry is removed.
+ *
+ * <p>This class is not thread-safe. Wrap it with {@link java.util.Collections#synchronizedMap} to
+ * share it between threads.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class LruMap<K, V> extends AbstractMap<K, V> {
+
+  /** The maximum number of entries. */
+  private final int capacity;
+
+  /** The entries, by key. */
+  private final Map<K, Node<K, V>> index = new java.util.HashMap<>();
+
+  /** A sentinel: its successor is the most recently used entry, its predecessor the least. */
+  private final Node<K, V> head = new Node<>(null, null);
+
+  /** The number of structural modifications, for detecting concurrent modification. */
+  private int modCount = 0;
+
+  /** The number of entries that have been evicted. */
+  private long evictions;
+
+  /**
+   * Creates an empty map.
+   *
+   * @param capacity the maximum number of entries
+   * @throws IllegalArgumentException if {@code capacity} is not positive
+   */
+  public LruMap(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    head.next = head;
+    head.prev = head;
+  }
+
+  @Override
+  public int size() {
+    return index.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return index.containsKey(key);
+  }
+
+  @Override
+  public V get(Object key) {
+    Node<K, V> node = index.get(key);
+    if (node == null) {
+      return null;
+    }
+    moveToFront(node);
+    return node.value;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    Objects.requireNonNull(key, "key");
+    Node<K, V> node = index.get(key);
+    if (node != null) {
+      V old = node.value;
+      node.value = value;
+      moveToFront(node);
+      return old;
+    }
+    if (index.size() == capacity) {
+      Node<K, V> eldest = head.prev;
+      unlink(eldest);
+      index.remove(eldest.key);
+      evictions++;
+    }
+    node = new Node<>(key, value);
+    index.put(key, node);
+    linkFirst(node);
+    modCount++;
+    return null;
+  }
+
+  @Override
+  public V remove(Object key) {
+    Node<K, V> node = index.remove(key);
+    if (node == null) {
+      return null;
+    }
+    unlink(node);
+    modCount++;
+    return node.value;
+  }
+
+  @Override
+  public void clear() {
+    index.clear();
+    head.next = head;
+    head.prev = head;
+    modCount++;
+  }
+
+  /**
+   * Returns the number of entries that have been evicted since this map was created.
+   *
+   * @return the number of evicted entries
+   */
+  public long evictions() {
+    return evictions;
+  }
+
+  /**
+   * Calls the given action on each entry, most recently used first, without changing the order.
+   *
+   * @param action the action to perform
+   */
+  public void forEachMostRecent(BiConsumer<? super K, ? super V> action) {
+    for (Node<K, V> n = head.next; n != head; n = n.next) {
+      action.accept(n.key, n.value);
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public int size() {
+        return index.size();
+      }
+
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+          private Node<K, V> next = head.next;
+          private final int expectedModCount = modCount;
+
+          @Override
+          public boolean hasNext() {
+            return next != head;
+          }
+
+          @Override
+          public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+              throw new ConcurrentModificationException();
+            }
+            if (next == head) {
+              throw new NoSuchElementException();
+            }
+            Node<K, V> result = next;
+            next = next.next;
+            return new SimpleImmutableEntry<>(result.key, result.value);
+          }
+        };
+      }
+    };
+  }
+
+  private void moveToFront(Node<K, V> node) {
+    unlink(node);
+    linkFirst(node);
+  }
+
+  private void linkFirst(Node<K, V> node) {
+    node.next = head.next;
+    node.prev = head;
+    head.next.prev = node;
+    head.next = node;
+  }
+
+  private void unlink(Node<K, V> node) {
+    node.prev.next = node.next;
+    node.next.prev = node.prev;
+    node.next = null;
+    node.prev = null;
+  }
+
+  /** A doubly-linked list node that holds one entry. */
+  private static final class Node<K, V> {
+    final K key;
+    V value;
+    Node<K, V> prev;
+    Node<K, V> next;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package org.example.geometry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** Two-dimensional shapes, and operations on collections of them. */
+public final class Shapes {
+
+  private Shapes() {
+    throw new AssertionError("no instances");
+  }
+
+  /** A shape in the plane. */
+  public sealed interface Shape permits Circle, Rectangle, Polygon {
+    /** Returns the area of this shape. */
+    double area();
+
+    /** Returns the perimeter of this shape. */
+    double perimeter();
+
+    /** Returns a copy of this shape, scaled by the given factor. */
+    default Shape scale(double factor) {
+      if (this instanceof Circle c) {
+        return new Circle(c.center(), c.radius() * factor);
+      } else if (this instanceof Rectangle r) {
+        return new Rectangle(r.corner(), r.width() * factor, r.height() * factor);
+      } else if (this instanceof Polygon p) {
+        return new Polygon(p.vertices().stream().map(v -> v.times(factor)).toList());
+      }
+      throw new IllegalStateException("unknown shape: " + this);
+    }
+  }
+
+  /** A point, or a vector from the origin. */
+  public record Point(double x, double y) {
+    public static final Point ORIGIN = new Point(0, 0);
+
+    public Point times(double factor) {
+      return new Point(x * factor, y * factor);
+    }
+
+    public double distanceTo(Point other) {
+      return Math.hypot(other.x - x, other.y - y);
+    }
+  }
+
+  public record Circle(Point center, double radius) implements Shape {
+    public Circle {
+      if (radius < 0 || Double.isNaN(radius)) {
+        throw new IllegalArgumentException("bad radius: " + radius);
+      }
+    }
+
+    @Override
+    public double area() {
+      return Math.PI * radius * radius;
+    }
+
+    @Override
+    public double perimeter() {
+      return 2 * Math.PI * radius;
+    }
+  }
+
+  public record Rectangle(Point corner, double width, double height) implements Shape {
+    @Override
+    public double area() {
+      return width * height;
+    }
+
+    @Override
+    public double perimeter() {
+      return 2 * (width + height);
+    }
+  }
+
+  public record Polygon(List<Point> vertices) implements Shape {
+    public Polygon {
+      vertices = List.copyOf(vertices);
+      if (vertices.size() < 3) {
+        throw new IllegalArgumentException("a polygon needs at least 3 vertices, not " + vertices);
+      }
+    }
+
+    @Override
+    public double area() {
+      // The shoelace formula.
+      double sum = 0;
+      int n = vertices.size();
+      for (int i = 0; i < n; i++) {
+        Point a = vertices.get(i);
+        Point b = vertices.get((i + 1) % n);
+        sum += a.x() * b.y() - b.x() * a.y();
+      }
+      return Math.abs(sum) / 2;
+    }
+
+    @Override
+    public double perimeter() {
+      double sum = 0;
+      for (int i = 0, n = vertices.size(); i < n; i++) {
+        sum += vertices.get(i).distanceTo(vertices.get((i + 1) % n));
+      }
+      return sum;
+    }
+  }
+
+  /** The kinds of shape, for reports. */
+  public enum Kind {
+    CIRCLE("circle"),
+    RECTANGLE("rectangle"),
+    POLYGON("polygon");
+
+    private final String label;
+
+    Kind(String label) {
+      this.label = label;
+    }
+
+    public String label() {
+      return label;
+    }
+
+    public static Kind of(Shape shape) {
+      return shape instanceof Circle
+          ? CIRCLE
+          : shape instanceof Rectangle ? RECTANGLE : POLYGON;
+    }
+  }
+
+  /** Returns the total area of the shapes of each kind. */
+  public static Map<Kind, Double> areaByKind(List<? extends Shape> shapes) {
+    return shapes.stream()
+        .collect(Collectors.groupingBy(Kind::of, Collectors.summingDouble(Shape::area)));
+  }
+
+  /** Returns the shapes, largest first, breaking ties by perimeter. */
+  public static List<Shape> largestFirst(List<? extends Shape> shapes) {
+    List<Shape> result = new ArrayList<>(shapes);
+    result.sort(
+        Comparator.comparingDouble(Shape::area)
+            .thenComparingDouble(Shape::perimeter)
+            .reversed());
+    return result;
+  }
+
+  /** Returns a description of a shape's size. */
+  public static String describe(Shape shape) {
+    String size =
+        switch (Kind.of(shape)) {
+          case CIRCLE -> "radius " + ((Circle) shape).radius();
+          case RECTANGLE -> {
+            Rectangle r = (Rectangle) shape;
+            yield r.width() + " by " + r.height();
+          }
+          default -> shape.perimeter() + " around";
+        };
+    return String.format(Locale.ROOT, "%s of %s, area %.2f", Kind.of(shape).label(), size, shape.area());
+  }
+
+  /** Returns an HTML table of the shapes. */
+  public static String htmlTable(List<? extends Shape> shapes, Function<Shape, String> link) {
+    StringBuilder rows = new StringBuilder();
+    for (var shape : shapes) {
+      rows.append("    <tr><td><a href=\"")
+          .append(link.apply(shape))
+          .append("\">")
+          .append(describe(shape))
+          .append("</a></td></tr>\n");
+    }
+    return """
+        <table>
+          <thead><tr><th>Shape</th></tr></thead>
+          <tbody>
+        %s  </tbody>
+        </table>
+        """
+        .formatted(rows);
+  }
+}
@@ -0,0 +1,462 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBreak;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCContinue;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.JCTree.JCLabeledStatement;
+import com.sun.tools.javac.tree.JCTree.JCMemberReference;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCTypeParameter;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.JCTree.TypeBoundKind;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Name;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A read-only parse tree of a compilation unit, stored in a few primitive arrays rather than as
+ * javac tree objects. It records, for each node, its {@link Tree.Kind}, its parent, its start and
+ * end offsets, and its name if it has one. It takes about a quarter of the memory of the {@link
+ * CompilationUnitTree} that it is converted from (with its end positions and doc comments), so it
+ * suits analyses that keep the trees of many files at once.
+ *
+ * <p>A node is an {@code int} index. The nodes are numbered in preorder: node 0 is the compilation
+ * unit, a node's children come after it in the order that javac's tree scanner visits them (which
+ * is mostly source order), and a node's descendants are the nodes from it up to its {@link
+ * #subtreeEnd}. To walk the tree, use the navigation methods, such as {@link #firstChild} and
+ * {@link #nextSibling}, or {@link #accept} a {@link Visitor}.
+ *
+ * <p>A CompactTree is immutable and thread-safe.
+ */
+@SuppressWarnings("index") // a node is an index into each per-node array; they have the same length
+public final class CompactTree {
+
+  /** The value of {@link #parent}, {@link #firstChild}, and so forth when there is no such node. */
+  public static final int NO_NODE = -1;
+
+  /** The tree kinds, indexed by ordinal. */
+  private static final Tree.Kind[] KINDS = Tree.Kind.values();
+
+  /** The ordinal of each node's kind. */
+  private final byte[] kinds;
+
+  /** The parent of each node. */
+  private final int[] parents;
+
+  /** The index after the last descendant of each node. */
+  private final int[] subtreeEnds;
+
+  /** The start offset of each node. */
+  private final int[] starts;
+
+  /** The end offset of each node. */
+  private final int[] ends;
+
+  /** The index in {@link #names} of each node's name, or {@link #NO_NODE}. */
+  private final int[] nameIndices;
+
+  /** The distinct names in the tree. */
+  private final String[] names;
+
+  /**
+   * Creates a CompactTree.
+   *
+   * @param kinds the ordinal of each node's kind
+   * @param parents the parent of each node
+   * @param subtreeEnds the index after the last descendant of each node
+   * @param starts the start offset of each node
+   * @param ends the end offset of each node
+   * @param nameIndices the index in {@code names} of each node's name, or {@link #NO_NODE}
+   * @param names the distinct names in the tree
+   */
+  private CompactTree(
+      byte[] kinds,
+      int[] parents,
+      int[] subtreeEnds,
+      int[] starts,
+      int[] ends,
+      int[] nameIndices,
+      String[] names) {
+    this.kinds = kinds;
+    this.parents = parents;
+    this.subtreeEnds = subtreeEnds;
+    this.starts = starts;
+    this.ends = ends;
+    this.nameIndices = nameIndices;
+    this.names = names;
+  }
+
+  /**
+   * Converts a compilation unit to a CompactTree. The compilation unit is not retained.
+   *
+   * <p>End offsets are exact only if the compilation unit was parsed with end positions (see {@link
+   * ParseOptions#endPositions}); otherwise they are estimates. A method body that was skipped or
+   * has not been parsed yet (see {@link ParseOptions#methodBodies}) is a single {@link
+   * Tree.Kind#BLOCK} node; converting does not parse it.
+   *
+   * @param compilationUnit a compilation unit
+   * @return the compact form of {@code compilationUnit}
+   */
+  public static CompactTree of(CompilationUnitTree compilationUnit) {
+    JCCompilationUnit cu = (JCCompilationUnit) compilationUnit;
+    Builder builder = new Builder(cu.endPositions);
+    builder.scan(cu);
+    return builder.build();
+  }
+
+  /**
+   * Converts any tree, such as a snippet, to a CompactTree. Node 0 is {@code tree}.
+   *
+   * @param tree a tree
+   * @param endPositions the end positions of the tree, or null if end offsets should be estimates
+   * @return the compact form of {@code tree}
+   */
+  /*package-private*/ static CompactTree of(JCTree tree, @Nullable EndPosTable endPositions) {
+    Builder builder = new Builder(endPositions);
+    builder.scan(tree);
+    return builder.build();
+  }
+
+  /**
+   * Returns the number of nodes.
+   *
+   * @return the number of nodes
+   */
+  public int size() {
+    return kinds.length;
+  }
+
+  /**
+   * Returns the kind of a node.
+   *
+   * @param node a node
+   * @return the kind of {@code node}
+   */
+  public Tree.Kind kind(int node) {
+    return KINDS[kinds[node] & 0xFF];
+  }
+
+  /**
+   * Returns the parent of a node.
+   *
+   * @param node a node
+   * @return the parent of {@code node}, or {@link #NO_NODE} for the root
+   */
+  public int parent(int node) {
+    return parents[node];
+  }
+
+  /**
+   * Returns the first child of a node.
+   *
+   * @param node a node
+   * @return the first child of {@code node}, or {@link #NO_NODE} if it has no children
+   */
+  public int firstChild(int node) {
+    return subtreeEnds[node] == node + 1 ? NO_NODE : node + 1;
+  }
+
+  /**
+   * Returns the next sibling of a node.
+   *
+   * @param node a node
+   * @return the next sibling of {@code node}, or {@link #NO_NODE} if it is its parent's last child
+   */
+  public int nextSibling(int node) {
+    int next = subtreeEnds[node];
+    int parent = parents[node];
+    return parent == NO_NODE || next == subtreeEnds[parent] ? NO_NODE : next;
+  }
+
+  /**
+   * Returns the index after the last descendant of a node. The descendants of {@code node} are the
+   * nodes after it, up to but not including this index.
+   *
+   * @param node a node
+   * @return the index after the last descendant of {@code node}
+   */
+  public int subtreeEnd(int node) {
+    return subtreeEnds[node];
+  }
+
+  /**
+   * Returns the start offset of a node: the index in the source of its first character.
+   *
+   * @param node a node
+   * @return the start offset of {@code node}
+   */
+  public int start(int node) {
+    return starts[node];
+  }
+
+  /**
+   * Returns the end offset of a node: the index in the source after its last character.
+   *
+   * @param node a node
+   * @return the end offset of {@code node}, or {@link com.sun.tools.javac.util.Position#NOPOS} if
+   *     it is not known
+   */
+  public int end(int node) {
+    return ends[node];
+  }
+
+  /**
+   * Returns the name of a node: the name that an identifier, member select, or member reference
+   * refers to; the name that a class, method, variable, or type parameter declares; or the label of
+   * a labeled statement, {@code break}, or {@code continue}. An anonymous class has no name.
+   *
+   * @param node a node
+   * @return the name of {@code node}, or null if it has none
+   */
+  public @Nullable String name(int node) {
+    int index = nameIndices[node];
+    return index == NO_NODE ? null : names[index];
+  }
+
+  /**
+   * Returns the index of a node's name among the tree's distinct names. Two nodes have the same
+   * name if and only if they have the same name index.
+   *
+   * @param node a node
+   * @return the index of the name of {@code node} (see {@link #nameAt}), or {@link #NO_NODE} if it
+   *     has none
+   */
+  public int nameIndex(int node) {
+    return nameIndices[node];
+  }
+
+  /**
+   * Returns the number of distinct names in the tree.
+   *
+   * @return the number of distinct names in the tree
+   */
+  public int nameCount() {
+    return names.length;
+  }
+
+  /**
+   * Returns one of the tree's distinct names.
+   *
+   * @param index an index less than {@link #nameCount}
+   * @return the name with the given index
+   */
+  public String nameAt(int index) {
+    return names[index];
+  }
+
+  /**
+   * Visits the nodes of the tree in preorder.
+   *
+   * @param visitor the visitor
+   */
+  public void accept(Visitor visitor) {
+    accept(0, visitor);
+  }
+
+  /**
+   * Visits the nodes of a subtree in preorder.
+   *
+   * @param node the root of the subtree
+   * @param visitor the visitor
+   */
+  public void accept(int node, Visitor visitor) {
+    int current = node;
+    while (true) {
+      int next = visitor.enter(this, current) ? current + 1 : subtreeEnds[current];
+      if (next == subtreeEnds[current]) {
+        // Exit the current node, and each ancestor whose subtree ends with it.
+        int n = current;
+        while (true) {
+          visitor.exit(this, n);
+          if (n == node) {
+            return;
+          }
+          n = parents[n];
+          if (subtreeEnds[n] != next) {
+            break;
+          }
+        }
+      }
+      current = next;
+    }
+  }
+
+  /** Visits the nodes of a {@link CompactTree}. */
+  public interface Visitor {
+
+    /**
+     * Visits a node, before its descendants.
+     *
+     * @param tree the tree
+     * @param node the node
+     * @return true to visit the node's descendants, false to skip them
+     */
+    boolean enter(CompactTree tree, int node);
+
+    /**
+     * Visits a node, after its descendants. It is called for every node, including one whose
+     * descendants were skipped. The default implementation does nothing.
+     *
+     * @param tree the tree
+     * @param node the node
+     */
+    default void exit(CompactTree tree, int node) {}
+  }
+
+  /** Converts a javac tree to a CompactTree. */
+  private static final class Builder extends TreeScanner {
+
+    /** The end positions of the tree, or null if end offsets are estimates. */
+    private final @Nullable EndPosTable endPositions;
+
+    /** The number of nodes so far. */
+    private int size = 0;
+
+    /** The node whose children are being scanned. */
+    private int parent = NO_NODE;
+
+    /** The ordinal of each node's kind. */
+    private byte[] kinds = new byte[256];
+
+    /** The parent of each node. */
+    private int[] parents = new int[256];
+
+    /** The index after the last descendant of each node. */
+    private int[] subtreeEnds = new int[256];
+
+    /** The start offset of each node. */
+    private int[] starts = new int[256];
+
+    /** The end offset of each node. */
+    private int[] ends = new int[256];
+
+    /** The index of each node's name, or {@link #NO_NODE}. */
+    private int[] nameIndices = new int[256];
+
+    /** The index of each distinct name. */
+    private final Map<Name, Integer> nameIndexMap = new HashMap<>();
+
+    /** The distinct names, indexed by their indices. */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Creates a Builder.
+     *
+     * @param endPositions the end positions of the tree, or null if end offsets are estimates
+     */
+    Builder(@Nullable EndPosTable endPositions) {
+      this.endPositions = endPositions;
+    }
+
+    @Override
+    public void scan(@Nullable JCTree tree) {
+      // A wildcard's bound kind has no Tree.Kind; the wildcard's kind includes it.
+      if (tree == null || tree instanceof TypeBoundKind) {
+        return;
+      }
+      if (size == kinds.length) {
+        int capacity = size * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        nameIndices = Arrays.copyOf(nameIndices, capacity);
+      }
+      int node = size++;
+      kinds[node] = (byte) tree.getKind().ordinal();
+      parents[node] = parent;
+      starts[node] = TreeInfo.getStartPos(tree);
+      ends[node] = TreeInfo.getEndPos(tree, endPositions);
+      Name name = nameOf(tree);
+      // An anonymous class has an empty name.
+      nameIndices[node] = name == null || name.isEmpty() ? NO_NODE : nameIndex(name);
+      // Scanning a lazy body would parse it.
+      if (!(tree instanceof SkippedBlock)) {
+        int oldParent = parent;
+        parent = node;
+        super.scan(tree);
+        parent = oldParent;
+      }
+      subtreeEnds[node] = size;
+    }
+
+    /**
+     * Returns the index of a name, assigning it one if it has none yet.
+     *
+     * @param name a name
+     * @return the index of {@code name}
+     */
+    private int nameIndex(Name name) {
+      Integer index = nameIndexMap.get(name);
+      if (index == null) {
+        index = names.size();
+        nameIndexMap.put(name, index);
+        // Many trees share the same identifiers, so they share the strings too.
+        names.add(name.toString().intern());
+      }
+      return index;
+    }
+
+    /**
+     * Returns the name of a tree, as documented at {@link CompactTree#name}.
+     *
+     * @param tree a tree
+     * @return the name of {@code tree}, or null if it has none
+     */
+    private static @Nullable Name nameOf(JCTree tree) {
+      if (tree instanceof JCIdent t) {
+        return t.name;
+      } else if (tree instanceof JCFieldAccess t) {
+        return t.name;
+      } else if (tree instanceof JCMemberReference t) {
+        return t.name;
+      } else if (tree instanceof JCClassDecl t) {
+        return t.name;
+      } else if (tree instanceof JCMethodDecl t) {
+        return t.name;
+      } else if (tree instanceof JCVariableDecl t) {
+        return t.name;
+      } else if (tree instanceof JCTypeParameter t) {
+        return t.name;
+      } else if (tree instanceof JCLabeledStatement t) {
+        return t.label;
+      } else if (tree instanceof JCBreak t) {
+        return t.label;
+      } else if (tree instanceof JCContinue t) {
+        return t.label;
+      } else {
+        return null;
+      }
+    }
+
+    /**
+     * Returns the CompactTree of the nodes scanned so far.
+     *
+     * @return the CompactTree of the nodes scanned so far
+     */
+    CompactTree build() {
+      return new CompactTree(
+          Arrays.copyOf(kinds, size),
+          Arrays.copyOf(parents, size),
+          Arrays.copyOf(subtreeEnds, size),
+          Arrays.copyOf(starts, size),
+          Arrays.copyOf(ends, size),
+          Arrays.copyOf(nameIndices, size),
+          names.toArray(new String[0]));
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.DCTree.DCDocComment;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import javax.tools.JavaFileObject;
+
+/**
+ * The doc comment table of a compilation unit whose method bodies are parsed lazily. It wraps the
+ * table of the parse, which is not modified afterward, and holds the doc comments within the bodies
+ * that are parsed later (those of local classes). Those may be added while other threads look up
+ * doc comments.
+ */
+final class ConcurrentDocCommentTable implements DocCommentTable {
+
+  /** The table of the parse of the compilation unit. */
+  private final DocCommentTable parsed;
+
+  /**
+   * Parses a doc comment, given the source file that contains it. It must be safe to call from any
+   * thread.
+   */
+  private final BiFunction<JavaFileObject, Comment, DCDocComment> parser;
+
+  /** The compilation unit, whose source file contains the comments. */
+  private final JCCompilationUnit compilationUnit;
+
+  /** The doc comments within lazily parsed bodies. */
+  private final ConcurrentHashMap<JCTree, Comment> added = new ConcurrentHashMap<>();
+
+  /** The parsed doc comments within lazily parsed bodies, created on demand. */
+  private final ConcurrentHashMap<JCTree, DCDocComment> addedTrees = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a ConcurrentDocCommentTable.
+   *
+   * @param parsed the table of the parse of the compilation unit, which must not be modified except
+   *     through this table
+   * @param parser parses a doc comment, given the source file that contains it; it must be safe to
+   *     call from any thread
+   * @param compilationUnit the compilation unit, whose source file contains the comments
+   */
+  ConcurrentDocCommentTable(
+      DocCommentTable parsed,
+      BiFunction<JavaFileObject, Comment, DCDocComment> parser,
+      JCCompilationUnit compilationUnit) {
+    this.parsed = parsed;
+    this.parser = parser;
+    this.compilationUnit = compilationUnit;
+  }
+
+  @Override
+  public boolean hasComment(JCTree tree) {
+    return parsed.hasComment(tree) || added.containsKey(tree);
+  }
+
+  @Override
+  public Comment getComment(JCTree tree) {
+    Comment comment = added.get(tree);
+    return comment != null ? comment : parsed.getComment(tree);
+  }
+
+  @Override
+  public String getCommentText(JCTree tree) {
+    Comment comment = added.get(tree);
+    return comment != null ? comment.getText() : parsed.getCommentText(tree);
+  }
+
+  @Override
+  public DCDocComment getCommentTree(JCTree tree) {
+    Comment comment = added.get(tree);
+    if (comment == null) {
+      return parsed.getCommentTree(tree);
+    }
+    return addedTrees.computeIfAbsent(tree, t -> parser.apply(compilationUnit.sourcefile, comment));
+  }
+
+  @Override
+  public void putComment(JCTree tree, Comment c) {
+    added.put(tree, c);
+  }
+}
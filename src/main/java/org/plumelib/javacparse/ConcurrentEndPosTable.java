@@ -0,0 +1,55 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Position;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The end position table of a compilation unit whose method bodies are parsed lazily. It wraps the
+ * table of the parse, which is not modified afterward, and holds the end positions of the trees of
+ * the bodies that are parsed later. Those may be added while other threads look up end positions.
+ */
+final class ConcurrentEndPosTable implements EndPosTable {
+
+  /** The table of the parse of the compilation unit. */
+  private final EndPosTable parsed;
+
+  /** The end positions of the trees of lazily parsed bodies. */
+  private final ConcurrentHashMap<JCTree, Integer> added = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a ConcurrentEndPosTable.
+   *
+   * @param parsed the table of the parse of the compilation unit, which must not be modified except
+   *     through this table
+   */
+  ConcurrentEndPosTable(EndPosTable parsed) {
+    this.parsed = parsed;
+  }
+
+  @Override
+  public int getEndPos(JCTree tree) {
+    int result = parsed.getEndPos(tree);
+    if (result != Position.NOPOS) {
+      return result;
+    }
+    Integer addedResult = added.get(tree);
+    return addedResult == null ? Position.NOPOS : addedResult;
+  }
+
+  @Override
+  public void storeEnd(JCTree tree, int endpos) {
+    added.put(tree, endpos);
+  }
+
+  @Override
+  public int replaceTree(JCTree oldtree, JCTree newtree) {
+    Integer pos = added.remove(oldtree);
+    if (pos == null) {
+      return parsed.replaceTree(oldtree, newtree);
+    }
+    added.put(newtree, pos);
+    return pos;
+  }
+}
@@ -1,25 +1,58 @@
 package org.plumelib.javacparse;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import javax.tools.JavaFileObject;
 import javax.tools.SimpleJavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
-/** A JavaFileObject constructed from a file. */
+/**
+ * A JavaFileObject constructed from a file. The file is read when its contents are requested, not
+ * when the FileJavaFileObject is created, and the FileJavaFileObject does not keep the contents
+ * alive once the parser and the diagnostics are done with them.
+ *
+ * <p>The contents are decoded into a heap {@link CharBuffer}, which javac's scanner uses without
+ * copying it. A large file is memory-mapped rather than read into a heap byte array first. A file
+ * that is entirely ASCII is widened to chars directly, without a {@link CharsetDecoder}.
+ */
 class FileJavaFileObject extends SimpleJavaFileObject {
 
-  /** The contents of the file. */
-  private final String javaCode;
+  /** Files of at least this many bytes are memory-mapped rather than read into a byte array. */
+  /*package-private*/ static final long MAP_THRESHOLD = 1L << 20;
+
+  /** The file. */
+  private final Path path;
+
+  /**
+   * The contents of the file, as last decoded. This is a weak reference, so it does not keep the
+   * contents alive; while javac still uses them, it avoids reading and decoding the file again.
+   * Guarded by {@code this}.
+   */
+  private WeakReference<char @Nullable []> cachedContent = new WeakReference<>(null);
+
+  /**
+   * The number of chars in {@link #cachedContent} that are the contents of the file. Guarded by
+   * {@code this}.
+   */
+  private int cachedLength = 0;
 
   /**
    * Creates a FileJavaFileObject for the given file.
    *
    * @param filename the file name of a Java source file
-   * @throws IOException if there is trouble reading the file
    */
-  public FileJavaFileObject(String filename) throws IOException {
+  public FileJavaFileObject(String filename) {
     this(Path.of(filename));
   }
 
@@ -27,15 +60,107 @@ class FileJavaFileObject extends SimpleJavaFileObject {
    * Creates a FileJavaFileObject for the given path.
    *
    * @param pathname the path name of a Java source file
-   * @throws IOException if there is trouble reading the file
    */
-  public FileJavaFileObject(Path pathname) throws IOException {
+  public FileJavaFileObject(Path pathname) {
     super(pathname.toUri(), JavaFileObject.Kind.SOURCE);
-    javaCode = Files.readString(pathname, StandardCharsets.UTF_8);
+    this.path = pathname;
   }
 
   @Override
-  public CharSequence getCharContent(boolean ignoreEncodingErrors) {
-    return javaCode;
+  public synchronized CharBuffer getCharContent(boolean ignoreEncodingErrors) throws IOException {
+    char[] cached = cachedContent.get();
+    if (cached != null) {
+      return CharBuffer.wrap(cached, 0, cachedLength);
+    }
+    ByteBuffer bytes;
+    long size = Files.size(path);
+    if (size >= MAP_THRESHOLD) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    } else {
+      bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+    CharBuffer content;
+    try {
+      content = decode(bytes, CodingErrorAction.REPORT);
+    } catch (CharacterCodingException e) {
+      if (!ignoreEncodingErrors) {
+        throw e;
+      }
+      // Don't cache the result, which is not what a caller that cares about encoding errors
+      // should see.
+      bytes.rewind();
+      return decode(bytes, CodingErrorAction.REPLACE);
+    }
+    cachedContent = new WeakReference<>(content.array());
+    cachedLength = content.limit();
+    return content;
+  }
+
+  /**
+   * Decodes UTF-8 bytes into a new heap CharBuffer.
+   *
+   * @param bytes the bytes to decode, from its position to its limit
+   * @param onError what to do about malformed input
+   * @return the decoded characters, from position 0 to the buffer's limit
+   * @throws CharacterCodingException if the input is malformed and {@code onError} is {@code
+   *     REPORT}
+   */
+  /*package-private*/ static CharBuffer decode(ByteBuffer bytes, CodingErrorAction onError)
+      throws CharacterCodingException {
+    // UTF-8 never decodes to more chars than it has bytes.
+    char[] chars = new char[bytes.remaining()];
+    return CharBuffer.wrap(chars, 0, decode(bytes, chars, onError));
+  }
+
+  /**
+   * Decodes UTF-8 bytes into the start of an array.
+   *
+   * @param bytes the bytes to decode, from its position to its limit
+   * @param chars the array to decode into; it must have at least as many elements as {@code bytes}
+   *     has remaining bytes
+   * @param onError what to do about malformed input
+   * @return the number of decoded characters
+   * @throws CharacterCodingException if the input is malformed and {@code onError} is {@code
+   *     REPORT}
+   */
+  /*package-private*/ static int decode(ByteBuffer bytes, char[] chars, CodingErrorAction onError)
+      throws CharacterCodingException {
+    int start = bytes.position();
+    int numBytes = bytes.remaining();
+
+    // Fast path: copy the ASCII prefix, which for most Java files is the whole file.
+    int i = 0;
+    while (i < numBytes) {
+      byte b = bytes.get(start + i);
+      if (b < 0) {
+        break;
+      }
+      chars[i] = (char) b;
+      i++;
+    }
+    if (i == numBytes) {
+      return numBytes;
+    }
+
+    // Slow path: decode the rest.
+    CharsetDecoder decoder =
+        StandardCharsets.UTF_8
+            .newDecoder()
+            .onMalformedInput(onError)
+            .onUnmappableCharacter(onError);
+    bytes.position(start + i);
+    CharBuffer out = CharBuffer.wrap(chars);
+    out.position(i);
+    CoderResult result = decoder.decode(bytes, out, true);
+    if (!result.isUnderflow()) {
+      result.throwException();
+    }
+    result = decoder.flush(out);
+    if (!result.isUnderflow()) {
+      result.throwException();
+    }
+    return out.position();
   }
 }
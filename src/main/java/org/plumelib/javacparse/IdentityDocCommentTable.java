@@ -0,0 +1,105 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.DCTree.DCDocComment;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.JCTree;
+import java.util.IdentityHashMap;
+import java.util.function.BiFunction;
+import javax.tools.JavaFileObject;
+
+/**
+ * A doc comment table that is not tied to a parser. It is used for compilation units whose trees
+ * were not all created by one parse, such as decoded or incrementally re-parsed ones. Doc comments
+ * are parsed on demand.
+ */
+final class IdentityDocCommentTable implements DocCommentTable {
+
+  /**
+   * Parses a doc comment, given the source file that contains it. It must be safe to call from any
+   * thread.
+   */
+  private final BiFunction<JavaFileObject, Comment, DCDocComment> parser;
+
+  /** The source file of the compilation unit. Guarded by {@code this}. */
+  private JavaFileObject source;
+
+  /** The doc comment of each node that has one. */
+  private final IdentityHashMap<JCTree, Comment> comments = new IdentityHashMap<>();
+
+  /** The parsed doc comments, created on demand. Guarded by {@code this}. */
+  private final IdentityHashMap<JCTree, DCDocComment> commentTrees = new IdentityHashMap<>();
+
+  /**
+   * Creates an IdentityDocCommentTable.
+   *
+   * @param parser parses a doc comment, given the source file that contains it; it must be safe to
+   *     call from any thread
+   * @param source the source file of the compilation unit
+   */
+  IdentityDocCommentTable(
+      BiFunction<JavaFileObject, Comment, DCDocComment> parser, JavaFileObject source) {
+    this.parser = parser;
+    this.source = source;
+  }
+
+  @Override
+  public boolean hasComment(JCTree tree) {
+    return comments.containsKey(tree);
+  }
+
+  @Override
+  @SuppressWarnings("nullness:return") // javac is not annotated; null means no comment
+  public Comment getComment(JCTree tree) {
+    return comments.get(tree);
+  }
+
+  @Override
+  @SuppressWarnings("nullness:return") // javac is not annotated; null means no comment
+  public String getCommentText(JCTree tree) {
+    Comment comment = comments.get(tree);
+    return comment == null ? null : comment.getText();
+  }
+
+  @Override
+  @SuppressWarnings("nullness:return") // javac is not annotated; null means no comment
+  public synchronized DCDocComment getCommentTree(JCTree tree) {
+    Comment comment = comments.get(tree);
+    if (comment == null) {
+      return null;
+    }
+    DCDocComment result = commentTrees.get(tree);
+    if (result == null) {
+      result = parser.apply(source, comment);
+      commentTrees.put(tree, result);
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized void putComment(JCTree tree, Comment c) {
+    comments.put(tree, c);
+    commentTrees.remove(tree);
+  }
+
+  /**
+   * Removes the doc comment of a node.
+   *
+   * @param tree a node
+   */
+  synchronized void remove(JCTree tree) {
+    comments.remove(tree);
+    commentTrees.remove(tree);
+  }
+
+  /**
+   * Sets the source file of the compilation unit, after its contents are edited. The doc comments
+   * that were parsed before are parsed again on demand.
+   *
+   * @param source the new source file of the compilation unit
+   */
+  synchronized void setSource(JavaFileObject source) {
+    this.source = source;
+    commentTrees.clear();
+  }
+}
@@ -0,0 +1,56 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Position;
+import java.util.IdentityHashMap;
+import org.checkerframework.checker.index.qual.NonNegative;
+
+/**
+ * An end position table that is not tied to a parser. It is used for compilation units whose trees
+ * were not all created by one parse, such as decoded or incrementally re-parsed ones.
+ */
+final class IdentityEndPosTable implements EndPosTable {
+
+  /** The end position of each node that has one. */
+  private final IdentityHashMap<JCTree, Integer> endPositions;
+
+  /**
+   * Creates an IdentityEndPosTable.
+   *
+   * @param expectedSize the expected number of nodes that have an end position
+   */
+  IdentityEndPosTable(@NonNegative int expectedSize) {
+    endPositions = new IdentityHashMap<>(expectedSize);
+  }
+
+  @Override
+  public int getEndPos(JCTree tree) {
+    Integer result = endPositions.get(tree);
+    return result == null ? Position.NOPOS : result;
+  }
+
+  @Override
+  public void storeEnd(JCTree tree, int endpos) {
+    endPositions.put(tree, endpos);
+  }
+
+  @Override
+  public int replaceTree(JCTree oldtree, JCTree newtree) {
+    Integer pos = endPositions.remove(oldtree);
+    if (pos == null) {
+      return Position.NOPOS;
+    }
+    endPositions.put(newtree, pos);
+    return pos;
+  }
+
+  /**
+   * Removes the end position of a node.
+   *
+   * @param tree a node
+   */
+  void remove(JCTree tree) {
+    endPositions.remove(tree);
+  }
+}
@@ -0,0 +1,556 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Parses many Java files in parallel. The files are given as a directory to walk or as a stream of
+ * paths. Each file is parsed on one of a fixed number of worker threads, and its result is passed
+ * to a {@link Listener} as soon as the file has been parsed. A JavacBulkParser retains neither the
+ * paths nor the results, so the memory that a run uses does not grow with the number of files.
+ *
+ * <p>A file that cannot be read does not stop the run; it is reported to {@link
+ * Listener#failed}, as is a directory that cannot be read while walking a directory tree. A run
+ * stops early if {@link #cancel} is called or if the listener throws an exception.
+ *
+ * <p>A JavacBulkParser can be used for many runs, one after another or concurrently.
+ */
+public final class JavacBulkParser {
+
+  /** The number of worker threads for each run. */
+  private final int parallelism;
+
+  /** What the results retain besides the tree. */
+  private final ParseOptions options;
+
+  /**
+   * The number of calls to {@link #cancel}. A run is cancelled if this changes while the run is in
+   * progress.
+   */
+  private final AtomicLong cancellations = new AtomicLong();
+
+  /** Creates a JavacBulkParser that uses one worker thread per available processor. */
+  public JavacBulkParser() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a JavacBulkParser.
+   *
+   * @param parallelism the number of worker threads for each run
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   */
+  public JavacBulkParser(int parallelism) {
+    this(parallelism, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Creates a JavacBulkParser.
+   *
+   * @param parallelism the number of worker threads for each run
+   * @param options what the results retain besides the tree
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   */
+  public JavacBulkParser(int parallelism, ParseOptions options) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+    this.options = options;
+  }
+
+  /**
+   * Receives the results of a run. A run calls the methods of its listener one at a time, though
+   * not necessarily on the same thread, so the listener does not need to be thread-safe.
+   */
+  @FunctionalInterface
+  public interface Listener {
+
+    /**
+     * Called when a file has been parsed. The result may include parse errors.
+     *
+     * @param file the file
+     * @param result the result of parsing the file
+     */
+    void parsed(Path file, JavacParseResult<CompilationUnitTree> result);
+
+    /**
+     * Called when a file could not be read or parsed, or when a directory could not be read while
+     * walking a directory tree. The default implementation does nothing.
+     *
+     * @param file the file or directory
+     * @param e the reason the file could not be read or parsed
+     */
+    default void failed(Path file, Exception e) {
+      // Do nothing.
+    }
+
+    /**
+     * Called after each file has been parsed or has failed. The default implementation does
+     * nothing.
+     *
+     * @param done the number of files that have been parsed or have failed so far
+     * @param found the number of files that have been found so far; it is at least {@code done},
+     *     and grows while the run is still walking the directory or stream
+     */
+    default void progress(long done, long found) {
+      // Do nothing.
+    }
+  }
+
+  /**
+   * The outcome of a run.
+   *
+   * @param parsed the number of files that were parsed, including ones with parse errors
+   * @param failed the number of files that could not be read or parsed, plus the number of
+   *     directories that could not be read
+   * @param cancelled true if the run stopped early because of a call to {@link #cancel}
+   */
+  public record Summary(long parsed, long failed, boolean cancelled) {}
+
+  /**
+   * Parses every file under {@code root} whose name ends with ".java".
+   *
+   * @param root the directory to walk
+   * @param listener receives the results
+   * @return the outcome of the run
+   * @throws IOException if {@code root} does not exist
+   */
+  public Summary parseDirectory(Path root, Listener listener) throws IOException {
+    return walk(root, f -> f.toString().endsWith(".java"), listener);
+  }
+
+  /**
+   * Parses every file under {@code root} whose path relative to {@code root} matches {@code glob}.
+   * For example, the glob {@code "**}{@code /test/**.java"} matches every Java file in a test
+   * directory.
+   *
+   * @param root the directory to walk
+   * @param glob a glob pattern, in the syntax of {@link java.nio.file.FileSystem#getPathMatcher}
+   * @param listener receives the results
+   * @return the outcome of the run
+   * @throws IOException if {@code root} does not exist
+   */
+  public Summary parseDirectory(Path root, String glob, Listener listener) throws IOException {
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    return walk(root, f -> matcher.matches(root.relativize(f)), listener);
+  }
+
+  /**
+   * Parses every regular file under {@code root} that satisfies {@code include}. A directory that
+   * cannot be read is reported to the listener, and the walk continues.
+   *
+   * @param root the directory to walk
+   * @param include which files to parse
+   * @param listener receives the results
+   * @return the outcome of the run
+   * @throws IOException if {@code root} does not exist
+   */
+  private Summary walk(Path root, Predicate<Path> include, Listener listener) throws IOException {
+    if (Files.notExists(root)) {
+      throw new NoSuchFileException(root.toString());
+    }
+    Run run = new Run(listener, cancellations.get());
+    return run.execute(
+        () -> {
+          try {
+            Files.walkFileTree(root, new Walker(run, include));
+          } catch (IOException e) {
+            run.failed(root, e);
+          }
+        });
+  }
+
+  /**
+   * Parses every file in {@code files}. The stream is consumed lazily, no faster than the files can
+   * be parsed.
+   *
+   * @param files the files to parse
+   * @param listener receives the results
+   * @return the outcome of the run
+   */
+  public Summary parse(Stream<Path> files, Listener listener) {
+    Run run = new Run(listener, cancellations.get());
+    Iterator<Path> iterator = files.iterator();
+    return run.execute(
+        () -> {
+          while (!run.stopping() && iterator.hasNext() && run.submit(iterator.next())) {
+            // submit() did the work.
+          }
+        });
+  }
+
+  /**
+   * Stops every run that is in progress. Each run finishes parsing the files that its workers have
+   * already started, reports them to its listener, and returns a {@link Summary} whose {@code
+   * cancelled} component is true. Runs that start after this call are not affected.
+   */
+  public void cancel() {
+    cancellations.incrementAndGet();
+  }
+
+  /** Submits the files of a directory tree to a run, and reports the directories it cannot read. */
+  private static final class Walker extends SimpleFileVisitor<Path> {
+
+    /** The run. */
+    private final Run run;
+
+    /** Which files to parse. */
+    private final Predicate<Path> include;
+
+    /**
+     * Creates a Walker.
+     *
+     * @param run the run
+     * @param include which files to parse
+     */
+    Walker(Run run, Predicate<Path> include) {
+      this.run = run;
+      this.include = include;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+      return run.stopping() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+      // The attributes of a symbolic link are its own, so follow it as Files.isRegularFile does.
+      boolean regular =
+          attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file));
+      if (regular && include.test(file) && !run.submit(file)) {
+        return FileVisitResult.TERMINATE;
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException e) {
+      run.failed(file, e);
+      return run.stopping() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, @Nullable IOException e) {
+      // The directory could not be read to its end.
+      if (e != null) {
+        run.failed(dir, e);
+      }
+      return run.stopping() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+    }
+  }
+
+  /** One run: a stream of files, worker threads that parse them, and a listener. */
+  private final class Run {
+
+    /**
+     * A queue entry that tells a worker to stop. It is compared by reference, so it cannot be
+     * confused with a file of the same name.
+     */
+    private final Path stop = Path.of("");
+
+    /** Files that have been found but not yet parsed. Its capacity bounds the run's memory use. */
+    private final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(parallelism * 2);
+
+    /** The listener, which is called only while holding its lock. */
+    private final Listener listener;
+
+    /** The value of {@link #cancellations} when the run started. */
+    private final long startingCancellations;
+
+    /** True if the thread that started the run was interrupted. */
+    private final AtomicBoolean interrupted = new AtomicBoolean();
+
+    /** The number of files found so far. Guarded by {@link #listener}. */
+    private long found = 0;
+
+    /** The number of files parsed so far. Guarded by {@link #listener}. */
+    private long parsed = 0;
+
+    /** The number of files that failed so far. Guarded by {@link #listener}. */
+    private long failed = 0;
+
+    /**
+     * The first exception thrown by the listener, or the first error thrown while parsing, or null.
+     * Guarded by {@link #listener}.
+     */
+    private @Nullable Throwable fatal = null;
+
+    /**
+     * Creates a Run.
+     *
+     * @param listener receives the results
+     * @param startingCancellations the value of {@link #cancellations} when the run started
+     */
+    Run(Listener listener, long startingCancellations) {
+      this.listener = listener;
+      this.startingCancellations = startingCancellations;
+    }
+
+    /**
+     * Returns true if the run was cancelled or interrupted.
+     *
+     * @return true if the run was cancelled or interrupted
+     */
+    boolean cancelled() {
+      return interrupted.get() || cancellations.get() != startingCancellations;
+    }
+
+    /**
+     * Returns true if the run should stop early.
+     *
+     * @return true if the run should stop early
+     */
+    boolean stopping() {
+      if (cancelled()) {
+        return true;
+      }
+      synchronized (listener) {
+        return fatal != null;
+      }
+    }
+
+    /**
+     * Parses the files that {@code feeder} passes to {@link #submit}, returning when all of them
+     * have been parsed or the run stops early.
+     *
+     * @param feeder submits the files to parse, on the calling thread
+     * @return the outcome of the run
+     */
+    Summary execute(Runnable feeder) {
+      List<Thread> workers = new ArrayList<>();
+      for (int i = 0; i < parallelism; i++) {
+        Thread worker = new Thread(this::work, "JavacBulkParser-" + i);
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+      }
+      try {
+        feeder.run();
+      } finally {
+        for (int i = 0; i < parallelism; i++) {
+          putUninterruptibly(stop);
+        }
+        for (Thread worker : workers) {
+          joinUninterruptibly(worker);
+        }
+        if (interrupted.get()) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      synchronized (listener) {
+        if (fatal instanceof RuntimeException re) {
+          throw re;
+        } else if (fatal instanceof Error err) {
+          throw err;
+        }
+        return new Summary(parsed, failed, cancelled());
+      }
+    }
+
+    /**
+     * Queues a file to be parsed, waiting if the queue is full.
+     *
+     * @param file the file
+     * @return true if the file was queued; false if the run is stopping, in which case no more
+     *     files should be submitted
+     */
+    boolean submit(Path file) {
+      if (stopping()) {
+        return false;
+      }
+      synchronized (listener) {
+        found++;
+      }
+      try {
+        queue.put(file);
+        return true;
+      } catch (InterruptedException e) {
+        interrupted.set(true);
+        return false;
+      }
+    }
+
+    /**
+     * Reports a file or directory that could not be read before it was queued.
+     *
+     * @param file the file or directory
+     * @param e the reason it could not be read
+     */
+    void failed(Path file, IOException e) {
+      synchronized (listener) {
+        found++;
+      }
+      report(file, null, e);
+    }
+
+    /** The body of a worker thread: parses files from the queue until told to stop. */
+    private void work() {
+      JavacParseSession session;
+      try {
+        session = new JavacParseSession(true, null);
+      } catch (RuntimeException | Error e) {
+        setFatal(e);
+        while (!isStop(takeUninterruptibly())) {
+          // Discard the file, so that the thread that fills the queue is not blocked.
+        }
+        return;
+      }
+      try {
+        parseQueuedFiles(session);
+      } finally {
+        session.close();
+      }
+    }
+
+    /**
+     * Parses files from the queue until told to stop.
+     *
+     * @param session the session to parse with
+     */
+    private void parseQueuedFiles(JavacParseSession session) {
+      while (true) {
+        Path file = takeUninterruptibly();
+        if (isStop(file)) {
+          return;
+        }
+        if (stopping()) {
+          // Discard the file, so that the thread that fills the queue is not blocked.
+          continue;
+        }
+        JavacParseResult<CompilationUnitTree> result;
+        try {
+          result = session.parseFile(file.toString(), options);
+        } catch (IOException | RuntimeException e) {
+          report(file, null, e);
+          continue;
+        } catch (Error e) {
+          setFatal(e);
+          continue;
+        }
+        report(file, result, null);
+      }
+    }
+
+    /**
+     * Returns true if the given queue entry is {@link #stop}.
+     *
+     * @param file a queue entry
+     * @return true if the queue entry is {@link #stop}
+     */
+    @SuppressWarnings("interning:not.interned") // compared by reference
+    private boolean isStop(Path file) {
+      return file == stop;
+    }
+
+    /**
+     * Records the first exception or error that should end the run.
+     *
+     * @param t the exception or error
+     */
+    private void setFatal(Throwable t) {
+      synchronized (listener) {
+        if (fatal == null) {
+          fatal = t;
+        }
+      }
+    }
+
+    /**
+     * Passes the outcome of parsing one file to the listener. Exactly one of {@code result} and
+     * {@code e} is non-null.
+     *
+     * @param file the file
+     * @param result the result of parsing the file, or null if parsing failed
+     * @param e the reason parsing failed, or null if parsing succeeded
+     */
+    private void report(
+        Path file, @Nullable JavacParseResult<CompilationUnitTree> result, @Nullable Exception e) {
+      synchronized (listener) {
+        if (fatal != null) {
+          return;
+        }
+        try {
+          if (result != null) {
+            parsed++;
+            listener.parsed(file, result);
+          } else if (e != null) {
+            failed++;
+            listener.failed(file, e);
+          }
+          listener.progress(parsed + failed, found);
+        } catch (RuntimeException | Error listenerException) {
+          fatal = listenerException;
+        }
+      }
+    }
+
+    /**
+     * Takes a file from the queue, waiting if necessary and ignoring interrupts. Workers are
+     * stopped only by {@link #stop}.
+     *
+     * @return the next file in the queue
+     */
+    private Path takeUninterruptibly() {
+      while (true) {
+        try {
+          return queue.take();
+        } catch (InterruptedException e) {
+          // Try again.
+        }
+      }
+    }
+
+    /**
+     * Puts a file in the queue, waiting if necessary. If interrupted, records that and continues
+     * waiting.
+     *
+     * @param file the file to put in the queue
+     */
+    private void putUninterruptibly(Path file) {
+      while (true) {
+        try {
+          queue.put(file);
+          return;
+        } catch (InterruptedException e) {
+          interrupted.set(true);
+        }
+      }
+    }
+
+    /**
+     * Waits for a thread to finish. If interrupted, records that and continues waiting.
+     *
+     * @param thread the thread to wait for
+     */
+    private void joinUninterruptibly(Thread thread) {
+      while (true) {
+        try {
+          thread.join();
+          return;
+        } catch (InterruptedException e) {
+          interrupted.set(true);
+        }
+      }
+    }
+  }
+}
@@ -1,31 +1,25 @@
 package org.plumelib.javacparse;
 
+import com.sun.source.tree.BlockTree;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
-import com.sun.source.tree.EmptyStatementTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
-import com.sun.source.tree.VariableTree;
-import com.sun.tools.javac.file.JavacFileManager;
 import com.sun.tools.javac.parser.JavacParser;
-import com.sun.tools.javac.parser.ParserFactory;
-import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
-import com.sun.tools.javac.util.Context;
-import com.sun.tools.javac.util.Log;
 import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.function.Function;
-import javax.tools.DiagnosticCollector;
-import javax.tools.DiagnosticListener;
+import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * This class contains static methods that parse Java code.
  *
  * <p>Internally, this class calls the javac parser from the JDK.
+ *
+ * <p>Each call sets up javac's data structures afresh. To parse many inputs, use a {@link
+ * JavacParseSession}, which sets them up once.
  */
 public final class JavacParse {
 
@@ -43,7 +37,24 @@ public final class JavacParse {
    */
   public static JavacParseResult<CompilationUnitTree> parseFile(String filename)
       throws IOException {
-    return parseCompilationUnit(new FileJavaFileObject(filename));
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseFile(filename);
+    }
+  }
+
+  /**
+   * Parse a Java file.
+   *
+   * @param filename the file to parse
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public static JavacParseResult<CompilationUnitTree> parseFile(
+      String filename, ParseOptions options) throws IOException {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseFile(filename, options);
+    }
   }
 
   /**
@@ -53,97 +64,122 @@ public final class JavacParse {
    * @return a (parsed) compilation unit, which may include parse errors
    */
   public static JavacParseResult<CompilationUnitTree> parseCompilationUnit(String javaCode) {
-    try {
-      return parseCompilationUnit(new StringJavaFileObject(javaCode));
-    } catch (IOException e) {
-      throw new UncheckedIOException("This can't happen", e);
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseCompilationUnit(javaCode);
     }
   }
 
   /**
-   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   * Parse a Java file's contents.
    *
-   * @param classSource the string representation of a Java type declaration
-   * @return the parsed type declaration
-   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
-   *     contains a top-level ";"
+   * @param javaCode the contents of a Java file
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
    */
-  public static JavacParseResult<ClassTree> parseTypeDeclaration(String classSource) {
-    JavacParseResult<CompilationUnitTree> parsedCU = parseCompilationUnit(classSource);
-
-    if (parsedCU.hasParseError()) {
-      String msg = parsedCU.getParseErrorMessages();
-      if (msg.isEmpty()) {
-        throw new Error("Has parse errors, but empty message: " + parsedCU.diagnostics());
-      }
-      throw new IllegalArgumentException("Invalid type declaration (" + msg + "): " + classSource);
+  public static JavacParseResult<CompilationUnitTree> parseCompilationUnit(
+      String javaCode, ParseOptions options) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseCompilationUnit(javaCode, options);
     }
+  }
 
-    CompilationUnitTree cu = parsedCU.tree();
-
-    if (!cu.getImports().isEmpty()) {
-      throw new IllegalArgumentException(
-          "Type declaration source code has imports: " + classSource);
-    }
-    if (cu.getModule() != null) {
-      throw new IllegalArgumentException(
-          "Type declaration source code has a module declaration: " + classSource);
-    }
-    if (cu.getPackage() != null) {
-      throw new IllegalArgumentException(
-          "Type declaration source code has a package declaration: " + classSource);
+  /**
+   * Returns the tokens of a Java file, without parsing it. See {@link JavacParseSession#lex}.
+   *
+   * @param filename the file to lex
+   * @return a cursor over the tokens of the file
+   * @throws IOException if there is trouble reading the file
+   */
+  public static TokenCursor lexFile(String filename) throws IOException {
+    // The cursor keeps using the session's javac state after the session is closed.  Closing a
+    // session closes only its file manager, which the lexer does not use.
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.lexFile(filename);
     }
+  }
 
-    List<? extends Tree> decls = cu.getTypeDecls();
-    for (Tree decl : decls) {
-      if (decl instanceof EmptyStatementTree) {
-        throw new IllegalArgumentException(
-            "Type declaration source code contains a top-level `;`: " + classSource);
-      }
-    }
-    int numDecls = decls.size();
-    if (numDecls != 1) {
-      throw new IllegalArgumentException(
-          "Type declaration source code has %d top-level forms, not 1: %s"
-              .formatted(numDecls, classSource));
+  /**
+   * Returns the tokens of a Java file's contents, without parsing it. See {@link
+   * JavacParseSession#lex}.
+   *
+   * @param javaCode the contents of a Java file
+   * @return a cursor over the tokens of {@code javaCode}
+   */
+  public static TokenCursor lex(String javaCode) {
+    // See lexFile() about using the cursor after the session is closed.
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.lex(javaCode);
     }
+  }
 
-    Tree decl = decls.get(0);
-    if (decl instanceof ClassTree ct) {
-      return new JavacParseResult<>(ct, parsedCU.diagnostics());
-    } else {
-      throw new IllegalArgumentException(
-          "source code should be a type declaration but is "
-              + decl.getClass().getSimpleName()
-              + ":"
-              + classSource);
+  /**
+   * Parses a Java file's contents after an edit, reusing the result of parsing its contents before
+   * the edit. See {@link JavacParseSession#reparseCompilationUnit}, whose requirements apply.
+   *
+   * @param previous the result of parsing the contents before the edit
+   * @param offset the index of the first character that the edit replaces
+   * @param removedLength the number of characters that the edit removes
+   * @param insertedText the text that the edit inserts
+   * @return a (parsed) compilation unit for the edited contents, which may include parse errors
+   * @throws IOException if there is trouble reading the previous result's source file
+   * @throws IndexOutOfBoundsException if the edit is not within the previous contents
+   */
+  public static JavacParseResult<CompilationUnitTree> reparseCompilationUnit(
+      JavacParseResult<CompilationUnitTree> previous,
+      int offset,
+      int removedLength,
+      String insertedText)
+      throws IOException {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.reparseCompilationUnit(previous, offset, removedLength, insertedText);
     }
   }
 
   /**
-   * Parses a member of a type declaration.
+   * Parses the body of a method in a compilation unit that was parsed without method bodies. See
+   * {@link JavacParseSession#parseBody}, whose requirements apply.
    *
-   * @param memberSource the string representation of a Java method, field, static initializer,
-   *     class, etc.
-   * @return the parsed type member
-   * @throws IllegalArgumentException if the member source does not parse
+   * @param compilationUnit a compilation unit
+   * @param method a method in {@code compilationUnit} that has a body
+   * @return the method's body, which may include parse errors
+   * @throws IOException if there is trouble reading the compilation unit's source file
+   * @throws IllegalArgumentException if the method has no body
    */
-  private static Tree parseTypeMember(String memberSource) {
-    String dummySource = "class DummyClass { " + memberSource + "; }";
-
-    JavacParseResult<ClassTree> parsedTypeDecl = parseTypeDeclaration(dummySource);
-    if (parsedTypeDecl.hasParseError()) {
-      throw new IllegalArgumentException("Invalid type member: " + memberSource);
+  public static JavacParseResult<BlockTree> parseBody(
+      CompilationUnitTree compilationUnit, MethodTree method) throws IOException {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseBody(compilationUnit, method);
     }
-    ClassTree typeDecl = parsedTypeDecl.tree();
+  }
 
-    List<? extends Tree> members = typeDecl.getMembers();
-    if (members.size() != 1) {
-      // This was an injection attack, such as "0; int x = 1".
-      throw new IllegalArgumentException("Invalid type member: " + memberSource);
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @return the parsed type declaration
+   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
+   *     contains a top-level ";"
+   */
+  public static JavacParseResult<ClassTree> parseTypeDeclaration(String classSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseTypeDeclaration(classSource);
     }
+  }
 
-    return members.get(0);
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @param options what the result retains besides the tree
+   * @return the parsed type declaration
+   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
+   *     contains a top-level ";"
+   */
+  public static JavacParseResult<ClassTree> parseTypeDeclaration(
+      String classSource, ParseOptions options) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseTypeDeclaration(classSource, options);
+    }
   }
 
   /**
@@ -153,18 +189,10 @@ public final class JavacParse {
    * @return the parsed method
    * @throws IllegalArgumentException if the method source does not parse
    */
-  @SuppressWarnings("PMD.AvoidThrowingNewInstanceOfSameException") // bug in PMD
   public static MethodTree parseMethod(String methodSource) {
-    Tree member;
-    try {
-      member = parseTypeMember(methodSource);
-    } catch (IllegalArgumentException e) {
-      throw new IllegalArgumentException("Invalid method: " + methodSource);
-    }
-    if (!(member instanceof MethodTree mt)) {
-      throw new IllegalArgumentException("Invalid method: " + methodSource);
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseMethod(methodSource);
     }
-    return mt;
   }
 
   /**
@@ -174,21 +202,10 @@ public final class JavacParse {
    * @return the parsed expression
    * @throws IllegalArgumentException if the expression source does not parse
    */
-  @SuppressWarnings("PMD.AvoidThrowingNewInstanceOfSameException") // bug in PMD
   public static ExpressionTree parseExpression(String expressionSource) {
-    String dummySource = "Object expression = " + expressionSource + ";";
-
-    Tree member;
-    try {
-      member = parseTypeMember(dummySource);
-    } catch (IllegalArgumentException e) {
-      throw new IllegalArgumentException("Invalid expression: " + expressionSource);
-    }
-    if (!(member instanceof VariableTree vt)) {
-      throw new IllegalArgumentException("Invalid expression: " + expressionSource);
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseExpression(expressionSource);
     }
-    ExpressionTree expr = vt.getInitializer();
-    return expr;
   }
 
   /**
@@ -198,21 +215,189 @@ public final class JavacParse {
    * @return the parsed type use
    * @throws IllegalArgumentException if the type source does not parse
    */
-  @SuppressWarnings("PMD.AvoidThrowingNewInstanceOfSameException") // bug in PMD
   public static Tree parseTypeUse(String typeSource) {
-    String dummySource = typeSource + " fieldName;";
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseTypeUse(typeSource);
+    }
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.), without throwing
+   * an exception if it is invalid.
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @return the parsed type declaration, or a failure if {@link #parseTypeDeclaration(String)}
+   *     would throw {@code IllegalArgumentException}
+   */
+  public static SnippetResult<ClassTree> tryParseTypeDeclaration(String classSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.tryParseTypeDeclaration(classSource);
+    }
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.), without throwing
+   * an exception if it is invalid.
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @param options what the tree retains
+   * @return the parsed type declaration, or a failure if {@link #parseTypeDeclaration(String,
+   *     ParseOptions)} would throw {@code IllegalArgumentException}
+   */
+  public static SnippetResult<ClassTree> tryParseTypeDeclaration(
+      String classSource, ParseOptions options) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.tryParseTypeDeclaration(classSource, options);
+    }
+  }
+
+  /**
+   * Parses the given Java method or annotation type element, without throwing an exception if it is
+   * invalid.
+   *
+   * @param methodSource the string representation of a Java method or annotation type element
+   * @return the parsed method, or a failure if {@link #parseMethod(String)} would throw {@code
+   *     IllegalArgumentException}
+   */
+  public static SnippetResult<MethodTree> tryParseMethod(String methodSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.tryParseMethod(methodSource);
+    }
+  }
 
-    Tree member;
-    try {
-      member = parseTypeMember(dummySource);
-    } catch (IllegalArgumentException e) {
-      throw new IllegalArgumentException("Invalid type use: " + typeSource);
+  /**
+   * Parses the given Java expression string, without throwing an exception if it is invalid.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression, or a failure if {@link #parseExpression(String)} would throw
+   *     {@code IllegalArgumentException}
+   */
+  public static SnippetResult<ExpressionTree> tryParseExpression(String expressionSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.tryParseExpression(expressionSource);
+    }
+  }
+
+  /**
+   * Parses the given Java type use, without throwing an exception if it is invalid.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use, or a failure if {@link #parseTypeUse(String)} would throw {@code
+   *     IllegalArgumentException}
+   */
+  public static SnippetResult<Tree> tryParseTypeUse(String typeSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.tryParseTypeUse(typeSource);
     }
-    if (!(member instanceof VariableTree vt)) {
-      throw new IllegalArgumentException("Invalid type use: " + typeSource);
+  }
+
+  /**
+   * Parses each of the given Java expression strings, as {@link #parseExpression(String)} does. The
+   * parses share javac's data structures, and a large batch is parsed on several threads.
+   *
+   * @param expressionSources the string representations of Java expressions
+   * @return the result for each expression, in the same order; an expression that does not parse
+   *     yields a {@link SnippetResult.Failure}
+   */
+  public static List<SnippetResult<ExpressionTree>> parseExpressions(
+      List<String> expressionSources) {
+    try (JavacParsePool pool = new JavacParsePool()) {
+      return pool.parseExpressions(expressionSources);
+    }
+  }
+
+  /**
+   * Parses each of the given Java type uses, as {@link #parseTypeUse(String)} does. The parses
+   * share javac's data structures, and a large batch is parsed on several threads.
+   *
+   * @param typeSources the string representations of Java type uses
+   * @return the result for each type use, in the same order; a type use that does not parse yields
+   *     a {@link SnippetResult.Failure}
+   */
+  public static List<SnippetResult<Tree>> parseTypeUses(List<String> typeSources) {
+    try (JavacParsePool pool = new JavacParsePool()) {
+      return pool.parseTypeUses(typeSources);
+    }
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid compilation unit, as {@link
+   * JavacParseSession#isValidCompilationUnit} determines.
+   *
+   * @param javaCode the contents of a Java file
+   * @return true if {@code javaCode} is a syntactically valid compilation unit
+   */
+  public static boolean isValidCompilationUnit(String javaCode) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.isValidCompilationUnit(javaCode);
+    }
+  }
+
+  /**
+   * Returns the first syntax error in the given string, as {@link
+   * JavacParseSession#validateCompilationUnit} determines.
+   *
+   * @param javaCode the contents of a Java file
+   * @return the first syntax error in {@code javaCode}, or null if it is valid
+   */
+  public static @Nullable Diagnostic<? extends JavaFileObject> validateCompilationUnit(
+      String javaCode) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.validateCompilationUnit(javaCode);
+    }
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid expression, as {@link
+   * JavacParseSession#isValidExpression} determines.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return true if {@code expressionSource} is a syntactically valid expression
+   */
+  public static boolean isValidExpression(String expressionSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.isValidExpression(expressionSource);
+    }
+  }
+
+  /**
+   * Returns the first syntax error in the given string, as {@link
+   * JavacParseSession#validateExpression} determines.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the first syntax error in {@code expressionSource}, or null if it is a valid expression
+   */
+  public static @Nullable Diagnostic<? extends JavaFileObject> validateExpression(
+      String expressionSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.validateExpression(expressionSource);
+    }
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid type use, as {@link
+   * JavacParseSession#isValidTypeUse} determines.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return true if {@code typeSource} is a syntactically valid type use
+   */
+  public static boolean isValidTypeUse(String typeSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.isValidTypeUse(typeSource);
+    }
+  }
+
+  /**
+   * Returns the first syntax error in the given string, as {@link
+   * JavacParseSession#validateTypeUse} determines.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the first syntax error in {@code typeSource}, or null if it is a valid type use
+   */
+  public static @Nullable Diagnostic<? extends JavaFileObject> validateTypeUse(String typeSource) {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.validateTypeUse(typeSource);
     }
-    Tree type = vt.getType();
-    return type;
   }
 
   // ///////////////////////////////////////////////////////////////////////////
@@ -222,13 +407,6 @@ public final class JavacParse {
   // These routines have the downside that they may parse a prefix of the JavaFileObject rather than
   // the whole thing.
 
-  // Implementation notes:
-  // 1. The documentation of Context says "a single Context is used for each invocation of the
-  //    compiler".  Re-using the Context causes an error "duplicate context value" in the compiler.
-  //    A Context is just a map.
-  // 2. Calling `new JavacFileManager` sets a mapping in `context`.  It is necessary to avoid
-  //    "this.fileManager is null" error in com.sun.tools.javac.comp.Modules.<init>.
-
   /**
    * Parse the contents of a JavaFileObject.
    *
@@ -239,10 +417,24 @@ public final class JavacParse {
   // TODO: Document whether this can parse just a prefix of the JavaFileObject.
   public static JavacParseResult<CompilationUnitTree> parseCompilationUnit(JavaFileObject source)
       throws IOException {
-    JavacParseResult<CompilationUnitTree> result =
-        parseWith(source, JavacParser::parseCompilationUnit);
-    ((JCCompilationUnit) result.tree()).sourcefile = source;
-    return result;
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseCompilationUnit(source);
+    }
+  }
+
+  /**
+   * Parse the contents of a JavaFileObject.
+   *
+   * @param source a JavaFileObject
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public static JavacParseResult<CompilationUnitTree> parseCompilationUnit(
+      JavaFileObject source, ParseOptions options) throws IOException {
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseCompilationUnit(source, options);
+    }
   }
 
   /**
@@ -261,7 +453,9 @@ public final class JavacParse {
   @Deprecated // not for removal
   public static JavacParseResult<ExpressionTree> parseExpression(JavaFileObject source)
       throws IOException {
-    return parseWith(source, JavacParser::parseExpression);
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseWith(ParseKind.EXPRESSION, source, JavacParser::parseExpression);
+    }
   }
 
   /**
@@ -280,37 +474,8 @@ public final class JavacParse {
   @Deprecated // not for removal
   public static JavacParseResult<ExpressionTree> parseTypeUse(JavaFileObject source)
       throws IOException {
-    return parseWith(source, JavacParser::parseType);
-  }
-
-  /**
-   * Creates a javac parser for {@code source} and applies {@code parserFn} to it, returning the
-   * result.
-   *
-   * @param <T> the type of parse tree produced
-   * @param source the source to parse
-   * @param parserFn the parsing operation to apply to the parser
-   * @return the parse result
-   * @throws IOException if there is trouble reading the file
-   */
-  @SuppressWarnings("try") // `fileManagerUnused` is not used
-  private static <T extends Tree> JavacParseResult<T> parseWith(
-      JavaFileObject source, Function<JavacParser, T> parserFn) throws IOException {
-    Context context = new Context();
-    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-    context.put(DiagnosticListener.class, diagnostics);
-
-    try (@SuppressWarnings({
-          "UnusedVariable",
-          "PMD.UnusedLocalVariable"
-        }) // `new JavacFileManager` sets a mapping in `context`.
-        JavacFileManager fileManagerUnused =
-            new JavacFileManager(context, true, StandardCharsets.UTF_8)) {
-
-      Log.instance(context).useSource(source);
-      ParserFactory parserFactory = ParserFactory.instance(context);
-      JavacParser parser = parserFactory.newParser(source.getCharContent(false), true, true, true);
-      return new JavacParseResult<>(parserFn.apply(parser), diagnostics.getDiagnostics());
+    try (JavacParseSession session = new JavacParseSession()) {
+      return session.parseWith(ParseKind.TYPE_USE, source, JavacParser::parseType);
     }
   }
 }
@@ -0,0 +1,376 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A parser that remembers its results. Parsing the same source code again, of the same {@link
+ * ParseKind}, returns the remembered result instead of parsing again. The cache is keyed by a hash
+ * of the source code, so it does not retain the source code.
+ *
+ * <p>The cache holds results whose estimated total size is at most a given number of bytes. When
+ * adding a result would exceed that, the least recently used results are evicted.
+ *
+ * <p><b>Cached results are shared, not copied.</b> Every call that finds a result in the cache
+ * returns the very same tree (and diagnostics) as the call that put it there. javac's trees are
+ * mutable, so a client of a JavacParseCache must not modify them, including by passing them to a
+ * javac phase that modifies trees (such as attribution). A client that needs to modify a tree
+ * should use {@link JavacParse} or a {@link JavacParseSession} instead. For a compilation unit read
+ * from a file, the tree's source file is that of the first file with the same contents.
+ *
+ * <p>Inputs that are invalid for their kind are cached too: a cached {@link
+ * IllegalArgumentException} is thrown again (as a new exception with the same message).
+ *
+ * <p>A JavacParseCache is thread-safe. It should be closed when it is no longer needed.
+ */
+@InheritableMustCall("close")
+public final class JavacParseCache implements AutoCloseable {
+
+  // Measured on this library's own sources:  a compilation unit's tree, end position table, and
+  // file object retain about 8-10 bytes per character of source code, plus the source string.
+
+  /** The estimated number of bytes that a cached result retains per character of source code. */
+  private static final long ESTIMATED_BYTES_PER_CHAR = 12;
+
+  /** The estimated number of bytes that a cached result retains regardless of its size. */
+  private static final long ESTIMATED_BYTES_PER_ENTRY = 256;
+
+  /** The maximum estimated size of the cached results, in bytes. */
+  private final long maxBytes;
+
+  /**
+   * The trees of the results that any cache has returned. They are shared, so {@link
+   * JavacParseSession#reparseCompilationUnit} must not modify them.
+   */
+  private static final Set<Tree> SHARED =
+      Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  /** What the compilation units and type declarations that this cache parses retain. */
+  private final ParseOptions options;
+
+  /** The parser used when a result is not in the cache. */
+  @Owning private final JavacParsePool pool = new JavacParsePool();
+
+  /** The cached results, least recently used first. Guarded by {@code this}. */
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** The estimated size of the cached results, in bytes. Guarded by {@code this}. */
+  private long bytes = 0;
+
+  /** The number of lookups that found a result. Guarded by {@code this}. */
+  private long hits = 0;
+
+  /** The number of lookups that did not find a result. Guarded by {@code this}. */
+  private long misses = 0;
+
+  /** The number of results that were evicted. Guarded by {@code this}. */
+  private long evictions = 0;
+
+  /**
+   * Creates a JavacParseCache.
+   *
+   * @param maxBytes the maximum estimated size of the cached results, in bytes
+   * @throws IllegalArgumentException if {@code maxBytes} is negative
+   */
+  public JavacParseCache(long maxBytes) {
+    this(maxBytes, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Creates a JavacParseCache.
+   *
+   * @param maxBytes the maximum estimated size of the cached results, in bytes
+   * @param options what the compilation units and type declarations that this cache parses retain
+   *     besides the tree
+   * @throws IllegalArgumentException if {@code maxBytes} is negative
+   */
+  public JavacParseCache(long maxBytes, ParseOptions options) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes is negative: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+    this.options = options;
+  }
+
+  /**
+   * Parse a Java file.
+   *
+   * @param filename the file to parse
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  @SuppressWarnings("PMD.ExceptionAsFlowControl") // tunnels IOException through a Supplier
+  public JavacParseResult<CompilationUnitTree> parseFile(String filename) throws IOException {
+    FileJavaFileObject source = new FileJavaFileObject(filename);
+    // The file object retains its contents weakly, so the parse below does not read the file
+    // again as long as `content` is live.
+    CharSequence content = source.getCharContent(false);
+    try {
+      return lookup(
+          ParseKind.COMPILATION_UNIT,
+          content,
+          () -> {
+            try {
+              return pool.parseCompilationUnit(source, options);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Parse a Java file's contents.
+   *
+   * @param javaCode the contents of a Java file
+   * @return a (parsed) compilation unit, which may include parse errors
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(String javaCode) {
+    return lookup(
+        ParseKind.COMPILATION_UNIT, javaCode, () -> pool.parseCompilationUnit(javaCode, options));
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @return the parsed type declaration
+   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
+   *     contains a top-level ";"
+   */
+  public JavacParseResult<ClassTree> parseTypeDeclaration(String classSource) {
+    return lookup(
+        ParseKind.TYPE_DECLARATION,
+        classSource,
+        () -> pool.parseTypeDeclaration(classSource, options));
+  }
+
+  /**
+   * Parses the given Java method or annotation type element.
+   *
+   * @param methodSource the string representation of a Java method or annotation type element
+   * @return the parsed method
+   * @throws IllegalArgumentException if the method source does not parse
+   */
+  public MethodTree parseMethod(String methodSource) {
+    return lookup(ParseKind.METHOD, methodSource, () -> pool.parseMethod(methodSource));
+  }
+
+  /**
+   * Parses the given Java expression string, such as "foo.bar()" or "1 + 2".
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression
+   * @throws IllegalArgumentException if the expression source does not parse
+   */
+  public ExpressionTree parseExpression(String expressionSource) {
+    return lookup(
+        ParseKind.EXPRESSION, expressionSource, () -> pool.parseExpression(expressionSource));
+  }
+
+  /**
+   * Parses the given Java type use, such as "int", "String", or "List&lt;? extends Number&gt;".
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use
+   * @throws IllegalArgumentException if the type source does not parse
+   */
+  public Tree parseTypeUse(String typeSource) {
+    return lookup(ParseKind.TYPE_USE, typeSource, () -> pool.parseTypeUse(typeSource));
+  }
+
+  /**
+   * Returns the cached result for the given source, or parses the source and caches the result.
+   *
+   * @param <T> the type of the result
+   * @param kind the kind of the source
+   * @param source the source code
+   * @param parser parses the source; its result type must be determined by {@code kind}
+   * @return the result of parsing the source
+   * @throws IllegalArgumentException if the source is invalid for its kind
+   */
+  @SuppressWarnings("unchecked") // The type of an entry's value is determined by its key's kind.
+  private <T extends Object> T lookup(ParseKind kind, CharSequence source, Supplier<T> parser) {
+    Key key = Key.of(kind, source);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    if (entry == null) {
+      // Parse without holding the lock, so that other threads can use the cache meanwhile.
+      long size = ESTIMATED_BYTES_PER_ENTRY + ESTIMATED_BYTES_PER_CHAR * source.length();
+      Entry newEntry;
+      try {
+        T value = parser.get();
+        if (value instanceof JavacParseResult<?> result) {
+          SHARED.add(result.tree());
+        }
+        newEntry = new Entry(value, null, size);
+      } catch (IllegalArgumentException e) {
+        newEntry = new Entry(null, e.getMessage(), size);
+      }
+      entry = add(key, newEntry);
+    }
+    if (entry.value == null) {
+      throw new IllegalArgumentException(entry.errorMessage);
+    }
+    return (T) entry.value;
+  }
+
+  /**
+   * Returns true if a JavacParseCache has returned the given tree, so that its other holders would
+   * see any change to it.
+   *
+   * @param tree a tree
+   * @return true if {@code tree} is shared by a JavacParseCache
+   */
+  static boolean isShared(Tree tree) {
+    return SHARED.contains(tree);
+  }
+
+  /**
+   * Adds an entry to the cache, unless another thread has already added one for the same key.
+   * Evicts entries if necessary.
+   *
+   * @param key the key
+   * @param entry the entry
+   * @return the entry that is in the cache for the key: either {@code entry} or the one that
+   *     another thread added first
+   */
+  private synchronized Entry add(Key key, Entry entry) {
+    Entry existing = entries.putIfAbsent(key, entry);
+    if (existing != null) {
+      return existing;
+    }
+    bytes += entry.size;
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (bytes > maxBytes && eldest.hasNext()) {
+      bytes -= eldest.next().size;
+      eldest.remove();
+      evictions++;
+    }
+    return entry;
+  }
+
+  /**
+   * Returns statistics about this cache.
+   *
+   * @return statistics about this cache
+   */
+  public synchronized Stats stats() {
+    return new Stats(hits, misses, evictions, entries.size(), bytes);
+  }
+
+  /** Removes all results from this cache. The statistics are not reset. */
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  @Override
+  @EnsuresCalledMethods(value = "this.pool", methods = "close")
+  public void close(@GuardSatisfied JavacParseCache this) {
+    pool.close();
+  }
+
+  /**
+   * Returns the SHA-256 hash of the given characters, as UTF-16 code units.
+   *
+   * @param source the characters to hash
+   * @return the SHA-256 hash of {@code source}
+   */
+  @SuppressWarnings({
+    "index", // each chunk holds at most chunk.length / 2 chars
+    "signedness:assignment" // the bytes of a char are hashed, regardless of signedness
+  })
+  /*package-private*/ static byte[] sha256(CharSequence source) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("Every Java platform supports SHA-256", e);
+    }
+    // Hash the big-endian UTF-16 encoding of the chars, a chunk at a time.
+    byte[] chunk = new byte[8192];
+    int length = source.length();
+    for (int start = 0; start < length; start += chunk.length / 2) {
+      int end = Math.min(length, start + chunk.length / 2);
+      for (int i = start; i < end; i++) {
+        char c = source.charAt(i);
+        chunk[2 * (i - start)] = (byte) (c >> 8);
+        chunk[2 * (i - start) + 1] = (byte) c;
+      }
+      digest.update(chunk, 0, 2 * (end - start));
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Statistics about a cache.
+   *
+   * @param hits the number of lookups that found a cached result
+   * @param misses the number of lookups that did not find a cached result
+   * @param evictions the number of results that were evicted to stay within the size bound
+   * @param entries the number of results currently in the cache
+   * @param estimatedBytes the estimated size of the results currently in the cache, in bytes
+   */
+  public record Stats(long hits, long misses, long evictions, int entries, long estimatedBytes) {}
+
+  /**
+   * A cache key: the kind of parse and a hash of the source code.
+   *
+   * @param kind the kind of parse
+   * @param hash1 the first 64 bits of the SHA-256 hash of the source code
+   * @param hash2 the second 64 bits of the SHA-256 hash of the source code
+   * @param length the length of the source code
+   */
+  private record Key(ParseKind kind, long hash1, long hash2, int length) {
+
+    /**
+     * Returns the key for the given source code.
+     *
+     * @param kind the kind of parse
+     * @param source the source code
+     * @return the key for the source code
+     */
+    static Key of(ParseKind kind, CharSequence source) {
+      ByteBuffer hash = ByteBuffer.wrap(sha256(source));
+      return new Key(kind, hash.getLong(), hash.getLong(), source.length());
+    }
+  }
+
+  /**
+   * A cached result.
+   *
+   * @param value the result of the parse, or null if the source was invalid for its kind
+   * @param errorMessage the message of the exception thrown for invalid source, or null
+   * @param size the estimated number of bytes that the entry retains
+   */
+  private record Entry(@Nullable Object value, @Nullable String errorMessage, long size) {}
+}
@@ -0,0 +1,274 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.NotOwning;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A parser of Java files that stores its results in a directory, so that they survive the process.
+ * When a file is parsed again, possibly by a different process, and the file's contents have not
+ * changed since its result was stored, the result is read from the directory instead of being
+ * parsed again.
+ *
+ * <p>The directory holds one entry per file. An entry records the file's path, a hash of the file's
+ * contents, and the version of the JDK that parsed it; it is used only if all three match. An entry
+ * written by a different JDK version, or by a different version of this library, is therefore
+ * ignored and overwritten, because javac's trees differ among versions.
+ *
+ * <p>A result read from the directory is equivalent to the result of parsing the file: it has the
+ * same tree (including positions, end positions, and doc comments) and the same diagnostics. Its
+ * diagnostics' messages are in the locale that was the default when the entry was written,
+ * regardless of the locale that is requested. Some trees cannot be stored, for example if a future
+ * JDK's trees contain state that this class does not know about; such files are simply parsed every
+ * time.
+ *
+ * <p>Each call returns a new tree, which the client may modify. A JavacParseDiskCache is
+ * thread-safe, and several processes may share one directory. It should be closed when it is no
+ * longer needed.
+ */
+@InheritableMustCall("close")
+public final class JavacParseDiskCache implements AutoCloseable {
+
+  /** The first bytes of every entry. */
+  private static final int MAGIC = 0x4a504443; // "JPDC"
+
+  /** The version of the JDK, which must match that of an entry. */
+  private static final String JDK_VERSION = Runtime.version().toString();
+
+  /** The file name extension of entries. */
+  private static final String ENTRY_SUFFIX = ".jpdc";
+
+  // The name table of a loader grows with every entry that is read.  A loader is therefore replaced
+  // after this many entries, which bounds the memory that a long-lived cache retains.
+
+  /** The number of entries after which the loader is replaced. */
+  private static final int MAX_LOADS_PER_LOADER = 1000;
+
+  /** The directory that holds the entries. */
+  private final Path directory;
+
+  /** The parser used when a result is not in the directory. */
+  @Owning private final JavacParsePool pool = new JavacParsePool();
+
+  /** The javac data structures for trees read from the directory. Guarded by {@code this}. */
+  @Owning private ParseResultCodec.Loader loader = new ParseResultCodec.Loader();
+
+  /** The number of entries read using {@link #loader}. Guarded by {@code this}. */
+  private int loadsByLoader = 0;
+
+  /** The number of files whose result was read from the directory. Guarded by {@code this}. */
+  private long hits = 0;
+
+  /** The number of files that were parsed. Guarded by {@code this}. */
+  private long misses = 0;
+
+  /** The number of results that could not be written. Guarded by {@code this}. */
+  private long writeFailures = 0;
+
+  /**
+   * Creates a JavacParseDiskCache that stores its results in the given directory, creating the
+   * directory if it does not exist.
+   *
+   * @param directory the directory that holds the cached results
+   * @throws IOException if the directory cannot be created
+   */
+  public JavacParseDiskCache(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory);
+  }
+
+  /**
+   * Parse a Java file, or read the result of parsing it from the directory.
+   *
+   * @param filename the file to parse
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseFile(String filename) throws IOException {
+    String path = Path.of(filename).toAbsolutePath().normalize().toString();
+    FileJavaFileObject source = new FileJavaFileObject(filename);
+    // The file object retains its contents weakly, so a parse below does not read the file again
+    // as long as `content` is live.
+    CharBuffer content = source.getCharContent(false);
+    byte[] hash = JavacParseCache.sha256(content);
+    Path entry = directory.resolve(entryName(path));
+
+    JavacParseResult<CompilationUnitTree> result = read(entry, path, hash, source, content);
+    synchronized (this) {
+      if (result != null) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    if (result == null) {
+      result = pool.parseCompilationUnit(source);
+      write(entry, path, hash, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the file name of the entry for the given path.
+   *
+   * @param path an absolute, normalized path
+   * @return the file name of the entry for {@code path}
+   */
+  private static String entryName(String path) {
+    return HexFormat.of().formatHex(JavacParseCache.sha256(path), 0, 16) + ENTRY_SUFFIX;
+  }
+
+  /**
+   * Reads the result for a file from its entry.
+   *
+   * @param entry the entry
+   * @param path the file's absolute, normalized path
+   * @param hash the hash of the file's contents
+   * @param source the file
+   * @param content the file's contents
+   * @return the result, or null if the entry does not exist or does not match the file
+   */
+  private @Nullable JavacParseResult<CompilationUnitTree> read(
+      Path entry, String path, byte[] hash, FileJavaFileObject source, CharBuffer content) {
+    try {
+      byte[] bytes = Files.readAllBytes(entry);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (in.readInt() != MAGIC
+          || in.readInt() != ParseResultCodec.FORMAT_VERSION
+          || !in.readUTF().equals(JDK_VERSION)
+          || !in.readUTF().equals(path)) {
+        return null;
+      }
+      byte[] entryHash = new byte[hash.length];
+      in.readFully(entryHash);
+      if (!Arrays.equals(hash, entryHash)) {
+        return null;
+      }
+      int offset = bytes.length - in.available();
+      char[] chars = content.hasArray() ? content.array() : content.toString().toCharArray();
+      return ParseResultCodec.decode(
+          bytes, offset, source, chars, content.remaining(), nextLoader());
+    } catch (IOException e) {
+      // The entry does not exist, or it is unreadable, truncated, or corrupt.  It will be
+      // overwritten.
+      return null;
+    }
+  }
+
+  /**
+   * Returns the loader to use for the next entry, replacing the current one if it has been used too
+   * much.
+   *
+   * @return the loader to use for the next entry
+   */
+  @SuppressWarnings(
+      "builder:missing.creates.mustcall.for") // loader is closed before being overwritten
+  @NotOwning
+  private synchronized ParseResultCodec.Loader nextLoader() {
+    if (loadsByLoader >= MAX_LOADS_PER_LOADER) {
+      // Trees that were read earlier still use the old loader's name table; closing the old
+      // loader closes only its file manager, which they do not use.
+      loader.close();
+      loader = new ParseResultCodec.Loader();
+      loadsByLoader = 0;
+    }
+    loadsByLoader++;
+    return loader;
+  }
+
+  /**
+   * Writes the result for a file to its entry. Failure to write is not an error: the file will be
+   * parsed again next time.
+   *
+   * @param entry the entry
+   * @param path the file's absolute, normalized path
+   * @param hash the hash of the file's contents
+   * @param result the result of parsing the file
+   */
+  private void write(
+      Path entry, String path, byte[] hash, JavacParseResult<CompilationUnitTree> result) {
+    byte[] encoded;
+    try {
+      encoded = ParseResultCodec.encode(result);
+    } catch (UnsupportedOperationException e) {
+      writeFailed();
+      return;
+    }
+    Path temp = null;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoded.length + 256);
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeInt(MAGIC);
+        out.writeInt(ParseResultCodec.FORMAT_VERSION);
+        out.writeUTF(JDK_VERSION);
+        out.writeUTF(path);
+        out.write(hash);
+        out.write(encoded);
+      }
+      // Write to a temporary file and then rename it, so that a concurrent reader (perhaps in
+      // another process) never sees a partially-written entry.
+      temp = Files.createTempFile(directory, String.valueOf(entry.getFileName()), ".tmp");
+      Files.write(temp, bytes.toByteArray());
+      Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      writeFailed();
+      if (temp != null) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException e2) {
+          // Leave the temporary file; it is never read.
+        }
+      }
+    }
+  }
+
+  /** Records that a result could not be written. */
+  private synchronized void writeFailed() {
+    writeFailures++;
+  }
+
+  /**
+   * Returns statistics about this cache.
+   *
+   * @return statistics about this cache
+   */
+  public synchronized Stats stats() {
+    return new Stats(hits, misses, writeFailures);
+  }
+
+  @Override
+  @EnsuresCalledMethods(
+      value = {"this.pool", "this.loader"},
+      methods = "close")
+  public synchronized void close(@GuardSatisfied JavacParseDiskCache this) {
+    try {
+      pool.close();
+    } finally {
+      loader.close();
+    }
+  }
+
+  /**
+   * Statistics about a disk cache.
+   *
+   * @param hits the number of files whose result was read from the directory
+   * @param misses the number of files that were parsed
+   * @param writeFailures the number of results that could not be written to the directory, for
+   *     example because the tree contains state that cannot be stored
+   */
+  public record Stats(long hits, long misses, long writeFailures) {}
+}
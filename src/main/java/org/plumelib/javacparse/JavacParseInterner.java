@@ -0,0 +1,317 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBreak;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCContinue;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.JCTree.JCLabeledStatement;
+import com.sun.tools.javac.tree.JCTree.JCMemberReference;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCTypeParameter;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A parser of type uses and expressions that shares its results, for processes that parse the
+ * same snippets, such as "String" or "List&lt;String&gt;", many times and retain the trees.
+ *
+ * <p>An interner saves memory in two ways:
+ *
+ * <ul>
+ *   <li>Each distinct snippet is parsed once, and every later request for it returns the same
+ *       tree: the canonical tree for that snippet.
+ *   <li>The names in every tree that the interner returns come from one name table, which the
+ *       interner owns. A tree from {@link JavacParse} or a {@link JavacParsePool} refers to the
+ *       name table of the javac state that parsed it, and a parser replaces its javac state every
+ *       so often, so retaining trees parsed over a long time retains many name tables.
+ * </ul>
+ *
+ * <p>An interner retains at most a given number of canonical trees. After that, a snippet that is
+ * not already interned is parsed anew on each request, but the names in its tree are still
+ * interned. Invalid snippets are never interned.
+ *
+ * <p><b>Interned trees are shared, not copied.</b> javac's trees are mutable, so a client must not
+ * modify them; see {@link JavacParseCache}, whose trees are shared in the same way. Unlike a
+ * JavacParseCache, an interner retains the text of each interned snippet, which is short, and never
+ * evicts a tree.
+ *
+ * <p>A JavacParseInterner is thread-safe. It should be closed when it is no longer needed.
+ */
+@InheritableMustCall("close")
+public final class JavacParseInterner implements AutoCloseable {
+
+  /** The maximum number of canonical trees. */
+  private final int maxTrees;
+
+  /** The parser used when a snippet is not interned. */
+  @Owning private final JavacParsePool pool = new JavacParsePool();
+
+  /** The canonical tree of each interned snippet. */
+  private final ConcurrentHashMap<Key, Tree> trees = new ConcurrentHashMap<>();
+
+  /** The name table that all interned names come from. Guarded by itself. */
+  private final Names names = Names.instance(new Context());
+
+  /** The interned name for each string. Its values come from {@link #names}. */
+  private final ConcurrentHashMap<String, Name> internedNames = new ConcurrentHashMap<>();
+
+  /** The number of requests. */
+  private final LongAdder lookups = new LongAdder();
+
+  /** The number of requests that returned a canonical tree without parsing. */
+  private final LongAdder hits = new LongAdder();
+
+  /** The number of names in parsed trees that were replaced by interned names. */
+  private final LongAdder nameReferences = new LongAdder();
+
+  /**
+   * Creates a JavacParseInterner.
+   *
+   * @param maxTrees the maximum number of canonical trees to retain
+   * @throws IllegalArgumentException if {@code maxTrees} is negative
+   */
+  public JavacParseInterner(int maxTrees) {
+    if (maxTrees < 0) {
+      throw new IllegalArgumentException("maxTrees is negative: " + maxTrees);
+    }
+    this.maxTrees = maxTrees;
+  }
+
+  /**
+   * Parses the given Java expression string, such as "foo.bar()" or "1 + 2", or returns the
+   * canonical tree for it.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression
+   * @throws IllegalArgumentException if the expression source does not parse
+   */
+  public ExpressionTree parseExpression(String expressionSource) {
+    if (tryParseExpression(expressionSource)
+        instanceof SnippetResult.Success<ExpressionTree> success) {
+      return success.tree();
+    }
+    throw new IllegalArgumentException("Invalid expression: " + expressionSource);
+  }
+
+  /**
+   * Parses the given Java type use, such as "int", "String", or "List&lt;? extends Number&gt;", or
+   * returns the canonical tree for it.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use
+   * @throws IllegalArgumentException if the type source does not parse
+   */
+  public Tree parseTypeUse(String typeSource) {
+    if (tryParseTypeUse(typeSource) instanceof SnippetResult.Success<Tree> success) {
+      return success.tree();
+    }
+    throw new IllegalArgumentException("Invalid type use: " + typeSource);
+  }
+
+  /**
+   * Parses the given Java expression string, or returns the canonical tree for it, without throwing
+   * an exception if it is invalid.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression, or a failure if {@link #parseExpression(String)} would throw
+   *     {@code IllegalArgumentException}
+   */
+  public SnippetResult<ExpressionTree> tryParseExpression(String expressionSource) {
+    return intern(ParseKind.EXPRESSION, expressionSource, pool::tryParseExpression);
+  }
+
+  /**
+   * Parses the given Java type use, or returns the canonical tree for it, without throwing an
+   * exception if it is invalid.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use, or a failure if {@link #parseTypeUse(String)} would throw {@code
+   *     IllegalArgumentException}
+   */
+  public SnippetResult<Tree> tryParseTypeUse(String typeSource) {
+    return intern(ParseKind.TYPE_USE, typeSource, pool::tryParseTypeUse);
+  }
+
+  /**
+   * Returns the canonical tree for the given snippet, or parses the snippet and interns its names
+   * and, if there is room, its tree.
+   *
+   * @param <T> the type of the tree
+   * @param kind the kind of the snippet
+   * @param source the snippet
+   * @param parser parses the snippet
+   * @return the canonical or newly parsed tree, or a failure if the snippet does not parse
+   */
+  @SuppressWarnings("unchecked") // The type of a canonical tree is determined by its key's kind.
+  private <T extends Tree> SnippetResult<T> intern(
+      ParseKind kind, String source, Function<String, SnippetResult<T>> parser) {
+    lookups.increment();
+    Key key = new Key(kind, source);
+    T canonical = (T) trees.get(key);
+    if (canonical != null) {
+      hits.increment();
+      return new SnippetResult.Success<>(canonical);
+    }
+    SnippetResult<T> result = parser.apply(source);
+    if (!(result instanceof SnippetResult.Success<T> success)) {
+      return result;
+    }
+    T tree = success.tree();
+    new NameInterner().scan((JCTree) tree);
+    if (trees.size() < maxTrees) {
+      // Another thread may have interned the same snippet meanwhile; its tree wins.
+      T existing = (T) trees.putIfAbsent(key, tree);
+      if (existing != null) {
+        return new SnippetResult.Success<>(existing);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the interned name that has the same characters as the given name.
+   *
+   * @param name a name from any name table
+   * @return the name from this interner's name table that has the same characters
+   */
+  private Name intern(Name name) {
+    nameReferences.increment();
+    return internedNames.computeIfAbsent(
+        name.toString(),
+        s -> {
+          synchronized (names) {
+            return names.fromString(s);
+          }
+        });
+  }
+
+  /**
+   * Returns statistics about this interner.
+   *
+   * @return statistics about this interner
+   */
+  public Stats stats() {
+    return new Stats(
+        lookups.sum(), hits.sum(), trees.size(), nameReferences.sum(), internedNames.size());
+  }
+
+  @Override
+  @EnsuresCalledMethods(value = "this.pool", methods = "close")
+  public void close(@GuardSatisfied JavacParseInterner this) {
+    pool.close();
+  }
+
+  /**
+   * Statistics about an interner. The number of requests that shared an existing tree is {@code
+   * hits}; the number of name references that share an interned name with another reference is
+   * {@code nameReferences - names}.
+   *
+   * @param lookups the number of requests
+   * @param hits the number of requests that returned a canonical tree without parsing
+   * @param trees the number of canonical trees
+   * @param nameReferences the number of names in newly parsed trees, each of which was replaced by
+   *     an interned name
+   * @param names the number of distinct interned names
+   */
+  public record Stats(long lookups, long hits, int trees, long nameReferences, int names) {}
+
+  /**
+   * A snippet and its kind.
+   *
+   * @param kind the kind of the snippet
+   * @param source the snippet
+   */
+  private record Key(ParseKind kind, String source) {}
+
+  /** Replaces each name in a tree by the interned name. */
+  private final class NameInterner extends TreeScanner {
+
+    /** Creates a NameInterner. */
+    NameInterner() {}
+
+    @Override
+    public void visitIdent(JCIdent tree) {
+      tree.name = intern(tree.name);
+      super.visitIdent(tree);
+    }
+
+    @Override
+    public void visitSelect(JCFieldAccess tree) {
+      tree.name = intern(tree.name);
+      super.visitSelect(tree);
+    }
+
+    @Override
+    public void visitReference(JCMemberReference tree) {
+      tree.name = intern(tree.name);
+      super.visitReference(tree);
+    }
+
+    @Override
+    public void visitClassDef(JCClassDecl tree) {
+      tree.name = intern(tree.name);
+      super.visitClassDef(tree);
+    }
+
+    @Override
+    public void visitMethodDef(JCMethodDecl tree) {
+      tree.name = intern(tree.name);
+      super.visitMethodDef(tree);
+    }
+
+    @Override
+    public void visitVarDef(JCVariableDecl tree) {
+      tree.name = intern(tree.name);
+      super.visitVarDef(tree);
+    }
+
+    @Override
+    public void visitTypeParameter(JCTypeParameter tree) {
+      tree.name = intern(tree.name);
+      super.visitTypeParameter(tree);
+    }
+
+    @Override
+    public void visitLabelled(JCLabeledStatement tree) {
+      tree.label = intern(tree.label);
+      super.visitLabelled(tree);
+    }
+
+    @Override
+    public void visitBreak(JCBreak tree) {
+      tree.label = internOrNull(tree.label);
+      super.visitBreak(tree);
+    }
+
+    @Override
+    public void visitContinue(JCContinue tree) {
+      tree.label = internOrNull(tree.label);
+      super.visitContinue(tree);
+    }
+
+    /**
+     * Returns the interned name that has the same characters as the given name, or null.
+     *
+     * @param name a name from any name table, or null
+     * @return the interned name, or null if {@code name} is null
+     */
+    private @Nullable Name internOrNull(@Nullable Name name) {
+      return name == null ? null : intern(name);
+    }
+  }
+}
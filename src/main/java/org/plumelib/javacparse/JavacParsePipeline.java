@@ -0,0 +1,499 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Parses a stream of sources in parallel, as a {@link Flow.Processor}: it subscribes to a publisher
+ * of sources and publishes their parse results. It suits sources that are produced on the fly, such
+ * as git blobs or archive entries, and that are too many to hold in memory at once.
+ *
+ * <p>Each source is parsed on one of a fixed number of worker threads. At most {@code maxInFlight}
+ * sources are in the pipeline at once: received from the publisher, but their results not yet
+ * delivered to the subscriber. The pipeline requests a new source from the publisher only when it
+ * delivers a result, so a slow subscriber throttles the publisher, and the pipeline's memory use
+ * does not grow with the number of sources.
+ *
+ * <p>With {@link Delivery#ORDERED}, results are delivered in the order in which the sources were
+ * received. With {@link Delivery#UNORDERED}, each result is delivered as soon as it is ready, so a
+ * large source does not hold up the results of the small sources after it. Each result's tree
+ * refers to its source via {@link CompilationUnitTree#getSourceFile}.
+ *
+ * <p>A pipeline has one subscriber; a second one is rejected with an {@link IllegalStateException}.
+ * If a source cannot be read, or the publisher signals an error, the pipeline cancels its
+ * subscription to the publisher and signals the error to the subscriber, discarding the results
+ * that have not been delivered. A pipeline is used once: it stops its worker threads when it
+ * completes, fails, or is cancelled.
+ *
+ * @param <S> the type of the sources
+ */
+public final class JavacParsePipeline<S>
+    implements Flow.Processor<S, JavacParseResult<CompilationUnitTree>> {
+
+  /** The order in which a pipeline delivers results. */
+  public enum Delivery {
+    /** Deliver results in the order in which their sources were received. */
+    ORDERED,
+    /** Deliver each result as soon as it is ready. */
+    UNORDERED
+  }
+
+  /** Used to number the worker threads of all pipelines. */
+  private static final AtomicInteger threadNumber = new AtomicInteger();
+
+  /** Converts a source to a file object. */
+  private final Function<? super S, ? extends JavaFileObject> toFileObject;
+
+  /** The maximum number of sources that are parsed at once. */
+  private final int parallelism;
+
+  /** The maximum number of sources that have been received but whose result is not delivered. */
+  private final int maxInFlight;
+
+  /** The order in which results are delivered. */
+  private final Delivery delivery;
+
+  /** What the results retain besides the tree. */
+  private final ParseOptions options;
+
+  /** The sessions for the worker threads. It is closed when the pipeline terminates. */
+  private final JavacParsePool pool;
+
+  /** The worker threads. It is shut down when the pipeline terminates. */
+  private final ExecutorService workers;
+
+  // All the following fields are guarded by `this`.
+
+  /** The subscription to the publisher of sources, or null if none yet. */
+  private Flow.@Nullable Subscription upstream = null;
+
+  /** The subscriber to results, or null if none yet. */
+  private Flow.@Nullable Subscriber<? super JavacParseResult<CompilationUnitTree>> downstream =
+      null;
+
+  /** The number of results that the subscriber has requested but not yet received. */
+  private long demand = 0;
+
+  /** The number of sources that have been received but whose result has not been delivered. */
+  private int inFlight = 0;
+
+  /** The number of sources being parsed. */
+  private int running = 0;
+
+  /** The sources that have been received but are not being parsed yet, with their numbers. */
+  private final ArrayDeque<Numbered<S>> waiting = new ArrayDeque<>();
+
+  /** The number of the next source to be received. */
+  private long received = 0;
+
+  /** With {@link Delivery#ORDERED}, the number of the next result to be delivered. */
+  private long delivered = 0;
+
+  /** The results that are ready but not delivered, by the number of their source. */
+  private final Map<Long, JavacParseResult<CompilationUnitTree>> ready = new HashMap<>();
+
+  /** With {@link Delivery#UNORDERED}, the results that are ready, in the order they got ready. */
+  private final ArrayDeque<JavacParseResult<CompilationUnitTree>> readyQueue = new ArrayDeque<>();
+
+  /** True if the publisher has signalled that there are no more sources. */
+  private boolean upstreamComplete = false;
+
+  /** The error to signal to the subscriber, or null. */
+  private @Nullable Throwable failure = null;
+
+  /** True if the pipeline has completed, failed, or been cancelled. */
+  private boolean terminated = false;
+
+  /** True if a thread is delivering signals to the subscriber. */
+  private boolean draining = false;
+
+  /**
+   * Creates a JavacParsePipeline.
+   *
+   * @param toFileObject converts a source to a file object
+   * @param parallelism the maximum number of sources that are parsed at once
+   * @param maxInFlight the maximum number of sources that have been received but whose result has
+   *     not been delivered
+   * @param delivery the order in which results are delivered
+   * @param options what the results retain besides the tree
+   */
+  @SuppressWarnings("builder:required.method.not.called") // the pool is closed by terminate()
+  private JavacParsePipeline(
+      Function<? super S, ? extends JavaFileObject> toFileObject,
+      int parallelism,
+      int maxInFlight,
+      Delivery delivery,
+      ParseOptions options) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    if (maxInFlight < parallelism) {
+      throw new IllegalArgumentException(
+          "maxInFlight (" + maxInFlight + ") must be at least parallelism (" + parallelism + ")");
+    }
+    this.toFileObject = toFileObject;
+    this.parallelism = parallelism;
+    this.maxInFlight = maxInFlight;
+    this.delivery = delivery;
+    this.options = options;
+    this.pool = new JavacParsePool(parallelism);
+    this.workers =
+        Executors.newFixedThreadPool(
+            parallelism,
+            r -> {
+              Thread t = new Thread(r, "JavacParsePipeline-" + threadNumber.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  /**
+   * Creates a pipeline that parses file objects, with one worker thread per available processor, up
+   * to twice that many sources in flight, and ordered delivery.
+   *
+   * @return a new pipeline
+   */
+  public static JavacParsePipeline<JavaFileObject> ofFileObjects() {
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    return ofFileObjects(parallelism, parallelism * 2, Delivery.ORDERED, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Creates a pipeline that parses file objects.
+   *
+   * @param parallelism the maximum number of sources that are parsed at once
+   * @param maxInFlight the maximum number of sources that have been received but whose result has
+   *     not been delivered; at least {@code parallelism}
+   * @param delivery the order in which results are delivered
+   * @param options what the results retain besides the tree
+   * @return a new pipeline
+   * @throws IllegalArgumentException if {@code parallelism} is not positive or {@code maxInFlight}
+   *     is less than {@code parallelism}
+   */
+  public static JavacParsePipeline<JavaFileObject> ofFileObjects(
+      int parallelism, int maxInFlight, Delivery delivery, ParseOptions options) {
+    return new JavacParsePipeline<>(source -> source, parallelism, maxInFlight, delivery, options);
+  }
+
+  /**
+   * Creates a pipeline that parses the contents of Java files, with one worker thread per available
+   * processor, up to twice that many sources in flight, and ordered delivery.
+   *
+   * @return a new pipeline
+   */
+  public static JavacParsePipeline<CharSequence> ofCharSequences() {
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    return ofCharSequences(parallelism, parallelism * 2, Delivery.ORDERED, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Creates a pipeline that parses the contents of Java files. A source must not change after it is
+   * published.
+   *
+   * @param parallelism the maximum number of sources that are parsed at once
+   * @param maxInFlight the maximum number of sources that have been received but whose result has
+   *     not been delivered; at least {@code parallelism}
+   * @param delivery the order in which results are delivered
+   * @param options what the results retain besides the tree
+   * @return a new pipeline
+   * @throws IllegalArgumentException if {@code parallelism} is not positive or {@code maxInFlight}
+   *     is less than {@code parallelism}
+   */
+  public static JavacParsePipeline<CharSequence> ofCharSequences(
+      int parallelism, int maxInFlight, Delivery delivery, ParseOptions options) {
+    return new JavacParsePipeline<>(
+        source -> new StringJavaFileObject(source.toString()),
+        parallelism,
+        maxInFlight,
+        delivery,
+        options);
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // The subscriber side: sources from the publisher
+  //
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    boolean accepted;
+    synchronized (this) {
+      accepted = upstream == null && !terminated;
+      if (accepted) {
+        upstream = subscription;
+      }
+    }
+    if (!accepted) {
+      // A pipeline has only one publisher.
+      subscription.cancel();
+      return;
+    }
+    subscription.request(maxInFlight);
+  }
+
+  @Override
+  public void onNext(S source) {
+    Numbered<S> numbered;
+    synchronized (this) {
+      if (terminated) {
+        return;
+      }
+      inFlight++;
+      numbered = new Numbered<>(received++, source);
+      if (running == parallelism) {
+        waiting.addLast(numbered);
+        return;
+      }
+      running++;
+    }
+    try {
+      workers.execute(() -> parse(numbered));
+    } catch (RejectedExecutionException e) {
+      // The pipeline terminated after this method checked.
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    synchronized (this) {
+      if (failure == null) {
+        failure = throwable;
+      }
+    }
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    synchronized (this) {
+      upstreamComplete = true;
+    }
+    drain();
+  }
+
+  /**
+   * Parses sources, starting with the given one, until none are waiting. Runs on a worker thread.
+   *
+   * @param first the first source to parse
+   */
+  private void parse(Numbered<S> first) {
+    @Nullable Numbered<S> next = first;
+    while (next != null) {
+      JavacParseResult<CompilationUnitTree> result = null;
+      Throwable error = null;
+      try {
+        result = pool.parseCompilationUnit(toFileObject.apply(next.source()), options);
+      } catch (IOException | RuntimeException | Error e) {
+        error = e;
+      }
+      synchronized (this) {
+        if (error != null) {
+          if (failure == null) {
+            failure = error;
+          }
+        } else if (result != null && !terminated) {
+          if (delivery == Delivery.ORDERED) {
+            ready.put(next.number(), result);
+          } else {
+            readyQueue.addLast(result);
+          }
+        }
+        next = terminated || failure != null ? null : waiting.pollFirst();
+        if (next == null) {
+          running--;
+        }
+      }
+      drain();
+    }
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // The publisher side: results to the subscriber
+  //
+
+  @Override
+  // The type checkers' default qualifier for the bound of "? super" is stricter than the JDK's.
+  @SuppressWarnings({"interning:override.param", "signature:override.param"})
+  public void subscribe(Flow.Subscriber<? super JavacParseResult<CompilationUnitTree>> subscriber) {
+    boolean accepted;
+    synchronized (this) {
+      accepted = downstream == null;
+      if (accepted) {
+        downstream = subscriber;
+      }
+    }
+    if (!accepted) {
+      subscriber.onSubscribe(new NoSubscription());
+      subscriber.onError(new IllegalStateException("A JavacParsePipeline has only one subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new ResultSubscription());
+    drain();
+  }
+
+  /** The subscription of the subscriber to results. */
+  private final class ResultSubscription implements Flow.Subscription {
+
+    /** Creates a ResultSubscription. */
+    ResultSubscription() {}
+
+    @Override
+    public void request(long n) {
+      synchronized (JavacParsePipeline.this) {
+        if (n <= 0) {
+          if (failure == null) {
+            failure = new IllegalArgumentException("non-positive request: " + n);
+          }
+        } else {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      terminate();
+    }
+  }
+
+  /** The subscription of a subscriber that is rejected. */
+  private static final class NoSubscription implements Flow.Subscription {
+
+    /** Creates a NoSubscription. */
+    NoSubscription() {}
+
+    @Override
+    public void request(long n) {
+      // Nothing to deliver.
+    }
+
+    @Override
+    public void cancel() {
+      // Nothing to cancel.
+    }
+  }
+
+  /**
+   * Delivers results, an error, or completion to the subscriber, as its demand allows. Only one
+   * thread at a time delivers; if another thread is already delivering, this returns immediately,
+   * and the other thread delivers what this one would have.
+   */
+  // The type checkers' default qualifier for the bound of "? super" is stricter than the JDK's.
+  @SuppressWarnings({"interning:argument", "signature:argument"})
+  private void drain() {
+    synchronized (this) {
+      if (draining) {
+        return;
+      }
+      draining = true;
+    }
+    while (true) {
+      Flow.Subscriber<? super JavacParseResult<CompilationUnitTree>> subscriber;
+      JavacParseResult<CompilationUnitTree> result = null;
+      Throwable error = null;
+      Flow.@Nullable Subscription requestFrom = null;
+      synchronized (this) {
+        subscriber = downstream;
+        if (subscriber == null || terminated) {
+          draining = false;
+          return;
+        }
+        if (failure != null) {
+          error = failure;
+        } else if (demand > 0) {
+          result = takeReady();
+        }
+        if (result != null) {
+          demand--;
+          inFlight--;
+          requestFrom = upstreamComplete ? null : upstream;
+        } else if (error == null && (!upstreamComplete || inFlight > 0)) {
+          draining = false;
+          return;
+        }
+      }
+      // Signal the subscriber without holding the lock, in case it calls back into the pipeline.
+      try {
+        if (result != null) {
+          subscriber.onNext(result);
+          if (requestFrom != null) {
+            requestFrom.request(1);
+          }
+        } else if (error != null) {
+          terminate();
+          subscriber.onError(error);
+          return;
+        } else {
+          terminate();
+          subscriber.onComplete();
+          return;
+        }
+      } catch (RuntimeException e) {
+        // The subscriber violated the Flow protocol by throwing; treat that as a cancellation.
+        terminate();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Removes and returns the next result to deliver, or returns null if it is not ready.
+   *
+   * @return the next result to deliver, or null
+   */
+  private @Nullable JavacParseResult<CompilationUnitTree> takeReady() {
+    if (delivery == Delivery.UNORDERED) {
+      return readyQueue.pollFirst();
+    }
+    JavacParseResult<CompilationUnitTree> result = ready.remove(delivered);
+    if (result != null) {
+      delivered++;
+    }
+    return result;
+  }
+
+  /**
+   * Stops the pipeline: cancels the subscription to the publisher, discards the sources and results
+   * that have not been delivered, and stops the worker threads. A parse that is in progress
+   * finishes, but its result is discarded.
+   */
+  private void terminate() {
+    Flow.Subscription toCancel;
+    synchronized (this) {
+      if (terminated) {
+        return;
+      }
+      terminated = true;
+      draining = false;
+      toCancel = upstreamComplete ? null : upstream;
+      waiting.clear();
+      ready.clear();
+      readyQueue.clear();
+    }
+    if (toCancel != null) {
+      toCancel.cancel();
+    }
+    workers.shutdown();
+    pool.close();
+  }
+
+  /**
+   * A source and its position among the sources received.
+   *
+   * @param number the position of the source among the sources received, starting at 0
+   * @param source the source
+   * @param <S> the type of the source
+   */
+  private record Numbered<S>(long number, S source) {}
+}
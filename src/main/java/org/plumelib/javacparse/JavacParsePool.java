@@ -0,0 +1,663 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A thread-safe parser, for parsing on many threads at once. A JavacParsePool holds a pool of
+ * {@link JavacParseSession}s. Each parse checks out a session from the pool (creating one if none
+ * is idle), parses with it, and returns it to the pool. Thus, each session is used by one thread at
+ * a time, and concurrent parses never share javac state.
+ *
+ * <p>A JavacParsePool yields the same trees and diagnostics as the corresponding static methods of
+ * {@link JavacParse}. Its results may be used on any thread.
+ *
+ * <p>A JavacParsePool should be closed when it is no longer needed. Closing it closes its idle
+ * sessions; a session that is in use when the pool is closed is closed when its parse finishes.
+ */
+@InheritableMustCall("close")
+public final class JavacParsePool implements AutoCloseable {
+
+  /**
+   * The number of snippets in each chunk of a batch, such as of {@link #parseExpressions}. Parsing
+   * a chunk takes long enough to repay the cost of handing it to another thread and, the first
+   * time, of creating a session for it.
+   */
+  private static final int BATCH_CHUNK = 512;
+
+  /** The maximum number of idle sessions that the pool retains. */
+  private final int maxIdle;
+
+  /** The limits on each parse, or null if there are none. */
+  private final @Nullable ParseLimits limits;
+
+  /** The idle sessions, most recently used last. Guarded by {@code this}. */
+  @SuppressWarnings("mustcall") // close() closes the idle sessions
+  private final ArrayDeque<JavacParseSession> idle = new ArrayDeque<>();
+
+  /** True if this pool has been closed. Guarded by {@code this}. */
+  private boolean closed = false;
+
+  /**
+   * Creates a JavacParsePool that retains up to one idle session per available processor.
+   *
+   * @see Runtime#availableProcessors
+   */
+  public JavacParsePool() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a JavacParsePool that retains up to {@code maxIdle} idle sessions. More sessions than
+   * that are created if more threads parse at the same time, but the excess ones are discarded when
+   * their parse finishes.
+   *
+   * @param maxIdle the maximum number of idle sessions to retain; typically the number of threads
+   *     that will parse concurrently
+   * @throws IllegalArgumentException if {@code maxIdle} is not positive
+   */
+  public JavacParsePool(int maxIdle) {
+    this(maxIdle, null);
+  }
+
+  /**
+   * Creates a JavacParsePool whose parses are subject to limits. A parse that exceeds a limit
+   * throws {@link ParseAbortedException}; so does a batch, such as {@link #parseExpressions}, if
+   * one of its parses does.
+   *
+   * @param maxIdle the maximum number of idle sessions to retain; typically the number of threads
+   *     that will parse concurrently
+   * @param limits the limits on each parse, or null if there are none
+   * @throws IllegalArgumentException if {@code maxIdle} is not positive
+   */
+  public JavacParsePool(int maxIdle, @Nullable ParseLimits limits) {
+    if (maxIdle < 1) {
+      throw new IllegalArgumentException("maxIdle must be positive: " + maxIdle);
+    }
+    this.maxIdle = maxIdle;
+    this.limits = limits;
+  }
+
+  /**
+   * Parse a Java file.
+   *
+   * @param filename the file to parse
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseFile(String filename) throws IOException {
+    return parseFile(filename, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parse a Java file.
+   *
+   * @param filename the file to parse
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseFile(String filename, ParseOptions options)
+      throws IOException {
+    return parseCompilationUnit(new FileJavaFileObject(filename), options);
+  }
+
+  /**
+   * Parse a Java file's contents.
+   *
+   * @param javaCode the contents of a Java file
+   * @return a (parsed) compilation unit, which may include parse errors
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(String javaCode) {
+    return parseCompilationUnit(javaCode, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parse a Java file's contents.
+   *
+   * @param javaCode the contents of a Java file
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(
+      String javaCode, ParseOptions options) {
+    return withSession(session -> session.parseCompilationUnit(javaCode, options));
+  }
+
+  /**
+   * Parse the contents of a JavaFileObject.
+   *
+   * @param source a JavaFileObject
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(JavaFileObject source)
+      throws IOException {
+    return parseCompilationUnit(source, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parse the contents of a JavaFileObject.
+   *
+   * @param source a JavaFileObject
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(
+      JavaFileObject source, ParseOptions options) throws IOException {
+    JavacParseSession session = checkOut();
+    try {
+      return session.parseCompilationUnit(source, options);
+    } finally {
+      checkIn(session);
+    }
+  }
+
+  /**
+   * Parses a Java file's contents after an edit, reusing the result of parsing its contents before
+   * the edit. See {@link JavacParseSession#reparseCompilationUnit}, whose requirements apply.
+   *
+   * @param previous the result of parsing the contents before the edit
+   * @param offset the index of the first character that the edit replaces
+   * @param removedLength the number of characters that the edit removes
+   * @param insertedText the text that the edit inserts
+   * @return a (parsed) compilation unit for the edited contents, which may include parse errors
+   * @throws IOException if there is trouble reading the previous result's source file
+   * @throws IndexOutOfBoundsException if the edit is not within the previous contents
+   */
+  public JavacParseResult<CompilationUnitTree> reparseCompilationUnit(
+      JavacParseResult<CompilationUnitTree> previous,
+      int offset,
+      int removedLength,
+      String insertedText)
+      throws IOException {
+    JavacParseSession session = checkOut();
+    try {
+      return session.reparseCompilationUnit(previous, offset, removedLength, insertedText);
+    } finally {
+      checkIn(session);
+    }
+  }
+
+  /**
+   * Parses the body of a method in a compilation unit that was parsed without method bodies. See
+   * {@link JavacParseSession#parseBody}, whose requirements apply.
+   *
+   * @param compilationUnit a compilation unit
+   * @param method a method in {@code compilationUnit} that has a body
+   * @return the method's body, which may include parse errors
+   * @throws IOException if there is trouble reading the compilation unit's source file
+   * @throws IllegalArgumentException if the method has no body
+   */
+  public JavacParseResult<BlockTree> parseBody(
+      CompilationUnitTree compilationUnit, MethodTree method) throws IOException {
+    JavacParseSession session = checkOut();
+    try {
+      return session.parseBody(compilationUnit, method);
+    } finally {
+      checkIn(session);
+    }
+  }
+
+  /**
+   * Parses one declaration of a Java file. See {@link JavacParseSession#parseMember(JavaFileObject,
+   * MemberSelector)}.
+   *
+   * @param filename the file to parse
+   * @param selector the declaration to parse
+   * @return the parsed declaration, or null if the file has no declaration that {@code selector}
+   *     denotes
+   * @throws IOException if there is trouble reading the file
+   */
+  public @Nullable JavacParseResult<Tree> parseFileMember(String filename, MemberSelector selector)
+      throws IOException {
+    return parseMember(new FileJavaFileObject(filename), selector);
+  }
+
+  /**
+   * Parses one declaration of a Java file's contents. See {@link
+   * JavacParseSession#parseMember(JavaFileObject, MemberSelector)}.
+   *
+   * @param javaCode the contents of a Java file
+   * @param selector the declaration to parse
+   * @return the parsed declaration, or null if {@code javaCode} has no declaration that {@code
+   *     selector} denotes
+   */
+  public @Nullable JavacParseResult<Tree> parseMember(String javaCode, MemberSelector selector) {
+    return withSession(session -> session.parseMember(javaCode, selector));
+  }
+
+  /**
+   * Parses one declaration of the contents of a JavaFileObject. See {@link
+   * JavacParseSession#parseMember(JavaFileObject, MemberSelector)}.
+   *
+   * @param source a JavaFileObject
+   * @param selector the declaration to parse
+   * @return the parsed declaration, or null if {@code source} has no declaration that {@code
+   *     selector} denotes
+   * @throws IOException if there is trouble reading the file
+   */
+  public @Nullable JavacParseResult<Tree> parseMember(
+      JavaFileObject source, MemberSelector selector) throws IOException {
+    JavacParseSession session = checkOut();
+    try {
+      return session.parseMember(source, selector);
+    } finally {
+      checkIn(session);
+    }
+  }
+
+  /**
+   * Parses the smallest declaration of a Java file that encloses a range. See {@link
+   * JavacParseSession#parseRange(JavaFileObject, int, int)}.
+   *
+   * @param filename the file to parse
+   * @param start the index of the first character of the range
+   * @param end the index after the last character of the range
+   * @return the parsed declaration, or null if no type declaration encloses the range
+   * @throws IOException if there is trouble reading the file
+   * @throws IndexOutOfBoundsException if the range is not within the file's contents
+   */
+  public @Nullable JavacParseResult<Tree> parseFileRange(String filename, int start, int end)
+      throws IOException {
+    return parseRange(new FileJavaFileObject(filename), start, end);
+  }
+
+  /**
+   * Parses the smallest declaration of a Java file's contents that encloses a range. See {@link
+   * JavacParseSession#parseRange(JavaFileObject, int, int)}.
+   *
+   * @param javaCode the contents of a Java file
+   * @param start the index of the first character of the range
+   * @param end the index after the last character of the range
+   * @return the parsed declaration, or null if no type declaration encloses the range
+   * @throws IndexOutOfBoundsException if the range is not within {@code javaCode}
+   */
+  public @Nullable JavacParseResult<Tree> parseRange(String javaCode, int start, int end) {
+    return withSession(session -> session.parseRange(javaCode, start, end));
+  }
+
+  /**
+   * Parses the smallest declaration of the contents of a JavaFileObject that encloses a range. See
+   * {@link JavacParseSession#parseRange(JavaFileObject, int, int)}.
+   *
+   * @param source a JavaFileObject
+   * @param start the index of the first character of the range
+   * @param end the index after the last character of the range
+   * @return the parsed declaration, or null if no type declaration encloses the range
+   * @throws IOException if there is trouble reading the file
+   * @throws IndexOutOfBoundsException if the range is not within the contents of {@code source}
+   */
+  public @Nullable JavacParseResult<Tree> parseRange(JavaFileObject source, int start, int end)
+      throws IOException {
+    JavacParseSession session = checkOut();
+    try {
+      return session.parseRange(source, start, end);
+    } finally {
+      checkIn(session);
+    }
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @return the parsed type declaration
+   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
+   *     contains a top-level ";"
+   */
+  public JavacParseResult<ClassTree> parseTypeDeclaration(String classSource) {
+    return parseTypeDeclaration(classSource, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @param options what the result retains besides the tree
+   * @return the parsed type declaration
+   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
+   *     contains a top-level ";"
+   */
+  public JavacParseResult<ClassTree> parseTypeDeclaration(
+      String classSource, ParseOptions options) {
+    return withSession(session -> session.parseTypeDeclaration(classSource, options));
+  }
+
+  /**
+   * Parses the given Java method or annotation type element.
+   *
+   * @param methodSource the string representation of a Java method or annotation type element
+   * @return the parsed method
+   * @throws IllegalArgumentException if the method source does not parse
+   */
+  public MethodTree parseMethod(String methodSource) {
+    return withSession(session -> session.parseMethod(methodSource));
+  }
+
+  /**
+   * Parses the given Java expression string, such as "foo.bar()" or "1 + 2".
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression
+   * @throws IllegalArgumentException if the expression source does not parse
+   */
+  public ExpressionTree parseExpression(String expressionSource) {
+    return withSession(session -> session.parseExpression(expressionSource));
+  }
+
+  /**
+   * Parses the given Java type use, such as "int", "String", or "List&lt;? extends Number&gt;".
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use
+   * @throws IllegalArgumentException if the type source does not parse
+   */
+  public Tree parseTypeUse(String typeSource) {
+    return withSession(session -> session.parseTypeUse(typeSource));
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.), without throwing
+   * an exception if it is invalid.
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @return the parsed type declaration, or a failure if {@link #parseTypeDeclaration(String)}
+   *     would throw {@code IllegalArgumentException}
+   */
+  public SnippetResult<ClassTree> tryParseTypeDeclaration(String classSource) {
+    return withSession(session -> session.tryParseTypeDeclaration(classSource));
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.), without throwing
+   * an exception if it is invalid.
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @param options what the tree retains
+   * @return the parsed type declaration, or a failure if {@link #parseTypeDeclaration(String,
+   *     ParseOptions)} would throw {@code IllegalArgumentException}
+   */
+  public SnippetResult<ClassTree> tryParseTypeDeclaration(
+      String classSource, ParseOptions options) {
+    return withSession(session -> session.tryParseTypeDeclaration(classSource, options));
+  }
+
+  /**
+   * Parses the given Java method or annotation type element, without throwing an exception if it is
+   * invalid.
+   *
+   * @param methodSource the string representation of a Java method or annotation type element
+   * @return the parsed method, or a failure if {@link #parseMethod(String)} would throw {@code
+   *     IllegalArgumentException}
+   */
+  public SnippetResult<MethodTree> tryParseMethod(String methodSource) {
+    return withSession(session -> session.tryParseMethod(methodSource));
+  }
+
+  /**
+   * Parses the given Java expression string, without throwing an exception if it is invalid.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression, or a failure if {@link #parseExpression(String)} would throw
+   *     {@code IllegalArgumentException}
+   */
+  public SnippetResult<ExpressionTree> tryParseExpression(String expressionSource) {
+    return withSession(session -> session.tryParseExpression(expressionSource));
+  }
+
+  /**
+   * Parses the given Java type use, without throwing an exception if it is invalid.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use, or a failure if {@link #parseTypeUse(String)} would throw {@code
+   *     IllegalArgumentException}
+   */
+  public SnippetResult<Tree> tryParseTypeUse(String typeSource) {
+    return withSession(session -> session.tryParseTypeUse(typeSource));
+  }
+
+  /**
+   * Parses each of the given Java expression strings, as {@link #parseExpression(String)} does. A
+   * large batch is split into chunks that are parsed in parallel, each with one session.
+   *
+   * @param expressionSources the string representations of Java expressions
+   * @return the result for each expression, in the same order; an expression that does not parse
+   *     yields a {@link SnippetResult.Failure}
+   */
+  public List<SnippetResult<ExpressionTree>> parseExpressions(List<String> expressionSources) {
+    return parseBatch(expressionSources, JavacParseSession::parseExpressions);
+  }
+
+  /**
+   * Parses each of the given Java type uses, as {@link #parseTypeUse(String)} does. A large batch
+   * is split into chunks that are parsed in parallel, each with one session.
+   *
+   * @param typeSources the string representations of Java type uses
+   * @return the result for each type use, in the same order; a type use that does not parse yields
+   *     a {@link SnippetResult.Failure}
+   */
+  public List<SnippetResult<Tree>> parseTypeUses(List<String> typeSources) {
+    return parseBatch(typeSources, JavacParseSession::parseTypeUses);
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid compilation unit, as {@link
+   * JavacParseSession#isValidCompilationUnit} determines.
+   *
+   * @param javaCode the contents of a Java file
+   * @return true if {@code javaCode} is a syntactically valid compilation unit
+   */
+  public boolean isValidCompilationUnit(String javaCode) {
+    return withSession(session -> session.isValidCompilationUnit(javaCode));
+  }
+
+  /**
+   * Returns the first syntax error in the given string, as {@link
+   * JavacParseSession#validateCompilationUnit} determines.
+   *
+   * @param javaCode the contents of a Java file
+   * @return the first syntax error in {@code javaCode}, or null if it is valid
+   */
+  public @Nullable Diagnostic<? extends JavaFileObject> validateCompilationUnit(String javaCode) {
+    return withSession(session -> session.validateCompilationUnit(javaCode));
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid expression, as {@link
+   * JavacParseSession#isValidExpression} determines.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return true if {@code expressionSource} is a syntactically valid expression
+   */
+  public boolean isValidExpression(String expressionSource) {
+    return withSession(session -> session.isValidExpression(expressionSource));
+  }
+
+  /**
+   * Returns the first syntax error in the given string, as {@link
+   * JavacParseSession#validateExpression} determines.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the first syntax error in {@code expressionSource}, or null if it is a valid expression
+   */
+  public @Nullable Diagnostic<? extends JavaFileObject> validateExpression(
+      String expressionSource) {
+    return withSession(session -> session.validateExpression(expressionSource));
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid type use, as {@link
+   * JavacParseSession#isValidTypeUse} determines.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return true if {@code typeSource} is a syntactically valid type use
+   */
+  public boolean isValidTypeUse(String typeSource) {
+    return withSession(session -> session.isValidTypeUse(typeSource));
+  }
+
+  /**
+   * Returns the first syntax error in the given string, as {@link
+   * JavacParseSession#validateTypeUse} determines.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the first syntax error in {@code typeSource}, or null if it is a valid type use
+   */
+  public @Nullable Diagnostic<? extends JavaFileObject> validateTypeUse(String typeSource) {
+    return withSession(session -> session.validateTypeUse(typeSource));
+  }
+
+  /**
+   * Applies a batch operation to the given snippets. If there are more than {@link #BATCH_CHUNK}
+   * snippets, applies it to chunks of them in parallel, on the common fork-join pool.
+   *
+   * @param <T> the type of parse tree produced
+   * @param sources the snippets
+   * @param fn the batch operation
+   * @return the result for each snippet, in the same order
+   */
+  private <T extends Tree> List<SnippetResult<T>> parseBatch(
+      List<String> sources, BatchFunction<T> fn) {
+    int size = sources.size();
+    if (size <= BATCH_CHUNK) {
+      return withSession(session -> fn.apply(session, sources));
+    }
+    int chunks = (size + BATCH_CHUNK - 1) / BATCH_CHUNK;
+    List<List<SnippetResult<T>>> chunkResults =
+        IntStream.range(0, chunks)
+            .parallel()
+            .mapToObj(
+                i -> {
+                  List<String> chunk =
+                      sources.subList(i * BATCH_CHUNK, Math.min(size, (i + 1) * BATCH_CHUNK));
+                  return withSession(session -> fn.apply(session, chunk));
+                })
+            .toList();
+    List<SnippetResult<T>> result = new ArrayList<>(size);
+    for (List<SnippetResult<T>> chunkResult : chunkResults) {
+      result.addAll(chunkResult);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Applies {@code fn} to a session that no other thread is using.
+   *
+   * @param <R> the type of the result
+   * @param fn the operation to perform
+   * @return the result of {@code fn}
+   */
+  private <R> R withSession(SessionFunction<R> fn) {
+    JavacParseSession session = checkOut();
+    try {
+      return fn.apply(session);
+    } finally {
+      checkIn(session);
+    }
+  }
+
+  /**
+   * Removes an idle session from the pool, or creates one if none is idle.
+   *
+   * @return a session that no other thread is using
+   * @throws IllegalStateException if this pool has been closed
+   */
+  private JavacParseSession checkOut() {
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("JavacParsePool has been closed");
+      }
+      if (!idle.isEmpty()) {
+        return idle.removeLast();
+      }
+    }
+    // Create a new session outside the lock, because doing so is slow.
+    return new JavacParseSession(true, limits);
+  }
+
+  /**
+   * Returns a session to the pool, or closes it if the pool is full or closed.
+   *
+   * @param session a session that was obtained from {@link #checkOut}
+   */
+  @SuppressWarnings("builder:required.method.not.called") // idle sessions are closed by close()
+  private void checkIn(@Owning JavacParseSession session) {
+    synchronized (this) {
+      if (!closed && idle.size() < maxIdle) {
+        idle.addLast(session);
+        return;
+      }
+    }
+    session.close();
+  }
+
+  @Override
+  public void close(@GuardSatisfied JavacParsePool this) {
+    synchronized (this) {
+      closed = true;
+      while (!idle.isEmpty()) {
+        idle.removeLast().close();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of idle sessions in the pool.
+   *
+   * @return the number of idle sessions in the pool
+   */
+  /*package-private*/ synchronized int idleCount() {
+    return idle.size();
+  }
+
+  /**
+   * An operation on a session.
+   *
+   * @param <R> the type of the result
+   */
+  @FunctionalInterface
+  private interface SessionFunction<R> {
+    /**
+     * Performs the operation.
+     *
+     * @param session a session that no other thread is using
+     * @return the result of the operation
+     */
+    R apply(JavacParseSession session);
+  }
+
+  /**
+   * An operation on a session that parses a batch of snippets.
+   *
+   * @param <T> the type of parse tree produced
+   */
+  @FunctionalInterface
+  private interface BatchFunction<T extends Tree> {
+    /**
+     * Performs the operation.
+     *
+     * @param session a session that no other thread is using
+     * @param sources the snippets
+     * @return the result for each snippet, in the same order
+     */
+    List<SnippetResult<T>> apply(JavacParseSession session, List<String> sources);
+  }
+}
@@ -10,6 +10,9 @@ import org.checkerframework.checker.lock.qual.GuardSatisfied;
 /**
  * Represents the result of parsing Java code (a file or a subpart thereof).
  *
+ * <p>The diagnostics are an immutable list, and the numbers of errors and warnings among them are
+ * computed once, when the result is created.
+ *
  * @param <T> the type of the Java code being parsed
  * @param tree the parse tree
  * @param diagnostics the diagnostics
@@ -17,30 +20,60 @@ import org.checkerframework.checker.lock.qual.GuardSatisfied;
 public record JavacParseResult<T extends Tree>(
     T tree, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
 
+  /**
+   * Creates a JavacParseResult.
+   *
+   * @param tree the parse tree
+   * @param diagnostics the diagnostics; copied unless they come from another result
+   */
+  public JavacParseResult {
+    diagnostics = ParseDiagnostics.of(diagnostics);
+  }
+
   /**
    * Returns true if at least one diagnostic is a parse error.
    *
    * @return true if at least one diagnostic is a parse error
    */
   public boolean hasParseError() {
-    return diagnostics.stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.ERROR);
+    return errorCount() != 0;
   }
 
   /**
-   * Returns all the parse error messages, concatenated. May return an empty string.
+   * Returns the number of diagnostics that are parse errors.
+   *
+   * @return the number of parse errors
+   */
+  public int errorCount() {
+    return parseDiagnostics().errorCount();
+  }
+
+  /**
+   * Returns the number of diagnostics that are warnings, mandatory or not.
+   *
+   * @return the number of warnings
+   */
+  public int warningCount() {
+    return parseDiagnostics().warningCount();
+  }
+
+  /**
+   * Returns all the parse error messages, concatenated. May return an empty string. The messages
+   * are formatted on the first call.
    *
    * @return all the parse error messages, concatenated
    */
   public String getParseErrorMessages() {
-    StringJoiner sj = new StringJoiner("; ");
-    for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
-      if (d.getKind() == Diagnostic.Kind.ERROR) {
-        @SuppressWarnings("nullness:argument") // javac is not annotated
-        String msg = d.getMessage(null);
-        sj.add(msg);
-      }
-    }
-    return sj.toString();
+    return parseDiagnostics().errorMessages();
+  }
+
+  /**
+   * Returns the diagnostics, which the constructor stored as a {@link ParseDiagnostics}.
+   *
+   * @return the diagnostics
+   */
+  private ParseDiagnostics parseDiagnostics() {
+    return (ParseDiagnostics) diagnostics;
   }
 
   @Override
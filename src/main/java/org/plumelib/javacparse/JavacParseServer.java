@@ -0,0 +1,659 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A long-running parser that serves parse requests from other processes. A tool that is not written
+ * in Java can start one server and send it many requests, rather than starting a JVM, and warming
+ * up javac within it, for every batch of parses. The server parses with a {@link JavacParsePool}
+ * on a fixed number of worker threads, so it handles concurrent requests concurrently.
+ *
+ * <p>To run the server, run {@code java -jar javac-parse-VERSION-all.jar}, whose manifest exports
+ * the javac packages that this library uses, or run this class's {@link #main} with the {@code
+ * --add-exports} options. The command-line options are:
+ *
+ * <ul>
+ *   <li>{@code --socket PATH}: listen on a Unix-domain socket, created at PATH, and serve each
+ *       connection until the client closes it. Without this option, the server reads requests from
+ *       standard input and writes responses to standard output, and exits at the end of its input.
+ *   <li>{@code --threads N}: the number of worker threads. The default is the number of
+ *       processors.
+ * </ul>
+ *
+ * <p><b>Protocol.</b> Requests and responses are lines of UTF-8 text, whose fields are separated by
+ * tab characters. In a field that may contain arbitrary text, a backslash, newline, carriage
+ * return, or tab is written as {@code \\}, {@code \n}, {@code \r}, or {@code \t}. A request has
+ * five fields, {@code ID KIND OUTPUT ORIGIN TEXT}:
+ *
+ * <ul>
+ *   <li>ID identifies the request in its response. Responses may be written in a different order
+ *       than the requests were read.
+ *   <li>KIND is the name of a {@link ParseKind}, such as {@code COMPILATION_UNIT} or {@code
+ *       EXPRESSION}.
+ *   <li>OUTPUT is {@code DIAGNOSTICS}, for the diagnostics only; {@code TREE}, for the diagnostics
+ *       and every node of the tree; or {@code SUMMARY}, for the diagnostics and the declarations
+ *       outside method bodies. For a summary, method bodies are not parsed (see {@link
+ *       ParseOptions.MethodBodies#SKIP}), so the diagnostics do not include errors within them.
+ *   <li>ORIGIN is {@code FILE}, if TEXT is the name of a file to parse, or {@code SOURCE}, if TEXT
+ *       is the text to parse.
+ * </ul>
+ *
+ * <p>A response is a header line, {@code ID OK N}, followed by N record lines; or a single line,
+ * {@code ID FAILED MESSAGE}, if the request could not be carried out, for example because it is
+ * malformed, its file cannot be read, or its text is nested too deeply to parse. The record lines
+ * are:
+ *
+ * <ul>
+ *   <li>{@code DIAGNOSTIC KIND START END LINE COLUMN MESSAGE}, for each diagnostic. KIND is the
+ *       name of a {@link Diagnostic.Kind}.
+ *   <li>{@code REJECTED REASON}, if the text is not valid as the requested kind of snippet (any
+ *       kind other than a compilation unit); there is no tree. REASON is the name of a {@link
+ *       SnippetResult.Reason}.
+ *   <li>{@code NODE PARENT KIND START END NAME}, for each node of the tree, in preorder, as in a
+ *       {@link CompactTree}. PARENT is the position of the node's parent among the response's
+ *       nodes, starting at 0, or -1 for the root. KIND is the name of a {@link Tree.Kind}. NAME is
+ *       empty if the node has no name. The end offsets of a snippet's nodes are estimates.
+ * </ul>
+ *
+ * <p>A JavacParseServer is thread-safe: it may serve several connections at once. It should be
+ * closed when it is no longer needed.
+ */
+@InheritableMustCall("close")
+public final class JavacParseServer implements AutoCloseable {
+
+  /** The number of requests per worker thread that may be pending on one connection. */
+  private static final int PENDING_PER_THREAD = 4;
+
+  /** The usage message for {@link #main}. */
+  private static final String USAGE = "Usage: JavacParseServer [--threads N] [--socket PATH]";
+
+  /** The sessions for the worker threads. */
+  @Owning private final JavacParsePool pool;
+
+  /** The worker threads. */
+  private final ExecutorService workers;
+
+  /** The maximum number of requests that may be pending on one connection. */
+  private final int maxPending;
+
+  /** The socket that {@link #serve(Path)} listens on, or null if none. */
+  private volatile @Nullable ServerSocketChannel listener = null;
+
+  /**
+   * Creates a JavacParseServer.
+   *
+   * @param threads the number of worker threads
+   * @param limits the limits on each parse, or null if there are none; a request that exceeds a
+   *     limit fails
+   * @throws IllegalArgumentException if {@code threads} is not positive
+   */
+  public JavacParseServer(int threads, @Nullable ParseLimits limits) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive: " + threads);
+    }
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.pool = new JavacParsePool(threads, limits);
+    this.workers =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread t = new Thread(r, "JavacParseServer-" + threadNumber.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+    this.maxPending = threads * PENDING_PER_THREAD;
+  }
+
+  /**
+   * Runs a server. See the class comment for the command-line options.
+   *
+   * @param args the command-line arguments
+   * @throws IOException if there is trouble reading requests or writing responses
+   */
+  public static void main(String[] args) throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    Path socket = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--threads") && i + 1 < args.length) {
+        try {
+          threads = Integer.parseInt(args[++i]);
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+        if (threads < 1) {
+          usage();
+          return;
+        }
+      } else if (args[i].equals("--socket") && i + 1 < args.length) {
+        socket = Path.of(args[++i]);
+      } else {
+        usage();
+        return;
+      }
+    }
+    // Without limits, a parse of deeply nested text would overflow the stack; with them, it fails.
+    try (JavacParseServer server = new JavacParseServer(threads, ParseLimits.UNLIMITED)) {
+      if (socket == null) {
+        server.serve(System.in, System.out);
+      } else {
+        server.serve(socket);
+      }
+    }
+  }
+
+  /** Prints the usage message and sets the exit status to indicate an error. */
+  @SuppressWarnings("SystemExitOutsideMain") // called only by main()
+  private static void usage() {
+    System.err.println(USAGE);
+    System.exit(2);
+  }
+
+  /**
+   * Serves the requests of one client: reads requests until the end of the input, and writes each
+   * response as soon as it is ready. Returns when every response has been written.
+   *
+   * @param in the requests
+   * @param out the responses
+   * @throws IOException if there is trouble reading requests or writing responses
+   */
+  public void serve(InputStream in, OutputStream out) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    // Bounds the memory that a client that sends requests faster than they are parsed can use.
+    Semaphore pending = new Semaphore(maxPending);
+    AtomicReference<@Nullable IOException> writeFailure = new AtomicReference<>();
+    try {
+      String line;
+      while (writeFailure.get() == null && (line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        String request = line;
+        pending.acquireUninterruptibly();
+        try {
+          workers.execute(
+              () -> {
+                try {
+                  String response = respond(request);
+                  synchronized (writer) {
+                    writer.write(response);
+                    writer.flush();
+                  }
+                } catch (IOException e) {
+                  writeFailure.compareAndSet(null, e);
+                } finally {
+                  pending.release();
+                }
+              });
+        } catch (RejectedExecutionException e) {
+          pending.release();
+          throw new IOException("The server is closed", e);
+        }
+      }
+    } finally {
+      // Wait for the pending responses.
+      pending.acquireUninterruptibly(maxPending);
+    }
+    IOException e = writeFailure.get();
+    if (e != null) {
+      throw e;
+    }
+  }
+
+  /**
+   * Listens on a Unix-domain socket, and serves each client that connects on its own thread, until
+   * this server is closed. The socket file is created, and it is deleted when this method returns.
+   *
+   * @param socket the path of the socket; no file may exist there
+   * @throws IOException if the socket cannot be created
+   */
+  public void serve(Path socket) throws IOException {
+    serve(socket, () -> {});
+  }
+
+  /**
+   * Like {@link #serve(Path)}, but notifies the caller once clients can connect. The socket file
+   * exists slightly before then, so a client should not wait for the file instead.
+   *
+   * @param socket the path of the socket; no file may exist there
+   * @param listening called, on this thread, once the socket accepts connections
+   * @throws IOException if the socket cannot be created
+   */
+  public void serve(Path socket, Runnable listening) throws IOException {
+    try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      channel.bind(UnixDomainSocketAddress.of(socket));
+      listener = channel;
+      listening.run();
+      while (true) {
+        SocketChannel client;
+        try {
+          client = channel.accept();
+        } catch (ClosedChannelException e) {
+          return;
+        }
+        Thread t = new Thread(() -> serve(client), "JavacParseServer-connection");
+        t.setDaemon(true);
+        t.start();
+      }
+    } finally {
+      listener = null;
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  /**
+   * Serves one client that connected to the socket, and closes the connection.
+   *
+   * @param client the connection
+   */
+  private void serve(SocketChannel client) {
+    try (SocketChannel c = client) {
+      serve(new ChannelInputStream(c), new ChannelOutputStream(c));
+    } catch (IOException e) {
+      // The client disconnected; nothing can be reported to it.
+    }
+  }
+
+  /**
+   * Carries out one request.
+   *
+   * @param request a request line, without its line terminator
+   * @return the response, including its final line terminator
+   */
+  /*package-private*/ String respond(String request) {
+    String[] fields = request.split("\t", -1);
+    String id = fields[0];
+    Response response = new Response();
+    try {
+      if (fields.length != 5) {
+        throw new IllegalArgumentException("Expected 5 fields but found " + fields.length);
+      }
+      ParseKind kind = ParseKind.valueOf(fields[1]);
+      Output output = Output.valueOf(fields[2]);
+      String text = unescape(fields[4]);
+      boolean isFile;
+      if (fields[3].equals("FILE")) {
+        isFile = true;
+      } else if (fields[3].equals("SOURCE")) {
+        isFile = false;
+      } else {
+        throw new IllegalArgumentException("Bad origin: " + fields[3]);
+      }
+      if (kind == ParseKind.COMPILATION_UNIT) {
+        ParseOptions options = output.options();
+        JavacParseResult<CompilationUnitTree> result =
+            isFile ? pool.parseFile(text, options) : pool.parseCompilationUnit(text, options);
+        response.addDiagnostics(result.diagnostics());
+        if (output != Output.DIAGNOSTICS) {
+          response.addNodes(CompactTree.of(result.tree()), output);
+        }
+      } else {
+        String source = isFile ? Files.readString(Path.of(text)) : text;
+        SnippetResult<? extends Tree> result = parseSnippet(kind, source, output.options());
+        if (result instanceof SnippetResult.Failure<? extends Tree> failure) {
+          response.addDiagnostics(failure.diagnostics());
+          response.addRecord("REJECTED\t" + failure.reason());
+        } else if (output != Output.DIAGNOSTICS) {
+          JCTree tree = (JCTree) result.treeOrNull();
+          response.addNodes(CompactTree.of(tree, null), output);
+        }
+      }
+    } catch (IOException | RuntimeException | StackOverflowError e) {
+      // A RuntimeException is a bug, but it should not end the server.  A StackOverflowError arises
+      // from deeply nested text when there are no limits; the session that parsed it recovers.
+      return id + "\tFAILED\t" + escape(String.valueOf(e)) + "\n";
+    }
+    return response.toString(id);
+  }
+
+  /**
+   * Parses a snippet.
+   *
+   * @param kind the kind of the snippet; not {@link ParseKind#COMPILATION_UNIT}
+   * @param source the snippet
+   * @param options what the result retains besides the tree; used only for a type declaration
+   * @return the result of parsing the snippet
+   */
+  private SnippetResult<? extends Tree> parseSnippet(
+      ParseKind kind, String source, ParseOptions options) {
+    switch (kind) {
+      case TYPE_DECLARATION:
+        return pool.tryParseTypeDeclaration(source, options);
+      case METHOD:
+        return pool.tryParseMethod(source);
+      case EXPRESSION:
+        return pool.tryParseExpression(source);
+      case TYPE_USE:
+        return pool.tryParseTypeUse(source);
+      default:
+        throw new IllegalArgumentException("Not a snippet kind: " + kind);
+    }
+  }
+
+  @Override
+  @EnsuresCalledMethods(value = "this.pool", methods = "close")
+  public void close(@GuardSatisfied JavacParseServer this) {
+    ServerSocketChannel channel = listener;
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // serve(Path) returns and deletes the socket regardless.
+      }
+    }
+    workers.shutdown();
+    try {
+      workers.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    pool.close();
+  }
+
+  /**
+   * Escapes a field of a request or response: replaces each backslash, newline, carriage return,
+   * and tab by an escape sequence.
+   *
+   * @param s a string
+   * @return {@code s}, escaped
+   */
+  /*package-private*/ static String escape(String s) {
+    StringBuilder result = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '\\' -> result.append("\\\\");
+        case '\n' -> result.append("\\n");
+        case '\r' -> result.append("\\r");
+        case '\t' -> result.append("\\t");
+        default -> result.append(c);
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Undoes {@link #escape}.
+   *
+   * @param s an escaped string
+   * @return {@code s}, unescaped
+   * @throws IllegalArgumentException if {@code s} contains a bad escape sequence
+   */
+  /*package-private*/ static String unescape(String s) {
+    if (s.indexOf('\\') < 0) {
+      return s;
+    }
+    StringBuilder result = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c != '\\') {
+        result.append(c);
+        continue;
+      }
+      if (++i == s.length()) {
+        throw new IllegalArgumentException("Backslash at end of field");
+      }
+      switch (s.charAt(i)) {
+        case '\\' -> result.append('\\');
+        case 'n' -> result.append('\n');
+        case 'r' -> result.append('\r');
+        case 't' -> result.append('\t');
+        default -> throw new IllegalArgumentException("Bad escape: \\" + s.charAt(i));
+      }
+    }
+    return result.toString();
+  }
+
+  /** What a response contains besides the diagnostics. */
+  private enum Output {
+    /** Nothing. */
+    DIAGNOSTICS(ParseOptions.TREE_ONLY),
+    /** Every node of the tree. */
+    TREE(ParseOptions.TREE_ONLY.withEndPositions(true)),
+    /** The declarations outside method bodies. */
+    SUMMARY(
+        ParseOptions.TREE_ONLY
+            .withEndPositions(true)
+            .withMethodBodies(ParseOptions.MethodBodies.SKIP));
+
+    /** The options to parse with. */
+    private final ParseOptions options;
+
+    /**
+     * Creates an Output.
+     *
+     * @param options the options to parse with
+     */
+    Output(ParseOptions options) {
+      this.options = options;
+    }
+
+    /**
+     * Returns the options to parse with.
+     *
+     * @return the options to parse with
+     */
+    ParseOptions options() {
+      return options;
+    }
+  }
+
+  /** The records of a response. */
+  private static final class Response {
+
+    /** The record lines. */
+    private final StringBuilder records = new StringBuilder();
+
+    /** The number of record lines. */
+    private int recordCount = 0;
+
+    /** The number of NODE records. */
+    private int nodeCount = 0;
+
+    /** Creates a Response. */
+    Response() {}
+
+    /**
+     * Adds a record.
+     *
+     * @param record the record, without its line terminator
+     */
+    void addRecord(String record) {
+      records.append(record).append('\n');
+      recordCount++;
+    }
+
+    /**
+     * Adds a DIAGNOSTIC record for each diagnostic.
+     *
+     * @param diagnostics the diagnostics
+     */
+    void addDiagnostics(List<? extends Diagnostic<? extends JavaFileObject>> diagnostics) {
+      for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+        addRecord(
+            "DIAGNOSTIC\t"
+                + d.getKind()
+                + "\t"
+                + d.getStartPosition()
+                + "\t"
+                + d.getEndPosition()
+                + "\t"
+                + d.getLineNumber()
+                + "\t"
+                + d.getColumnNumber()
+                + "\t"
+                + escape(d.getMessage(null)));
+      }
+    }
+
+    /**
+     * Adds a NODE record for each node of a tree, or of its summary.
+     *
+     * @param tree the tree
+     * @param output {@link Output#TREE} or {@link Output#SUMMARY}
+     */
+    void addNodes(CompactTree tree, Output output) {
+      if (output == Output.TREE) {
+        for (int node = 0; node < tree.size(); node++) {
+          addNode(tree, node, tree.parent(node));
+        }
+      } else {
+        summarize(tree, 0, CompactTree.NO_NODE);
+      }
+    }
+
+    /**
+     * Adds a NODE record for a node and, if it is a declaration that contains other declarations,
+     * for those, recursively. Other nodes are omitted.
+     *
+     * @param tree the tree
+     * @param node a node of {@code tree}
+     * @param parent the position among this response's nodes of the record for the nearest
+     *     ancestor of {@code node} that has one, or -1
+     */
+    private void summarize(CompactTree tree, int node, int parent) {
+      switch (tree.kind(node)) {
+        case COMPILATION_UNIT, CLASS, INTERFACE, ENUM, ANNOTATION_TYPE, RECORD -> {
+          int record = addNode(tree, node, parent);
+          for (int child = tree.firstChild(node);
+              child != CompactTree.NO_NODE;
+              child = tree.nextSibling(child)) {
+            summarize(tree, child, record);
+          }
+        }
+        case PACKAGE, IMPORT, MODULE, METHOD, VARIABLE -> addNode(tree, node, parent);
+        default -> {}
+      }
+    }
+
+    /**
+     * Adds a NODE record.
+     *
+     * @param tree the tree
+     * @param node a node of {@code tree}
+     * @param parent the position among this response's nodes of the node's parent, or -1
+     * @return the position of the node among this response's nodes
+     */
+    private int addNode(CompactTree tree, int node, int parent) {
+      String name = tree.name(node);
+      addRecord(
+          "NODE\t"
+              + parent
+              + "\t"
+              + tree.kind(node)
+              + "\t"
+              + tree.start(node)
+              + "\t"
+              + tree.end(node)
+              + "\t"
+              + (name == null ? "" : escape(name)));
+      return nodeCount++;
+    }
+
+    /**
+     * Returns the text of this response.
+     *
+     * @param id the request's identifier
+     * @return the header line and the record lines
+     */
+    String toString(String id) {
+      return id + "\tOK\t" + recordCount + "\n" + records;
+    }
+  }
+
+  /**
+   * Reads from a socket channel. Unlike {@code Channels.newInputStream}, it does not prevent
+   * concurrent writes to the channel while a read blocks.
+   */
+  /*package-private*/ static final class ChannelInputStream extends InputStream {
+
+    /** The channel. */
+    private final SocketChannel channel;
+
+    /**
+     * Creates a ChannelInputStream.
+     *
+     * @param channel the channel
+     */
+    ChannelInputStream(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+    }
+  }
+
+  /**
+   * Writes to a socket channel. Unlike {@code Channels.newOutputStream}, it does not wait for a
+   * blocked read of the channel to finish.
+   */
+  /*package-private*/ static final class ChannelOutputStream extends OutputStream {
+
+    /** The channel. */
+    private final SocketChannel channel;
+
+    /**
+     * Creates a ChannelOutputStream.
+     *
+     * @param channel the channel
+     */
+    ChannelOutputStream(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,1691 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.EmptyStatementTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.parser.DocCommentParser;
+import com.sun.tools.javac.parser.JavacParser;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.DCTree.DCDocComment;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.DiagnosticSource;
+import com.sun.tools.javac.util.JCDiagnostic;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Names;
+import com.sun.tools.javac.util.Position;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.NotOwning;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A parser that can be used for many parses. The static methods of {@link JavacParse} set up
+ * javac's data structures (its {@code Context}, file manager, symbol table, and so forth) afresh
+ * for every call, and for a small input such as an expression that setup costs more than the parse
+ * itself. A JavacParseSession sets up those data structures once and reuses them, resetting only
+ * the per-parse state.
+ *
+ * <p>A JavacParseSession yields the same trees and diagnostics as the corresponding static methods
+ * of {@link JavacParse}.
+ *
+ * <p>A JavacParseSession is not thread-safe. Use one per thread.
+ *
+ * <p>A JavacParseSession should be closed when it is no longer needed.
+ */
+@InheritableMustCall("close")
+public final class JavacParseSession implements AutoCloseable {
+
+  // javac's Log remembers every source file it has reported on, and its name table remembers every
+  // identifier it has seen.  A session therefore discards its javac state and creates a new one
+  // after this many parses or this many characters of input, whichever comes first.  That bounds
+  // the memory that a long-lived session retains.
+
+  /** The number of parses after which the javac state is discarded. */
+  private static final int MAX_PARSES_PER_CONTEXT = 1000;
+
+  /** The number of characters of input after which the javac state is discarded. */
+  private static final long MAX_CHARS_PER_CONTEXT = 1L << 20;
+
+  /** Receives the diagnostics for the current parse. */
+  private final Collector collector;
+
+  /** The limits on each parse, or null if there are none. */
+  private final @Nullable ParseLimits limits;
+
+  /** The javac state used for parsing. */
+  @Owning private JavacState javacState;
+
+  /** The number of parses that have used {@link #javacState}. */
+  private int parsesInContext = 0;
+
+  /** The number of characters parsed using {@link #javacState}. */
+  private long charsInContext = 0;
+
+  /** Creates a JavacParseSession. */
+  public JavacParseSession() {
+    this(false, null);
+  }
+
+  /**
+   * Creates a JavacParseSession whose parses are subject to limits. A parse that exceeds a limit
+   * throws {@link ParseAbortedException}; so does a batch, such as {@link #parseExpressions}, if
+   * one of its parses does. After that, the session may be used for further parses.
+   *
+   * @param limits the limits on each parse
+   */
+  public JavacParseSession(ParseLimits limits) {
+    this(false, limits);
+  }
+
+  /**
+   * Creates a JavacParseSession.
+   *
+   * @param lockDiagnostics if true, the diagnostics that this session returns may be used by a
+   *     different thread than the one that is using the session; this is needed when the session is
+   *     shared among threads, as by {@link JavacParsePool}
+   * @param limits the limits on each parse, or null if there are none
+   */
+  @SuppressWarnings("builder:required.method.not.called") // javacState is not yet set
+  /*package-private*/ JavacParseSession(boolean lockDiagnostics, @Nullable ParseLimits limits) {
+    collector = new Collector(lockDiagnostics);
+    this.limits = limits;
+    javacState = new JavacState(collector, limits);
+  }
+
+  /**
+   * Parse a Java file.
+   *
+   * @param filename the file to parse
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseFile(String filename) throws IOException {
+    return parseFile(filename, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parse a Java file.
+   *
+   * @param filename the file to parse
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseFile(String filename, ParseOptions options)
+      throws IOException {
+    return parseCompilationUnit(new FileJavaFileObject(filename), options);
+  }
+
+  /**
+   * Parse a Java file's contents.
+   *
+   * @param javaCode the contents of a Java file
+   * @return a (parsed) compilation unit, which may include parse errors
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(String javaCode) {
+    return parseCompilationUnit(javaCode, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parse a Java file's contents.
+   *
+   * @param javaCode the contents of a Java file
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(
+      String javaCode, ParseOptions options) {
+    try {
+      return parseCompilationUnit(new StringJavaFileObject(javaCode), options);
+    } catch (IOException e) {
+      throw new UncheckedIOException("This can't happen", e);
+    }
+  }
+
+  /**
+   * Parse the contents of a JavaFileObject.
+   *
+   * @param source a JavaFileObject
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(JavaFileObject source)
+      throws IOException {
+    return parseCompilationUnit(source, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parse the contents of a JavaFileObject.
+   *
+   * @param source a JavaFileObject
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the file
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(
+      JavaFileObject source, ParseOptions options) throws IOException {
+    JavacParseResult<CompilationUnitTree> result =
+        parseWith(ParseKind.COMPILATION_UNIT, source, options, JavacParser::parseCompilationUnit);
+    ((JCCompilationUnit) result.tree()).sourcefile = source;
+    return result;
+  }
+
+  /**
+   * Parse the current contents of a SourceBuffer.
+   *
+   * @param source a SourceBuffer
+   * @return a (parsed) compilation unit, which may include parse errors; it is valid until {@code
+   *     source} is filled again
+   * @throws IllegalStateException if {@code source} is empty
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(SourceBuffer source) {
+    return parseCompilationUnit(source, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parse the current contents of a SourceBuffer.
+   *
+   * @param source a SourceBuffer
+   * @param options what the result retains besides the tree
+   * @return a (parsed) compilation unit, which may include parse errors; it is valid until {@code
+   *     source} is filled again
+   * @throws IllegalStateException if {@code source} is empty
+   */
+  public JavacParseResult<CompilationUnitTree> parseCompilationUnit(
+      SourceBuffer source, ParseOptions options) {
+    JavacParseResult<CompilationUnitTree> result;
+    try {
+      result = parseCompilationUnit(source.contents(), options);
+    } catch (IOException e) {
+      throw new UncheckedIOException("This can't happen", e);
+    }
+    List<Diagnostic<? extends JavaFileObject>> diagnostics = result.diagnostics();
+    if (diagnostics.isEmpty()) {
+      return result;
+    }
+    // A diagnostic reads its line, its column, and the source line that its string quotes from the
+    // buffer's array when first asked; ask now, while the buffer still holds the source.
+    List<Diagnostic<? extends JavaFileObject>> rendered = new ArrayList<>(diagnostics.size());
+    for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+      rendered.add(new RenderedDiagnostic<>(d));
+    }
+    return new JavacParseResult<>(result.tree(), rendered);
+  }
+
+  /**
+   * Parses a Java file's contents after an edit, reusing the result of parsing its contents before
+   * the edit. The edit replaces the {@code removedLength} characters that start at {@code offset}
+   * by {@code insertedText}.
+   *
+   * <p>If the edit lies within a single declaration (a type declaration, or a method, field, or
+   * initializer), the previous result's diagnostics all lie within that declaration, and the
+   * declaration's new text has no parse errors, then only that declaration is parsed again. Its new
+   * tree replaces its old one within the previous tree, the positions in the rest of the previous
+   * tree are adjusted, and the result's tree is the previous tree. Otherwise, the new contents are
+   * parsed as a whole. Either way, the result is the same as that of parsing the new contents as a
+   * whole, with the {@link ParseOptions} of the previous result. (Only a previous result that was
+   * parsed with {@link ParseOptions#DEFAULT}, and that no {@link JavacParseCache} shares, can be
+   * re-parsed partially.)
+   *
+   * <p>Because the previous tree may be modified, the previous result must not be used after this
+   * method is called. The previous result's source file must still yield the contents that were
+   * parsed; that is true of results of {@link #parseCompilationUnit(String)} and of this method,
+   * but not of {@link #parseFile} if the file has been changed. The result's source file has the
+   * same URI as the previous one.
+   *
+   * @param previous the result of parsing the contents before the edit
+   * @param offset the index of the first character that the edit replaces
+   * @param removedLength the number of characters that the edit removes
+   * @param insertedText the text that the edit inserts
+   * @return a (parsed) compilation unit for the edited contents, which may include parse errors
+   * @throws IOException if there is trouble reading the previous result's source file
+   * @throws IndexOutOfBoundsException if the edit is not within the previous contents
+   */
+  public JavacParseResult<CompilationUnitTree> reparseCompilationUnit(
+      JavacParseResult<CompilationUnitTree> previous,
+      int offset,
+      int removedLength,
+      String insertedText)
+      throws IOException {
+    return Reparser.reparse(this, previous, offset, removedLength, insertedText);
+  }
+
+  /**
+   * Parses one declaration of a Java file. See {@link #parseMember(JavaFileObject,
+   * MemberSelector)}.
+   *
+   * @param filename the file to parse
+   * @param selector the declaration to parse
+   * @return the parsed declaration, or null if the file has no declaration that {@code selector}
+   *     denotes
+   * @throws IOException if there is trouble reading the file
+   */
+  public @Nullable JavacParseResult<Tree> parseFileMember(String filename, MemberSelector selector)
+      throws IOException {
+    return parseMember(new FileJavaFileObject(filename), selector);
+  }
+
+  /**
+   * Parses one declaration of a Java file's contents. See {@link #parseMember(JavaFileObject,
+   * MemberSelector)}.
+   *
+   * @param javaCode the contents of a Java file
+   * @param selector the declaration to parse
+   * @return the parsed declaration, or null if {@code javaCode} has no declaration that {@code
+   *     selector} denotes
+   */
+  public @Nullable JavacParseResult<Tree> parseMember(String javaCode, MemberSelector selector) {
+    try {
+      return parseMember(new StringJavaFileObject(javaCode), selector);
+    } catch (IOException e) {
+      throw new UncheckedIOException("This can't happen", e);
+    }
+  }
+
+  /**
+   * Parses one declaration of the contents of a JavaFileObject: the type declaration or member that
+   * a selector denotes. If several members match, such as overloaded methods when the selector has
+   * no parameter types, the first one is returned.
+   *
+   * <p>A lexical pre-scan finds the text of the declaration, and only that text and the headers of
+   * the type declarations that enclose it are parsed. The result's tree is the same as the
+   * corresponding subtree of {@link #parseCompilationUnit(JavaFileObject)}'s, and its positions are
+   * positions in the whole source. Its diagnostics are those of the parsed text only. The tree's
+   * enclosing compilation unit is not returned, and has no end positions that a client can use.
+   *
+   * @param source a JavaFileObject
+   * @param selector the declaration to parse
+   * @return the parsed declaration, or null if {@code source} has no declaration that {@code
+   *     selector} denotes
+   * @throws IOException if there is trouble reading the file
+   */
+  public @Nullable JavacParseResult<Tree> parseMember(
+      JavaFileObject source, MemberSelector selector) throws IOException {
+    return MemberParser.parseMember(this, source, selector);
+  }
+
+  /**
+   * Parses the smallest declaration of a Java file that encloses a range. See {@link
+   * #parseRange(JavaFileObject, int, int)}.
+   *
+   * @param filename the file to parse
+   * @param start the index of the first character of the range
+   * @param end the index after the last character of the range
+   * @return the parsed declaration, or null if no type declaration encloses the range
+   * @throws IOException if there is trouble reading the file
+   * @throws IndexOutOfBoundsException if the range is not within the file's contents
+   */
+  public @Nullable JavacParseResult<Tree> parseFileRange(String filename, int start, int end)
+      throws IOException {
+    return parseRange(new FileJavaFileObject(filename), start, end);
+  }
+
+  /**
+   * Parses the smallest declaration of a Java file's contents that encloses a range. See {@link
+   * #parseRange(JavaFileObject, int, int)}.
+   *
+   * @param javaCode the contents of a Java file
+   * @param start the index of the first character of the range
+   * @param end the index after the last character of the range
+   * @return the parsed declaration, or null if no type declaration encloses the range
+   * @throws IndexOutOfBoundsException if the range is not within {@code javaCode}
+   */
+  public @Nullable JavacParseResult<Tree> parseRange(String javaCode, int start, int end) {
+    try {
+      return parseRange(new StringJavaFileObject(javaCode), start, end);
+    } catch (IOException e) {
+      throw new UncheckedIOException("This can't happen", e);
+    }
+  }
+
+  /**
+   * Parses the smallest declaration of the contents of a JavaFileObject that encloses a range: a
+   * type declaration, or a method, field, or initializer of one. A declaration encloses the range
+   * if the range lies within the declaration's start and end positions.
+   *
+   * <p>As with {@link #parseMember(JavaFileObject, MemberSelector)}, only the text of the
+   * declaration and the headers of the type declarations that enclose it are parsed, and positions
+   * are positions in the whole source.
+   *
+   * @param source a JavaFileObject
+   * @param start the index of the first character of the range
+   * @param end the index after the last character of the range
+   * @return the parsed declaration, or null if no type declaration encloses the range
+   * @throws IOException if there is trouble reading the file
+   * @throws IndexOutOfBoundsException if the range is not within the contents of {@code source}
+   */
+  public @Nullable JavacParseResult<Tree> parseRange(JavaFileObject source, int start, int end)
+      throws IOException {
+    return MemberParser.parseRange(this, source, start, end);
+  }
+
+  /**
+   * Returns the tokens of a Java file, without parsing it. See {@link #lex(JavaFileObject)}.
+   *
+   * @param filename the file to lex
+   * @return a cursor over the tokens of the file
+   * @throws IOException if there is trouble reading the file
+   */
+  public TokenCursor lexFile(String filename) throws IOException {
+    return lex(new FileJavaFileObject(filename));
+  }
+
+  /**
+   * Returns the tokens of a Java file's contents, without parsing it. See {@link
+   * #lex(JavaFileObject)}.
+   *
+   * @param javaCode the contents of a Java file
+   * @return a cursor over the tokens of {@code javaCode}
+   */
+  public TokenCursor lex(String javaCode) {
+    try {
+      return lex(new StringJavaFileObject(javaCode));
+    } catch (IOException e) {
+      throw new UncheckedIOException("This can't happen", e);
+    }
+  }
+
+  /**
+   * Returns the tokens of the contents of a JavaFileObject, without parsing it. The tokens are read
+   * as they are requested, using this session's javac state, and only the current one is retained.
+   * The cursor remains usable after this session is used for other parses or closed.
+   *
+   * @param source a JavaFileObject
+   * @return a cursor over the tokens of {@code source}
+   * @throws IOException if there is trouble reading the file
+   */
+  public TokenCursor lex(JavaFileObject source) throws IOException {
+    CharSequence content = source.getCharContent(false);
+    JavacState state = prepare(content.length());
+    Scanner scanner;
+    synchronized (state) {
+      scanner = state.scannerFactory.newScanner(content, false);
+    }
+    return new TokenCursor(state, state.log, scanner, source);
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @return the parsed type declaration
+   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
+   *     contains a top-level ";"
+   */
+  public JavacParseResult<ClassTree> parseTypeDeclaration(String classSource) {
+    return parseTypeDeclaration(classSource, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.).
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @param options what the result retains besides the tree; the tables it retains belong to the
+   *     compilation unit that encloses the type declaration, which is not returned
+   * @return the parsed type declaration
+   * @throws IllegalArgumentException if the source is not parsable as a type declaration or
+   *     contains a top-level ";"
+   */
+  public JavacParseResult<ClassTree> parseTypeDeclaration(
+      String classSource, ParseOptions options) {
+    JavacParseResult<CompilationUnitTree> parsedCU = parseCompilationUnit(classSource, options);
+    SnippetResult.Reason reason = typeDeclarationRejection(parsedCU);
+    if (reason == null) {
+      return new JavacParseResult<>(
+          (ClassTree) parsedCU.tree().getTypeDecls().get(0), parsedCU.diagnostics());
+    }
+    List<? extends Tree> decls = parsedCU.tree().getTypeDecls();
+    String msg =
+        switch (reason) {
+          case PARSE_ERROR -> {
+            String errors = parsedCU.getParseErrorMessages();
+            if (errors.isEmpty()) {
+              throw new Error("Has parse errors, but empty message: " + parsedCU.diagnostics());
+            }
+            yield "Invalid type declaration (" + errors + "): ";
+          }
+          case HAS_IMPORTS -> "Type declaration source code has imports: ";
+          case HAS_MODULE -> "Type declaration source code has a module declaration: ";
+          case HAS_PACKAGE -> "Type declaration source code has a package declaration: ";
+          case TOP_LEVEL_SEMICOLON -> "Type declaration source code contains a top-level `;`: ";
+          case WRONG_KIND ->
+              "source code should be a type declaration but is "
+                  + decls.get(0).getClass().getSimpleName()
+                  + ":";
+          default ->
+              "Type declaration source code has %d top-level forms, not 1: "
+                  .formatted(decls.size());
+        };
+    throw new IllegalArgumentException(msg + classSource);
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.), without throwing
+   * an exception if it is invalid.
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @return the parsed type declaration, or a failure if {@link #parseTypeDeclaration(String)}
+   *     would throw {@code IllegalArgumentException}
+   */
+  public SnippetResult<ClassTree> tryParseTypeDeclaration(String classSource) {
+    return tryParseTypeDeclaration(classSource, ParseOptions.DEFAULT);
+  }
+
+  /**
+   * Parses the given Java type declaration (class, interface, enum, record, etc.), without throwing
+   * an exception if it is invalid.
+   *
+   * @param classSource the string representation of a Java type declaration
+   * @param options what the tree retains; see {@link #parseTypeDeclaration(String, ParseOptions)}
+   * @return the parsed type declaration, or a failure if {@link #parseTypeDeclaration(String,
+   *     ParseOptions)} would throw {@code IllegalArgumentException}
+   */
+  public SnippetResult<ClassTree> tryParseTypeDeclaration(
+      String classSource, ParseOptions options) {
+    JavacParseResult<CompilationUnitTree> parsedCU = parseCompilationUnit(classSource, options);
+    SnippetResult.Reason reason = typeDeclarationRejection(parsedCU);
+    if (reason == null) {
+      return new SnippetResult.Success<>((ClassTree) parsedCU.tree().getTypeDecls().get(0));
+    }
+    return new SnippetResult.Failure<>(reason, parsedCU.diagnostics());
+  }
+
+  /**
+   * Returns why a parsed compilation unit is not a single type declaration.
+   *
+   * @param parsedCU the result of parsing a type declaration as a compilation unit
+   * @return why {@code parsedCU} is not a single type declaration, or null if it is one
+   */
+  private static SnippetResult.@Nullable Reason typeDeclarationRejection(
+      JavacParseResult<CompilationUnitTree> parsedCU) {
+    if (parsedCU.hasParseError()) {
+      return SnippetResult.Reason.PARSE_ERROR;
+    }
+
+    CompilationUnitTree cu = parsedCU.tree();
+    if (!cu.getImports().isEmpty()) {
+      return SnippetResult.Reason.HAS_IMPORTS;
+    }
+    if (cu.getModule() != null) {
+      return SnippetResult.Reason.HAS_MODULE;
+    }
+    if (cu.getPackage() != null) {
+      return SnippetResult.Reason.HAS_PACKAGE;
+    }
+
+    List<? extends Tree> decls = cu.getTypeDecls();
+    for (Tree decl : decls) {
+      if (decl instanceof EmptyStatementTree) {
+        return SnippetResult.Reason.TOP_LEVEL_SEMICOLON;
+      }
+    }
+    if (decls.isEmpty()) {
+      return SnippetResult.Reason.NO_DECLARATION;
+    }
+    if (decls.size() > 1) {
+      return SnippetResult.Reason.EXTRA_DECLARATIONS;
+    }
+    if (!(decls.get(0) instanceof ClassTree)) {
+      return SnippetResult.Reason.WRONG_KIND;
+    }
+    return null;
+  }
+
+  /**
+   * Parses the given Java method or annotation type element.
+   *
+   * @param methodSource the string representation of a Java method or annotation type element
+   * @return the parsed method
+   * @throws IllegalArgumentException if the method source does not parse
+   */
+  public MethodTree parseMethod(String methodSource) {
+    if (tryParseMethod(methodSource) instanceof SnippetResult.Success<MethodTree> success) {
+      return success.tree();
+    }
+    throw new IllegalArgumentException("Invalid method: " + methodSource);
+  }
+
+  /**
+   * Parses the given Java method or annotation type element, without throwing an exception if it is
+   * invalid.
+   *
+   * @param methodSource the string representation of a Java method or annotation type element
+   * @return the parsed method, or a failure if {@link #parseMethod(String)} would throw {@code
+   *     IllegalArgumentException}
+   */
+  public SnippetResult<MethodTree> tryParseMethod(String methodSource) {
+    if (SnippetParser.canParseMethod()) {
+      // The ";" makes it optional after a method that has no body, as in a class body.
+      return trySnippet(
+          ParseKind.METHOD, methodSource + ";", (parser, names) -> parser.method(names.empty));
+    }
+    String dummySource = "class DummyClass { " + methodSource + "; }";
+    SnippetResult<ClassTree> typeDecl = tryParseTypeDeclaration(dummySource);
+    if (typeDecl instanceof SnippetResult.Failure<ClassTree> failure) {
+      // Any rejection other than a parse error means that the method source ended the class body,
+      // as does "} class D {".
+      SnippetResult.Reason reason =
+          failure.reason() == SnippetResult.Reason.PARSE_ERROR
+              ? SnippetResult.Reason.PARSE_ERROR
+              : SnippetResult.Reason.TRAILING_INPUT;
+      return new SnippetResult.Failure<>(reason, failure.diagnostics());
+    }
+    ClassTree dummyClass = ((SnippetResult.Success<ClassTree>) typeDecl).tree();
+    List<? extends Tree> members = dummyClass.getMembers();
+    SnippetResult.Reason reason;
+    if (members.isEmpty()) {
+      reason = SnippetResult.Reason.NO_DECLARATION;
+    } else if (members.size() > 1) {
+      // This was an injection attack, such as "0; int x = 1".
+      reason = SnippetResult.Reason.EXTRA_DECLARATIONS;
+    } else if (members.get(0) instanceof MethodTree mt) {
+      return new SnippetResult.Success<>(mt);
+    } else {
+      reason = SnippetResult.Reason.WRONG_KIND;
+    }
+    return new SnippetResult.Failure<>(reason, List.of());
+  }
+
+  /**
+   * Parses the given Java expression string, such as "foo.bar()" or "1 + 2".
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression
+   * @throws IllegalArgumentException if the expression source does not parse
+   */
+  public ExpressionTree parseExpression(String expressionSource) {
+    return parseSnippet(
+        ParseKind.EXPRESSION,
+        expressionSource,
+        "expression",
+        (parser, names) -> parser.expression());
+  }
+
+  /**
+   * Parses the given Java type use, such as "int", "String", or "List&lt;? extends Number&gt;".
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use
+   * @throws IllegalArgumentException if the type source does not parse
+   */
+  public Tree parseTypeUse(String typeSource) {
+    return parseSnippet(
+        ParseKind.TYPE_USE, typeSource, "type use", (parser, names) -> parser.typeUse());
+  }
+
+  /**
+   * Parses the given Java expression string, without throwing an exception if it is invalid.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the parsed expression, or a failure if {@link #parseExpression(String)} would throw
+   *     {@code IllegalArgumentException}
+   */
+  public SnippetResult<ExpressionTree> tryParseExpression(String expressionSource) {
+    return trySnippet(
+        ParseKind.EXPRESSION, expressionSource, (parser, names) -> parser.expression());
+  }
+
+  /**
+   * Parses the given Java type use, without throwing an exception if it is invalid.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the parsed type use, or a failure if {@link #parseTypeUse(String)} would throw {@code
+   *     IllegalArgumentException}
+   */
+  public SnippetResult<Tree> tryParseTypeUse(String typeSource) {
+    return trySnippet(ParseKind.TYPE_USE, typeSource, (parser, names) -> parser.typeUse());
+  }
+
+  /**
+   * Parses each of the given Java expression strings, as {@link #parseExpression(String)} does. All
+   * of the parses share this session's javac state.
+   *
+   * @param expressionSources the string representations of Java expressions
+   * @return the result for each expression, in the same order; an expression that does not parse
+   *     yields a {@link SnippetResult.Failure}
+   */
+  public List<SnippetResult<ExpressionTree>> parseExpressions(List<String> expressionSources) {
+    return parseSnippets(
+        ParseKind.EXPRESSION, expressionSources, (parser, names) -> parser.expression());
+  }
+
+  /**
+   * Parses each of the given Java type uses, as {@link #parseTypeUse(String)} does. All of the
+   * parses share this session's javac state.
+   *
+   * @param typeSources the string representations of Java type uses
+   * @return the result for each type use, in the same order; a type use that does not parse yields
+   *     a {@link SnippetResult.Failure}
+   */
+  public List<SnippetResult<Tree>> parseTypeUses(List<String> typeSources) {
+    return parseSnippets(ParseKind.TYPE_USE, typeSources, (parser, names) -> parser.typeUse());
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid Java compilation unit: that is, if
+   * {@link #parseCompilationUnit(String)} would report no errors. This is faster than parsing,
+   * because it stops at the first error.
+   *
+   * @param javaCode the contents of a Java file
+   * @return true if {@code javaCode} is a syntactically valid compilation unit
+   */
+  public boolean isValidCompilationUnit(String javaCode) {
+    return validateCompilationUnit(javaCode) == null;
+  }
+
+  /**
+   * Returns the first syntax error in the given Java compilation unit: the first error that {@link
+   * #parseCompilationUnit(String)} would report. This is faster than parsing, because it stops at
+   * the first error and returns no tree.
+   *
+   * @param javaCode the contents of a Java file
+   * @return the first syntax error in {@code javaCode}, or null if it is valid
+   */
+  public @Nullable Diagnostic<? extends JavaFileObject> validateCompilationUnit(String javaCode) {
+    return validate(ParseKind.COMPILATION_UNIT, javaCode, JavacParser::parseCompilationUnit);
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid Java expression: that is, if {@link
+   * #parseExpression(String)} would not throw an exception. This is faster than parsing, because it
+   * stops at the first error and constructs no exception.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return true if {@code expressionSource} is a syntactically valid expression
+   */
+  public boolean isValidExpression(String expressionSource) {
+    return validateExpression(expressionSource) == null;
+  }
+
+  /**
+   * Returns the first syntax error in the given Java expression string. This is faster than
+   * parsing, because it stops at the first error and returns no tree.
+   *
+   * @param expressionSource the string representation of a Java expression
+   * @return the first syntax error in {@code expressionSource}, or null if it is a valid expression
+   */
+  public @Nullable Diagnostic<? extends JavaFileObject> validateExpression(
+      String expressionSource) {
+    return validate(ParseKind.EXPRESSION, expressionSource, SnippetParser::expression);
+  }
+
+  /**
+   * Returns true if the given string is a syntactically valid Java type use: that is, if {@link
+   * #parseTypeUse(String)} would not throw an exception. This is faster than parsing, because it
+   * stops at the first error and constructs no exception.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return true if {@code typeSource} is a syntactically valid type use
+   */
+  public boolean isValidTypeUse(String typeSource) {
+    return validateTypeUse(typeSource) == null;
+  }
+
+  /**
+   * Returns the first syntax error in the given Java type use. This is faster than parsing,
+   * because it stops at the first error and returns no tree.
+   *
+   * @param typeSource the string representation of a Java type use
+   * @return the first syntax error in {@code typeSource}, or null if it is a valid type use
+   */
+  public @Nullable Diagnostic<? extends JavaFileObject> validateTypeUse(String typeSource) {
+    return validate(ParseKind.TYPE_USE, typeSource, SnippetParser::typeUse);
+  }
+
+  /**
+   * Parses Java code until its first error, if any. The parse retains no doc comments, end
+   * positions, or line map, and its tree is discarded.
+   *
+   * @param kind the kind of the code
+   * @param source the code
+   * @param parserFn the parsing operation to apply to the parser; it returns null if the code is
+   *     not of the expected kind
+   * @return the first error in the code, or null if it has none
+   */
+  private @Nullable Diagnostic<? extends JavaFileObject> validate(
+      ParseKind kind, String source, Function<SnippetParser, @Nullable JCTree> parserFn) {
+    ParseGuard guard = ParseGuard.start(limits);
+    if (guard != null) {
+      guard.checkLength(source.length());
+    }
+    ParseMeter meter = ParseMeter.start(kind);
+    JavacState state = prepare(source.length());
+    long setupNanos = state.takeSetupNanos();
+    FirstError firstError = new FirstError();
+    synchronized (state) {
+      state.log.useSource(new StringJavaFileObject(source));
+      state.scannerFactory.meter = meter;
+      state.scannerFactory.guard = guard;
+      firstError.push(state.log);
+      try {
+        if (meter != null) {
+          meter.parseStart();
+        }
+        SnippetParser parser =
+            new SnippetParser(
+                state.parserFactory, state.scannerFactory.newScanner(source, false), false, false);
+        try {
+          if (parserFn.apply(parser) == null) {
+            parser.reportRejected(state.log);
+          }
+        } catch (FirstError.Stop e) {
+          // The parse stopped at its first error.
+        }
+        if (meter != null) {
+          meter.parseDone();
+        }
+      } catch (StackOverflowError e) {
+        throw guarded(state, guard, e);
+      } finally {
+        state.log.popDiagnosticHandler(firstError);
+        state.scannerFactory.meter = null;
+        state.scannerFactory.guard = null;
+      }
+    }
+    JCDiagnostic error = firstError.error;
+    if (meter != null) {
+      meter.report(setupNanos, source.length(), null, error == null ? 0 : 1);
+    }
+    return error == null ? null : collector.wrap(error);
+  }
+
+  /**
+   * Parses each of the given snippets with {@link #trySnippet}.
+   *
+   * @param <T> the type of parse tree produced
+   * @param kind the kind of the snippets
+   * @param sources the snippets
+   * @param parserFn the parsing operation to apply to each snippet's parser
+   * @return the result for each snippet, in the same order
+   */
+  private <T extends Tree> List<SnippetResult<T>> parseSnippets(
+      ParseKind kind,
+      List<String> sources,
+      BiFunction<SnippetParser, Names, @Nullable T> parserFn) {
+    List<SnippetResult<T>> result = new ArrayList<>(sources.size());
+    for (String source : sources) {
+      result.add(trySnippet(kind, source, parserFn));
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Parses a snippet of Java code with a {@link SnippetParser}, which requires that the whole
+   * snippet be consumed.
+   *
+   * @param <T> the type of parse tree produced
+   * @param kind the kind of the snippet
+   * @param source the snippet
+   * @param description the kind of snippet, for the exception message
+   * @param parserFn the parsing operation to apply to the parser; it returns null if the snippet is
+   *     not of the expected kind
+   * @return the parse tree
+   * @throws IllegalArgumentException if the snippet does not parse
+   */
+  private <T extends Tree> T parseSnippet(
+      ParseKind kind,
+      String source,
+      String description,
+      BiFunction<SnippetParser, Names, @Nullable T> parserFn) {
+    if (trySnippet(kind, source, parserFn) instanceof SnippetResult.Success<T> success) {
+      return success.tree();
+    }
+    throw new IllegalArgumentException("Invalid " + description + ": " + source);
+  }
+
+  /**
+   * Parses a snippet of Java code with a {@link SnippetParser}, which requires that the whole
+   * snippet be consumed.
+   *
+   * @param <T> the type of parse tree produced
+   * @param kind the kind of the snippet
+   * @param source the snippet
+   * @param parserFn the parsing operation to apply to the parser; it returns null if the snippet is
+   *     not of the expected kind
+   * @return the parse tree, or a failure if the snippet does not parse
+   */
+  private <T extends Tree> SnippetResult<T> trySnippet(
+      ParseKind kind, String source, BiFunction<SnippetParser, Names, @Nullable T> parserFn) {
+    ParseGuard guard = ParseGuard.start(limits);
+    if (guard != null) {
+      guard.checkLength(source.length());
+    }
+    ParseMeter meter = ParseMeter.start(kind);
+    JavacState state = prepare(source.length());
+    long setupNanos = state.takeSetupNanos();
+    @Nullable T tree;
+    // Why the snippet was rejected, if it was.
+    SnippetResult.Reason rejection = SnippetResult.Reason.PARSE_ERROR;
+    synchronized (state) {
+      state.log.useSource(new StringJavaFileObject(source));
+      state.scannerFactory.meter = meter;
+      state.scannerFactory.guard = guard;
+      try {
+        if (meter != null) {
+          meter.parseStart();
+        }
+        SnippetParser parser =
+            new SnippetParser(
+                state.parserFactory, state.scannerFactory.newScanner(source, true), true, false);
+        tree = parserFn.apply(parser, state.names);
+        if (tree == null) {
+          rejection = parser.rejection();
+        }
+        if (meter != null) {
+          meter.parseDone();
+        }
+      } catch (StackOverflowError e) {
+        throw guarded(state, guard, e);
+      } finally {
+        state.scannerFactory.meter = null;
+        state.scannerFactory.guard = null;
+      }
+    }
+    List<Diagnostic<? extends JavaFileObject>> diagnostics = collector.takeDiagnostics();
+    if (meter != null) {
+      meter.report(setupNanos, source.length(), (JCTree) tree, diagnostics.size());
+    }
+    boolean hasError = false;
+    for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+      hasError |= d.getKind() == Diagnostic.Kind.ERROR;
+    }
+    if (hasError) {
+      return new SnippetResult.Failure<>(SnippetResult.Reason.PARSE_ERROR, diagnostics);
+    } else if (tree == null) {
+      return new SnippetResult.Failure<>(rejection, diagnostics);
+    }
+    return new SnippetResult.Success<>(tree);
+  }
+
+  /**
+   * Creates a javac parser for {@code source} and applies {@code parserFn} to it, returning the
+   * result.
+   *
+   * @param <T> the type of parse tree produced
+   * @param kind what is parsed, for the {@link ParseListener}s
+   * @param source the source to parse
+   * @param parserFn the parsing operation to apply to the parser
+   * @return the parse result
+   * @throws IOException if there is trouble reading the file
+   */
+  /*package-private*/ <T extends Tree> JavacParseResult<T> parseWith(
+      ParseKind kind, JavaFileObject source, Function<JavacParser, T> parserFn) throws IOException {
+    return parseWith(kind, source, ParseOptions.DEFAULT, parserFn);
+  }
+
+  /**
+   * Creates a javac parser for {@code source} and applies {@code parserFn} to it, returning the
+   * result.
+   *
+   * @param <T> the type of parse tree produced
+   * @param kind what is parsed, for the {@link ParseListener}s
+   * @param source the source to parse
+   * @param options what the parser retains besides the tree
+   * @param parserFn the parsing operation to apply to the parser
+   * @return the parse result
+   * @throws IOException if there is trouble reading the file
+   */
+  /*package-private*/ <T extends Tree> JavacParseResult<T> parseWith(
+      ParseKind kind,
+      JavaFileObject source,
+      ParseOptions options,
+      Function<JavacParser, T> parserFn)
+      throws IOException {
+    ParseGuard guard = ParseGuard.start(limits);
+    ParseMeter meter = ParseMeter.start(kind);
+    CharSequence content;
+    if (meter == null) {
+      content = source.getCharContent(false);
+    } else {
+      long readStart = System.nanoTime();
+      content = source.getCharContent(false);
+      meter.readDone(readStart);
+    }
+    return parseWith(
+        kind,
+        source,
+        content.length(),
+        guard,
+        meter,
+        state ->
+            switch (options.methodBodies()) {
+              case PARSE ->
+                  state.parserFactory.newParser(
+                      content, options.docComments(), options.endPositions(), options.lineMap());
+              case SKIP ->
+                  new SkeletonParser(
+                      state.parserFactory,
+                      state.scannerFactory.newScanner(content, options.docComments()),
+                      options,
+                      null);
+              case LAZY ->
+                  new SkeletonParser(
+                      state.parserFactory,
+                      state.scannerFactory.newScanner(content, options.docComments()),
+                      options,
+                      state);
+            },
+        parserFn);
+  }
+
+  /**
+   * Parses a compilation unit from parts of its contents: the characters in the given gaps are
+   * skipped as if they were white space, without being lexed. The positions in the result are those
+   * of the whole contents, so its diagnostics have the right line numbers. The parse keeps end
+   * positions and doc comments, but not the line map, which the caller can compute if it needs it.
+   *
+   * @param source the source file, whose contents are {@code content}
+   * @param content the contents of {@code source}
+   * @param length the number of characters of {@code content} to scan; the rest is skipped too
+   * @param gaps the start and end of each gap, in increasing order; each gap starts where a token
+   *     or the contents start
+   * @return the parse result, whose tree contains only the declarations in the parts
+   * @throws IOException if there is trouble reading the file
+   */
+  @SuppressWarnings("index") // the gaps come in pairs
+  /*package-private*/ JavacParseResult<CompilationUnitTree> parseParts(
+      JavaFileObject source, char[] content, int length, int[] gaps) throws IOException {
+    ParseGuard guard = ParseGuard.start(limits);
+    ParseMeter meter = ParseMeter.start(ParseKind.COMPILATION_UNIT);
+    int partsLength = length;
+    for (int i = 0; i < gaps.length; i += 2) {
+      partsLength -= Math.min(gaps[i + 1], length) - Math.min(gaps[i], length);
+    }
+    return parseWith(
+        ParseKind.COMPILATION_UNIT,
+        source,
+        partsLength,
+        guard,
+        meter,
+        // javac's parser computes the line map from the whole contents.
+        state ->
+            new JavacParser(
+                state.parserFactory,
+                state.scannerFactory.newScanner(content, length, true, gaps),
+                true,
+                false,
+                true) {},
+        JavacParser::parseCompilationUnit);
+  }
+
+  /**
+   * Creates a javac parser for {@code source} and applies {@code parserFn} to it, returning the
+   * result.
+   *
+   * @param <T> the type of parse tree produced
+   * @param kind what is parsed, for the {@link ParseListener}s
+   * @param source the source to parse
+   * @param length the number of characters that are parsed
+   * @param guard the guard of the parse, or null if it has no limits
+   * @param meter the meter of the parse, or null if it is not metered
+   * @param newParser creates the parser, given the javac state
+   * @param parserFn the parsing operation to apply to the parser
+   * @return the parse result
+   */
+  private <T extends Tree> JavacParseResult<T> parseWith(
+      ParseKind kind,
+      JavaFileObject source,
+      int length,
+      @Nullable ParseGuard guard,
+      @Nullable ParseMeter meter,
+      Function<JavacState, JavacParser> newParser,
+      Function<JavacParser, T> parserFn) {
+    if (guard != null) {
+      guard.checkLength(length);
+    }
+    JavacState state = prepare(length);
+    long setupNanos = state.takeSetupNanos();
+    T tree;
+    JavacParser parser;
+    synchronized (state) {
+      state.log.useSource(source);
+      state.scannerFactory.meter = meter;
+      state.scannerFactory.guard = guard;
+      try {
+        if (meter != null) {
+          meter.parseStart();
+        }
+        parser = newParser.apply(state);
+        tree = parserFn.apply(parser);
+        if (meter != null) {
+          meter.parseDone();
+        }
+      } catch (StackOverflowError e) {
+        throw guarded(state, guard, e);
+      } finally {
+        state.scannerFactory.meter = null;
+        state.scannerFactory.guard = null;
+      }
+    }
+    List<Diagnostic<? extends JavaFileObject>> diagnostics = collector.takeDiagnostics();
+    if (parser instanceof SkeletonParser skeletonParser) {
+      diagnostics = skeletonParser.withoutSkippedDiagnostics(diagnostics);
+    }
+    if (meter != null) {
+      meter.report(setupNanos, length, (JCTree) tree, diagnostics.size());
+    }
+    return new JavacParseResult<>(tree, diagnostics);
+  }
+
+  /**
+   * Returns the exception to throw when a parse with limits overflows the stack. For a parse
+   * without limits, rethrows the error instead. Either way, the javac state is not used for
+   * further parses, because the overflow may have left it inconsistent.
+   *
+   * @param state the javac state that the parse used
+   * @param guard the guard of the parse, or null if it has no limits
+   * @param e the error that the parser threw
+   * @return the exception to throw instead of {@code e}
+   */
+  private static ParseAbortedException guarded(
+      JavacState state, @Nullable ParseGuard guard, StackOverflowError e) {
+    state.overflowed = true;
+    if (guard == null) {
+      throw e;
+    }
+    return guard.stackOverflow(e);
+  }
+
+  /**
+   * Parses the body of a method in a compilation unit that was parsed without method bodies (see
+   * {@link ParseOptions#methodBodies}). The body's tree has the positions that it would have in a
+   * parse of the whole compilation unit, and its end positions and doc comments are recorded in the
+   * compilation unit's tables, as the compilation unit's options dictate.
+   *
+   * <p>If the body was skipped ({@link ParseOptions.MethodBodies#SKIP}), the result is a new tree,
+   * and the method's tree is not changed; its body remains a placeholder. Because this method
+   * modifies the compilation unit's tables, it must not be called concurrently for the same
+   * compilation unit.
+   *
+   * <p>If the body is lazy ({@link ParseOptions.MethodBodies#LAZY}), the result is the method's
+   * body, which is parsed if it has not been parsed yet. This method may be called from any thread,
+   * concurrently with other uses of the compilation unit, and even after the session that parsed
+   * the compilation unit is closed.
+   *
+   * <p>If the body was parsed with the rest of the compilation unit, the result is the body, with
+   * no diagnostics.
+   *
+   * <p>The compilation unit's source file must still yield the contents that were parsed.
+   *
+   * @param compilationUnit a compilation unit
+   * @param method a method in {@code compilationUnit} that has a body
+   * @return the method's body, which may include parse errors
+   * @throws IOException if there is trouble reading the compilation unit's source file
+   * @throws IllegalArgumentException if the method has no body
+   */
+  public JavacParseResult<BlockTree> parseBody(
+      CompilationUnitTree compilationUnit, MethodTree method) throws IOException {
+    JCBlock body = ((JCMethodDecl) method).body;
+    if (body == null) {
+      throw new IllegalArgumentException("Method has no body: " + method.getName());
+    }
+    if (body instanceof LazyBlock lazyBody) {
+      return lazyBody.parse();
+    }
+    if (!(body instanceof SkippedBlock skippedBody)) {
+      return new JavacParseResult<>(body, List.of());
+    }
+    return prepare(skippedBody.endpos - skippedBody.pos)
+        .parseBody((JCCompilationUnit) compilationUnit, skippedBody);
+  }
+
+  /**
+   * Returns an array whose first {@code content.length()} characters are the contents of a source
+   * file. The array is not copied if the contents are a heap CharBuffer, as those of a file or a
+   * {@link SourceBuffer} are, or if the source file is a {@link StringJavaFileObject}, which copies
+   * its contents only once. The caller must not modify the result.
+   *
+   * @param source a source file
+   * @param content the contents of {@code source}
+   * @return the characters of {@code content}, followed by any number of other characters
+   */
+  private static char[] contentArray(JavaFileObject source, CharSequence content) {
+    if (content instanceof CharBuffer buffer
+        && buffer.hasArray()
+        && buffer.arrayOffset() == 0
+        && buffer.position() == 0) {
+      return buffer.array();
+    }
+    if (source instanceof StringJavaFileObject stringSource) {
+      return stringSource.toCharArray();
+    }
+    return content.toString().toCharArray();
+  }
+
+  /**
+   * Returns a scanner for the given text, which must not contain lexical errors.
+   *
+   * @param text the text to scan
+   * @return a scanner for {@code text}
+   */
+  /*package-private*/ Scanner newScanner(String text) {
+    return javacState.scannerFactory.newScanner(text, false);
+  }
+
+  /**
+   * Returns a function that parses doc comments, which may be called from any thread, even after
+   * this session is closed.
+   *
+   * @return a function that parses doc comments
+   */
+  /*package-private*/ BiFunction<JavaFileObject, Comment, DCDocComment> docCommentParser() {
+    return javacState::parseDocComment;
+  }
+
+  /**
+   * Readies the javac state for a new parse, replacing it if it has been used too much or a parse
+   * overflowed the stack.
+   *
+   * @param length the length of the input that is about to be parsed
+   * @return the javac state to use for the parse
+   */
+  @SuppressWarnings(
+      "builder:missing.creates.mustcall.for") // javacState is closed before being overwritten
+  @NotOwning
+  private JavacState prepare(int length) {
+    if (javacState.overflowed
+        || parsesInContext >= MAX_PARSES_PER_CONTEXT
+        || charsInContext >= MAX_CHARS_PER_CONTEXT) {
+      javacState.close();
+      javacState = new JavacState(collector, limits);
+      parsesInContext = 0;
+      charsInContext = 0;
+    }
+    parsesInContext++;
+    charsInContext += length;
+    javacState.reset();
+    collector.takeDiagnostics();
+    return javacState;
+  }
+
+  @Override
+  @EnsuresCalledMethods(value = "this.javacState", methods = "close")
+  public void close(@GuardSatisfied JavacParseSession this) {
+    javacState.close();
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Helper classes
+  //
+
+  /** Collects the diagnostics of one parse. */
+  private static final class Collector implements DiagnosticListener<JavaFileObject> {
+
+    /** The diagnostics reported since the last call to {@link #takeDiagnostics}. */
+    private final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+
+    /** If true, wrap each diagnostic in a {@link LockedDiagnostic}. */
+    private final boolean lockDiagnostics;
+
+    /**
+     * Creates a Collector.
+     *
+     * @param lockDiagnostics if true, wrap each diagnostic in a {@link LockedDiagnostic}
+     */
+    Collector(boolean lockDiagnostics) {
+      this.lockDiagnostics = lockDiagnostics;
+    }
+
+    @Override
+    public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+      diagnostics.add(wrap(diagnostic));
+    }
+
+    /**
+     * Returns a diagnostic as this collector records it.
+     *
+     * @param diagnostic a diagnostic
+     * @return {@code diagnostic}, wrapped in a {@link LockedDiagnostic} if this collector does so
+     */
+    <S> Diagnostic<S> wrap(Diagnostic<S> diagnostic) {
+      return lockDiagnostics ? new LockedDiagnostic<>(diagnostic, this) : diagnostic;
+    }
+
+    /**
+     * Returns the diagnostics reported since the last call, and forgets them.
+     *
+     * @return the diagnostics reported since the last call
+     */
+    List<Diagnostic<? extends JavaFileObject>> takeDiagnostics() {
+      if (diagnostics.isEmpty()) {
+        return ParseDiagnostics.EMPTY;
+      }
+      List<Diagnostic<? extends JavaFileObject>> result = ParseDiagnostics.of(diagnostics);
+      diagnostics.clear();
+      return result;
+    }
+  }
+
+  /**
+   * A diagnostic whose lazily-computed parts are computed while holding a lock. javac computes a
+   * diagnostic's message, line, and column on demand, using mutable data structures (such as the
+   * diagnostic formatter) that belong to the javac state that created the diagnostic. Two
+   * diagnostics from the same javac state must not compute those parts concurrently.
+   *
+   * @param <S> the type of the source object
+   */
+  private static final class LockedDiagnostic<S> implements Diagnostic<S> {
+
+    /** The wrapped diagnostic. */
+    private final Diagnostic<S> delegate;
+
+    /** The lock, which is shared by all diagnostics from the same javac state. */
+    private final Object lock;
+
+    /**
+     * Creates a LockedDiagnostic.
+     *
+     * @param delegate the wrapped diagnostic
+     * @param lock the lock, which is shared by all diagnostics from the same javac state
+     */
+    LockedDiagnostic(Diagnostic<S> delegate, Object lock) {
+      this.delegate = delegate;
+      this.lock = lock;
+    }
+
+    @Override
+    public Diagnostic.Kind getKind() {
+      return delegate.getKind();
+    }
+
+    @Override
+    public S getSource() {
+      return delegate.getSource();
+    }
+
+    @Override
+    public long getPosition() {
+      return delegate.getPosition();
+    }
+
+    @Override
+    public long getStartPosition() {
+      return delegate.getStartPosition();
+    }
+
+    @Override
+    public long getEndPosition() {
+      return delegate.getEndPosition();
+    }
+
+    @Override
+    public long getLineNumber() {
+      synchronized (lock) {
+        return delegate.getLineNumber();
+      }
+    }
+
+    @Override
+    public long getColumnNumber() {
+      synchronized (lock) {
+        return delegate.getColumnNumber();
+      }
+    }
+
+    @Override
+    public String getCode() {
+      return delegate.getCode();
+    }
+
+    @Override
+    public String getMessage(Locale locale) {
+      synchronized (lock) {
+        return delegate.getMessage(locale);
+      }
+    }
+
+    @Override
+    @SuppressWarnings(
+        "lock:synchronized.block.in.lockingfree.method") // the lock is held only briefly
+    public String toString(@GuardSatisfied LockedDiagnostic<S> this) {
+      synchronized (lock) {
+        return delegate.toString();
+      }
+    }
+  }
+
+  /**
+   * A diagnostic whose line, column, and string representation are computed when it is created.
+   * The diagnostics of a parse of a {@link SourceBuffer} are wrapped this way, so that they do not
+   * depend on the buffer's contents after it is filled again.
+   *
+   * @param <S> the type of the diagnostic's source
+   */
+  private static final class RenderedDiagnostic<S> implements Diagnostic<S> {
+
+    /** The wrapped diagnostic. */
+    private final Diagnostic<S> delegate;
+
+    /** The line number of the diagnostic. */
+    private final long lineNumber;
+
+    /** The column number of the diagnostic. */
+    private final long columnNumber;
+
+    /** The string representation of the diagnostic. */
+    private final String string;
+
+    /**
+     * Creates a RenderedDiagnostic.
+     *
+     * @param delegate the wrapped diagnostic
+     */
+    RenderedDiagnostic(Diagnostic<S> delegate) {
+      this.delegate = delegate;
+      this.lineNumber = delegate.getLineNumber();
+      this.columnNumber = delegate.getColumnNumber();
+      this.string = delegate.toString();
+    }
+
+    @Override
+    public Diagnostic.Kind getKind() {
+      return delegate.getKind();
+    }
+
+    @Override
+    public S getSource() {
+      return delegate.getSource();
+    }
+
+    @Override
+    public long getPosition() {
+      return delegate.getPosition();
+    }
+
+    @Override
+    public long getStartPosition() {
+      return delegate.getStartPosition();
+    }
+
+    @Override
+    public long getEndPosition() {
+      return delegate.getEndPosition();
+    }
+
+    @Override
+    public long getLineNumber() {
+      return lineNumber;
+    }
+
+    @Override
+    public long getColumnNumber() {
+      return columnNumber;
+    }
+
+    @Override
+    public String getCode() {
+      return delegate.getCode();
+    }
+
+    @Override
+    public String getMessage(Locale locale) {
+      return delegate.getMessage(locale);
+    }
+
+    @Override
+    public String toString(@GuardSatisfied RenderedDiagnostic<S> this) {
+      return string;
+    }
+  }
+
+  /**
+   * Records the first error of a parse, and stops the parse by throwing {@link Stop}. Discards all
+   * other diagnostics. It is installed only while a parse is validating its input.
+   */
+  private static final class FirstError extends Log.DiagnosticHandler {
+
+    /** Thrown to stop a parse at its first error. */
+    static final class Stop extends RuntimeException {
+
+      /** Unique identifier for serialization. If you add or remove fields, change this number. */
+      private static final long serialVersionUID = 20261018L;
+
+      /** The only instance, which has no stack trace, so that throwing it is cheap. */
+      static final Stop INSTANCE = new Stop();
+
+      /** Creates a Stop. */
+      private Stop() {
+        super(null, null, false, false);
+      }
+    }
+
+    /** The first error, or null if none has been reported. */
+    @Nullable JCDiagnostic error = null;
+
+    /** Creates a FirstError. */
+    FirstError() {}
+
+    /**
+     * Installs this as the log's diagnostic handler, until {@link Log#popDiagnosticHandler} is
+     * called.
+     *
+     * @param log the log
+     */
+    void push(Log log) {
+      install(log);
+    }
+
+    @Override
+    public void report(JCDiagnostic diagnostic) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        error = diagnostic;
+        throw Stop.INSTANCE;
+      }
+    }
+  }
+
+  /** A javac log whose per-parse state can be reset. */
+  private static final class ParseLog extends Log {
+
+    /**
+     * Creates a ParseLog and registers it in the context.
+     *
+     * @param context the context
+     */
+    ParseLog(Context context) {
+      super(context);
+    }
+
+    /** Resets the per-parse state, so that errors in one parse do not affect the next one. */
+    void reset() {
+      // The log stops reporting errors after it has reported the maximum number of them.
+      nerrors = 0;
+      nwarnings = 0;
+      // The log reports at most one error per position of a source file, but a source file may be
+      // parsed more than once, or a method body parsed again on its own.
+      recorded.clear();
+    }
+  }
+
+  // Implementation notes:
+  // 1. The documentation of Context says "a single Context is used for each invocation of the
+  //    compiler".  Re-using the Context for many parses is like compiling many files in one
+  //    invocation.  Putting a second value for a key causes an error "duplicate context value", so
+  //    the Context is set up exactly once.
+  // 2. Calling `new JavacFileManager` sets a mapping in `context`.  It is necessary to avoid
+  //    "this.fileManager is null" error in com.sun.tools.javac.comp.Modules.<init>.
+
+  /** The javac data structures that a parse needs. */
+  @InheritableMustCall("close")
+  private static final class JavacState implements AutoCloseable, LazyBlock.BodyParser {
+
+    /** The file manager, which is registered in the context. */
+    @Owning private final JavacFileManager fileManager;
+
+    /** The log, which reports diagnostics to the session's collector. */
+    final ParseLog log;
+
+    /** The parser factory. Guarded by {@code this}. */
+    final ParserFactory parserFactory;
+
+    /** The scanner factory, which meters the lexer while a parse is metered. */
+    final MeteredScannerFactory scannerFactory;
+
+    /** The name table. */
+    final Names names;
+
+    /** The listener for all diagnostics, which is also the lock for computing their messages. */
+    private final DiagnosticListener<JavaFileObject> listener;
+
+    /** The limits on each parse, including of a method body, or null if there are none. */
+    private final @Nullable ParseLimits limits;
+
+    /**
+     * The time it took to create this state, until it is reported to the {@link ParseListener}s by
+     * the first parse that uses this state; 0 thereafter.
+     */
+    private long setupNanos;
+
+    /**
+     * True if a parse that used this state overflowed the stack. The session replaces such a state
+     * before its next parse; the lazy bodies that this state parses still use it.
+     */
+    volatile boolean overflowed = false;
+
+    /**
+     * Creates the javac data structures.
+     *
+     * @param listener the listener for all diagnostics
+     * @param limits the limits on each parse, or null if there are none
+     */
+    JavacState(DiagnosticListener<JavaFileObject> listener, @Nullable ParseLimits limits) {
+      long start = System.nanoTime();
+      Context context = new Context();
+      this.listener = listener;
+      this.limits = limits;
+      context.put(DiagnosticListener.class, listener);
+      context.put(Log.logKey, (Context.Factory<Log>) ParseLog::new);
+      fileManager = new JavacFileManager(context, true, StandardCharsets.UTF_8);
+      log = (ParseLog) Log.instance(context);
+      // The scanner factory must be registered before the parser factory looks it up.
+      scannerFactory = new MeteredScannerFactory(context);
+      parserFactory = ParserFactory.instance(context);
+      names = Names.instance(context);
+      setupNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the time it took to create this state if no parse has used this state yet, or 0
+     * otherwise.
+     *
+     * @return the time it took to create this state, or 0
+     */
+    long takeSetupNanos() {
+      long result = setupNanos;
+      setupNanos = 0;
+      return result;
+    }
+
+    /**
+     * Parses a doc comment. This may be called from any thread, including while another thread is
+     * parsing with this state, and after this state is closed.
+     *
+     * @param source the source file that contains the comment
+     * @param comment the comment
+     * @return the parsed comment
+     */
+    @Override
+    public synchronized DCDocComment parseDocComment(JavaFileObject source, Comment comment) {
+      return new DocCommentParser(parserFactory, new DiagnosticSource(source, log), comment)
+          .parse();
+    }
+
+    /**
+     * Parses a method body. This may be called from any thread, including while another thread is
+     * parsing with this state, and after this state is closed. The diagnostics of the body do not
+     * go to this state's listener.
+     *
+     * @param compilationUnit the compilation unit that contains the body
+     * @param body the body
+     * @return the body, which may include parse errors
+     * @throws IOException if there is trouble reading the compilation unit's source file
+     * @throws ParseAbortedException if the parse exceeds this state's limits
+     */
+    @Override
+    public JavacParseResult<BlockTree> parseBody(
+        JCCompilationUnit compilationUnit, SkippedBlock body) throws IOException {
+      ParseGuard guard = ParseGuard.start(limits);
+      CharSequence content = compilationUnit.sourcefile.getCharContent(false);
+      char[] chars = contentArray(compilationUnit.sourcefile, content);
+      int end = Math.min(body.endpos + 1, content.length());
+      if (guard != null) {
+        guard.checkLength(end - body.pos);
+      }
+      boolean docComments = compilationUnit.docComments != null;
+      // The placeholder has an end position only if the parse kept end positions.
+      boolean endPositions = compilationUnit.endPositions.getEndPos(body) != Position.NOPOS;
+      JCBlock result;
+      Queue<JCDiagnostic> diagnostics;
+      synchronized (this) {
+        log.useSource(compilationUnit.sourcefile);
+        Log.DeferredDiagnosticHandler handler = new Log.DeferredDiagnosticHandler(log);
+        scannerFactory.guard = guard;
+        try {
+          SnippetParser parser =
+              new SnippetParser(
+                  parserFactory,
+                  // The lexer skips the text before the body, so the trees and diagnostics have
+                  // the positions that they would have in a parse of the whole compilation unit.
+                  scannerFactory.newScanner(chars, end, docComments, new int[] {0, body.pos}),
+                  docComments,
+                  endPositions);
+          result = parser.body(compilationUnit.endPositions, compilationUnit.docComments);
+        } catch (StackOverflowError e) {
+          throw guarded(this, guard, e);
+        } finally {
+          scannerFactory.guard = null;
+          log.popDiagnosticHandler(handler);
+        }
+        diagnostics = handler.getDiagnostics();
+      }
+      List<Diagnostic<? extends JavaFileObject>> lockedDiagnostics =
+          new ArrayList<>(diagnostics.size());
+      for (JCDiagnostic d : diagnostics) {
+        lockedDiagnostics.add(new LockedDiagnostic<>(d, listener));
+      }
+      return new JavacParseResult<>(result, lockedDiagnostics);
+    }
+
+    /** Resets the per-parse state, so that errors in one parse do not affect the next one. */
+    void reset() {
+      log.reset();
+    }
+
+    @Override
+    @EnsuresCalledMethods(value = "this.fileManager", methods = "close")
+    public void close(@GuardSatisfied JavacState this) {
+      try {
+        fileManager.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.TreeVisitor;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.DCTree.DCDocComment;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCStatement;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A method body that is parsed the first time it is used: when its statements are requested, when
+ * it is visited (which {@code toString()} and tree scanners do), or by {@link
+ * JavacParseSession#parseBody}. Until then it is an empty block with the body's source span, like a
+ * {@link SkippedBlock}. The parse fills in {@link #stats}; the end positions and doc comments of
+ * the new trees are added to the compilation unit's tables.
+ *
+ * <p>A LazyBlock is thread-safe: if several threads use it at once, one of them parses it and the
+ * others wait for that parse.
+ */
+final class LazyBlock extends SkippedBlock {
+
+  /** Parses bodies and doc comments. It is implemented by the javac state that parsed the body. */
+  interface BodyParser {
+
+    /**
+     * Parses a method body.
+     *
+     * @param compilationUnit the compilation unit that contains the body
+     * @param body the body
+     * @return the body, which may include parse errors
+     * @throws IOException if there is trouble reading the compilation unit's source file
+     */
+    JavacParseResult<BlockTree> parseBody(JCCompilationUnit compilationUnit, SkippedBlock body)
+        throws IOException;
+
+    /**
+     * Parses a doc comment.
+     *
+     * @param source the source file that contains the comment
+     * @param comment the comment
+     * @return the parsed comment
+     */
+    DCDocComment parseDocComment(JavaFileObject source, Comment comment);
+  }
+
+  /** The parser for the body. */
+  private final BodyParser parser;
+
+  /** The compilation unit that contains this body; set as soon as the compilation unit exists. */
+  private @MonotonicNonNull JCCompilationUnit compilationUnit;
+
+  /** The diagnostics of the body, or null if the body has not been parsed yet. */
+  @SuppressWarnings("PMD.AvoidUsingVolatile") // for double-checked locking
+  private volatile @Nullable List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+  /**
+   * Creates a LazyBlock.
+   *
+   * @param pos the position of the body's "{"
+   * @param endpos the position of the body's "}"
+   * @param parser the parser for the body
+   */
+  LazyBlock(int pos, int endpos, BodyParser parser) {
+    super(pos, endpos);
+    this.parser = parser;
+  }
+
+  /**
+   * Sets the compilation unit that contains this body. Must be called before the body is used.
+   *
+   * @param compilationUnit the compilation unit that contains this body
+   */
+  void setCompilationUnit(JCCompilationUnit compilationUnit) {
+    this.compilationUnit = compilationUnit;
+  }
+
+  /**
+   * Parses the body, if it has not been parsed yet, and returns this block and its diagnostics.
+   *
+   * @return this block, with its statements, and the diagnostics of the body
+   * @throws IOException if there is trouble reading the compilation unit's source file
+   */
+  JavacParseResult<BlockTree> parse() throws IOException {
+    List<Diagnostic<? extends JavaFileObject>> result = diagnostics;
+    if (result == null) {
+      synchronized (this) {
+        result = diagnostics;
+        if (result == null) {
+          if (compilationUnit == null) {
+            throw new IllegalStateException("The compilation unit of a lazy body is not set");
+          }
+          JavacParseResult<BlockTree> parsed = parser.parseBody(compilationUnit, this);
+          stats = ((JCBlock) parsed.tree()).stats;
+          result = parsed.diagnostics();
+          // The write to the volatile field publishes the write to stats.
+          diagnostics = result;
+        }
+      }
+    }
+    return new JavacParseResult<>(this, result);
+  }
+
+  /** Parses the body, if it has not been parsed yet. */
+  private void materialize() {
+    if (diagnostics == null) {
+      try {
+        parse();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  @Override
+  public com.sun.tools.javac.util.List<JCStatement> getStatements() {
+    materialize();
+    return stats;
+  }
+
+  @Override
+  public void accept(Visitor v) {
+    materialize();
+    super.accept(v);
+  }
+
+  @Override
+  public <R, D> R accept(TreeVisitor<R, D> v, D d) {
+    materialize();
+    return super.accept(v, d);
+  }
+}
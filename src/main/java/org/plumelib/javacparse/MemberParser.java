@@ -0,0 +1,896 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.parser.JavacParser;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCAnnotatedType;
+import com.sun.tools.javac.tree.JCTree.JCArrayTypeTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCTypeApply;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.Name;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Parses one declaration of a compilation unit: a type declaration or a member of one, selected by
+ * a {@link MemberSelector} or by a range of the source. See {@link
+ * JavacParseSession#parseMember(JavaFileObject, MemberSelector)} and {@link
+ * JavacParseSession#parseRange(JavaFileObject, int, int)}.
+ *
+ * <p>A lexical pre-scan divides the source into the text of each declaration, without building a
+ * tree. The text of a declaration runs from the end of the previous declaration (or the "{" of the
+ * enclosing type declaration) through its final "}" or ";". Then the source is parsed with all of
+ * its text replaced by spaces except the candidate declarations and the headers and closing "}" of
+ * the type declarations that enclose them, as {@link Reparser} does. Thus the parse yields the same
+ * trees, with the same positions, as a parse of the whole source. The members of an enum are not
+ * separated, because its constants are not ordinary declarations; an enum is parsed whole.
+ *
+ * <p>If the pre-scan cannot divide the source into tokens reliably, because it contains a Unicode
+ * escape or an unclosed comment or literal, the source is parsed whole instead.
+ */
+final class MemberParser {
+
+  /** The session used for parsing. */
+  private final JavacParseSession session;
+
+  /** The source. */
+  private final JavaFileObject source;
+
+  /** The text of the source. */
+  private final CharSequence text;
+
+  /** The kind of each token. */
+  private Kind[] kinds = new Kind[1024];
+
+  /** The start of each token. */
+  private int[] starts = new int[1024];
+
+  /** The end of each token. */
+  private int[] ends = new int[1024];
+
+  /** The number of tokens, including the final EOF. */
+  private int count = 0;
+
+  /**
+   * Creates a MemberParser.
+   *
+   * @param session the session used for parsing
+   * @param source the source
+   * @param text the text of the source
+   */
+  private MemberParser(JavacParseSession session, JavaFileObject source, CharSequence text) {
+    this.session = session;
+    this.source = source;
+    this.text = text;
+  }
+
+  /**
+   * Parses the type declaration or member that a selector denotes.
+   *
+   * @param session the session used for parsing
+   * @param source the source
+   * @param selector the selector
+   * @return the parsed declaration, or null if there is none that {@code selector} denotes
+   * @throws IOException if there is trouble reading the source
+   */
+  static @Nullable JavacParseResult<Tree> parseMember(
+      JavacParseSession session, JavaFileObject source, MemberSelector selector)
+      throws IOException {
+    MemberParser parser = new MemberParser(session, source, source.getCharContent(false));
+    if (!parser.lex()) {
+      return parser.parseWhole(cu -> findMember(cu, selector));
+    }
+    Plan plan = parser.planMember(selector);
+    if (plan == null) {
+      return null;
+    }
+    return parser.parse(plan, cu -> findMember(cu, selector));
+  }
+
+  /**
+   * Parses the smallest declaration whose extent encloses a range of the source.
+   *
+   * @param session the session used for parsing
+   * @param source the source
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the parsed declaration, or null if no type declaration encloses the range
+   * @throws IOException if there is trouble reading the source
+   * @throws IndexOutOfBoundsException if the range is not within the source
+   */
+  static @Nullable JavacParseResult<Tree> parseRange(
+      JavacParseSession session, JavaFileObject source, int start, int end) throws IOException {
+    CharSequence text = source.getCharContent(false);
+    Objects.checkFromToIndex(start, end, text.length());
+    MemberParser parser = new MemberParser(session, source, text);
+    if (!parser.lex()) {
+      return parser.parseWhole(cu -> findEnclosing(cu, start, end));
+    }
+    Plan plan = parser.planRange(start, end);
+    while (plan != null) {
+      JavacParseResult<CompilationUnitTree> parsed = parser.parsePartially(plan);
+      Found found = findEnclosing((JCCompilationUnit) parsed.tree(), start, end);
+      if (found == null) {
+        return null;
+      }
+      if (found.depth() >= plan.enclosing().size()) {
+        return new JavacParseResult<>(found.tree(), parsed.diagnostics());
+      }
+      // The range lies outside every declaration of a type declaration whose other members were
+      // not parsed, such as in a comment between two of its members.  Parse all of it.
+      plan =
+          new Plan(
+              plan.enclosing().subList(0, found.depth()),
+              List.of(plan.enclosing().get(found.depth())));
+    }
+    return null;
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Lexical pre-scan
+  //
+
+  /** The kinds of tokens that the pre-scan distinguishes. */
+  private enum Kind {
+    /** An identifier, or a keyword other than those below. */
+    IDENTIFIER,
+    /** The keyword {@code class}. */
+    CLASS,
+    /** The keyword {@code interface}. */
+    INTERFACE,
+    /** The keyword {@code enum}. */
+    ENUM,
+    /** The keyword {@code default}. */
+    DEFAULT,
+    /** "{". */
+    LBRACE,
+    /** "}". */
+    RBRACE,
+    /** "(". */
+    LPAREN,
+    /** ")". */
+    RPAREN,
+    /** "[". */
+    LBRACKET,
+    /** "]". */
+    RBRACKET,
+    /** ";". */
+    SEMI,
+    /** "=". */
+    EQ,
+    /** A literal, or any other operator or separator. */
+    OTHER,
+    /** The end of the source. */
+    EOF
+  }
+
+  /**
+   * Divides the source into tokens. This is much cheaper than javac's lexer: it distinguishes only
+   * the tokens that delimit declarations, and it does not compute the value of any token. It gives
+   * up on a Unicode escape anywhere in the source, even in a comment or literal, and on an
+   * unclosed comment or literal, so that the source is parsed whole; each of those can change how
+   * the rest of the source is divided into tokens.
+   *
+   * @return true if the source was divided into tokens
+   */
+  private boolean lex() {
+    // javac translates Unicode escapes before it lexes, so an escaped line terminator ends a "//"
+    // comment.
+    if (indexOf("\\u", 0) >= 0) {
+      return false;
+    }
+    int length = text.length();
+    int i = 0;
+    while (i < length) {
+      char c = text.charAt(i);
+      int start = i;
+      if (c == '\\') {
+        add(Kind.OTHER, start, ++i);
+      } else if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '/') {
+        while (i < length && text.charAt(i) != '\n' && text.charAt(i) != '\r') {
+          i++;
+        }
+      } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*') {
+        int close = indexOf("*/", i + 2);
+        if (close < 0) {
+          return false;
+        }
+        i = close + 2;
+      } else if (Character.isJavaIdentifierStart(c)) {
+        do {
+          i++;
+        } while (i < length && Character.isJavaIdentifierPart(text.charAt(i)));
+        add(keyword(start, i), start, i);
+      } else if (c >= '0' && c <= '9') {
+        do {
+          i++;
+        } while (i < length
+            && (Character.isLetterOrDigit(text.charAt(i))
+                || text.charAt(i) == '_'
+                || text.charAt(i) == '.'));
+        add(Kind.OTHER, start, i);
+      } else if (c == '"' || c == '\'') {
+        i = endOfLiteral(i);
+        if (i < 0) {
+          return false;
+        }
+        add(Kind.OTHER, start, i);
+      } else {
+        i++;
+        Kind kind =
+            switch (c) {
+              case '{' -> Kind.LBRACE;
+              case '}' -> Kind.RBRACE;
+              case '(' -> Kind.LPAREN;
+              case ')' -> Kind.RPAREN;
+              case '[' -> Kind.LBRACKET;
+              case ']' -> Kind.RBRACKET;
+              case ';' -> Kind.SEMI;
+              case '=' -> Kind.EQ;
+              default -> Kind.OTHER;
+            };
+        add(kind, start, i);
+      }
+    }
+    add(Kind.EOF, length, length);
+    return true;
+  }
+
+  /**
+   * Returns the kind of an identifier or keyword.
+   *
+   * @param start the start of the identifier or keyword
+   * @param end the end of the identifier or keyword
+   * @return its kind
+   */
+  private Kind keyword(int start, int end) {
+    if (regionEquals(start, end, "class")) {
+      return Kind.CLASS;
+    } else if (regionEquals(start, end, "interface")) {
+      return Kind.INTERFACE;
+    } else if (regionEquals(start, end, "enum")) {
+      return Kind.ENUM;
+    } else if (regionEquals(start, end, "default")) {
+      return Kind.DEFAULT;
+    } else {
+      return Kind.IDENTIFIER;
+    }
+  }
+
+  /**
+   * Returns the end of a string, character, or text block literal.
+   *
+   * @param start the index of the literal's opening quote
+   * @return the index after the literal's closing quote, or -1 if the literal is not closed
+   */
+  private int endOfLiteral(int start) {
+    char quote = text.charAt(start);
+    if (quote == '"' && startsWith(start, "\"\"\"")) {
+      // A text block, which may span lines.
+      for (int i = start + 3; i < text.length(); i++) {
+        if (text.charAt(i) == '\\') {
+          i++;
+        } else if (text.charAt(i) == '"' && startsWith(i, "\"\"\"")) {
+          return i + 3;
+        }
+      }
+      return -1;
+    }
+    for (int i = start + 1; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == quote) {
+        return i + 1;
+      } else if (c == '\n' || c == '\r') {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the first occurrence of a string in the source, at or after an index.
+   *
+   * @param s a string
+   * @param from the index at which to start
+   * @return the index of the first occurrence of {@code s}, or -1 if there is none
+   */
+  private int indexOf(String s, int from) {
+    int last = text.length() - s.length();
+    for (int i = from; i <= last; i++) {
+      if (startsWith(i, s)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true if the source contains the given string at the given index.
+   *
+   * @param i an index in the source
+   * @param s a string
+   * @return true if the source contains {@code s} at {@code i}
+   */
+  private boolean startsWith(int i, String s) {
+    return i + s.length() <= text.length() && regionEquals(i, i + s.length(), s);
+  }
+
+  /**
+   * Returns true if part of the source is the given string.
+   *
+   * @param start the start of the part
+   * @param end the end of the part
+   * @param s a string
+   * @return true if the source from {@code start} to {@code end} is {@code s}
+   */
+  private boolean regionEquals(int start, int end, String s) {
+    if (end - start != s.length()) {
+      return false;
+    }
+    for (int j = 0; j < s.length(); j++) {
+      if (text.charAt(start + j) != s.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a token.
+   *
+   * @param kind the kind of the token
+   * @param start the start of the token
+   * @param end the end of the token
+   */
+  private void add(Kind kind, int start, int end) {
+    if (count == kinds.length) {
+      int capacity = 2 * count;
+      kinds = Arrays.copyOf(kinds, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+    }
+    kinds[count] = kind;
+    starts[count] = start;
+    ends[count] = end;
+    count++;
+  }
+
+  /**
+   * The text of one declaration of a compilation unit or type declaration. At the top level, an
+   * import or package declaration also has text.
+   *
+   * @param start the start of the text: the end of the previous declaration, or the end of the "{"
+   *     of the enclosing type declaration's body
+   * @param end the end of the text: the end of its final "}" or ";"
+   * @param firstToken the index of the declaration's first token
+   * @param nameToken the index of the name of the type that the text declares, or -1 if it is not a
+   *     type declaration
+   * @param bodyOpen the index of the "{" of the body of the type that the text declares, or -1
+   * @param bodyClose the index of the "}" of the body of the type that the text declares, or of the
+   *     EOF token if the "}" is missing, or -1
+   * @param isEnum true if the text declares an enum
+   */
+  private record Region(
+      int start,
+      int end,
+      int firstToken,
+      int nameToken,
+      int bodyOpen,
+      int bodyClose,
+      boolean isEnum) {}
+
+  /**
+   * The declarations to parse.
+   *
+   * @param enclosing the type declarations that enclose the declarations, outermost first; only the
+   *     header and closing "}" of each is parsed
+   * @param kept the declarations, which are parsed whole
+   */
+  private record Plan(List<Region> enclosing, List<Region> kept) {}
+
+  /**
+   * Divides the text of a compilation unit or type declaration body into declarations.
+   *
+   * @param from the index of the first token of the body
+   * @param bodyStart the end of the "{" of the body, or 0 for a compilation unit
+   * @return the text of each declaration in the body, in order
+   */
+  private List<Region> regions(int from, int bodyStart) {
+    List<Region> result = new ArrayList<>();
+    int start = bodyStart;
+    int i = from;
+    while (kinds[i] != Kind.EOF && kinds[i] != Kind.RBRACE) {
+      int first = i;
+      int parens = 0;
+      boolean sawParams = false;
+      boolean sawAssign = false;
+      boolean typeKeyword = false;
+      boolean isEnum = false;
+      int nameToken = -1;
+      int bodyOpen = -1;
+      int bodyClose = -1;
+      int end = -1;
+      for (; end < 0; i++) {
+        Kind kind = kinds[i];
+        if (kind == Kind.EOF || (kind == Kind.RBRACE && parens == 0)) {
+          // The declaration is incomplete.
+          end = i > first ? ends[i - 1] : starts[i];
+          i--;
+        } else if (kind == Kind.LPAREN || kind == Kind.LBRACKET) {
+          parens++;
+        } else if (kind == Kind.RPAREN || kind == Kind.RBRACKET) {
+          parens = Math.max(0, parens - 1);
+          sawParams |= parens == 0;
+        } else if (parens > 0) {
+          // Within an annotation's arguments, a method's parameters, and so forth.
+        } else if (kind == Kind.EQ || (kind == Kind.DEFAULT && sawParams)) {
+          // A variable initializer or an annotation type element's default value.
+          sawAssign = true;
+        } else if ((kind == Kind.CLASS
+                || kind == Kind.INTERFACE
+                || kind == Kind.ENUM
+                || isRecordKeyword(i))
+            && !typeKeyword
+            && !sawAssign) {
+          typeKeyword = true;
+          isEnum = kind == Kind.ENUM;
+        } else if (kind == Kind.IDENTIFIER && typeKeyword && nameToken < 0) {
+          nameToken = i;
+        } else if (kind == Kind.SEMI) {
+          end = ends[i];
+        } else if (kind == Kind.LBRACE) {
+          int close = matchingBrace(i);
+          if (sawAssign) {
+            // An array initializer or a lambda or anonymous class body, within an initializer.
+            i = close;
+          } else {
+            if (typeKeyword) {
+              bodyOpen = i;
+              bodyClose = close;
+            }
+            // The body of a type declaration, method, or initializer ends the declaration.
+            end = kinds[close] == Kind.EOF ? starts[close] : ends[close];
+            i = kinds[close] == Kind.EOF ? close - 1 : close;
+          }
+        }
+      }
+      result.add(new Region(start, end, first, nameToken, bodyOpen, bodyClose, isEnum));
+      start = end;
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if the given token is the contextual keyword {@code record} that starts a record
+   * declaration.
+   *
+   * @param i the index of a token
+   * @return true if the token starts a record declaration
+   */
+  private boolean isRecordKeyword(int i) {
+    return kinds[i] == Kind.IDENTIFIER
+        && kinds[i + 1] == Kind.IDENTIFIER
+        && textEquals(i, "record");
+  }
+
+  /**
+   * Returns the index of the "}" that matches the given "{".
+   *
+   * @param open the index of a "{"
+   * @return the index of the matching "}", or of the EOF token if there is none
+   */
+  private int matchingBrace(int open) {
+    int depth = 0;
+    for (int i = open; ; i++) {
+      switch (kinds[i]) {
+        case LBRACE -> depth++;
+        case RBRACE -> {
+          if (--depth == 0) {
+            return i;
+          }
+        }
+        case EOF -> {
+          return i;
+        }
+        default -> {}
+      }
+    }
+  }
+
+  /**
+   * Returns true if the text of a token is the given identifier.
+   *
+   * @param i the index of a token
+   * @param name an identifier
+   * @return true if the token is {@code name}
+   */
+  private boolean textEquals(int i, String name) {
+    return regionEquals(starts[i], ends[i], name);
+  }
+
+  /**
+   * Returns true if the given name occurs in the declaration part of a region: outside its
+   * parentheses, brackets, and braces.
+   *
+   * @param region a region
+   * @param name an identifier
+   * @return true if {@code name} occurs in the declaration part of {@code region}
+   */
+  private boolean declares(Region region, String name) {
+    int parens = 0;
+    int braces = 0;
+    for (int i = region.firstToken(); i < count && starts[i] < region.end(); i++) {
+      switch (kinds[i]) {
+        case LPAREN, LBRACKET -> parens++;
+        case RPAREN, RBRACKET -> parens--;
+        case LBRACE -> braces++;
+        case RBRACE -> braces--;
+        case IDENTIFIER -> {
+          if (parens == 0 && braces == 0 && textEquals(i, name)) {
+            return true;
+          }
+        }
+        default -> {}
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the declarations to parse to find the declaration that a selector denotes.
+   *
+   * @param selector a selector
+   * @return the declarations to parse, or null if the source has no declaration that {@code
+   *     selector} denotes
+   */
+  private @Nullable Plan planMember(MemberSelector selector) {
+    List<Region> enclosing = new ArrayList<>();
+    List<Region> regions = regions(0, 0);
+    List<String> typeNames = selector.typeNames();
+    String memberName = selector.memberName();
+    for (int k = 0; k < typeNames.size(); k++) {
+      Region type = null;
+      for (Region region : regions) {
+        if (region.nameToken() >= 0 && textEquals(region.nameToken(), typeNames.get(k))) {
+          type = region;
+          break;
+        }
+      }
+      if (type == null) {
+        return null;
+      }
+      if (type.isEnum()
+          || type.bodyOpen() < 0
+          || (k == typeNames.size() - 1 && memberName == null)) {
+        return new Plan(enclosing, List.of(type));
+      }
+      enclosing.add(type);
+      regions = regions(type.bodyOpen() + 1, ends[type.bodyOpen()]);
+    }
+    List<Region> kept = new ArrayList<>();
+    for (Region region : regions) {
+      if (declares(region, castNonNull(memberName))) {
+        kept.add(region);
+      }
+    }
+    return kept.isEmpty() ? null : new Plan(enclosing, kept);
+  }
+
+  /**
+   * Returns the declarations to parse to find the smallest declaration that encloses a range.
+   *
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the declarations to parse, or null if no type declaration encloses the range
+   */
+  private @Nullable Plan planRange(int start, int end) {
+    List<Region> enclosing = new ArrayList<>();
+    List<Region> regions = regions(0, 0);
+    while (true) {
+      Region enclosingRegion = null;
+      for (Region region : regions) {
+        if (region.start() <= start && end <= region.end()) {
+          enclosingRegion = region;
+          break;
+        }
+      }
+      if (enclosingRegion == null) {
+        if (enclosing.isEmpty()) {
+          return null;
+        }
+        // The range spans several declarations; parse the type declaration that contains them.
+        Region type = enclosing.remove(enclosing.size() - 1);
+        return new Plan(enclosing, List.of(type));
+      }
+      Region r = enclosingRegion;
+      if (r.isEnum()
+          || r.bodyOpen() < 0
+          || start < ends[r.bodyOpen()]
+          || end > starts[r.bodyClose()]) {
+        return new Plan(enclosing, List.of(r));
+      }
+      enclosing.add(r);
+      regions = regions(r.bodyOpen() + 1, ends[r.bodyOpen()]);
+    }
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Parsing
+  //
+
+  /** Finds a declaration in a compilation unit. */
+  private interface Finder {
+    /**
+     * Finds a declaration in a compilation unit.
+     *
+     * @param cu a compilation unit
+     * @return the declaration, or null if there is none
+     */
+    @Nullable Found find(JCCompilationUnit cu);
+  }
+
+  /**
+   * A declaration that was found.
+   *
+   * @param tree the declaration
+   * @param depth the number of type declarations that enclose it
+   */
+  private record Found(JCTree tree, int depth) {}
+
+  /**
+   * Parses the planned declarations, and finds a declaration among them.
+   *
+   * @param plan the declarations to parse
+   * @param finder finds the declaration
+   * @return the declaration that {@code finder} finds, or null if it finds none
+   * @throws IOException if there is trouble reading the source
+   */
+  private @Nullable JavacParseResult<Tree> parse(Plan plan, Finder finder) throws IOException {
+    JavacParseResult<CompilationUnitTree> parsed = parsePartially(plan);
+    Found found = finder.find((JCCompilationUnit) parsed.tree());
+    return found == null ? null : new JavacParseResult<>(found.tree(), parsed.diagnostics());
+  }
+
+  /**
+   * Parses the whole source, and finds a declaration in it.
+   *
+   * @param finder finds the declaration
+   * @return the declaration that {@code finder} finds, or null if it finds none
+   * @throws IOException if there is trouble reading the source
+   */
+  private @Nullable JavacParseResult<Tree> parseWhole(Finder finder) throws IOException {
+    JavacParseResult<CompilationUnitTree> parsed = session.parseCompilationUnit(source);
+    Found found = finder.find((JCCompilationUnit) parsed.tree());
+    return found == null ? null : new JavacParseResult<>(found.tree(), parsed.diagnostics());
+  }
+
+  /**
+   * Parses the planned declarations, with the rest of the source replaced by spaces.
+   *
+   * @param plan the declarations to parse
+   * @return the parsed compilation unit, which contains only the planned declarations
+   * @throws IOException if there is trouble reading the source
+   */
+  @SuppressWarnings("index") // the regions lie within the text
+  private JavacParseResult<CompilationUnitTree> parsePartially(Plan plan) throws IOException {
+    int length = text.length();
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      // Keeping line terminators and tabs keeps the line and column of every position.
+      chars[i] = c == '\n' || c == '\r' || c == '\t' ? c : ' ';
+    }
+    for (Region region : plan.enclosing()) {
+      copy(chars, region.start(), ends[region.bodyOpen()]);
+      copy(chars, starts[region.bodyClose()], ends[region.bodyClose()]);
+    }
+    for (Region region : plan.kept()) {
+      copy(chars, region.start(), region.end());
+    }
+    return session.parseWith(
+        ParseKind.COMPILATION_UNIT,
+        new StringJavaFileObject(source.toUri(), new String(chars)),
+        JavacParser::parseCompilationUnit);
+  }
+
+  /**
+   * Copies part of the text of the source.
+   *
+   * @param chars the array to copy into, at the same indices
+   * @param from the index of the first character to copy
+   * @param to the index after the last character to copy
+   */
+  @SuppressWarnings("index") // the caller passes indices within the text
+  private void copy(char[] chars, int from, int to) {
+    for (int i = from; i < to; i++) {
+      chars[i] = text.charAt(i);
+    }
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Finding declarations in a tree
+  //
+
+  /**
+   * Returns the declaration that a selector denotes.
+   *
+   * @param cu a compilation unit
+   * @param selector a selector
+   * @return the declaration that {@code selector} denotes, or null if there is none
+   */
+  private static @Nullable Found findMember(JCCompilationUnit cu, MemberSelector selector) {
+    List<JCTree> members = cu.defs;
+    JCClassDecl type = null;
+    for (String typeName : selector.typeNames()) {
+      type = null;
+      for (JCTree member : members) {
+        if (member instanceof JCClassDecl c && c.name.contentEquals(typeName)) {
+          type = c;
+          break;
+        }
+      }
+      if (type == null) {
+        return null;
+      }
+      members = type.defs;
+    }
+    int depth = selector.typeNames().size();
+    String memberName = selector.memberName();
+    if (memberName == null) {
+      return new Found(castNonNull(type), depth - 1);
+    }
+    List<String> parameterTypes = selector.parameterTypes();
+    for (JCTree member : members) {
+      Name name = null;
+      if (member instanceof JCMethodDecl m) {
+        name = TreeInfo.isConstructor(m) ? castNonNull(type).name : m.name;
+      } else if (parameterTypes == null && member instanceof JCVariableDecl v) {
+        name = v.name;
+      } else if (parameterTypes == null && member instanceof JCClassDecl c) {
+        name = c.name;
+      }
+      if (name != null
+          && name.contentEquals(memberName)
+          && (parameterTypes == null || parametersMatch((JCMethodDecl) member, parameterTypes))) {
+        return new Found(member, depth);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if a method's parameter types are the given ones.
+   *
+   * @param method a method
+   * @param parameterTypes parameter types, as {@link MemberSelector#erasure} returns them
+   * @return true if the parameter types of {@code method} are {@code parameterTypes}
+   */
+  private static boolean parametersMatch(JCMethodDecl method, List<String> parameterTypes) {
+    if (method.params.size() != parameterTypes.size()) {
+      return false;
+    }
+    int i = 0;
+    for (JCVariableDecl param : method.params) {
+      if (!erasure(param.vartype).equals(parameterTypes.get(i++))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the erasure and simple name of a type, as {@link MemberSelector#erasure} does.
+   *
+   * @param type a type
+   * @return the erased simple name of {@code type}
+   */
+  private static String erasure(@Nullable JCTree type) {
+    if (type == null) {
+      return "";
+    } else if (type instanceof JCAnnotatedType a) {
+      return erasure(a.underlyingType);
+    } else if (type instanceof JCArrayTypeTree a) {
+      return erasure(a.elemtype) + "[]";
+    } else if (type instanceof JCTypeApply t) {
+      return erasure(t.clazz);
+    } else if (type instanceof JCFieldAccess f) {
+      return f.name.toString();
+    } else if (type instanceof JCIdent i) {
+      return i.name.toString();
+    } else {
+      return type.toString();
+    }
+  }
+
+  /**
+   * Returns the smallest declaration whose extent encloses a range.
+   *
+   * @param cu a compilation unit
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the smallest declaration that encloses the range, or null if no type declaration does
+   */
+  private static @Nullable Found findEnclosing(JCCompilationUnit cu, int start, int end) {
+    Found result = null;
+    List<JCTree> members = cu.defs;
+    for (int depth = 0; ; depth++) {
+      JCTree enclosing = null;
+      for (JCTree member : members) {
+        if (isDeclaration(member, depth == 0)
+            && TreeInfo.getStartPos(member) <= start
+            && end <= endPos(member, cu.endPositions)) {
+          enclosing = member;
+          break;
+        }
+      }
+      if (enclosing == null) {
+        return result;
+      }
+      result = new Found(enclosing, depth);
+      if (!(enclosing instanceof JCClassDecl c)) {
+        return result;
+      }
+      members = c.defs;
+    }
+  }
+
+  /**
+   * Returns true if a tree is a declaration that {@link #findEnclosing} may return.
+   *
+   * @param tree a member of a compilation unit or type declaration
+   * @param topLevel true if {@code tree} is a member of a compilation unit
+   * @return true if {@code tree} is a type declaration or a member of one
+   */
+  private static boolean isDeclaration(JCTree tree, boolean topLevel) {
+    if (tree instanceof JCClassDecl) {
+      return true;
+    }
+    return !topLevel
+        && (tree instanceof JCMethodDecl
+            || (tree instanceof JCVariableDecl v && (v.mods.flags & Flags.RECORD) == 0)
+            || tree instanceof JCBlock);
+  }
+
+  /**
+   * Returns the end position of a tree.
+   *
+   * @param tree a tree
+   * @param endPositions the end positions of the compilation unit that contains {@code tree}
+   * @return the end position of {@code tree}
+   */
+  private static int endPos(JCTree tree, EndPosTable endPositions) {
+    return TreeInfo.getEndPos(tree, endPositions);
+  }
+
+  /**
+   * Returns its argument, which the caller knows to be non-null.
+   *
+   * @param <T> the type of the reference
+   * @param ref a non-null reference
+   * @return {@code ref}
+   */
+  @SuppressWarnings("nullness:return") // the caller knows the reference is non-null
+  private static <T> T castNonNull(@Nullable T ref) {
+    assert ref != null : "@AssumeAssertion(nullness)";
+    return ref;
+  }
+}
@@ -0,0 +1,188 @@
+package org.plumelib.javacparse;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.SourceVersion;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Identifies a type declaration, or a member of one, in a compilation unit by name, as in a Javadoc
+ * {@code @link} tag: for example, {@code Outer.Inner}, {@code Outer#count}, or {@code
+ * Outer#max(int, List)}. See {@link JavacParseSession#parseMember(String, MemberSelector)}.
+ *
+ * <p>Parameter types are compared by their erasure and simple name: type arguments, annotations,
+ * and package and type qualifiers are ignored, and {@code ...} is the same as {@code []}. Thus
+ * {@code max(java.util.List<T>, int...)} and {@code max(List, int[])} select the same method. A
+ * type variable is compared by its name, not by its erasure.
+ *
+ * @param typeNames the simple names of the type declaration and the type declarations that enclose
+ *     it, the top-level type declaration first
+ * @param memberName the name of the member, or null to select the type declaration itself; a
+ *     constructor's name is the name of its class
+ * @param parameterTypes the parameter types of the method or constructor, or null to select the
+ *     first member of any kind that is named {@code memberName}
+ */
+public record MemberSelector(
+    List<String> typeNames, @Nullable String memberName, @Nullable List<String> parameterTypes) {
+
+  /**
+   * Creates a MemberSelector.
+   *
+   * @param typeNames the simple names of the type declaration and the type declarations that
+   *     enclose it, the top-level type declaration first
+   * @param memberName the name of the member, or null to select the type declaration itself
+   * @param parameterTypes the parameter types of the method or constructor, or null
+   * @throws IllegalArgumentException if {@code typeNames} is empty, a name is not an identifier, or
+   *     {@code parameterTypes} is non-null but {@code memberName} is null
+   */
+  public MemberSelector {
+    if (typeNames.isEmpty()) {
+      throw new IllegalArgumentException("typeNames is empty");
+    }
+    for (String typeName : typeNames) {
+      checkIdentifier(typeName);
+    }
+    if (memberName != null) {
+      checkIdentifier(memberName);
+    } else if (parameterTypes != null) {
+      throw new IllegalArgumentException("parameterTypes requires a memberName");
+    }
+    typeNames = List.copyOf(typeNames);
+    if (parameterTypes != null) {
+      List<String> erased = new ArrayList<>(parameterTypes.size());
+      for (String parameterType : parameterTypes) {
+        erased.add(erasure(parameterType));
+      }
+      parameterTypes = List.copyOf(erased);
+    }
+  }
+
+  /**
+   * Returns a MemberSelector for a string such as {@code Outer.Inner}, {@code Outer#count}, or
+   * {@code Outer#max(int, List)}.
+   *
+   * @param selector the names of the type declarations, separated by ".", optionally followed by
+   *     "#" and the name of a member, optionally followed by parameter types in parentheses
+   * @return the MemberSelector that {@code selector} denotes
+   * @throws IllegalArgumentException if {@code selector} is malformed
+   */
+  public static MemberSelector parse(String selector) {
+    int hash = selector.indexOf('#');
+    String typePart = hash < 0 ? selector : selector.substring(0, hash);
+    List<String> typeNames = new ArrayList<>();
+    for (String typeName : typePart.split("\\.", -1)) {
+      typeNames.add(typeName.strip());
+    }
+    if (hash < 0) {
+      return new MemberSelector(typeNames, null, null);
+    }
+    String memberPart = selector.substring(hash + 1).strip();
+    int paren = memberPart.indexOf('(');
+    if (paren < 0) {
+      return new MemberSelector(typeNames, memberPart, null);
+    }
+    if (!memberPart.endsWith(")")) {
+      throw new IllegalArgumentException("Missing \")\": " + selector);
+    }
+    List<String> parameterTypes = new ArrayList<>();
+    String parameters = memberPart.substring(paren + 1, memberPart.length() - 1);
+    if (!parameters.isBlank()) {
+      // Split at the commas that are not within type arguments.
+      int depth = 0;
+      int start = 0;
+      for (int i = 0; i < parameters.length(); i++) {
+        switch (parameters.charAt(i)) {
+          case '<' -> depth++;
+          case '>' -> depth--;
+          case ',' -> {
+            if (depth == 0) {
+              parameterTypes.add(parameters.substring(start, i));
+              start = i + 1;
+            }
+          }
+          default -> {}
+        }
+      }
+      parameterTypes.add(parameters.substring(start));
+    }
+    return new MemberSelector(typeNames, memberPart.substring(0, paren).strip(), parameterTypes);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(String.join(".", typeNames));
+    if (memberName != null) {
+      result.append('#').append(memberName);
+      if (parameterTypes != null) {
+        result.append('(').append(String.join(", ", parameterTypes)).append(')');
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns the erasure and simple name of a type, as this class compares parameter types: for
+   * example, "List" for "java.util.List&lt;String&gt;" and "int[]" for "@NonNull int...".
+   *
+   * @param type a type, as written in source code
+   * @return the erased simple name of {@code type}
+   * @throws IllegalArgumentException if {@code type} is empty
+   */
+  /*package-private*/ static String erasure(String type) {
+    StringBuilder sb = new StringBuilder(type.length());
+    int depth = 0;
+    for (int i = 0; i < type.length(); i++) {
+      char c = type.charAt(i);
+      if (c == '@') {
+        // Skip an annotation: its name and its arguments, if any.
+        i++;
+        while (i < type.length()
+            && (Character.isJavaIdentifierPart(type.charAt(i)) || type.charAt(i) == '.')) {
+          i++;
+        }
+        while (i < type.length() && Character.isWhitespace(type.charAt(i))) {
+          i++;
+        }
+        if (i < type.length() && type.charAt(i) == '(') {
+          int parens = 0;
+          for (; i < type.length(); i++) {
+            if (type.charAt(i) == '(') {
+              parens++;
+            } else if (type.charAt(i) == ')' && --parens == 0) {
+              break;
+            }
+          }
+        } else {
+          i--;
+        }
+      } else if (c == '<') {
+        depth++;
+      } else if (c == '>') {
+        depth--;
+      } else if (depth == 0 && !Character.isWhitespace(c)) {
+        sb.append(c);
+      }
+    }
+    String erased = sb.toString().replace("...", "[]");
+    int bracket = erased.indexOf('[');
+    String base = bracket < 0 ? erased : erased.substring(0, bracket);
+    String dims = bracket < 0 ? "" : erased.substring(bracket);
+    String simpleName = base.substring(base.lastIndexOf('.') + 1);
+    if (simpleName.isEmpty()) {
+      throw new IllegalArgumentException("Not a type: " + type);
+    }
+    return simpleName + dims;
+  }
+
+  /**
+   * Throws an exception if the given string is not an identifier.
+   *
+   * @param name a string
+   * @throws IllegalArgumentException if {@code name} is not an identifier
+   */
+  private static void checkIdentifier(String name) {
+    if (!SourceVersion.isIdentifier(name) || SourceVersion.isKeyword(name)) {
+      throw new IllegalArgumentException("Not an identifier: \"" + name + "\"");
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.parser.JavaTokenizer;
+import com.sun.tools.javac.parser.JavadocTokenizer;
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.ScannerFactory;
+import com.sun.tools.javac.parser.Tokens.Token;
+import com.sun.tools.javac.util.Context;
+import java.nio.CharBuffer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A scanner factory whose scanners time their lexer and count its tokens while a parse is metered,
+ * and enforce the parse's limits while it has any. Otherwise, it creates the same scanners as
+ * javac's factory. It is registered in the context of a {@link JavacParseSession}, so the session's
+ * parsers get their scanners from it.
+ */
+final class MeteredScannerFactory extends ScannerFactory {
+
+  /**
+   * The meter of the parse in progress, or null if it is not metered. Guarded by the session's
+   * javac state, which is locked while a parse is in progress.
+   */
+  @Nullable ParseMeter meter = null;
+
+  /**
+   * The guard of the parse in progress, or null if it has no limits. Guarded like {@link #meter}.
+   */
+  @Nullable ParseGuard guard = null;
+
+  /** The gaps of a scanner that scans all of its input. */
+  private static final int[] NO_GAPS = new int[0];
+
+  /**
+   * Creates a MeteredScannerFactory and registers it in the context.
+   *
+   * @param context the context
+   */
+  MeteredScannerFactory(Context context) {
+    super(context);
+  }
+
+  @Override
+  public Scanner newScanner(CharSequence input, boolean keepDocComments) {
+    if (input instanceof CharBuffer buffer
+        && buffer.hasArray()
+        && buffer.arrayOffset() == 0
+        && buffer.position() == 0) {
+      // Scan the buffer's array in place, as javac's factory does after compacting the buffer.
+      return newScanner(buffer.array(), buffer.limit(), keepDocComments);
+    }
+    if (meter == null && guard == null) {
+      return super.newScanner(input, keepDocComments);
+    }
+    char[] array = input.toString().toCharArray();
+    return newScanner(array, array.length, keepDocComments);
+  }
+
+  @Override
+  public Scanner newScanner(char[] input, int inputLength, boolean keepDocComments) {
+    return newScanner(input, inputLength, keepDocComments, NO_GAPS);
+  }
+
+  /**
+   * Returns a scanner for parts of the given input. The scanner skips the characters in the given
+   * gaps, which must each start where a token or the input starts, as if they were white space.
+   * The positions of its tokens are indices in {@code input}, so only the parts are lexed, yet the
+   * positions are those of the whole input.
+   *
+   * @param input the input
+   * @param inputLength the number of characters of {@code input} to scan
+   * @param keepDocComments if true, keep doc comments
+   * @param gaps the start and end of each gap, in increasing order: the index of its first
+   *     character, then the index just after its last character
+   * @return a scanner for {@code input}, without its gaps
+   */
+  Scanner newScanner(char[] input, int inputLength, boolean keepDocComments, int[] gaps) {
+    ParseMeter m = meter;
+    ParseGuard g = guard;
+    if (m == null && g == null && gaps.length == 0) {
+      return super.newScanner(input, inputLength, keepDocComments);
+    }
+    Gaps skipped = new Gaps(gaps);
+    // These are the tokenizers that javac's factory uses, but they skip the gaps and report each
+    // token.
+    JavaTokenizer tokenizer =
+        keepDocComments
+            ? new JavadocTokenizer(this, input, inputLength) {
+              @Override
+              public Token readToken() {
+                int resume = skipped.resume(position());
+                if (resume >= 0) {
+                  reset(resume);
+                }
+                long start = m == null ? 0 : System.nanoTime();
+                return lexed(super.readToken(), start, m, g);
+              }
+            }
+            : new JavaTokenizer(this, input, inputLength) {
+              @Override
+              public Token readToken() {
+                int resume = skipped.resume(position());
+                if (resume >= 0) {
+                  reset(resume);
+                }
+                long start = m == null ? 0 : System.nanoTime();
+                return lexed(super.readToken(), start, m, g);
+              }
+            };
+    return new Scanner(this, tokenizer) {};
+  }
+
+  /**
+   * Reports a token that the lexer has read to the meter and the guard.
+   *
+   * @param token the token
+   * @param start the value of {@link System#nanoTime} before the lexer read the token; ignored if
+   *     {@code meter} is null
+   * @param meter the meter of the parse, or null
+   * @param guard the guard of the parse, or null
+   * @return {@code token}
+   */
+  private static Token lexed(
+      Token token, long start, @Nullable ParseMeter meter, @Nullable ParseGuard guard) {
+    if (meter != null) {
+      meter.lexed(start);
+    }
+    if (guard != null) {
+      guard.lexed(token.kind);
+    }
+    return token;
+  }
+
+  /** The gaps that a scanner skips, and how far the scanner has got through them. */
+  private static final class Gaps {
+
+    /** The start and end of each gap, in increasing order. */
+    private final int[] bounds;
+
+    /** The index in {@link #bounds} of the start of the first gap that the lexer has not passed. */
+    private int next = 0;
+
+    /**
+     * Creates a Gaps.
+     *
+     * @param bounds the start and end of each gap, in increasing order
+     */
+    Gaps(int[] bounds) {
+      this.bounds = bounds;
+    }
+
+    /**
+     * Returns where the lexer should resume, given where it is about to read a token.
+     *
+     * @param position the index at which the lexer is about to read a token
+     * @return the end of the gap that contains {@code position}, or -1 if it is not in a gap
+     */
+    @SuppressWarnings("index") // the bounds come in pairs
+    int resume(int position) {
+      int result = -1;
+      int pos = position;
+      while (next < bounds.length && bounds[next] <= pos) {
+        if (pos < bounds[next + 1]) {
+          pos = bounds[next + 1];
+          result = pos;
+        }
+        next += 2;
+      }
+      return result;
+    }
+  }
+}
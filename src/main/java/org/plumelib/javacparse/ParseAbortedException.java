@@ -0,0 +1,58 @@
+package org.plumelib.javacparse;
+
+/** Thrown when a parse ends early because it exceeded one of its {@link ParseLimits}. */
+public final class ParseAbortedException extends RuntimeException {
+
+  /** Unique identifier for serialization. If you add or remove fields, change this number. */
+  private static final long serialVersionUID = 20261018L;
+
+  /** Why a parse ended early. */
+  public enum Reason {
+    /** The input was longer than {@link ParseLimits#maxInputLength}. */
+    INPUT_TOO_LONG,
+    /**
+     * The input was nested more deeply than {@link ParseLimits#maxNestingDepth}, or more deeply
+     * than the thread's stack allows.
+     */
+    NESTING_TOO_DEEP,
+    /** The parse took longer than {@link ParseLimits#timeout}. */
+    TIMEOUT,
+    /** The parsing thread was interrupted. Its interrupt status remains set. */
+    INTERRUPTED
+  }
+
+  /** Why the parse ended early. */
+  private final Reason reason;
+
+  /**
+   * Creates a ParseAbortedException.
+   *
+   * @param reason why the parse ended early
+   * @param message the detail message
+   */
+  /*package-private*/ ParseAbortedException(Reason reason, String message) {
+    super(message);
+    this.reason = reason;
+  }
+
+  /**
+   * Creates a ParseAbortedException.
+   *
+   * @param reason why the parse ended early
+   * @param message the detail message
+   * @param cause the cause
+   */
+  /*package-private*/ ParseAbortedException(Reason reason, String message, Throwable cause) {
+    super(message, cause);
+    this.reason = reason;
+  }
+
+  /**
+   * Returns why the parse ended early.
+   *
+   * @return why the parse ended early
+   */
+  public Reason reason() {
+    return reason;
+  }
+}
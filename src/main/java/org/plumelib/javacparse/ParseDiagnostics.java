@@ -0,0 +1,137 @@
+package org.plumelib.javacparse;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.StringJoiner;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * The diagnostics of a parse: an immutable list that counts its errors and warnings once, when it
+ * is created. Most parses have no diagnostics, and they share {@link #EMPTY}. The error messages,
+ * whose formatting is costly, are formatted on first request.
+ */
+final class ParseDiagnostics extends AbstractList<Diagnostic<? extends JavaFileObject>>
+    implements RandomAccess {
+
+  /** The diagnostics of a parse that has none. */
+  static final ParseDiagnostics EMPTY = new ParseDiagnostics(new Diagnostic<?>[0]);
+
+  /** The diagnostics. */
+  private final Diagnostic<?>[] diagnostics;
+
+  /** The number of errors among {@link #diagnostics}. */
+  private final int errorCount;
+
+  /** The number of warnings, mandatory or not, among {@link #diagnostics}. */
+  private final int warningCount;
+
+  /**
+   * The error messages, concatenated; or null if they have not been formatted yet. Formatting them
+   * twice, when two threads race to do so, is harmless.
+   */
+  private @MonotonicNonNull String errorMessages = null;
+
+  /**
+   * Creates a ParseDiagnostics.
+   *
+   * @param diagnostics the diagnostics; not copied, so the caller must not modify the array
+   */
+  private ParseDiagnostics(Diagnostic<?>[] diagnostics) {
+    this.diagnostics = diagnostics;
+    int errors = 0;
+    int warnings = 0;
+    for (Diagnostic<?> d : diagnostics) {
+      switch (d.getKind()) {
+        case ERROR -> errors++;
+        case WARNING, MANDATORY_WARNING -> warnings++;
+        default -> {}
+      }
+    }
+    this.errorCount = errors;
+    this.warningCount = warnings;
+  }
+
+  /**
+   * Returns the given diagnostics as a ParseDiagnostics: the argument itself if it is one, or else
+   * a copy.
+   *
+   * @param diagnostics the diagnostics of a parse
+   * @return the diagnostics as a ParseDiagnostics
+   */
+  static ParseDiagnostics of(List<? extends Diagnostic<? extends JavaFileObject>> diagnostics) {
+    if (diagnostics instanceof ParseDiagnostics pd) {
+      return pd;
+    }
+    if (diagnostics.isEmpty()) {
+      return EMPTY;
+    }
+    return new ParseDiagnostics(diagnostics.toArray(new Diagnostic<?>[0]));
+  }
+
+  @Override
+  // An out-of-bounds index throws ArrayIndexOutOfBoundsException, which is an
+  // IndexOutOfBoundsException as List.get() requires.  Only diagnostics about JavaFileObjects are
+  // stored.
+  @SuppressWarnings({
+    "index:array.access.unsafe.high",
+    "lowerbound:array.access.unsafe.low",
+    "unchecked"
+  })
+  public Diagnostic<? extends JavaFileObject> get(
+      @GuardSatisfied ParseDiagnostics this, int index) {
+    return (Diagnostic<? extends JavaFileObject>) diagnostics[index];
+  }
+
+  @Override
+  public @NonNegative int size(@GuardSatisfied ParseDiagnostics this) {
+    return diagnostics.length;
+  }
+
+  /**
+   * Returns the number of errors.
+   *
+   * @return the number of errors
+   */
+  int errorCount() {
+    return errorCount;
+  }
+
+  /**
+   * Returns the number of warnings, mandatory or not.
+   *
+   * @return the number of warnings
+   */
+  int warningCount() {
+    return warningCount;
+  }
+
+  /**
+   * Returns the error messages, concatenated. Returns the empty string if there are no errors.
+   *
+   * @return the error messages, concatenated
+   */
+  String errorMessages() {
+    if (errorCount == 0) {
+      return "";
+    }
+    String result = errorMessages;
+    if (result == null) {
+      StringJoiner sj = new StringJoiner("; ");
+      for (Diagnostic<?> d : diagnostics) {
+        if (d.getKind() == Diagnostic.Kind.ERROR) {
+          @SuppressWarnings("nullness:argument") // javac is not annotated
+          String msg = d.getMessage(null);
+          sj.add(msg);
+        }
+      }
+      result = sj.toString();
+      errorMessages = result;
+    }
+    return result;
+  }
+}
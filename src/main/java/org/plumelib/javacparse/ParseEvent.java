@@ -0,0 +1,39 @@
+package org.plumelib.javacparse;
+
+/**
+ * The measurements of one parse, which each registered {@link ParseListener} receives. The time of
+ * a parse is split into phases; each is measured with {@link System#nanoTime}.
+ *
+ * @param kind what was parsed; a type declaration is parsed as a compilation unit
+ * @param setupNanos the time to set up javac's data structures (its {@code Context}, {@code
+ *     JavacFileManager}, and so forth) for this parse, or 0 if the parse reused those of an earlier
+ *     parse
+ * @param readNanos the time to read the source, such as from a file; 0 for a snippet
+ * @param lexNanos the time to split the source into tokens
+ * @param parseNanos the time to build the tree from the tokens, not including {@code lexNanos}
+ * @param inputLength the number of characters in the source
+ * @param tokenCount the number of tokens in the source, including the end of input; a skipped
+ *     method body's tokens are counted
+ * @param nodeCount the number of nodes in the tree; a skipped method body is one node
+ * @param diagnosticCount the number of diagnostics
+ */
+public record ParseEvent(
+    ParseKind kind,
+    long setupNanos,
+    long readNanos,
+    long lexNanos,
+    long parseNanos,
+    int inputLength,
+    int tokenCount,
+    int nodeCount,
+    int diagnosticCount) {
+
+  /**
+   * Returns the total time of the parse: the sum of the times of its phases.
+   *
+   * @return the total time of the parse, in nanoseconds
+   */
+  public long totalNanos() {
+    return setupNanos + readNanos + lexNanos + parseNanos;
+  }
+}
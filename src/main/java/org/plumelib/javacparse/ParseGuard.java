@@ -0,0 +1,118 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import java.time.Duration;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Enforces the {@link ParseLimits} of one parse. A ParseGuard exists only for a parse that has
+ * limits, and it is used by only the thread that parses. The lexer calls {@link #lexed} for each
+ * token; it and the other methods throw {@link ParseAbortedException} if a limit is exceeded.
+ */
+final class ParseGuard {
+
+  /**
+   * The number of tokens between checks of the clock and of the thread's interrupt status. Reading
+   * the clock takes about as long as reading a token.
+   */
+  private static final int CHECK_INTERVAL = 64;
+
+  /** The limits. */
+  private final ParseLimits limits;
+
+  /** The value of {@link System#nanoTime} by which the parse must end; unused if no timeout. */
+  private final long deadline;
+
+  /** The current depth of nested parentheses, brackets, and braces. */
+  private int depth = 0;
+
+  /** The number of tokens read. */
+  private int tokenCount = 0;
+
+  /**
+   * Creates a ParseGuard for a parse that is starting.
+   *
+   * @param limits the limits
+   */
+  private ParseGuard(ParseLimits limits) {
+    this.limits = limits;
+    Duration timeout = limits.timeout();
+    this.deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+  }
+
+  /**
+   * Returns a guard for a parse that is starting, or null if there are no limits. Throws if the
+   * thread is already interrupted.
+   *
+   * @param limits the limits, or null if there are none
+   * @return a guard for the parse, or null if there are no limits
+   */
+  static @Nullable ParseGuard start(@Nullable ParseLimits limits) {
+    if (limits == null) {
+      return null;
+    }
+    ParseGuard result = new ParseGuard(limits);
+    result.checkTime();
+    return result;
+  }
+
+  /**
+   * Checks the length of the input.
+   *
+   * @param length the number of characters in the input
+   */
+  void checkLength(int length) {
+    if (length > limits.maxInputLength()) {
+      throw new ParseAbortedException(
+          ParseAbortedException.Reason.INPUT_TOO_LONG,
+          "Input has " + length + " characters; the limit is " + limits.maxInputLength());
+    }
+  }
+
+  /**
+   * Records that the lexer has read a token.
+   *
+   * @param kind the kind of the token
+   */
+  void lexed(TokenKind kind) {
+    switch (kind) {
+      case LPAREN, LBRACKET, LBRACE -> {
+        if (++depth > limits.maxNestingDepth()) {
+          throw new ParseAbortedException(
+              ParseAbortedException.Reason.NESTING_TOO_DEEP,
+              "Input is nested more than " + limits.maxNestingDepth() + " deep");
+        }
+      }
+      case RPAREN, RBRACKET, RBRACE -> depth = Math.max(0, depth - 1);
+      default -> {}
+    }
+    if (++tokenCount % CHECK_INTERVAL == 0) {
+      checkTime();
+    }
+  }
+
+  /** Checks whether the parse has timed out or its thread has been interrupted. */
+  private void checkTime() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new ParseAbortedException(
+          ParseAbortedException.Reason.INTERRUPTED, "Parsing thread was interrupted");
+    }
+    if (limits.timeout() != null && System.nanoTime() - deadline > 0) {
+      throw new ParseAbortedException(
+          ParseAbortedException.Reason.TIMEOUT, "Parse took longer than " + limits.timeout());
+    }
+  }
+
+  /**
+   * Returns the exception that reports that the parser overflowed the stack.
+   *
+   * @param e the error that the parser threw
+   * @return the exception to throw instead of {@code e}
+   */
+  ParseAbortedException stackOverflow(StackOverflowError e) {
+    return new ParseAbortedException(
+        ParseAbortedException.Reason.NESTING_TOO_DEEP,
+        "Input is nested too deeply for the thread's stack",
+        e);
+  }
+}
@@ -0,0 +1,15 @@
+package org.plumelib.javacparse;
+
+/** The kinds of Java source code that javac-parse can parse. */
+public enum ParseKind {
+  /** A compilation unit (the contents of a Java file). */
+  COMPILATION_UNIT,
+  /** A type declaration, such as a class or interface. */
+  TYPE_DECLARATION,
+  /** A method or annotation type element. */
+  METHOD,
+  /** An expression, such as "foo.bar()" or "1 + 2". */
+  EXPRESSION,
+  /** A type use, such as "int" or "List&lt;? extends Number&gt;". */
+  TYPE_USE;
+}
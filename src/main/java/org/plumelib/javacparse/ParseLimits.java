@@ -0,0 +1,82 @@
+package org.plumelib.javacparse;
+
+import java.time.Duration;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Limits on each parse, for parsing untrusted input. A parse that exceeds a limit throws a {@link
+ * ParseAbortedException} instead of returning a result. A parse under limits also ends that way if
+ * its thread is interrupted, so a parse can be cancelled, for example by {@code
+ * Future.cancel(true)}.
+ *
+ * <p>Limits are given to a {@link JavacParseSession} or {@link JavacParsePool} when it is created,
+ * and apply to each of its parses separately, including the later parse of a method body (see
+ * {@link ParseOptions#methodBodies}). They do not apply to {@link JavacParseSession#lex}.
+ *
+ * @param maxInputLength the maximum number of characters in the input
+ * @param maxNestingDepth the maximum depth to which parentheses, brackets, and braces may be nested
+ * @param timeout the maximum time that a parse may take, or null if there is no maximum
+ */
+public record ParseLimits(int maxInputLength, int maxNestingDepth, @Nullable Duration timeout) {
+
+  /**
+   * No limits. A parse under these limits can still be cancelled by interrupting its thread, and it
+   * throws a {@link ParseAbortedException} rather than a {@link StackOverflowError} if its input is
+   * nested too deeply for the thread's stack.
+   */
+  public static final ParseLimits UNLIMITED =
+      new ParseLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, null);
+
+  /**
+   * Creates a ParseLimits.
+   *
+   * @param maxInputLength the maximum number of characters in the input
+   * @param maxNestingDepth the maximum depth to which parentheses, brackets, and braces may be
+   *     nested
+   * @param timeout the maximum time that a parse may take, or null if there is no maximum
+   * @throws IllegalArgumentException if a limit is negative, or the timeout is not positive
+   */
+  public ParseLimits {
+    if (maxInputLength < 0) {
+      throw new IllegalArgumentException("maxInputLength must be non-negative: " + maxInputLength);
+    }
+    if (maxNestingDepth < 0) {
+      throw new IllegalArgumentException(
+          "maxNestingDepth must be non-negative: " + maxNestingDepth);
+    }
+    if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+      throw new IllegalArgumentException("timeout must be positive: " + timeout);
+    }
+  }
+
+  /**
+   * Returns limits that are the same as these, except for the maximum input length.
+   *
+   * @param maxInputLength the maximum number of characters in the input
+   * @return limits that are the same as these, except for {@code maxInputLength}
+   */
+  public ParseLimits withMaxInputLength(int maxInputLength) {
+    return new ParseLimits(maxInputLength, maxNestingDepth, timeout);
+  }
+
+  /**
+   * Returns limits that are the same as these, except for the maximum nesting depth.
+   *
+   * @param maxNestingDepth the maximum depth to which parentheses, brackets, and braces may be
+   *     nested
+   * @return limits that are the same as these, except for {@code maxNestingDepth}
+   */
+  public ParseLimits withMaxNestingDepth(int maxNestingDepth) {
+    return new ParseLimits(maxInputLength, maxNestingDepth, timeout);
+  }
+
+  /**
+   * Returns limits that are the same as these, except for the timeout.
+   *
+   * @param timeout the maximum time that a parse may take, or null if there is no maximum
+   * @return limits that are the same as these, except for {@code timeout}
+   */
+  public ParseLimits withTimeout(@Nullable Duration timeout) {
+    return new ParseLimits(maxInputLength, maxNestingDepth, timeout);
+  }
+}
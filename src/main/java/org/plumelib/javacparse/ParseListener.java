@@ -0,0 +1,21 @@
+package org.plumelib.javacparse;
+
+/**
+ * Receives the measurements of each parse, once it is registered with {@link
+ * ParseMetrics#addListener}. A listener is called for each parse of a compilation unit, type
+ * declaration, method, expression, or type use, but not for a method body that is parsed later (see
+ * {@link ParseOptions#methodBodies}).
+ *
+ * <p>A listener is called on the thread that parsed, after the parse and before the parse method
+ * returns; so it may be called by several threads at once, and it should be quick.
+ */
+@FunctionalInterface
+public interface ParseListener {
+
+  /**
+   * Receives the measurements of a parse.
+   *
+   * @param event the measurements of the parse
+   */
+  void parsed(ParseEvent event);
+}
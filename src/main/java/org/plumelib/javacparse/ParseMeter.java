@@ -0,0 +1,133 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Measures one parse, for the registered {@link ParseListener}s. A ParseMeter exists only while
+ * metrics are enabled, and it is used by only the thread that parses.
+ */
+final class ParseMeter {
+
+  /** The listeners to which to report the parse. */
+  private final ParseListener[] listeners;
+
+  /** What is parsed. */
+  private final ParseKind kind;
+
+  /** The time to read the source. */
+  private long readNanos = 0;
+
+  /** The time spent in the lexer. */
+  private long lexNanos = 0;
+
+  /** The number of tokens that the lexer has read. */
+  private int tokenCount = 0;
+
+  /** The value of {@link System#nanoTime} when the parser was started. */
+  private long parseStart = 0;
+
+  /** The time from {@link #parseStart} until the parser finished, including lexing. */
+  private long parseNanos = 0;
+
+  /**
+   * Creates a ParseMeter.
+   *
+   * @param listeners the listeners to which to report the parse
+   * @param kind what is parsed
+   */
+  private ParseMeter(ParseListener[] listeners, ParseKind kind) {
+    this.listeners = listeners;
+    this.kind = kind;
+  }
+
+  /**
+   * Returns a meter for a parse that is starting, or null if metrics are disabled.
+   *
+   * @param kind what is parsed
+   * @return a meter for the parse, or null if metrics are disabled
+   */
+  static @Nullable ParseMeter start(ParseKind kind) {
+    ParseListener[] listeners = ParseMetrics.listeners();
+    return listeners.length == 0 ? null : new ParseMeter(listeners, kind);
+  }
+
+  /**
+   * Records that the source has been read.
+   *
+   * @param start the value of {@link System#nanoTime} before the source was read
+   */
+  void readDone(long start) {
+    readNanos = System.nanoTime() - start;
+  }
+
+  /** Records that the parser is being created. Tokens may be read from now on. */
+  void parseStart() {
+    parseStart = System.nanoTime();
+  }
+
+  /** Records that the parser has finished. */
+  void parseDone() {
+    parseNanos = System.nanoTime() - parseStart;
+  }
+
+  /**
+   * Records that the lexer has read a token.
+   *
+   * @param start the value of {@link System#nanoTime} before the lexer read the token
+   */
+  void lexed(long start) {
+    lexNanos += System.nanoTime() - start;
+    tokenCount++;
+  }
+
+  /**
+   * Reports the parse to the listeners.
+   *
+   * @param setupNanos the time to set up javac's data structures for the parse
+   * @param inputLength the number of characters in the source
+   * @param tree the tree, or null if the parse yielded none
+   * @param diagnosticCount the number of diagnostics
+   */
+  void report(long setupNanos, int inputLength, @Nullable JCTree tree, int diagnosticCount) {
+    ParseEvent event =
+        new ParseEvent(
+            kind,
+            setupNanos,
+            readNanos,
+            lexNanos,
+            parseNanos - lexNanos,
+            inputLength,
+            tokenCount,
+            tree == null ? 0 : nodeCount(tree),
+            diagnosticCount);
+    for (ParseListener listener : listeners) {
+      listener.parsed(event);
+    }
+  }
+
+  /**
+   * Returns the number of nodes in a tree. A method body that was not parsed is one node.
+   *
+   * @param tree a tree
+   * @return the number of nodes in {@code tree}
+   */
+  private static int nodeCount(JCTree tree) {
+    int[] count = {0};
+    new TreeScanner() {
+      @Override
+      public void scan(@Nullable JCTree t) {
+        if (t == null) {
+          return;
+        }
+        count[0]++;
+        // Scanning a lazy body would parse it.
+        if (!(t instanceof SkippedBlock)) {
+          super.scan(t);
+        }
+      }
+    }.scan(tree);
+    return count[0];
+  }
+}
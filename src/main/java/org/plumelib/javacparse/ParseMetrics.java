@@ -0,0 +1,295 @@
+package org.plumelib.javacparse;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parse metrics: the registry of {@link ParseListener}s, and a listener that aggregates the events
+ * that it receives into counters and histograms.
+ *
+ * <p>Metrics are disabled while no listener is registered. Then a parse checks one field and
+ * measures nothing, so the hook costs essentially nothing. While a listener is registered, each
+ * parse times its phases and counts its tokens and nodes; timing the lexer adds a few percent to a
+ * parse.
+ *
+ * <p>To aggregate the metrics of all parses:
+ *
+ * <pre>{@code
+ * ParseMetrics metrics = new ParseMetrics();
+ * ParseMetrics.addListener(metrics);
+ * ...
+ * long p99 = metrics.histogram(ParseMetrics.Phase.TOTAL).percentile(0.99);
+ * }</pre>
+ *
+ * <p>A ParseMetrics is thread-safe.
+ */
+public final class ParseMetrics implements ParseListener {
+
+  /** The registered listeners; empty if metrics are disabled. Modified under the class's lock. */
+  @SuppressWarnings("PMD.AvoidUsingVolatile") // read without a lock by every parse
+  private static volatile ParseListener[] listeners = new ParseListener[0];
+
+  /** The phases of a parse, and its total time. */
+  public enum Phase {
+    /** Setting up javac's data structures; see {@link ParseEvent#setupNanos}. */
+    SETUP,
+    /** Reading the source; see {@link ParseEvent#readNanos}. */
+    READ,
+    /** Splitting the source into tokens; see {@link ParseEvent#lexNanos}. */
+    LEX,
+    /** Building the tree; see {@link ParseEvent#parseNanos}. */
+    PARSE,
+    /** The whole parse; see {@link ParseEvent#totalNanos}. */
+    TOTAL
+  }
+
+  /** The number of parses. */
+  private final LongAdder parseCount = new LongAdder();
+
+  /** The number of parses that yielded at least one diagnostic. */
+  private final LongAdder parsesWithDiagnostics = new LongAdder();
+
+  /** The total number of characters parsed. */
+  private final LongAdder inputLength = new LongAdder();
+
+  /** The total number of tokens. */
+  private final LongAdder tokenCount = new LongAdder();
+
+  /** The total number of tree nodes. */
+  private final LongAdder nodeCount = new LongAdder();
+
+  /** The total number of diagnostics. */
+  private final LongAdder diagnosticCount = new LongAdder();
+
+  /** The histogram of the times of each phase, indexed by {@link Phase#ordinal}. */
+  private final Histogram[] histograms = new Histogram[Phase.values().length];
+
+  /** Creates a ParseMetrics, whose counts are all 0. It is not registered. */
+  public ParseMetrics() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  /**
+   * Registers a listener, which enables metrics. A listener that is registered more than once is
+   * called more than once for each parse.
+   *
+   * @param listener the listener to register
+   */
+  public static synchronized void addListener(ParseListener listener) {
+    ParseListener[] result = Arrays.copyOf(listeners, listeners.length + 1);
+    result[listeners.length] = listener;
+    listeners = result;
+  }
+
+  /**
+   * Unregisters a listener. If no listener remains, metrics are disabled.
+   *
+   * @param listener the listener to unregister
+   * @return true if the listener was registered
+   */
+  public static synchronized boolean removeListener(ParseListener listener) {
+    ParseListener[] current = listeners;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == listener) {
+        ParseListener[] result = new ParseListener[current.length - 1];
+        System.arraycopy(current, 0, result, 0, i);
+        System.arraycopy(current, i + 1, result, i, current.length - i - 1);
+        listeners = result;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the registered listeners. The caller must not modify the array.
+   *
+   * @return the registered listeners; empty if metrics are disabled
+   */
+  /*package-private*/ static ParseListener[] listeners() {
+    return listeners;
+  }
+
+  @Override
+  @SuppressWarnings("index") // there is a histogram for each phase
+  public void parsed(ParseEvent event) {
+    parseCount.increment();
+    if (event.diagnosticCount() != 0) {
+      parsesWithDiagnostics.increment();
+      diagnosticCount.add(event.diagnosticCount());
+    }
+    inputLength.add(event.inputLength());
+    tokenCount.add(event.tokenCount());
+    nodeCount.add(event.nodeCount());
+    histograms[Phase.SETUP.ordinal()].record(event.setupNanos());
+    histograms[Phase.READ.ordinal()].record(event.readNanos());
+    histograms[Phase.LEX.ordinal()].record(event.lexNanos());
+    histograms[Phase.PARSE.ordinal()].record(event.parseNanos());
+    histograms[Phase.TOTAL.ordinal()].record(event.totalNanos());
+  }
+
+  /**
+   * Returns the number of parses.
+   *
+   * @return the number of parses
+   */
+  public long parseCount() {
+    return parseCount.sum();
+  }
+
+  /**
+   * Returns the number of parses that yielded at least one diagnostic.
+   *
+   * @return the number of parses that yielded at least one diagnostic
+   */
+  public long parsesWithDiagnostics() {
+    return parsesWithDiagnostics.sum();
+  }
+
+  /**
+   * Returns the total number of characters parsed.
+   *
+   * @return the total number of characters parsed
+   */
+  public long inputLength() {
+    return inputLength.sum();
+  }
+
+  /**
+   * Returns the total number of tokens.
+   *
+   * @return the total number of tokens
+   */
+  public long tokenCount() {
+    return tokenCount.sum();
+  }
+
+  /**
+   * Returns the total number of tree nodes.
+   *
+   * @return the total number of tree nodes
+   */
+  public long nodeCount() {
+    return nodeCount.sum();
+  }
+
+  /**
+   * Returns the total number of diagnostics.
+   *
+   * @return the total number of diagnostics
+   */
+  public long diagnosticCount() {
+    return diagnosticCount.sum();
+  }
+
+  /**
+   * Returns the histogram of the times of a phase, which continues to be updated.
+   *
+   * @param phase a phase
+   * @return the histogram of the times of {@code phase}
+   */
+  @SuppressWarnings("index") // there is a histogram for each phase
+  public Histogram histogram(Phase phase) {
+    return histograms[phase.ordinal()];
+  }
+
+  /**
+   * A histogram of times, in nanoseconds. Its buckets are powers of 2: bucket 0 counts the times
+   * below 2 ns, and bucket {@code i > 0} counts the times from 2<sup>i</sup> up to but not
+   * including 2<sup>i+1</sup> ns. So a percentile is accurate to within a factor of 2.
+   */
+  public static final class Histogram {
+
+    /** The number of buckets: enough for any non-negative {@code long}. */
+    private static final int BUCKETS = 63;
+
+    /** The count of each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** The sum of the recorded times. */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /** Creates an empty Histogram. */
+    /*package-private*/ Histogram() {}
+
+    /**
+     * Records a time.
+     *
+     * @param nanos a time in nanoseconds; a negative time is recorded as 0
+     */
+    /*package-private*/ void record(long nanos) {
+      long n = Math.max(nanos, 0);
+      counts.incrementAndGet(Math.max(0, 63 - Long.numberOfLeadingZeros(n)));
+      totalNanos.add(n);
+    }
+
+    /**
+     * Returns the number of recorded times.
+     *
+     * @return the number of recorded times
+     */
+    public long count() {
+      long result = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        result += counts.get(i);
+      }
+      return result;
+    }
+
+    /**
+     * Returns the sum of the recorded times.
+     *
+     * @return the sum of the recorded times, in nanoseconds
+     */
+    public long totalNanos() {
+      return totalNanos.sum();
+    }
+
+    /**
+     * Returns the count of each bucket.
+     *
+     * @return the count of each bucket; see the class comment
+     */
+    public long[] bucketCounts() {
+      long[] result = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        result[i] = counts.get(i);
+      }
+      return result;
+    }
+
+    /**
+     * Returns an upper bound on a percentile of the recorded times: the exclusive upper bound of
+     * the bucket that contains it.
+     *
+     * @param fraction the percentile, as a fraction between 0 and 1, such as 0.99
+     * @return an upper bound on the percentile, in nanoseconds; 0 if no time has been recorded
+     * @throws IllegalArgumentException if {@code fraction} is not between 0 and 1
+     */
+    public long percentile(double fraction) {
+      if (!(fraction >= 0 && fraction <= 1)) {
+        throw new IllegalArgumentException("fraction must be between 0 and 1: " + fraction);
+      }
+      long[] snapshot = bucketCounts();
+      long total = 0;
+      for (long c : snapshot) {
+        total += c;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(fraction * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += snapshot[i];
+        if (seen >= rank) {
+          return i == BUCKETS - 1 ? Long.MAX_VALUE : 2L << i;
+        }
+      }
+      return Long.MAX_VALUE;
+    }
+  }
+}
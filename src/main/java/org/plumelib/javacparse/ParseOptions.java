@@ -0,0 +1,133 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Position;
+
+/**
+ * What a parse of a compilation unit or type declaration retains besides the tree itself, and
+ * whether it parses method bodies. Each kind of information costs time and memory during the parse
+ * and for as long as the tree is retained; a client that needs only declarations and names, such as
+ * an indexer, can omit all of them.
+ *
+ * <p>The first three options do not affect the tree's structure, its positions ({@code
+ * getStartPosition()}), or the diagnostics; except that without doc comments, a {@code @deprecated}
+ * tag in a doc comment does not set the {@code DEPRECATED} flag of the declaration.
+ *
+ * <p>{@link #methodBodies} says whether the bodies of methods and constructors are parsed along
+ * with the rest of the compilation unit. A body that is not parsed is represented by a placeholder
+ * block with the same start and end positions as the body. With {@link MethodBodies#SKIP}, the
+ * result is a skeleton of the compilation unit: each placeholder is an empty block, and {@link
+ * JavacParseSession#parseBody} parses it on demand. With {@link MethodBodies#LAZY}, each
+ * placeholder parses its body the first time that its statements are requested or that it is
+ * visited, so the result behaves like that of a full parse but builds only the bodies that are
+ * used. Either way, the diagnostics are those of the rest of the compilation unit; {@code
+ * parseBody} returns those of a body. A method that is declared within an expression, such as in an
+ * anonymous class in a field initializer, is parsed in full, as is an initializer block.
+ *
+ * @param docComments if true, retain doc comments, in the compilation unit's {@code docComments}
+ *     table; otherwise the table is null
+ * @param endPositions if true, retain the end position of each tree, so that {@code
+ *     SourcePositions.getEndPosition()} works; otherwise every end position is unknown ({@code
+ *     Diagnostic.NOPOS})
+ * @param lineMap if true, retain the compilation unit's line map, which {@code getLineMap()}
+ *     returns; otherwise that method returns null
+ * @param methodBodies whether to parse method bodies, skip them, or parse them lazily
+ */
+public record ParseOptions(
+    boolean docComments, boolean endPositions, boolean lineMap, MethodBodies methodBodies) {
+
+  /** Whether and when a parse parses the bodies of methods and constructors. */
+  public enum MethodBodies {
+    /** Parse each body along with the rest of the compilation unit. */
+    PARSE,
+    /** Do not parse bodies; each is an empty placeholder, which {@code parseBody} parses. */
+    SKIP,
+    /**
+     * Parse each body when it is first used. This is thread-safe: a body that is used concurrently
+     * by several threads is parsed only once.
+     */
+    LAZY
+  }
+
+  /**
+   * Retain doc comments, end positions, and the line map, and parse method bodies. These are the
+   * default options.
+   */
+  public static final ParseOptions DEFAULT = new ParseOptions(true, true, true, MethodBodies.PARSE);
+
+  /** Retain only the tree: no doc comments, no end positions, and no line map. */
+  public static final ParseOptions TREE_ONLY =
+      new ParseOptions(false, false, false, MethodBodies.PARSE);
+
+  /**
+   * Returns options that are the same as these, except for whether doc comments are retained.
+   *
+   * @param docComments if true, retain doc comments
+   * @return options that are the same as these, except for {@code docComments}
+   */
+  public ParseOptions withDocComments(boolean docComments) {
+    return new ParseOptions(docComments, endPositions, lineMap, methodBodies);
+  }
+
+  /**
+   * Returns options that are the same as these, except for whether end positions are retained.
+   *
+   * @param endPositions if true, retain end positions
+   * @return options that are the same as these, except for {@code endPositions}
+   */
+  public ParseOptions withEndPositions(boolean endPositions) {
+    return new ParseOptions(docComments, endPositions, lineMap, methodBodies);
+  }
+
+  /**
+   * Returns options that are the same as these, except for whether the line map is retained.
+   *
+   * @param lineMap if true, retain the line map
+   * @return options that are the same as these, except for {@code lineMap}
+   */
+  public ParseOptions withLineMap(boolean lineMap) {
+    return new ParseOptions(docComments, endPositions, lineMap, methodBodies);
+  }
+
+  /**
+   * Returns options that are the same as these, except for whether and when method bodies are
+   * parsed.
+   *
+   * @param methodBodies whether to parse method bodies, skip them, or parse them lazily
+   * @return options that are the same as these, except for {@code methodBodies}
+   */
+  public ParseOptions withMethodBodies(MethodBodies methodBodies) {
+    return new ParseOptions(docComments, endPositions, lineMap, methodBodies);
+  }
+
+  /**
+   * Returns the options with which a compilation unit was parsed.
+   *
+   * @param cu a compilation unit
+   * @return the options with which {@code cu} was parsed
+   */
+  /*package-private*/ static ParseOptions of(JCCompilationUnit cu) {
+    // A parser that keeps end positions records the end of the first top-level tree, or of the
+    // compilation unit if it has none.
+    JCTree first = cu.defs.isEmpty() ? cu : cu.defs.head;
+    boolean endPositions =
+        cu.endPositions != null && cu.endPositions.getEndPos(first) != Position.NOPOS;
+    MethodBodies[] methodBodies = {MethodBodies.PARSE};
+    new TreeScanner() {
+      @Override
+      public void visitMethodDef(JCMethodDecl tree) {
+        if (tree.body instanceof SkippedBlock) {
+          // Scanning a lazy body would parse it.
+          methodBodies[0] = tree.body instanceof LazyBlock ? MethodBodies.LAZY : MethodBodies.SKIP;
+        } else {
+          super.visitMethodDef(tree);
+        }
+      }
+    }.scan(cu);
+    return new ParseOptions(
+        cu.docComments != null, endPositions, cu.lineMap != null, methodBodies[0]);
+  }
+}
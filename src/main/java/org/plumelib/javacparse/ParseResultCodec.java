@@ -0,0 +1,1685 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ModuleTree.ModuleKind;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.parser.DocCommentParser;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.DCTree.DCDocComment;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCAnnotation;
+import com.sun.tools.javac.tree.JCTree.JCAssignOp;
+import com.sun.tools.javac.tree.JCTree.JCBinary;
+import com.sun.tools.javac.tree.JCTree.JCCase;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMemberReference;
+import com.sun.tools.javac.tree.JCTree.JCModuleDecl;
+import com.sun.tools.javac.tree.JCTree.JCUnary;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.JCTree.Tag;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.DiagnosticSource;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+import com.sun.tools.javac.util.Position;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.calledmethods.qual.EnsuresCalledMethods;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.mustcall.qual.InheritableMustCall;
+import org.checkerframework.checker.mustcall.qual.Owning;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Converts the result of parsing a compilation unit to bytes, and back. {@link JavacParseDiskCache}
+ * uses it to store parse results on disk.
+ *
+ * <p>The encoding is generic: it records each tree node's class and the values of the node's public
+ * fields, found by reflection, so it follows the tree classes of whichever JDK is running. Bytes
+ * are valid only for the JDK that wrote them. A few tree classes keep part of their state in
+ * non-public fields; nodes of those classes are created via {@link TreeMaker}. Encoding a tree that
+ * has state this class does not know how to record, such as a non-public field that a later JDK
+ * adds to a tree class, throws {@link UnsupportedOperationException}.
+ *
+ * <p>A decoded compilation unit has its own end position table, doc comment table, and doc
+ * comments, which give the same answers as the parser's. Its diagnostics are fixed: their messages
+ * are in the locale that was the default when the result was encoded.
+ */
+final class ParseResultCodec {
+
+  /** The version of the encoding. Increment it whenever the encoding changes. */
+  /*package-private*/ static final int FORMAT_VERSION = 1;
+
+  /** Do not instantiate. */
+  private ParseResultCodec() {
+    throw new Error("Do not instantiate.");
+  }
+
+  // A value in a tree is encoded as a varint tag, followed by more data depending on the tag.
+
+  /** The tag of null. */
+  private static final int TAG_NULL = 0;
+
+  /** The tag of a node that was already encoded; the node's index follows. */
+  private static final int TAG_BACKREF = 1;
+
+  /** The tag of a javac List; its size and elements follow. */
+  private static final int TAG_LIST = 2;
+
+  /** The tag of the first node class; node class {@code i} has tag {@code TAG_FIRST_CLASS + i}. */
+  private static final int TAG_FIRST_CLASS = 3;
+
+  // The value of a literal (JCLiteral.value) is encoded as a byte, followed by the value.
+
+  /** A null literal value. */
+  private static final int LITERAL_NULL = 0;
+
+  /** An Integer literal value. */
+  private static final int LITERAL_INT = 1;
+
+  /** A Long literal value. */
+  private static final int LITERAL_LONG = 2;
+
+  /** A Float literal value. */
+  private static final int LITERAL_FLOAT = 3;
+
+  /** A Double literal value. */
+  private static final int LITERAL_DOUBLE = 4;
+
+  /** A String literal value. */
+  private static final int LITERAL_STRING = 5;
+
+  /** A Character literal value. */
+  private static final int LITERAL_CHAR = 6;
+
+  /** A Boolean literal value. */
+  private static final int LITERAL_BOOLEAN = 7;
+
+  /** The fields of a compilation unit that are not encoded but are recreated by decoding. */
+  private static final List<String> COMPILATION_UNIT_FIELDS =
+      List.of(
+          "JCCompilationUnit.sourcefile",
+          "JCCompilationUnit.lineMap",
+          "JCCompilationUnit.docComments",
+          "JCCompilationUnit.endPositions");
+
+  /** The description of each tree class. */
+  private static final ClassValue<NodeClass> NODE_CLASSES =
+      new ClassValue<>() {
+        @Override
+        protected NodeClass computeValue(Class<?> type) {
+          return new NodeClass(type.asSubclass(JCTree.class));
+        }
+      };
+
+  /**
+   * Encodes the result of parsing a compilation unit.
+   *
+   * @param result the result of parsing a compilation unit
+   * @return the encoded result
+   * @throws UnsupportedOperationException if the tree contains state that cannot be encoded
+   */
+  /*package-private*/ static byte[] encode(JavacParseResult<CompilationUnitTree> result) {
+    JCCompilationUnit cu = (JCCompilationUnit) result.tree();
+    Encoder encoder = new Encoder(cu.endPositions, cu.docComments);
+    encoder.writeValue(cu);
+    encoder.writeDiagnostics(result.diagnostics());
+    return encoder.toByteArray();
+  }
+
+  /**
+   * Decodes the result of parsing a compilation unit.
+   *
+   * @param bytes the encoded result
+   * @param offset the index in {@code bytes} where the encoded result starts
+   * @param source the source file of the compilation unit
+   * @param chars the contents of the source file
+   * @param length the number of chars in {@code chars} that are the contents of the source file
+   * @param loader the javac data structures for the decoded tree
+   * @return the decoded result
+   * @throws IOException if the bytes are malformed, or were written by a different JDK
+   */
+  /*package-private*/ static JavacParseResult<CompilationUnitTree> decode(
+      byte[] bytes, int offset, JavaFileObject source, char[] chars, int length, Loader loader)
+      throws IOException {
+    Decoder decoder = new Decoder(new Source(bytes, offset), source, loader);
+    if (!(decoder.readValue() instanceof JCCompilationUnit cu)) {
+      throw new IOException("Not a compilation unit");
+    }
+    cu.sourcefile = source;
+    cu.lineMap = Position.makeLineMap(chars, length, true);
+    cu.endPositions = decoder.endPositions;
+    cu.docComments = decoder.docComments;
+    List<Diagnostic<? extends JavaFileObject>> diagnostics = decoder.readDiagnostics();
+    if (decoder.in.pos != bytes.length) {
+      throw new IOException("Trailing bytes");
+    }
+    return new JavacParseResult<>(cu, diagnostics);
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Tree classes
+  //
+
+  /** The kinds of tree classes whose nodes are not created by the generic method. */
+  private enum Special {
+    /** A class that is created generically. */
+    NONE(null),
+    /** JCBinary, whose operator is not a public field. */
+    BINARY("JCOperatorExpression.opcode"),
+    /** JCUnary, whose operator is not a public field. */
+    UNARY("JCOperatorExpression.opcode"),
+    /** JCAssignOp, whose operator is not a public field. */
+    ASSIGNOP("JCOperatorExpression.opcode"),
+    /** JCAnnotation, whose tag (annotation or type annotation) is not a public field. */
+    ANNOTATION("JCAnnotation.tag"),
+    /** JCModuleDecl, whose kind (open or not) is not a public field. */
+    MODULE("JCModuleDecl.kind"),
+    /** JCCase, whose kind is a final field. */
+    CASE("JCCase.caseKind"),
+    /** JCVariableDecl, whose {@code var} flag is not a public field. */
+    VARIABLE("JCVariableDecl.declaredUsingVar"),
+    /** JCMemberReference, whose overload kind is set only by attribution. */
+    MEMBER_REFERENCE("JCMemberReference.overloadKind"),
+    /** JCCompilationUnit, some of whose fields are recreated by decoding. */
+    COMPILATION_UNIT(null);
+
+    /** The non-public or final field that this kind handles, or null. */
+    final @Nullable String hiddenField;
+
+    /** The kind of each class that is not created generically. */
+    static final Map<Class<?>, Special> OF_CLASS =
+        Map.of(
+            JCBinary.class, BINARY,
+            JCUnary.class, UNARY,
+            JCAssignOp.class, ASSIGNOP,
+            JCAnnotation.class, ANNOTATION,
+            JCModuleDecl.class, MODULE,
+            JCCase.class, CASE,
+            JCVariableDecl.class, VARIABLE,
+            JCMemberReference.class, MEMBER_REFERENCE,
+            JCCompilationUnit.class, COMPILATION_UNIT);
+
+    /**
+     * Creates a Special.
+     *
+     * @param hiddenField the non-public or final field that this kind handles, or null
+     */
+    Special(@Nullable String hiddenField) {
+      this.hiddenField = hiddenField;
+    }
+  }
+
+  /** The kinds of fields, which determine how a field's value is encoded. */
+  private enum FieldKind {
+    /** An int. */
+    INT,
+    /** A long. */
+    LONG,
+    /** A boolean. */
+    BOOLEAN,
+    /** A tree, a javac List, or null. */
+    VALUE,
+    /** A Name. */
+    NAME,
+    /** A String. */
+    STRING,
+    /** An enum constant. */
+    ENUM,
+    /** The value of a literal. */
+    LITERAL,
+    /** Any other type, such as a symbol or a type; the field must be null in a parse tree. */
+    OTHER;
+
+    /**
+     * Returns the kind of a field of the given type.
+     *
+     * @param type the type of a field
+     * @return the kind of a field of the given type, or null if such a field cannot be encoded
+     */
+    static @Nullable FieldKind of(Class<?> type) {
+      if (type.isPrimitive()) {
+        if (type == int.class) {
+          return INT;
+        } else if (type == long.class) {
+          return LONG;
+        } else if (type == boolean.class) {
+          return BOOLEAN;
+        } else {
+          return null;
+        }
+      } else if (JCTree.class.isAssignableFrom(type)
+          || type == com.sun.tools.javac.util.List.class) {
+        return VALUE;
+      } else if (Name.class.isAssignableFrom(type)) {
+        return NAME;
+      } else if (type == String.class) {
+        return STRING;
+      } else if (type.isEnum()) {
+        return ENUM;
+      } else if (type == Object.class) {
+        return LITERAL;
+      } else {
+        return OTHER;
+      }
+    }
+  }
+
+  /** How to encode and decode the nodes of one tree class. */
+  private static final class NodeClass {
+
+    /** The tree class. */
+    final Class<? extends JCTree> type;
+
+    /** How nodes of this class are created. */
+    final Special special;
+
+    /** The fields that are encoded, in order. */
+    final Field[] fields;
+
+    /** The kind of each element of {@link #fields}. */
+    final FieldKind[] kinds;
+
+    /** A description of the encoded fields, which must be the same when decoding. */
+    final String schema;
+
+    /** Why this class cannot be encoded, or null if it can be. */
+    final @Nullable String unsupported;
+
+    /** Creates a node of this class without running a constructor; null if not needed. */
+    final @Nullable Constructor<?> constructor;
+
+    /** The TreeMaker method that creates a {@code JCCase}; null for other classes. */
+    final @Nullable Method caseFactory;
+
+    /**
+     * Creates a NodeClass.
+     *
+     * @param type the tree class
+     */
+    NodeClass(Class<? extends JCTree> type) {
+      this.type = type;
+      Special specialOfClass = Special.OF_CLASS.get(type);
+      special = specialOfClass == null ? Special.NONE : specialOfClass;
+
+      List<Field> encoded = new ArrayList<>();
+      String problem = null;
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          int modifiers = field.getModifiers();
+          if (Modifier.isStatic(modifiers)) {
+            continue;
+          }
+          String name = fieldName(field);
+          if (!Modifier.isPublic(modifiers) || Modifier.isFinal(modifiers)) {
+            if (!name.equals(special.hiddenField)) {
+              problem = "Cannot encode field " + name;
+            }
+          } else if (!(name.equals("JCTree.pos")
+              || (special == Special.COMPILATION_UNIT && COMPILATION_UNIT_FIELDS.contains(name)))) {
+            encoded.add(field);
+          }
+        }
+      }
+      encoded.sort(Comparator.comparing(ParseResultCodec::fieldName));
+      for (Field field : encoded) {
+        // The fields are public members of public classes, so this is permitted whenever the
+        // package is exported.  It avoids an access check on every read and write of the field.
+        field.trySetAccessible();
+      }
+      fields = encoded.toArray(new Field[0]);
+      kinds = new FieldKind[fields.length];
+      StringJoiner sj = new StringJoiner(",", special + "(", ")");
+      for (int i = 0; i < fields.length; i++) {
+        FieldKind kind = FieldKind.of(fields[i].getType());
+        if (kind == null) {
+          problem = "Cannot encode field " + fieldName(fields[i]);
+          kind = FieldKind.OTHER;
+        }
+        kinds[i] = kind;
+        sj.add(fieldName(fields[i]) + ":" + kind);
+      }
+      schema = sj.toString();
+
+      Constructor<?> newConstructor = null;
+      Method newCaseFactory = null;
+      if (problem == null) {
+        try {
+          if (special == Special.CASE) {
+            newCaseFactory = caseFactory();
+          } else if (special == Special.NONE
+              || special == Special.MEMBER_REFERENCE
+              || special == Special.COMPILATION_UNIT) {
+            newConstructor = serializationConstructor(type);
+          }
+        } catch (ReflectiveOperationException e) {
+          problem = "Cannot create " + type.getSimpleName() + ": " + e;
+        }
+      }
+      constructor = newConstructor;
+      caseFactory = newCaseFactory;
+      unsupported = problem;
+    }
+
+    /**
+     * Returns the TreeMaker method that creates a {@code JCCase}. Its signature differs among JDK
+     * versions.
+     *
+     * @return the TreeMaker method that creates a {@code JCCase}
+     * @throws NoSuchMethodException if there is no such method
+     */
+    @SuppressWarnings({
+      "index", // the parameter count is checked
+      "interning:unnecessary.equals" // Method.getName is interned, but == would be obscure
+    })
+    private static Method caseFactory() throws NoSuchMethodException {
+      for (Method m : TreeMaker.class.getMethods()) {
+        if (m.getName().equals("Case")
+            && m.getReturnType() == JCCase.class
+            && m.getParameterCount() > 0
+            && m.getParameterTypes()[0] == CaseTree.CaseKind.class) {
+          return m;
+        }
+      }
+      throw new NoSuchMethodException("TreeMaker.Case");
+    }
+
+    /**
+     * Returns a constructor that creates an instance of {@code type} without running any of its
+     * constructors, as deserialization does. The tree classes' own constructors are not public.
+     *
+     * @param type a tree class
+     * @return a constructor that creates an instance of {@code type}
+     * @throws ReflectiveOperationException if the JDK does not support this
+     */
+    @SuppressWarnings("nullness:argument") // getReflectionFactory is static
+    private static Constructor<?> serializationConstructor(Class<?> type)
+        throws ReflectiveOperationException {
+      // sun.reflect.ReflectionFactory is in module jdk.unsupported.  It is used reflectively
+      // because javac warns about every direct reference to it.
+      Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+      Object factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+      Object result =
+          factoryClass
+              .getMethod("newConstructorForSerialization", Class.class, Constructor.class)
+              .invoke(factory, type, Object.class.getDeclaredConstructor());
+      if (result == null) {
+        throw new NoSuchMethodException("newConstructorForSerialization(" + type + ")");
+      }
+      return (Constructor<?>) result;
+    }
+  }
+
+  /**
+   * Returns the name of a field, qualified by the simple name of its declaring class.
+   *
+   * @param field a field
+   * @return the name of the field, qualified by the simple name of its declaring class
+   */
+  private static String fieldName(Field field) {
+    return field.getDeclaringClass().getSimpleName() + "." + field.getName();
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Encoding
+  //
+
+  /** Encodes one parse result. */
+  private static final class Encoder {
+
+    /** The encoded tree and diagnostics. */
+    private final Sink body = new Sink();
+
+    /** The index of each string in the string table. */
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+
+    /** The string table. */
+    private final List<String> strings = new ArrayList<>();
+
+    /** The index of each node class in the class table. */
+    private final IdentityHashMap<NodeClass, Integer> classIndex = new IdentityHashMap<>();
+
+    /** The class table. */
+    private final List<NodeClass> classes = new ArrayList<>();
+
+    /** The index of each node that has been encoded, in the order they were encoded. */
+    private final IdentityHashMap<JCTree, Integer> nodeIndex = new IdentityHashMap<>();
+
+    /** The end positions of the tree being encoded, or null. */
+    private final @Nullable EndPosTable endPositions;
+
+    /** The doc comments of the tree being encoded, or null. */
+    private final @Nullable DocCommentTable docComments;
+
+    /** The position of the most recently encoded node. */
+    private int lastPos = 0;
+
+    /**
+     * Creates an Encoder.
+     *
+     * @param endPositions the end positions of the tree to be encoded, or null
+     * @param docComments the doc comments of the tree to be encoded, or null
+     */
+    Encoder(@Nullable EndPosTable endPositions, @Nullable DocCommentTable docComments) {
+      this.endPositions = endPositions;
+      this.docComments = docComments;
+    }
+
+    /**
+     * Returns the encoding: the string table, then the class table, then the body.
+     *
+     * @return the encoding
+     */
+    byte[] toByteArray() {
+      Sink header = new Sink();
+      header.writeVarint(strings.size());
+      for (String s : strings) {
+        header.writeChars(s);
+      }
+      header.writeVarint(classes.size());
+      for (NodeClass nc : classes) {
+        header.writeVarint(stringIndex(nc.type.getName()));
+        header.writeVarint(stringIndex(nc.schema));
+      }
+      header.writeVarint(nodeIndex.size());
+      header.write(body);
+      return header.toByteArray();
+    }
+
+    /**
+     * Returns the index of the given string in the string table, adding it if necessary.
+     *
+     * @param s a string
+     * @return the index of {@code s} in the string table
+     */
+    private int stringIndex(String s) {
+      Integer index = stringIndex.get(s);
+      if (index == null) {
+        index = strings.size();
+        strings.add(s);
+        stringIndex.put(s, index);
+      }
+      return index;
+    }
+
+    /**
+     * Writes a possibly-null string.
+     *
+     * @param s a string, or null
+     */
+    void writeString(@Nullable String s) {
+      body.writeVarint(s == null ? 0 : stringIndex(s) + 1);
+    }
+
+    /**
+     * Writes a value that is a tree, a javac List, or null.
+     *
+     * @param value the value
+     */
+    @SuppressWarnings("signedness:argument") // a list's elements are trees, not numbers
+    void writeValue(@Nullable Object value) {
+      if (value == null) {
+        body.writeVarint(TAG_NULL);
+      } else if (value instanceof JCTree tree) {
+        writeNode(tree);
+      } else if (value instanceof com.sun.tools.javac.util.List<?> list) {
+        body.writeVarint(TAG_LIST);
+        body.writeVarint(list.size());
+        for (Object element : list) {
+          writeValue(element);
+        }
+      } else {
+        throw new UnsupportedOperationException("Cannot encode " + value.getClass());
+      }
+    }
+
+    /**
+     * Writes a node.
+     *
+     * @param tree the node
+     */
+    @SuppressWarnings("index") // `fields` and `kinds` have the same length
+    private void writeNode(JCTree tree) {
+      Integer index = nodeIndex.get(tree);
+      if (index != null) {
+        // The parser shares some subtrees, such as the modifiers and type of `int x, y;`.
+        body.writeVarint(TAG_BACKREF);
+        body.writeVarint(index);
+        return;
+      }
+      nodeIndex.put(tree, nodeIndex.size());
+
+      NodeClass nc = NODE_CLASSES.get(tree.getClass());
+      if (nc.unsupported != null) {
+        throw new UnsupportedOperationException(nc.unsupported);
+      }
+      Integer ci = classIndex.get(nc);
+      if (ci == null) {
+        ci = classes.size();
+        classes.add(nc);
+        classIndex.put(nc, ci);
+        // Put the class's strings in the string table now, so that it is complete when the
+        // header is written.
+        stringIndex(nc.type.getName());
+        stringIndex(nc.schema);
+      }
+      body.writeVarint(TAG_FIRST_CLASS + ci);
+
+      body.writeSigned(tree.pos - lastPos);
+      lastPos = tree.pos;
+      int end = endPositions == null ? Position.NOPOS : endPositions.getEndPos(tree);
+      long endCode = end == Position.NOPOS ? 0 : Sink.zigzag(end - tree.pos) + 1;
+      Comment comment = docComments == null ? null : docComments.getComment(tree);
+      body.writeVarint(endCode << 1 | (comment == null ? 0 : 1));
+      if (comment != null) {
+        writeComment(comment);
+      }
+
+      writeSpecial(nc.special, tree);
+      for (int i = 0; i < nc.fields.length; i++) {
+        writeField(nc.fields[i], nc.kinds[i], tree);
+      }
+    }
+
+    /**
+     * Writes the state of a node that is not in its public fields.
+     *
+     * @param special the kind of the node's class
+     * @param tree the node
+     */
+    private void writeSpecial(Special special, JCTree tree) {
+      switch (special) {
+        case BINARY, UNARY, ASSIGNOP, ANNOTATION -> writeString(tree.getTag().name());
+        case MODULE -> writeString(((JCModuleDecl) tree).getModuleType().name());
+        case CASE -> writeString(((JCCase) tree).caseKind.name());
+        case VARIABLE -> body.writeVarint(((JCVariableDecl) tree).declaredUsingVar() ? 1 : 0);
+        case MEMBER_REFERENCE -> {
+          if (((JCMemberReference) tree).getOverloadKind() != null) {
+            throw new UnsupportedOperationException("Cannot encode an attributed tree");
+          }
+        }
+        case NONE, COMPILATION_UNIT -> {}
+      }
+    }
+
+    /**
+     * Writes the value of a field of a node.
+     *
+     * @param field the field
+     * @param kind the kind of the field
+     * @param tree the node
+     */
+    private void writeField(Field field, FieldKind kind, JCTree tree) {
+      try {
+        switch (kind) {
+          case INT -> body.writeSigned(field.getInt(tree));
+          case LONG -> body.writeSigned(field.getLong(tree));
+          case BOOLEAN -> body.writeVarint(field.getBoolean(tree) ? 1 : 0);
+          case VALUE -> writeValue(field.get(tree));
+          case NAME, STRING -> {
+            Object value = field.get(tree);
+            writeString(value == null ? null : value.toString());
+          }
+          case ENUM -> {
+            Object value = field.get(tree);
+            writeString(value == null ? null : ((Enum<?>) value).name());
+          }
+          case LITERAL -> writeLiteral(field.get(tree));
+          case OTHER -> {
+            if (field.get(tree) != null) {
+              throw new UnsupportedOperationException("Cannot encode field " + fieldName(field));
+            }
+          }
+        }
+      } catch (IllegalAccessException e) {
+        throw new UnsupportedOperationException("Cannot read field " + fieldName(field), e);
+      }
+    }
+
+    /**
+     * Writes the value of a literal.
+     *
+     * @param value the value of a literal
+     */
+    private void writeLiteral(@Nullable Object value) {
+      if (value == null) {
+        body.writeVarint(LITERAL_NULL);
+      } else if (value instanceof Integer i) {
+        body.writeVarint(LITERAL_INT);
+        body.writeSigned(i);
+      } else if (value instanceof Long l) {
+        body.writeVarint(LITERAL_LONG);
+        body.writeSigned(l);
+      } else if (value instanceof Float f) {
+        body.writeVarint(LITERAL_FLOAT);
+        body.writeSigned(Float.floatToRawIntBits(f));
+      } else if (value instanceof Double d) {
+        body.writeVarint(LITERAL_DOUBLE);
+        body.writeSigned(Double.doubleToRawLongBits(d));
+      } else if (value instanceof String s) {
+        body.writeVarint(LITERAL_STRING);
+        writeString(s);
+      } else if (value instanceof Character c) {
+        body.writeVarint(LITERAL_CHAR);
+        body.writeVarint(c);
+      } else if (value instanceof Boolean b) {
+        body.writeVarint(LITERAL_BOOLEAN);
+        body.writeVarint(b ? 1 : 0);
+      } else {
+        throw new UnsupportedOperationException("Cannot encode literal " + value.getClass());
+      }
+    }
+
+    /**
+     * Writes a doc comment: its style, whether it is deprecated, its text, and the mapping from
+     * positions in its text to positions in the source code. The mapping is piecewise linear, so it
+     * is written as the start of each piece and the offset within it.
+     *
+     * @param comment a doc comment
+     */
+    @SuppressWarnings("index") // each piece has two elements
+    private void writeComment(Comment comment) {
+      writeString(comment.getStyle().name());
+      body.writeVarint(comment.isDeprecated() ? 1 : 0);
+      String text = comment.getText();
+      writeString(text);
+      if (text == null) {
+        return;
+      }
+      List<int[]> pieces = new ArrayList<>();
+      int lastOffset = 0;
+      for (int i = 0; i <= text.length(); i++) {
+        int offset = comment.getSourcePos(i) - i;
+        if (i == 0 || offset != lastOffset) {
+          pieces.add(new int[] {i, offset});
+          lastOffset = offset;
+        }
+      }
+      body.writeVarint(pieces.size());
+      int lastStart = 0;
+      for (int[] piece : pieces) {
+        body.writeVarint(piece[0] - lastStart);
+        body.writeSigned(piece[1]);
+        lastStart = piece[0];
+      }
+    }
+
+    /**
+     * Writes diagnostics.
+     *
+     * @param diagnostics the diagnostics
+     */
+    void writeDiagnostics(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+      body.writeVarint(diagnostics.size());
+      for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+        writeString(d.getKind().name());
+        body.writeVarint(d.getSource() == null ? 0 : 1);
+        body.writeSigned(d.getPosition());
+        body.writeSigned(d.getStartPosition());
+        body.writeSigned(d.getEndPosition());
+        body.writeSigned(d.getLineNumber());
+        body.writeSigned(d.getColumnNumber());
+        writeString(d.getCode());
+        @SuppressWarnings("nullness:argument") // javac is not annotated
+        String message = d.getMessage(null);
+        writeString(message);
+        writeString(d.toString());
+      }
+    }
+  }
+
+  /** A growable byte array, to which varints are written. */
+  @SuppressWarnings({
+    "index", // `size` is at most `bytes.length`
+    "signedness:compound.assignment.shift.unsigned" // varints are unsigned
+  })
+  private static final class Sink {
+
+    /** The bytes written so far, followed by unused space. */
+    private byte[] bytes = new byte[1024];
+
+    /** The number of bytes written so far. */
+    private int size = 0;
+
+    /** Creates a Sink. */
+    Sink() {}
+
+    /**
+     * Returns the zigzag encoding of a signed value, which makes values near zero small.
+     *
+     * @param value a signed value
+     * @return the zigzag encoding of {@code value}
+     */
+    static long zigzag(long value) {
+      return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param b the byte, in its low 8 bits
+     */
+    void writeByte(int b) {
+      if (size == bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+      bytes[size] = (byte) b;
+      size++;
+    }
+
+    /**
+     * Writes a non-negative value in 7-bit groups, least significant first.
+     *
+     * @param value the value
+     */
+    void writeVarint(long value) {
+      long v = value;
+      while ((v & ~0x7FL) != 0) {
+        writeByte((int) (v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      writeByte((int) v);
+    }
+
+    /**
+     * Writes a signed value.
+     *
+     * @param value the value
+     */
+    void writeSigned(long value) {
+      writeVarint(zigzag(value));
+    }
+
+    /**
+     * Writes a string as its length and then its chars. Unlike UTF-8, this preserves unpaired
+     * surrogates, which may appear in string literals.
+     *
+     * @param s the string
+     */
+    void writeChars(String s) {
+      writeVarint(s.length());
+      for (int i = 0; i < s.length(); i++) {
+        writeVarint(s.charAt(i));
+      }
+    }
+
+    /**
+     * Writes the contents of another Sink.
+     *
+     * @param other another Sink
+     */
+    void write(Sink other) {
+      if (bytes.length - size < other.size) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + other.size));
+      }
+      System.arraycopy(other.bytes, 0, bytes, size, other.size);
+      size += other.size;
+    }
+
+    /**
+     * Returns the bytes written so far.
+     *
+     * @return the bytes written so far
+     */
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Decoding
+  //
+
+  /** Decodes one parse result. */
+  @SuppressWarnings("index") // indexes are read by Source.readIndex, which checks their bounds
+  private static final class Decoder {
+
+    /** The input. */
+    final Source in;
+
+    /** The source file of the compilation unit. */
+    private final JavaFileObject source;
+
+    /** The javac data structures for the decoded tree. */
+    private final Loader loader;
+
+    /** The string table. */
+    private final String[] strings;
+
+    /** The names for elements of the string table, created on demand. */
+    private final @Nullable Name[] names;
+
+    /** The enum constants for elements of the string table, created on demand. */
+    private final @Nullable Object[] constants;
+
+    /** The class table. */
+    private final NodeClass[] classes;
+
+    /** The nodes decoded so far, in the order they were decoded. */
+    private final List<JCTree> nodes = new ArrayList<>();
+
+    /** The end positions of the decoded tree. */
+    final IdentityEndPosTable endPositions;
+
+    /** The doc comments of the decoded tree. */
+    final IdentityDocCommentTable docComments;
+
+    /** The position of the most recently decoded node. */
+    private int lastPos = 0;
+
+    /**
+     * Creates a Decoder and reads the string table and the class table.
+     *
+     * @param in the input
+     * @param source the source file of the compilation unit
+     * @param loader the javac data structures for the decoded tree
+     * @throws IOException if the input is malformed, or was written by a different JDK
+     */
+    Decoder(Source in, JavaFileObject source, Loader loader) throws IOException {
+      this.in = in;
+      this.source = source;
+      this.loader = loader;
+      this.docComments = new IdentityDocCommentTable(loader::parseDocComment, source);
+      strings = new String[in.readCount()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readChars();
+      }
+      names = new Name[strings.length];
+      constants = new Object[strings.length];
+      classes = new NodeClass[in.readCount()];
+      for (int i = 0; i < classes.length; i++) {
+        classes[i] = nodeClass(strings[in.readIndex(strings.length)]);
+        if (!classes[i].schema.equals(strings[in.readIndex(strings.length)])) {
+          throw new IOException("Different fields in " + classes[i].type);
+        }
+      }
+      endPositions = new IdentityEndPosTable(in.readCount());
+    }
+
+    /**
+     * Returns the description of the named tree class.
+     *
+     * @param className the name of a tree class
+     * @return the description of the named tree class
+     * @throws IOException if there is no such tree class, or it cannot be decoded
+     */
+    @SuppressWarnings("signature:argument") // the name was written by Class.getName()
+    private static NodeClass nodeClass(String className) throws IOException {
+      Class<?> type;
+      try {
+        type = Class.forName(className, false, JCTree.class.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        throw new IOException("No tree class " + className, e);
+      }
+      if (!JCTree.class.isAssignableFrom(type)) {
+        throw new IOException("Not a tree class: " + className);
+      }
+      NodeClass result = NODE_CLASSES.get(type);
+      if (result.unsupported != null) {
+        throw new IOException(result.unsupported);
+      }
+      return result;
+    }
+
+    /**
+     * Reads a possibly-null string.
+     *
+     * @return the string, or null
+     * @throws IOException if the input is malformed
+     */
+    @Nullable String readString() throws IOException {
+      int index = in.readIndex(strings.length + 1);
+      return index == 0 ? null : strings[index - 1];
+    }
+
+    /**
+     * Reads a non-null string.
+     *
+     * @return the string
+     * @throws IOException if the input is malformed
+     */
+    String readNonNullString() throws IOException {
+      String result = readString();
+      if (result == null) {
+        throw new IOException("Unexpected null");
+      }
+      return result;
+    }
+
+    /**
+     * Reads a possibly-null name.
+     *
+     * @return the name, or null
+     * @throws IOException if the input is malformed
+     */
+    private @Nullable Name readName() throws IOException {
+      int index = in.readIndex(strings.length + 1);
+      if (index == 0) {
+        return null;
+      }
+      Name result = names[index - 1];
+      if (result == null) {
+        result = loader.name(strings[index - 1]);
+        names[index - 1] = result;
+      }
+      return result;
+    }
+
+    /**
+     * Reads a value that is a tree, a javac List, or null.
+     *
+     * @return the value
+     * @throws IOException if the input is malformed
+     */
+    @Nullable Object readValue() throws IOException {
+      int tag = in.readIndex(TAG_FIRST_CLASS + classes.length);
+      switch (tag) {
+        case TAG_NULL:
+          return null;
+        case TAG_BACKREF:
+          return nodes.get(in.readIndex(nodes.size()));
+        case TAG_LIST:
+          {
+            @Nullable Object[] elements = new Object[in.readCount()];
+            for (int i = 0; i < elements.length; i++) {
+              elements[i] = readValue();
+            }
+            return com.sun.tools.javac.util.List.from(elements);
+          }
+        default:
+          return readNode(classes[tag - TAG_FIRST_CLASS]);
+      }
+    }
+
+    /**
+     * Reads a node.
+     *
+     * @param nc the class of the node
+     * @return the node
+     * @throws IOException if the input is malformed
+     */
+    @SuppressWarnings("signedness:shift.unsigned") // the code is unsigned
+    private JCTree readNode(NodeClass nc) throws IOException {
+      int pos = lastPos + in.readInt();
+      lastPos = pos;
+      long code = in.readVarint();
+      long endCode = code >>> 1;
+      Comment comment = (code & 1) == 0 ? null : readComment();
+
+      JCTree tree = readSpecial(nc);
+      tree.pos = pos;
+      nodes.add(tree);
+      if (endCode != 0) {
+        endPositions.storeEnd(tree, pos + (int) Source.unzigzag(endCode - 1));
+      }
+      if (comment != null) {
+        docComments.putComment(tree, comment);
+      }
+
+      for (int i = 0; i < nc.fields.length; i++) {
+        readField(nc.fields[i], nc.kinds[i], tree);
+      }
+      return tree;
+    }
+
+    /**
+     * Reads the state of a node that is not in its public fields, and creates the node.
+     *
+     * @param nc the class of the node
+     * @return a new node whose other fields are not yet set
+     * @throws IOException if the input is malformed
+     */
+    @SuppressWarnings("nullness:argument") // the fields are set after the node is created
+    private JCTree readSpecial(NodeClass nc) throws IOException {
+      TreeMaker make = loader.make;
+      switch (nc.special) {
+        case BINARY:
+          return make.Binary(readEnum(Tag.class), null, null);
+        case UNARY:
+          return make.Unary(readEnum(Tag.class), null);
+        case ASSIGNOP:
+          return make.Assignop(readEnum(Tag.class), null, null);
+        case ANNOTATION:
+          return readEnum(Tag.class) == Tag.TYPE_ANNOTATION
+              ? make.TypeAnnotation(null, com.sun.tools.javac.util.List.nil())
+              : make.Annotation(null, com.sun.tools.javac.util.List.nil());
+        case MODULE:
+          return make.ModuleDef(
+              null, readEnum(ModuleKind.class), null, com.sun.tools.javac.util.List.nil());
+        case CASE:
+          return newCase(nc, readEnum(CaseTree.CaseKind.class));
+        case VARIABLE:
+          return make.VarDef(null, (Name) null, null, null, in.readVarint() != 0);
+        default:
+          try {
+            return (JCTree) castNonNull(nc.constructor).newInstance();
+          } catch (ReflectiveOperationException e) {
+            throw new IOException("Cannot create " + nc.type, e);
+          }
+      }
+    }
+
+    /**
+     * Creates a {@code JCCase} of the given kind.
+     *
+     * @param nc the description of {@code JCCase}
+     * @param caseKind the kind of the case
+     * @return a new {@code JCCase}
+     * @throws IOException if the case cannot be created
+     */
+    @SuppressWarnings("nullness:argument") // the remaining arguments may be null
+    private JCTree newCase(NodeClass nc, CaseTree.CaseKind caseKind) throws IOException {
+      Method factory = castNonNull(nc.caseFactory);
+      Class<?>[] parameterTypes = factory.getParameterTypes();
+      @Nullable Object[] args = new Object[parameterTypes.length];
+      for (int i = 0; i < args.length; i++) {
+        if (parameterTypes[i] == CaseTree.CaseKind.class) {
+          args[i] = caseKind;
+        } else if (parameterTypes[i] == com.sun.tools.javac.util.List.class) {
+          args[i] = com.sun.tools.javac.util.List.nil();
+        }
+      }
+      try {
+        return (JCTree) castNonNull(factory.invoke(loader.make, args));
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        throw new IOException("Cannot create a case", e);
+      }
+    }
+
+    /**
+     * Reads the value of a field of a node and sets the field.
+     *
+     * @param field the field
+     * @param kind the kind of the field
+     * @param tree the node
+     * @throws IOException if the input is malformed
+     */
+    @SuppressWarnings({
+      "interning:argument", // none of the fields is of an @Interned type
+      "nullness:argument" // the fields may be null
+    })
+    private void readField(Field field, FieldKind kind, JCTree tree) throws IOException {
+      try {
+        switch (kind) {
+          case INT -> field.setInt(tree, in.readInt());
+          case LONG -> field.setLong(tree, Source.unzigzag(in.readVarint()));
+          case BOOLEAN -> field.setBoolean(tree, in.readVarint() != 0);
+          case VALUE -> field.set(tree, readValue());
+          case NAME -> field.set(tree, readName());
+          case STRING -> field.set(tree, readString());
+          case ENUM -> field.set(tree, readConstant(field.getType()));
+          case LITERAL -> field.set(tree, readLiteral());
+          case OTHER -> {}
+        }
+      } catch (IllegalAccessException | IllegalArgumentException e) {
+        throw new IOException("Cannot set field " + fieldName(field), e);
+      }
+    }
+
+    /**
+     * Reads an enum constant.
+     *
+     * @param <E> the enum type
+     * @param type the enum class
+     * @return the enum constant
+     * @throws IOException if the input is malformed
+     */
+    private <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+      return type.cast(castNonNull(readConstant(type)));
+    }
+
+    /**
+     * Reads a possibly-null enum constant.
+     *
+     * @param type the enum class
+     * @return the enum constant, or null
+     * @throws IOException if the input is malformed
+     */
+    private @Nullable Object readConstant(Class<?> type) throws IOException {
+      int index = in.readIndex(strings.length + 1);
+      if (index == 0) {
+        return null;
+      }
+      Object result = constants[index - 1];
+      if (!type.isInstance(result)) {
+        result = enumConstant(type, strings[index - 1]);
+        constants[index - 1] = result;
+      }
+      return result;
+    }
+
+    /**
+     * Reads the value of a literal.
+     *
+     * @return the value of a literal
+     * @throws IOException if the input is malformed
+     */
+    private @Nullable Object readLiteral() throws IOException {
+      int tag = in.readIndex(LITERAL_BOOLEAN + 1);
+      switch (tag) {
+        case LITERAL_INT:
+          return in.readInt();
+        case LITERAL_LONG:
+          return Source.unzigzag(in.readVarint());
+        case LITERAL_FLOAT:
+          return Float.intBitsToFloat(in.readInt());
+        case LITERAL_DOUBLE:
+          return Double.longBitsToDouble(Source.unzigzag(in.readVarint()));
+        case LITERAL_STRING:
+          return readString();
+        case LITERAL_CHAR:
+          return (char) in.readIndex(Character.MAX_VALUE + 1);
+        case LITERAL_BOOLEAN:
+          return in.readVarint() != 0;
+        default:
+          return null;
+      }
+    }
+
+    /**
+     * Reads a doc comment.
+     *
+     * @return the doc comment
+     * @throws IOException if the input is malformed
+     */
+    private Comment readComment() throws IOException {
+      Comment.CommentStyle style = readEnum(Comment.CommentStyle.class);
+      boolean deprecated = in.readVarint() != 0;
+      String text = readString();
+      int[] starts;
+      int[] offsets;
+      if (text == null) {
+        starts = new int[0];
+        offsets = new int[0];
+      } else {
+        int numPieces = in.readCount();
+        starts = new int[numPieces];
+        offsets = new int[numPieces];
+        int start = 0;
+        for (int i = 0; i < numPieces; i++) {
+          start += in.readIndex(text.length() + 1);
+          starts[i] = start;
+          offsets[i] = in.readInt();
+        }
+      }
+      return new CachedComment(style, deprecated, text, starts, offsets);
+    }
+
+    /**
+     * Reads diagnostics.
+     *
+     * @return the diagnostics
+     * @throws IOException if the input is malformed
+     */
+    List<Diagnostic<? extends JavaFileObject>> readDiagnostics() throws IOException {
+      int count = in.readCount();
+      if (count == 0) {
+        return List.of();
+      }
+      List<Diagnostic<? extends JavaFileObject>> result = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        Diagnostic.Kind kind = readEnum(Diagnostic.Kind.class);
+        JavaFileObject diagnosticSource = in.readVarint() == 0 ? null : source;
+        long position = Source.unzigzag(in.readVarint());
+        long start = Source.unzigzag(in.readVarint());
+        long end = Source.unzigzag(in.readVarint());
+        long line = Source.unzigzag(in.readVarint());
+        long column = Source.unzigzag(in.readVarint());
+        String code = readString();
+        String message = readNonNullString();
+        String string = readNonNullString();
+        result.add(
+            new CachedDiagnostic(
+                kind, diagnosticSource, position, start, end, line, column, code, message, string));
+      }
+      return List.copyOf(result);
+    }
+  }
+
+  /**
+   * Returns the named constant of an enum class.
+   *
+   * @param type an enum class
+   * @param name the name of a constant
+   * @return the named constant of {@code type}
+   * @throws IOException if {@code type} has no such constant
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"}) // the type is an enum class
+  private static Object enumConstant(Class<?> type, String name) throws IOException {
+    try {
+      return Enum.valueOf((Class) type, name);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("No constant " + name + " in " + type, e);
+    }
+  }
+
+  /**
+   * Returns its argument, which must not be null.
+   *
+   * @param <T> the type of the argument
+   * @param ref a reference that is not null
+   * @return {@code ref}
+   * @throws IOException if {@code ref} is null
+   */
+  private static <T> T castNonNull(@Nullable T ref) throws IOException {
+    if (ref == null) {
+      throw new IOException("Unexpected null");
+    }
+    return ref;
+  }
+
+  /** A byte array from which varints are read. */
+  @SuppressWarnings("index") // every read is preceded by a bounds check
+  private static final class Source {
+
+    /** The bytes. */
+    private final byte[] bytes;
+
+    /** The index of the next byte to read. */
+    int pos;
+
+    /**
+     * Creates a Source.
+     *
+     * @param bytes the bytes
+     * @param pos the index of the first byte to read
+     */
+    @SuppressWarnings("PMD.ArrayIsStoredDirectly") // the bytes are only read
+    Source(byte[] bytes, int pos) {
+      this.bytes = bytes;
+      this.pos = pos;
+    }
+
+    /**
+     * Returns the signed value whose zigzag encoding is given.
+     *
+     * @param value the zigzag encoding of a signed value
+     * @return the signed value
+     */
+    @SuppressWarnings("signedness:shift.unsigned") // a zigzag encoding is unsigned
+    static long unzigzag(long value) {
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @return the value
+     * @throws IOException if the input is malformed
+     */
+    long readVarint() throws IOException {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (pos >= bytes.length) {
+          throw new EOFException();
+        }
+        byte b = bytes[pos];
+        pos++;
+        result |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return result;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a signed int.
+     *
+     * @return the value
+     * @throws IOException if the input is malformed
+     */
+    int readInt() throws IOException {
+      long value = unzigzag(readVarint());
+      if (value != (int) value) {
+        throw new IOException("Value out of range: " + value);
+      }
+      return (int) value;
+    }
+
+    /**
+     * Reads an index, which must be less than a bound.
+     *
+     * @param bound the bound
+     * @return the index
+     * @throws IOException if the input is malformed or the index is not less than {@code bound}
+     */
+    int readIndex(int bound) throws IOException {
+      long value = readVarint();
+      if (value < 0 || value >= bound) {
+        throw new IOException("Index out of range: " + value);
+      }
+      return (int) value;
+    }
+
+    /**
+     * Reads a count of items that follow; each item takes at least one byte.
+     *
+     * @return the count
+     * @throws IOException if the input is malformed
+     */
+    int readCount() throws IOException {
+      return readIndex(bytes.length - pos + 1);
+    }
+
+    /**
+     * Reads a string written by {@link Sink#writeChars}.
+     *
+     * @return the string
+     * @throws IOException if the input is malformed
+     */
+    String readChars() throws IOException {
+      char[] chars = new char[readCount()];
+      for (int i = 0; i < chars.length; i++) {
+        long c = readVarint();
+        if (c > Character.MAX_VALUE) {
+          throw new IOException("Malformed char: " + c);
+        }
+        chars[i] = (char) c;
+      }
+      return new String(chars);
+    }
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // The parts of a decoded result
+  //
+
+  /** A doc comment of a decoded compilation unit. */
+  private static final class CachedComment implements Comment {
+
+    /** The style of the comment. */
+    private final CommentStyle style;
+
+    /** True if the comment contains {@code @deprecated}. */
+    private final boolean deprecated;
+
+    /** The text of the comment. */
+    private final @Nullable String text;
+
+    /** The index in {@link #text} at which each piece of the position mapping starts. */
+    private final int[] starts;
+
+    /** The offset from a text index to a source position, in each piece. */
+    private final int[] offsets;
+
+    /**
+     * Creates a CachedComment.
+     *
+     * @param style the style of the comment
+     * @param deprecated true if the comment contains {@code @deprecated}
+     * @param text the text of the comment
+     * @param starts the index in {@code text} at which each piece of the position mapping starts
+     * @param offsets the offset from a text index to a source position, in each piece
+     */
+    @SuppressWarnings("PMD.ArrayIsStoredDirectly") // the caller does not retain the arrays
+    CachedComment(
+        CommentStyle style,
+        boolean deprecated,
+        @Nullable String text,
+        int[] starts,
+        int[] offsets) {
+      this.style = style;
+      this.deprecated = deprecated;
+      this.text = text;
+      this.starts = starts;
+      this.offsets = offsets;
+    }
+
+    @Override
+    @SuppressWarnings("nullness:return") // javac is not annotated
+    public String getText() {
+      return text;
+    }
+
+    @Override
+    @SuppressWarnings("index") // `starts[0]` is 0, so the piece is non-negative
+    public int getSourcePos(int index) {
+      if (index == Position.NOPOS) {
+        return Position.NOPOS;
+      }
+      if (text == null || index < 0 || index > text.length()) {
+        throw new StringIndexOutOfBoundsException(String.valueOf(index));
+      }
+      int piece = Arrays.binarySearch(starts, index);
+      if (piece < 0) {
+        piece = -piece - 2;
+      }
+      return index + offsets[piece];
+    }
+
+    @Override
+    public CommentStyle getStyle() {
+      return style;
+    }
+
+    @Override
+    public boolean isDeprecated() {
+      return deprecated;
+    }
+  }
+
+  /** A diagnostic of a decoded result. */
+  private static final class CachedDiagnostic implements Diagnostic<JavaFileObject> {
+
+    /** The kind of the diagnostic. */
+    private final Diagnostic.Kind kind;
+
+    /** The source file of the diagnostic, or null. */
+    private final @Nullable JavaFileObject source;
+
+    /** The position of the diagnostic. */
+    private final long position;
+
+    /** The start position of the diagnostic. */
+    private final long startPosition;
+
+    /** The end position of the diagnostic. */
+    private final long endPosition;
+
+    /** The line number of the diagnostic. */
+    private final long lineNumber;
+
+    /** The column number of the diagnostic. */
+    private final long columnNumber;
+
+    /** The code of the diagnostic, or null. */
+    private final @Nullable String code;
+
+    /** The message of the diagnostic. */
+    private final String message;
+
+    /** The string representation of the diagnostic. */
+    private final String string;
+
+    /**
+     * Creates a CachedDiagnostic.
+     *
+     * @param kind the kind of the diagnostic
+     * @param source the source file of the diagnostic, or null
+     * @param position the position of the diagnostic
+     * @param startPosition the start position of the diagnostic
+     * @param endPosition the end position of the diagnostic
+     * @param lineNumber the line number of the diagnostic
+     * @param columnNumber the column number of the diagnostic
+     * @param code the code of the diagnostic, or null
+     * @param message the message of the diagnostic
+     * @param string the string representation of the diagnostic
+     */
+    @SuppressWarnings("PMD.ExcessiveParameterList") // one parameter per property
+    CachedDiagnostic(
+        Diagnostic.Kind kind,
+        @Nullable JavaFileObject source,
+        long position,
+        long startPosition,
+        long endPosition,
+        long lineNumber,
+        long columnNumber,
+        @Nullable String code,
+        String message,
+        String string) {
+      this.kind = kind;
+      this.source = source;
+      this.position = position;
+      this.startPosition = startPosition;
+      this.endPosition = endPosition;
+      this.lineNumber = lineNumber;
+      this.columnNumber = columnNumber;
+      this.code = code;
+      this.message = message;
+      this.string = string;
+    }
+
+    @Override
+    public Diagnostic.Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    @SuppressWarnings("nullness:return") // javac is not annotated; null means no source
+    public JavaFileObject getSource() {
+      return source;
+    }
+
+    @Override
+    public long getPosition() {
+      return position;
+    }
+
+    @Override
+    public long getStartPosition() {
+      return startPosition;
+    }
+
+    @Override
+    public long getEndPosition() {
+      return endPosition;
+    }
+
+    @Override
+    public long getLineNumber() {
+      return lineNumber;
+    }
+
+    @Override
+    public long getColumnNumber() {
+      return columnNumber;
+    }
+
+    @Override
+    @SuppressWarnings("nullness:return") // javac is not annotated; null means no code
+    public String getCode() {
+      return code;
+    }
+
+    /**
+     * Returns the message of the diagnostic, in the locale that was the default when the diagnostic
+     * was encoded.
+     *
+     * @param locale ignored
+     * @return the message of the diagnostic
+     */
+    @Override
+    public String getMessage(@Nullable Locale locale) {
+      return message;
+    }
+
+    @Override
+    public String toString(@GuardSatisfied CachedDiagnostic this) {
+      return string;
+    }
+  }
+
+  // ///////////////////////////////////////////////////////////////////////////
+  // Loader
+  //
+
+  /**
+   * The javac data structures that decoded trees use: the name table, the tree factory, and the doc
+   * comment parser. They may be shared by decoders on different threads.
+   */
+  @InheritableMustCall("close")
+  /*package-private*/ static final class Loader implements AutoCloseable {
+
+    /** The file manager, which is registered in the context. */
+    @Owning private final JavacFileManager fileManager;
+
+    /** The name table. Guarded by {@code this}. */
+    private final Names names;
+
+    /** The tree factory. It is used only for nodes whose position is set afterward. */
+    final TreeMaker make;
+
+    /** The parser factory, used to parse doc comments. Guarded by {@code this}. */
+    private final ParserFactory parserFactory;
+
+    /** The log, used to parse doc comments. */
+    private final Log log;
+
+    /** Creates a Loader. */
+    Loader() {
+      Context context = new Context();
+      fileManager = new JavacFileManager(context, true, StandardCharsets.UTF_8);
+      names = Names.instance(context);
+      log = Log.instance(context);
+      parserFactory = ParserFactory.instance(context);
+      make = TreeMaker.instance(context);
+    }
+
+    /**
+     * Returns the name for the given string.
+     *
+     * @param s a string
+     * @return the name for {@code s}
+     */
+    synchronized Name name(String s) {
+      return names.fromString(s);
+    }
+
+    /**
+     * Parses a doc comment.
+     *
+     * @param source the source file that contains the comment
+     * @param comment the comment
+     * @return the parsed comment
+     */
+    synchronized DCDocComment parseDocComment(JavaFileObject source, Comment comment) {
+      return new DocCommentParser(parserFactory, new DiagnosticSource(source, log), comment)
+          .parse();
+    }
+
+    @Override
+    @EnsuresCalledMethods(value = "this.fileManager", methods = "close")
+    public void close(@GuardSatisfied Loader this) {
+      try {
+        fileManager.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,780 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.parser.Tokens.Token;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCErroneous;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.ListBuffer;
+import com.sun.tools.javac.util.Position;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Re-parses a compilation unit after a text edit. If the edit lies within one declaration, only
+ * that declaration is parsed again, and its new tree is spliced into the previous tree. See {@link
+ * JavacParseSession#reparseCompilationUnit}.
+ *
+ * <p>The declaration's text is parsed in its original context: the parser sees the new contents of
+ * the file, except that the lexer skips everything but the declaration and the headers of its
+ * enclosing type declarations. Thus the declaration's new tree has the same positions, and is
+ * parsed the same way, as in a parse of the whole file, but only the declaration is lexed. The
+ * declaration's text starts just after the end of the previous declaration (or the enclosing type
+ * declaration's "{"), so it includes the declaration's doc comment, and it ends with the
+ * declaration's final "}" or ";", which the edit must not touch. Java's lexical structure ensures
+ * that the tokens before and after the declaration are the same as in the previous contents.
+ *
+ * <p>Only the trees after the declaration are adjusted for the edit; the trees before it keep their
+ * positions. The previous compilation unit is modified in place, so a compilation unit that a
+ * {@link JavacParseCache} shares is always parsed as a whole.
+ */
+final class Reparser {
+
+  /**
+   * The flag of an implicitly declared class (a source file with top-level methods), or 0 if this
+   * JDK does not support them. Such a class has no header, so it is always parsed as a whole.
+   */
+  private static final long IMPLICIT_CLASS_FLAG = implicitClassFlag();
+
+  /** The int fields, other than {@link JCTree#pos}, that hold a position in each tree class. */
+  private static final ClassValue<Field[]> POSITION_FIELDS =
+      new ClassValue<>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+          List<Field> result = new ArrayList<>();
+          for (Class<?> c = type; c != null && c != JCTree.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+              if (field.getType() == int.class
+                  && !Modifier.isStatic(field.getModifiers())
+                  && field.getName().toLowerCase(Locale.ROOT).endsWith("pos")) {
+                field.trySetAccessible();
+                result.add(field);
+              }
+            }
+          }
+          return result.toArray(new Field[0]);
+        }
+      };
+
+  /** The session used for parsing. */
+  private final JavacParseSession session;
+
+  /** The previous compilation unit, which is modified if the edit can be handled locally. */
+  private final JCCompilationUnit cu;
+
+  /** The previous contents. */
+  private final CharSequence oldText;
+
+  /** The new contents. */
+  private final String newText;
+
+  /** The new source file. */
+  private final JavaFileObject newSource;
+
+  /** The index of the first character that the edit replaces. */
+  private final int offset;
+
+  /** The index just after the last character that the edit replaces, in the previous contents. */
+  private final int editEnd;
+
+  /** The change in length of the contents. */
+  private final int delta;
+
+  /**
+   * Creates a Reparser.
+   *
+   * @param session the session used for parsing
+   * @param cu the previous compilation unit
+   * @param oldText the previous contents
+   * @param offset the index of the first character that the edit replaces
+   * @param removedLength the number of characters that the edit removes
+   * @param insertedText the text that the edit inserts
+   */
+  @SuppressWarnings("index") // reparse() checks that the edit lies within the previous contents
+  private Reparser(
+      JavacParseSession session,
+      JCCompilationUnit cu,
+      CharSequence oldText,
+      int offset,
+      int removedLength,
+      String insertedText) {
+    this.session = session;
+    this.cu = cu;
+    this.oldText = oldText;
+    this.offset = offset;
+    this.editEnd = offset + removedLength;
+    this.delta = insertedText.length() - removedLength;
+    this.newText =
+        new StringBuilder(oldText.length() + delta)
+            .append(oldText, 0, offset)
+            .append(insertedText)
+            .append(oldText, editEnd, oldText.length())
+            .toString();
+    this.newSource = new StringJavaFileObject(cu.sourcefile.toUri(), newText);
+  }
+
+  /**
+   * Parses a compilation unit after a text edit, re-parsing only the declaration that encloses the
+   * edit if possible.
+   *
+   * @param session the session used for parsing
+   * @param previous the result of parsing the contents before the edit
+   * @param offset the index of the first character that the edit replaces
+   * @param removedLength the number of characters that the edit removes
+   * @param insertedText the text that the edit inserts
+   * @return the (parsed) edited compilation unit, which may include parse errors
+   * @throws IOException if there is trouble reading the previous result's source file
+   */
+  static JavacParseResult<CompilationUnitTree> reparse(
+      JavacParseSession session,
+      JavacParseResult<CompilationUnitTree> previous,
+      int offset,
+      int removedLength,
+      String insertedText)
+      throws IOException {
+    JCCompilationUnit cu = (JCCompilationUnit) previous.tree();
+    CharSequence oldText = cu.sourcefile.getCharContent(false);
+    Objects.checkFromIndexSize(offset, removedLength, oldText.length());
+    Reparser reparser = new Reparser(session, cu, oldText, offset, removedLength, insertedText);
+    ParseOptions options = ParseOptions.of(cu);
+    // Splicing needs the end positions and doc comments of the previous tree, and must not modify
+    // a tree that other clients hold.
+    if (options.equals(ParseOptions.DEFAULT) && !JavacParseCache.isShared(cu)) {
+      JavacParseResult<CompilationUnitTree> result =
+          reparser.reparseDeclaration(previous.diagnostics());
+      if (result != null) {
+        return result;
+      }
+    }
+    return session.parseCompilationUnit(reparser.newSource, options);
+  }
+
+  /**
+   * Re-parses the declaration that encloses the edit, and splices its new tree into the previous
+   * compilation unit.
+   *
+   * @param previousDiagnostics the diagnostics of the previous compilation unit
+   * @return the edited compilation unit, or null if the edit cannot be handled locally, in which
+   *     case the previous compilation unit is unchanged
+   * @throws IOException if there is trouble reading the new contents
+   */
+  @SuppressWarnings("interning:not.interned") // trees are compared by reference
+  private @Nullable JavacParseResult<CompilationUnitTree> reparseDeclaration(
+      List<? extends Diagnostic<? extends JavaFileObject>> previousDiagnostics)
+      throws IOException {
+    List<Level> path = enclosingDeclarations();
+    if (path.isEmpty()) {
+      return null;
+    }
+    Level unit = path.get(path.size() - 1);
+    // A diagnostic outside the declaration may depend on text that the declaration's parse does
+    // not see, and one before its first token may mean that the text before it was not parsed as
+    // a whole parse would parse it.  One within it goes away with the declaration's old text.
+    if (!within(previousDiagnostics, TreeInfo.getStartPos(unit.tree), unit.end)) {
+      return null;
+    }
+
+    char[] chars = newText.toCharArray();
+    Level top = path.get(0);
+    List<Level> nested = path.subList(1, path.size());
+    int[] gaps = new int[2 + 4 * nested.size()];
+    gaps[1] = top.start;
+    int i = 2;
+    for (Level level : nested) {
+      gaps[i++] = level.bodyStart;
+      gaps[i++] = level.start;
+    }
+    // The gaps after the declaration are in the reverse order of the enclosing declarations.
+    for (int j = nested.size() - 1; j >= 0; j--) {
+      Level level = nested.get(j);
+      gaps[i++] = shift(level.end);
+      gaps[i++] = shift(endPos(level.parent)) - 1;
+    }
+    JavacParseResult<CompilationUnitTree> parsed =
+        session.parseParts(newSource, chars, shift(top.end), gaps);
+    // How javac's parser reports and recovers from an error depends on the state that the text
+    // before the error leaves it in, which may include text outside the declaration.
+    if (!parsed.diagnostics().isEmpty()) {
+      return null;
+    }
+    JCCompilationUnit parsedCu = (JCCompilationUnit) parsed.tree();
+    JCTree replacement = onlyDeclaration(parsedCu.defs, 0);
+    for (Level level : nested) {
+      if (!(replacement instanceof JCClassDecl c)) {
+        return null;
+      }
+      replacement = onlyDeclaration(c.defs, level.bodyStart);
+    }
+    if (replacement == null
+        || !isReplaceable(replacement, unit.parent == cu)
+        || parsedCu.endPositions.getEndPos(replacement) != shift(unit.end)) {
+      return null;
+    }
+
+    // The edit can be handled locally.  Adjust the trees after the declaration, and splice in the
+    // new declaration.
+    IdentityEndPosTable endPositions = identityEndPositions();
+    IdentityDocCommentTable docComments = identityDocComments();
+    new ErrorTreeScanner() {
+      @Override
+      public void scan(@Nullable JCTree tree) {
+        // A compact constructor's parameters share their types with the record's header.
+        if (tree != null && tree.pos >= unit.start) {
+          endPositions.remove(tree);
+          docComments.remove(tree);
+          super.scan(tree);
+        }
+      }
+    }.scan(unit.tree);
+    shiftPositions(path, endPositions, docComments);
+    copyPositions(
+        replacement, parsedCu.endPositions, parsedCu.docComments, endPositions, docComments);
+    if (unit.parent instanceof JCClassDecl c) {
+      c.defs = replace(c.defs, unit.tree, replacement);
+    } else {
+      cu.defs = replace(cu.defs, unit.tree, replacement);
+    }
+    docComments.setSource(newSource);
+    cu.sourcefile = newSource;
+    cu.lineMap = Position.makeLineMap(chars, chars.length, true);
+    cu.endPositions = endPositions;
+    cu.docComments = docComments;
+    return new JavacParseResult<>(cu, List.of());
+  }
+
+  /**
+   * Returns true if every diagnostic lies within the given range.
+   *
+   * @param diagnostics diagnostics
+   * @param from the start of the range
+   * @param to the end of the range, exclusive
+   * @return true if the position of every diagnostic is at least {@code from} and less than {@code
+   *     to}
+   */
+  private static boolean within(
+      List<? extends Diagnostic<? extends JavaFileObject>> diagnostics, int from, int to) {
+    for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+      if (d.getPosition() < from || d.getPosition() >= to) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A declaration that encloses the edit.
+   *
+   * @param parent the compilation unit or type declaration that contains the declaration
+   * @param bodyStart the index just after the "{" of {@code parent}'s body, or 0 for a compilation
+   *     unit
+   * @param tree the declaration
+   * @param start the start of the declaration's text: the end of the previous declaration in {@code
+   *     parent}, or {@code bodyStart}
+   * @param end the end of the declaration's text, in the previous contents
+   */
+  private record Level(JCTree parent, int bodyStart, JCTree tree, int start, int end) {}
+
+  /**
+   * Returns the declarations that enclose the edit and can be re-parsed, outermost first. The last
+   * one is the smallest, which is to be re-parsed. All but the last one are type declarations.
+   *
+   * @return the declarations that enclose the edit, or an empty list if there are none
+   */
+  private List<Level> enclosingDeclarations() {
+    List<Level> result = new ArrayList<>();
+    JCTree parent = cu;
+    int bodyStart = 0;
+    while (true) {
+      Level level = enclosingMember(parent, bodyStart);
+      if (level == null) {
+        break;
+      }
+      result.add(level);
+      // The members of an enum are not re-parsed individually, because its constants are not
+      // ordinary declarations.
+      if (!(level.tree instanceof JCClassDecl c) || (c.mods.flags & Flags.ENUM) != 0) {
+        break;
+      }
+      bodyStart = bodyStart(c);
+      if (bodyStart < 0) {
+        break;
+      }
+      parent = c;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the member of {@code parent} whose text encloses the edit, if it can be re-parsed.
+   *
+   * @param parent a compilation unit or type declaration
+   * @param bodyStart the index just after the "{" of {@code parent}'s body, or 0 for a compilation
+   *     unit
+   * @return the member that encloses the edit, or null if there is none or it cannot be re-parsed
+   */
+  @SuppressWarnings({
+    "index", // the positions of a tree lie within the contents that were parsed
+    "interning:not.interned" // trees are compared by reference
+  })
+  private @Nullable Level enclosingMember(JCTree parent, int bodyStart) {
+    com.sun.tools.javac.util.List<JCTree> members =
+        parent instanceof JCClassDecl c ? c.defs : ((JCCompilationUnit) parent).defs;
+    int start = bodyStart;
+    JCTree previous = null;
+    for (; members.nonEmpty(); members = members.tail) {
+      JCTree member = members.head;
+      if (TreeInfo.getStartPos(member) < bodyStart) {
+        // A record component, which is part of the header.
+        continue;
+      }
+      int end = endPos(member);
+      if (end == Position.NOPOS) {
+        return null;
+      }
+      if (end <= offset) {
+        start = end;
+        previous = member;
+        continue;
+      }
+      // This is the first member whose text extends past the start of the edit.  The previous
+      // member, if any, must end normally too, or its parse may have depended on this one's text.
+      if (start > offset
+          || editEnd >= end
+          || !endsNormally(end)
+          || (previous != null && !endsNormally(start))
+          || !isReplaceable(member, parent == cu)
+          || sharesModifiers(member, previous)
+          || sharesModifiers(member, members.tail.head)) {
+        return null;
+      }
+      return new Level(parent, bodyStart, member, start, end);
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if the text of a declaration ends normally, with "}" or ";".
+   *
+   * @param end the end of the text of a declaration, in the previous contents
+   * @return true if the character before {@code end} is "}" or ";"
+   */
+  @SuppressWarnings("index") // the positions of a tree lie within the contents that were parsed
+  private boolean endsNormally(int end) {
+    char last = oldText.charAt(end - 1);
+    return last == '}' || last == ';';
+  }
+
+  /**
+   * Returns true if {@code tree} is a declaration that can be re-parsed on its own.
+   *
+   * @param tree a member of a compilation unit or type declaration
+   * @param topLevel true if {@code tree} is a member of a compilation unit
+   * @return true if {@code tree} can be re-parsed on its own
+   */
+  private static boolean isReplaceable(JCTree tree, boolean topLevel) {
+    if (tree instanceof JCClassDecl c) {
+      return (c.mods.flags & IMPLICIT_CLASS_FLAG) == 0;
+    }
+    // At the top level, other declarations (such as imports) may appear only in certain orders.
+    return !topLevel
+        && (tree instanceof JCMethodDecl
+            || tree instanceof JCVariableDecl
+            || tree instanceof JCBlock);
+  }
+
+  /**
+   * Returns true if both trees are variable declarations that share their modifiers, as in {@code
+   * int a, b;}. Such declarations are not re-parsed individually.
+   *
+   * @param tree a member of a type declaration
+   * @param other another member of the type declaration, or null
+   * @return true if both trees are variable declarations that share their modifiers
+   */
+  @SuppressWarnings("interning:not.interned") // trees are compared by reference
+  private static boolean sharesModifiers(JCTree tree, @Nullable JCTree other) {
+    return tree instanceof JCVariableDecl v
+        && other instanceof JCVariableDecl otherV
+        && v.mods == otherV.mods;
+  }
+
+  /**
+   * Returns the index just after the "{" that starts the body of a type declaration.
+   *
+   * @param c a type declaration
+   * @return the index just after the "{" that starts the body of {@code c}, or -1 if it cannot be
+   *     found
+   */
+  @SuppressWarnings("index") // the positions of a tree lie within the contents that were parsed
+  private int bodyStart(JCClassDecl c) {
+    // The header, which starts at the keyword, contains "{" only within parentheses, in
+    // annotations.
+    String header = oldText.subSequence(c.pos, endPos(c)).toString();
+    Scanner scanner = session.newScanner(header);
+    int depth = 0;
+    for (scanner.nextToken(); ; scanner.nextToken()) {
+      Token token = scanner.token();
+      switch (token.kind) {
+        case LPAREN -> depth++;
+        case RPAREN -> depth--;
+        case LBRACE -> {
+          if (depth == 0) {
+            return c.pos + token.endPos;
+          }
+        }
+        case EOF -> {
+          return -1;
+        }
+        default -> {}
+      }
+    }
+  }
+
+  /**
+   * Returns the only member of a re-parsed compilation unit or type declaration, other than record
+   * components.
+   *
+   * @param members the members of a re-parsed compilation unit or type declaration
+   * @param bodyStart the index just after the "{" of the type declaration's body, or 0 for a
+   *     compilation unit
+   * @return the only member, or null if there is not exactly one
+   */
+  private static @Nullable JCTree onlyDeclaration(List<JCTree> members, int bodyStart) {
+    JCTree result = null;
+    for (JCTree member : members) {
+      if (TreeInfo.getStartPos(member) >= bodyStart) {
+        if (result != null) {
+          return null;
+        }
+        result = member;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the end position table of the previous compilation unit, first replacing it by an
+   * {@link IdentityEndPosTable} if it is javac's. The trees of a compilation unit that has been
+   * re-parsed before already have such a table, which this method returns.
+   *
+   * @return the end position table of the previous compilation unit, which can be modified
+   */
+  private IdentityEndPosTable identityEndPositions() {
+    if (cu.endPositions instanceof IdentityEndPosTable result) {
+      return result;
+    }
+    EndPosTable oldEndPositions = cu.endPositions;
+    IdentityEndPosTable result = new IdentityEndPosTable(oldText.length() / 8);
+    new ErrorTreeScanner() {
+      @Override
+      public void scan(@Nullable JCTree tree) {
+        if (tree != null) {
+          int end = oldEndPositions.getEndPos(tree);
+          if (end != Position.NOPOS) {
+            result.storeEnd(tree, end);
+          }
+          super.scan(tree);
+        }
+      }
+    }.scan(cu);
+    cu.endPositions = result;
+    return result;
+  }
+
+  /**
+   * Returns the doc comment table of the previous compilation unit, first replacing it by an {@link
+   * IdentityDocCommentTable} if it is javac's.
+   *
+   * @return the doc comment table of the previous compilation unit, which can be modified
+   */
+  private IdentityDocCommentTable identityDocComments() {
+    if (cu.docComments instanceof IdentityDocCommentTable result) {
+      return result;
+    }
+    DocCommentTable oldDocComments = cu.docComments;
+    IdentityDocCommentTable result =
+        new IdentityDocCommentTable(session.docCommentParser(), cu.sourcefile);
+    new ErrorTreeScanner() {
+      @Override
+      public void scan(@Nullable JCTree tree) {
+        if (tree != null) {
+          Comment comment = oldDocComments.getComment(tree);
+          if (comment != null) {
+            result.putComment(tree, comment);
+          }
+          super.scan(tree);
+        }
+      }
+    }.scan(cu);
+    cu.docComments = result;
+    return result;
+  }
+
+  /**
+   * Adjusts the positions in the previous compilation unit after the declaration that is replaced,
+   * for the edit. Those are the positions in the members that follow each declaration that encloses
+   * the edit, and the end positions of the enclosing declarations. The positions before the
+   * replaced declaration's text are unaffected.
+   *
+   * @param path the declarations that enclose the edit, outermost first
+   * @param endPositions the end position table of the previous compilation unit
+   * @param docComments the doc comment table of the previous compilation unit
+   */
+  @SuppressWarnings("interning:not.interned") // trees are compared by reference
+  private void shiftPositions(
+      List<Level> path, IdentityEndPosTable endPositions, IdentityDocCommentTable docComments) {
+    if (delta == 0) {
+      return;
+    }
+    int replacedEnd = path.get(path.size() - 1).end;
+    TreeScanner shifter =
+        new ErrorTreeScanner() {
+          /**
+           * The trees that have been adjusted. A tree may appear more than once, as in `int a, b;`.
+           */
+          private final IdentityHashMap<JCTree, JCTree> visited = new IdentityHashMap<>();
+
+          @Override
+          public void scan(@Nullable JCTree tree) {
+            if (tree != null && visited.put(tree, tree) == null) {
+              shiftPositions(tree, replacedEnd, endPositions, docComments);
+              super.scan(tree);
+            }
+          }
+        };
+    for (Level level : path) {
+      shiftPositions(level.parent, replacedEnd, endPositions, docComments);
+      com.sun.tools.javac.util.List<JCTree> members =
+          level.parent instanceof JCClassDecl c ? c.defs : ((JCCompilationUnit) level.parent).defs;
+      while (members.head != level.tree) {
+        members = members.tail;
+      }
+      for (JCTree member : members.tail) {
+        shifter.scan(member);
+      }
+    }
+  }
+
+  /**
+   * Adjusts the positions of one tree node (but not its children) for the edit.
+   *
+   * @param tree a node of the previous compilation unit, other than in the replaced declaration
+   * @param replacedEnd the end of the text of the replaced declaration, in the previous contents
+   * @param endPositions the end position table of the previous compilation unit
+   * @param docComments the doc comment table of the previous compilation unit
+   */
+  private void shiftPositions(
+      JCTree tree,
+      int replacedEnd,
+      IdentityEndPosTable endPositions,
+      IdentityDocCommentTable docComments) {
+    // Every position in the rest of the tree is either before the replaced declaration's text,
+    // and unaffected, or after it.
+    if (tree.pos >= replacedEnd) {
+      Comment comment = docComments.getComment(tree);
+      if (comment != null) {
+        docComments.putComment(tree, ShiftedComment.of(comment, delta));
+      }
+      tree.pos += delta;
+    }
+    int end = endPositions.getEndPos(tree);
+    if (end != Position.NOPOS && end >= replacedEnd) {
+      endPositions.storeEnd(tree, end + delta);
+    }
+    for (Field field : POSITION_FIELDS.get(tree.getClass())) {
+      try {
+        int pos = field.getInt(tree);
+        if (pos >= replacedEnd) {
+          field.setInt(tree, pos + delta);
+        }
+      } catch (IllegalAccessException e) {
+        throw new Error("Cannot adjust " + field, e);
+      }
+    }
+  }
+
+  /**
+   * Records the end positions and doc comments of a re-parsed declaration in the tables of the
+   * previous compilation unit.
+   *
+   * @param replacement the re-parsed declaration
+   * @param parsedEndPositions the end position table of the parse of {@code replacement}
+   * @param parsedDocComments the doc comment table of the parse of {@code replacement}
+   * @param endPositions the end position table of the previous compilation unit
+   * @param docComments the doc comment table of the previous compilation unit
+   */
+  private static void copyPositions(
+      JCTree replacement,
+      EndPosTable parsedEndPositions,
+      DocCommentTable parsedDocComments,
+      IdentityEndPosTable endPositions,
+      IdentityDocCommentTable docComments) {
+    new ErrorTreeScanner() {
+      @Override
+      public void scan(@Nullable JCTree tree) {
+        if (tree == null) {
+          return;
+        }
+        Comment comment = parsedDocComments.getComment(tree);
+        if (comment != null) {
+          docComments.putComment(tree, comment);
+        }
+        int end = parsedEndPositions.getEndPos(tree);
+        if (end != Position.NOPOS) {
+          endPositions.storeEnd(tree, end);
+        }
+        super.scan(tree);
+      }
+    }.scan(replacement);
+  }
+
+  /**
+   * Returns a list with one element replaced.
+   *
+   * @param list a list
+   * @param oldElement the element to replace
+   * @param newElement the replacement
+   * @return {@code list}, with {@code oldElement} replaced by {@code newElement}
+   */
+  @SuppressWarnings("interning:not.interned") // trees are compared by reference
+  private static com.sun.tools.javac.util.List<JCTree> replace(
+      com.sun.tools.javac.util.List<JCTree> list, JCTree oldElement, JCTree newElement) {
+    ListBuffer<JCTree> result = new ListBuffer<>();
+    for (JCTree element : list) {
+      result.append(element == oldElement ? newElement : element);
+    }
+    return result.toList();
+  }
+
+  /**
+   * Returns the end position of a tree in the previous compilation unit.
+   *
+   * @param tree a tree in the previous compilation unit
+   * @return the end position of {@code tree}, or {@link Position#NOPOS}
+   */
+  private int endPos(JCTree tree) {
+    return cu.endPositions.getEndPos(tree);
+  }
+
+  /**
+   * Converts a position after the edit in the previous contents to one in the new contents.
+   *
+   * @param pos a position after the edit in the previous contents
+   * @return the corresponding position in the new contents
+   */
+  private int shift(int pos) {
+    return pos + delta;
+  }
+
+  /**
+   * Returns the flag of an implicitly declared class, or 0 if this JDK does not support them.
+   *
+   * @return the flag of an implicitly declared class, or 0
+   */
+  @SuppressWarnings("nullness:argument") // the fields are static
+  private static long implicitClassFlag() {
+    // The flag was named UNNAMED_CLASS while the feature was in preview.
+    for (String name : new String[] {"IMPLICIT_CLASS", "UNNAMED_CLASS"}) {
+      try {
+        return Flags.class.getField(name).getLong(null);
+      } catch (NoSuchFieldException | IllegalAccessException e) {
+        // Try the next name.
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * A tree scanner that also scans the trees within erroneous trees, which have positions too, as
+   * the re-parsed declaration and the rest of the tree may contain errors.
+   */
+  private static class ErrorTreeScanner extends TreeScanner {
+
+    /** Creates an ErrorTreeScanner. */
+    ErrorTreeScanner() {}
+
+    @Override
+    public void visitErroneous(JCErroneous tree) {
+      scan(tree.errs);
+    }
+  }
+
+  /** A doc comment whose positions are offset from those of another comment. */
+  private static final class ShiftedComment implements Comment {
+
+    /** The comment whose positions are offset. */
+    private final Comment delegate;
+
+    /** The offset to add to each of the delegate's positions. */
+    private final int delta;
+
+    /**
+     * Creates a ShiftedComment.
+     *
+     * @param delegate the comment whose positions are offset
+     * @param delta the offset to add to each of the delegate's positions
+     */
+    private ShiftedComment(Comment delegate, int delta) {
+      this.delegate = delegate;
+      this.delta = delta;
+    }
+
+    /**
+     * Returns a comment whose positions are offset from those of the given comment.
+     *
+     * @param comment a comment
+     * @param delta the offset to add to each of the comment's positions
+     * @return a comment whose positions are offset from those of {@code comment}
+     */
+    static Comment of(Comment comment, int delta) {
+      if (delta == 0) {
+        return comment;
+      }
+      // Do not build a chain of comments as the file is edited repeatedly.
+      if (comment instanceof ShiftedComment shifted) {
+        return new ShiftedComment(shifted.delegate, shifted.delta + delta);
+      }
+      return new ShiftedComment(comment, delta);
+    }
+
+    @Override
+    public String getText() {
+      return delegate.getText();
+    }
+
+    @Override
+    public int getSourcePos(int index) {
+      int pos = delegate.getSourcePos(index);
+      return pos == Position.NOPOS ? pos : pos + delta;
+    }
+
+    @Override
+    public CommentStyle getStyle() {
+      return delegate.getStyle();
+    }
+
+    @Override
+    public boolean isDeprecated() {
+      return delegate.isDeprecated();
+    }
+  }
+}
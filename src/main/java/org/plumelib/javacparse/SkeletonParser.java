@@ -0,0 +1,189 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.parser.JavacParser;
+import com.sun.tools.javac.parser.Lexer;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCModifiers;
+import com.sun.tools.javac.tree.JCTree.JCTypeParameter;
+import com.sun.tools.javac.util.Name;
+import java.util.ArrayList;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A javac parser that skips method bodies. Rather than parsing a body, it skips to the matching "}"
+ * token and yields a {@link SkippedBlock}. Only the lexer sees the body, so the only diagnostics
+ * that arise from the body are lexical errors, and {@link #withoutSkippedDiagnostics} discards
+ * those.
+ *
+ * <p>A method that is declared within an expression, such as in an anonymous class in a field
+ * initializer, is parsed in full. So is an initializer block, including the blocks nested within
+ * it.
+ */
+final class SkeletonParser extends JavacParser {
+
+  /** The skipped bodies, in order of position. */
+  private final List<SkippedBlock> skipped = new ArrayList<>();
+
+  /** The number of expressions that are being parsed; bodies are skipped only when it is 0. */
+  private int expressionDepth = 0;
+
+  /**
+   * True if the parser is within a method's declarator, so the next block that it parses is the
+   * method's body.
+   */
+  private boolean inMethodDeclarator = false;
+
+  /** The parser for lazy bodies, or null if bodies are not lazy. */
+  private final LazyBlock.@Nullable BodyParser bodyParser;
+
+  /**
+   * Creates a SkeletonParser.
+   *
+   * @param factory the parser factory, which supplies the tree factory, log, and so forth
+   * @param lexer the lexer for the input
+   * @param options what the parser retains besides the tree
+   * @param bodyParser the parser for lazy bodies, or null to skip bodies without making them lazy
+   */
+  SkeletonParser(
+      ParserFactory factory,
+      Lexer lexer,
+      ParseOptions options,
+      LazyBlock.@Nullable BodyParser bodyParser) {
+    super(factory, lexer, options.docComments(), options.lineMap(), options.endPositions());
+    this.bodyParser = bodyParser;
+  }
+
+  @Override
+  public JCCompilationUnit parseCompilationUnit() {
+    JCCompilationUnit result = super.parseCompilationUnit();
+    if (bodyParser != null && !skipped.isEmpty()) {
+      // Lazy bodies may add to the tables while other threads read them.
+      result.endPositions = new ConcurrentEndPosTable(result.endPositions);
+      if (result.docComments != null) {
+        result.docComments =
+            new ConcurrentDocCommentTable(result.docComments, bodyParser::parseDocComment, result);
+      }
+      for (SkippedBlock block : skipped) {
+        ((LazyBlock) block).setCompilationUnit(result);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public JCExpression parseExpression() {
+    // A block within an expression, such as a lambda body's, is not a method body.
+    expressionDepth++;
+    try {
+      return super.parseExpression();
+    } finally {
+      expressionDepth--;
+    }
+  }
+
+  @Override
+  protected JCTree methodDeclaratorRest(
+      int pos,
+      JCModifiers mods,
+      @Nullable JCExpression type,
+      Name name,
+      com.sun.tools.javac.util.List<JCTypeParameter> typarams,
+      boolean isInterface,
+      boolean isVoid,
+      boolean isRecord,
+      @Nullable Comment dc) {
+    // This method parses the declarator of a method or constructor, including a record's compact
+    // constructor, and then its body.
+    inMethodDeclarator = true;
+    try {
+      return super.methodDeclaratorRest(
+          pos, mods, type, name, typarams, isInterface, isVoid, isRecord, dc);
+    } finally {
+      inMethodDeclarator = false;
+    }
+  }
+
+  @Override
+  public JCBlock block() {
+    // Other blocks, such as those within an initializer, are parsed in full.
+    boolean isMethodBody = inMethodDeclarator;
+    inMethodDeclarator = false;
+    if (!isMethodBody || expressionDepth > 0 || token().kind != TokenKind.LBRACE) {
+      return super.block();
+    }
+    int pos = token().pos;
+    int nesting = 0;
+    int endpos;
+    while (true) {
+      TokenKind kind = token().kind;
+      if (kind == TokenKind.EOF) {
+        endpos = token().pos;
+        // Report the missing "}".
+        accept(TokenKind.RBRACE);
+        break;
+      }
+      if (kind == TokenKind.LBRACE) {
+        nesting++;
+      } else if (kind == TokenKind.RBRACE && --nesting == 0) {
+        endpos = token().pos;
+        nextToken();
+        break;
+      }
+      nextToken();
+    }
+    SkippedBlock result =
+        bodyParser == null ? new SkippedBlock(pos, endpos) : new LazyBlock(pos, endpos, bodyParser);
+    skipped.add(result);
+    return toP(result);
+  }
+
+  /**
+   * Returns the given diagnostics, except for those within the skipped bodies.
+   *
+   * @param diagnostics the diagnostics of a parse by this parser
+   * @return the diagnostics that are not within a skipped body
+   */
+  List<Diagnostic<? extends JavaFileObject>> withoutSkippedDiagnostics(
+      List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+    if (skipped.isEmpty() || diagnostics.isEmpty()) {
+      return diagnostics;
+    }
+    List<Diagnostic<? extends JavaFileObject>> result = new ArrayList<>(diagnostics.size());
+    for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+      if (!isSkipped(d.getPosition())) {
+        result.add(d);
+      }
+    }
+    return ParseDiagnostics.of(result);
+  }
+
+  /**
+   * Returns true if the given position is within a skipped body, before its "}".
+   *
+   * @param pos a position
+   * @return true if {@code pos} is within a skipped body
+   */
+  private boolean isSkipped(long pos) {
+    // Binary search for the last body that starts at or before pos.
+    int low = 0;
+    int high = skipped.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (skipped.get(mid).pos <= pos) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high >= 0 && pos < skipped.get(high).endpos;
+  }
+}
@@ -0,0 +1,25 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.util.List;
+
+/**
+ * A placeholder for a method body that a {@link SkeletonParser} skipped. It is an empty block whose
+ * {@link #pos} and {@link #endpos} are those of the body's "{" and "}", so it has the same source
+ * span as the body. {@link JavacParseSession#parseBody} parses the body. A {@link LazyBlock} also
+ * parses it when it is used.
+ */
+class SkippedBlock extends JCBlock {
+
+  /**
+   * Creates a SkippedBlock.
+   *
+   * @param pos the position of the body's "{"
+   * @param endpos the position of the body's "}"
+   */
+  SkippedBlock(int pos, int endpos) {
+    super(0, List.nil());
+    this.pos = pos;
+    this.endpos = endpos;
+  }
+}
@@ -0,0 +1,272 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.code.TypeTag;
+import com.sun.tools.javac.parser.JavacParser;
+import com.sun.tools.javac.parser.Lexer;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCModifiers;
+import com.sun.tools.javac.tree.JCTree.JCPrimitiveTypeTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.JCDiagnostic;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticFlag;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Position;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A javac parser for a snippet of Java code (an expression, a type use, a method, or a method
+ * body), rather than a compilation unit. It parses the snippet with the grammar production for its
+ * kind, so the snippet need not be wrapped in a synthetic class, and the resulting tree's positions
+ * are relative to the snippet.
+ *
+ * <p>Each method returns null if the snippet is not entirely of the expected kind. The caller must
+ * also check that no errors were reported.
+ */
+final class SnippetParser extends JavacParser {
+
+  /**
+   * Parses one member of a class body, as {@code (parser, className) -> members}; or null if this
+   * JDK's parser has no such method. That method is protected, and its parameters differ among JDK
+   * versions.
+   */
+  private static final @Nullable MethodHandle BODY_DECLARATION = bodyDeclarationHandle();
+
+  /** The table to which {@link #body} copies doc comments, or null. */
+  private @Nullable DocCommentTable docCommentsInto = null;
+
+  /** The position of the {@code void} that {@link #typeUse} rejected, or NOPOS. */
+  private int rejectedVoidPos = Position.NOPOS;
+
+  /** Why a method of this parser returned null, or null if none has. */
+  private SnippetResult.@Nullable Reason rejection = null;
+
+  /**
+   * Creates a SnippetParser.
+   *
+   * @param factory the parser factory, which supplies the tree factory, log, and so forth
+   * @param lexer the lexer for the snippet
+   * @param keepDocComments if true, record doc comments; keeping them means that, for example,
+   *     "@deprecated" sets the DEPRECATED flag
+   * @param keepEndPositions if true, record end positions, for {@link #body} to copy
+   */
+  SnippetParser(
+      ParserFactory factory, Lexer lexer, boolean keepDocComments, boolean keepEndPositions) {
+    // The line map is not needed, because only the tree is returned.
+    super(factory, lexer, keepDocComments, false, keepEndPositions);
+  }
+
+  /**
+   * Returns true if this JDK's parser can parse a method directly, via {@link #method}.
+   *
+   * @return true if {@link #method} may be called
+   */
+  static boolean canParseMethod() {
+    return BODY_DECLARATION != null;
+  }
+
+  /**
+   * Parses an expression or array initializer, followed by optional semicolons.
+   *
+   * @return the expression, or null if it is not followed by the end of input
+   */
+  @Nullable JCExpression expression() {
+    JCExpression result = variableInitializer();
+    skipSemicolons();
+    return atEnd() ? result : reject(SnippetResult.Reason.TRAILING_INPUT);
+  }
+
+  /**
+   * Parses a type use.
+   *
+   * @return the type, or null if it is {@code void} or is not followed by the end of input
+   */
+  @Nullable JCExpression typeUse() {
+    JCExpression result = parseType();
+    if (result instanceof JCPrimitiveTypeTree p && p.typetag == TypeTag.VOID) {
+      rejectedVoidPos = p.pos;
+      return reject(SnippetResult.Reason.WRONG_KIND);
+    }
+    return atEnd() ? result : reject(SnippetResult.Reason.TRAILING_INPUT);
+  }
+
+  /**
+   * Parses a method or annotation type element, followed by optional semicolons. Must be called
+   * only if {@link #canParseMethod} returns true.
+   *
+   * @param noName a name that is not the name of any constructor
+   * @return the method, or null if the input is not a single method followed by the end of input
+   */
+  @SuppressWarnings("nullness:dereference.of.nullable") // canParseMethod() returned true
+  @Nullable JCMethodDecl method(Name noName) {
+    List<JCTree> members;
+    try {
+      members = (List<JCTree>) BODY_DECLARATION.invokeExact(this, noName);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new Error("Unexpected exception from the javac parser", e);
+    }
+    skipSemicolons();
+    if (!atEnd()) {
+      return reject(SnippetResult.Reason.TRAILING_INPUT);
+    } else if (members.isEmpty()) {
+      return reject(SnippetResult.Reason.NO_DECLARATION);
+    } else if (members.size() > 1) {
+      // For example, "int x, y".
+      return reject(SnippetResult.Reason.EXTRA_DECLARATIONS);
+    } else if (members.head instanceof JCMethodDecl m) {
+      return m;
+    } else {
+      return reject(SnippetResult.Reason.WRONG_KIND);
+    }
+  }
+
+  /**
+   * Returns why a method of this parser returned null.
+   *
+   * @return why a method of this parser returned null
+   * @throws IllegalStateException if no method of this parser has returned null
+   */
+  SnippetResult.Reason rejection() {
+    if (rejection == null) {
+      throw new IllegalStateException("No snippet was rejected");
+    }
+    return rejection;
+  }
+
+  /**
+   * Parses a method body: a block, which must be the first token of the input. Its end positions
+   * and doc comments are copied to the given tables, which are those of the compilation unit that
+   * contains the body.
+   *
+   * @param endPositionsInto the table to which to copy end positions
+   * @param docCommentsInto the table to which to copy doc comments, or null
+   * @return the body
+   */
+  JCBlock body(EndPosTable endPositionsInto, @Nullable DocCommentTable docCommentsInto) {
+    this.docCommentsInto = docCommentsInto;
+    JCBlock result = block();
+    new TreeScanner() {
+      @Override
+      public void scan(@Nullable JCTree tree) {
+        if (tree == null) {
+          return;
+        }
+        int endPos = endPosTable.getEndPos(tree);
+        if (endPos != Position.NOPOS) {
+          endPositionsInto.storeEnd(tree, endPos);
+        }
+        super.scan(tree);
+      }
+    }.scan(result);
+    return result;
+  }
+
+  @Override
+  protected void attach(JCTree tree, Comment dc) {
+    super.attach(tree, dc);
+    if (docCommentsInto != null && dc != null) {
+      docCommentsInto.putComment(tree, dc);
+    }
+  }
+
+  /**
+   * Reports an error for a snippet that a method of this parser rejected by returning null, which
+   * it does without reporting an error.
+   *
+   * @param log the log of this parser
+   */
+  void reportRejected(Log log) {
+    if (rejectedVoidPos != Position.NOPOS) {
+      log.error(
+          DiagnosticFlag.SYNTAX,
+          rejectedVoidPos,
+          new JCDiagnostic.Error("compiler", "illegal.start.of.type"));
+    } else {
+      log.error(
+          DiagnosticFlag.SYNTAX,
+          token().pos,
+          new JCDiagnostic.Error("compiler", "expected", TokenKind.EOF));
+    }
+  }
+
+  /**
+   * Records why a method of this parser is about to return null.
+   *
+   * @param <T> the type of tree that the method would have returned
+   * @param reason why the method rejects its snippet
+   * @return null
+   */
+  private <T extends JCTree> @Nullable T reject(SnippetResult.Reason reason) {
+    rejection = reason;
+    return null;
+  }
+
+  /** Skips any semicolons at the current position. */
+  private void skipSemicolons() {
+    while (token().kind == TokenKind.SEMI) {
+      nextToken();
+    }
+  }
+
+  /**
+   * Returns true if the whole input has been consumed.
+   *
+   * @return true if the whole input has been consumed
+   */
+  private boolean atEnd() {
+    return token().kind == TokenKind.EOF;
+  }
+
+  /**
+   * Returns a handle for the parser's method that parses one member of a class body.
+   *
+   * @return a handle of type {@code (SnippetParser, Name) -> List}, or null if this JDK's parser
+   *     has no such method
+   */
+  private static @Nullable MethodHandle bodyDeclarationHandle() {
+    // The method is protected, so only a subclass's lookup may find it.
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    String name = "classOrInterfaceOrRecordBodyDeclaration";
+    MethodHandle handle;
+    try {
+      // JDK 21 and later.
+      handle =
+          lookup.findVirtual(
+              JavacParser.class,
+              name,
+              MethodType.methodType(
+                  List.class, JCModifiers.class, Name.class, boolean.class, boolean.class));
+      // The modifiers that precede the member have not been parsed yet.
+      handle = MethodHandles.collectArguments(handle, 1, MethodHandles.zero(JCModifiers.class));
+    } catch (NoSuchMethodException e21) {
+      try {
+        // JDK 17.
+        handle =
+            lookup.findVirtual(
+                JavacParser.class,
+                name,
+                MethodType.methodType(List.class, Name.class, boolean.class, boolean.class));
+      } catch (NoSuchMethodException | IllegalAccessException e17) {
+        return null;
+      }
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+    // The member is parsed as in a class, not an interface or record.
+    return MethodHandles.insertArguments(handle, 2, false, false);
+  }
+}
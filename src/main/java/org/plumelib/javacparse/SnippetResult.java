@@ -0,0 +1,79 @@
+package org.plumelib.javacparse;
+
+import com.sun.source.tree.Tree;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The result of parsing a snippet, such as one expression of {@code parseExpressions()} or the
+ * argument of {@code tryParseExpression()}. It is either a {@link Success}, which holds the tree,
+ * or a {@link Failure}, which holds the reason and the diagnostics. A snippet that the strict
+ * method, such as {@code parseExpression()}, would reject with an {@code IllegalArgumentException}
+ * yields a failure, and no exception is created.
+ *
+ * @param <T> the type of the tree
+ */
+public sealed interface SnippetResult<T extends Tree>
+    permits SnippetResult.Success, SnippetResult.Failure {
+
+  /**
+   * Returns the tree, or null if the snippet did not parse.
+   *
+   * @return the tree, or null if the snippet did not parse
+   */
+  @Nullable T treeOrNull();
+
+  /**
+   * A snippet that parsed.
+   *
+   * @param <T> the type of the tree
+   * @param tree the tree
+   */
+  record Success<T extends Tree>(T tree) implements SnippetResult<T> {
+    @Override
+    public T treeOrNull() {
+      return tree;
+    }
+  }
+
+  /**
+   * A snippet that did not parse.
+   *
+   * @param <T> the type of the tree that the snippet would have yielded
+   * @param reason why the snippet did not parse
+   * @param diagnostics the diagnostics of the parse; possibly empty, because a snippet that is not
+   *     entirely of the expected kind, such as "a b" for an expression, need not yield one
+   */
+  record Failure<T extends Tree>(
+      Reason reason, List<Diagnostic<? extends JavaFileObject>> diagnostics)
+      implements SnippetResult<T> {
+    @Override
+    public @Nullable T treeOrNull() {
+      return null;
+    }
+  }
+
+  /** Why a snippet did not parse. */
+  enum Reason {
+    /** The parser reported an error, which the diagnostics describe. */
+    PARSE_ERROR,
+    /** A snippet of the expected kind is followed by more input, as in "a b" for an expression. */
+    TRAILING_INPUT,
+    /** The snippet is of another kind, as is "void" for a type use or a field for a method. */
+    WRONG_KIND,
+    /** The snippet contains no declaration or member, where one is expected. */
+    NO_DECLARATION,
+    /** The snippet contains more than one declaration or member, where one is expected. */
+    EXTRA_DECLARATIONS,
+    /** A type declaration is preceded or followed by a {@code ;}. */
+    TOP_LEVEL_SEMICOLON,
+    /** A type declaration is preceded by imports. */
+    HAS_IMPORTS,
+    /** A type declaration is preceded by a package declaration. */
+    HAS_PACKAGE,
+    /** The snippet contains a module declaration instead of a type declaration. */
+    HAS_MODULE
+  }
+}
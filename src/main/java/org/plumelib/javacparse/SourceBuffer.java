@@ -0,0 +1,216 @@
+package org.plumelib.javacparse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A reusable buffer for the text of one Java source at a time, for parsing many sources with little
+ * allocation. Parsing a file with {@link JavacParseSession#parseFile} allocates a byte array for
+ * the file and a char array for its text, each as large as the file; filling a SourceBuffer reuses
+ * the arrays of the previous fill, which grow only when a source is larger than any before it.
+ * Reading a file uses a direct byte buffer, so the bytes are copied once, from the file into that
+ * buffer, and then decoded into the char array that javac's scanner reads.
+ *
+ * <p>Use a SourceBuffer like this:
+ *
+ * <pre>{@code
+ * SourceBuffer buffer = new SourceBuffer();
+ * for (Path file : files) {
+ *   buffer.readFile(file);
+ *   JavacParseResult<CompilationUnitTree> result = session.parseCompilationUnit(buffer);
+ *   ...
+ * }
+ * }</pre>
+ *
+ * <p>The result of parsing a SourceBuffer is valid only until the buffer is filled again. After
+ * that, the source file of the tree ({@link com.sun.source.tree.CompilationUnitTree#getSourceFile})
+ * throws {@link IllegalStateException} when its contents are requested, and so does parsing a
+ * method body that the parse skipped or deferred (see {@link ParseOptions#methodBodies}). The
+ * positions, messages, and string representations of the result's diagnostics remain valid.
+ *
+ * <p>A SourceBuffer is not thread-safe.
+ */
+public final class SourceBuffer {
+
+  /** The initial size of {@link #chars}. */
+  private static final int INITIAL_CAPACITY = 8192;
+
+  /** The URI of a source that is not a file. */
+  private static final URI STRING_URI = URI.create("string");
+
+  /** The text of the current source, in the first {@link #length} elements. */
+  private char[] chars = new char[INITIAL_CAPACITY];
+
+  /** The number of chars in the current source. */
+  private int length = 0;
+
+  /** The buffer into which files are read, or null if no file has been read. */
+  private @Nullable ByteBuffer bytes = null;
+
+  /** The current source, or null if this buffer is empty. */
+  private @Nullable Contents contents = null;
+
+  /** Creates an empty SourceBuffer. */
+  public SourceBuffer() {}
+
+  /**
+   * Fills this buffer with the contents of a file, which are decoded as UTF-8.
+   *
+   * @param path the file
+   * @throws IOException if there is trouble reading the file, or it is not valid UTF-8; then this
+   *     buffer is empty
+   */
+  public void readFile(Path path) throws IOException {
+    clear();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File is too large: " + path);
+      }
+      ByteBuffer fileBytes;
+      if (size >= FileJavaFileObject.MAP_THRESHOLD) {
+        // The mapping is not retained, so that the file can be unmapped.
+        fileBytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        fileBytes = bytes;
+        if (fileBytes == null || fileBytes.capacity() < size) {
+          fileBytes = ByteBuffer.allocateDirect(Math.max((int) size, INITIAL_CAPACITY));
+          bytes = fileBytes;
+        }
+        fileBytes.clear().limit((int) size);
+        while (fileBytes.hasRemaining()) {
+          if (channel.read(fileBytes) < 0) {
+            break;
+          }
+        }
+        fileBytes.flip();
+      }
+      fill(path.toUri(), fileBytes);
+    }
+  }
+
+  /**
+   * Fills this buffer with the given UTF-8 bytes.
+   *
+   * @param utf8 the bytes, from its position to its limit; its position is unspecified afterward
+   * @throws CharacterCodingException if the bytes are not valid UTF-8; then this buffer is empty
+   */
+  public void decode(ByteBuffer utf8) throws CharacterCodingException {
+    clear();
+    fill(STRING_URI, utf8);
+  }
+
+  /**
+   * Fills this buffer with the given text.
+   *
+   * @param text the text
+   */
+  public void setText(CharSequence text) {
+    clear();
+    int n = text.length();
+    ensureCapacity(n);
+    if (text instanceof String s) {
+      s.getChars(0, n, chars, 0);
+    } else {
+      for (int i = 0; i < n; i++) {
+        chars[i] = text.charAt(i);
+      }
+    }
+    length = n;
+    contents = new Contents(STRING_URI, this);
+  }
+
+  /**
+   * Returns the number of chars in the current source.
+   *
+   * @return the number of chars in the current source, or 0 if this buffer is empty
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Returns the current source, for parsing.
+   *
+   * @return the current source
+   * @throws IllegalStateException if this buffer is empty
+   */
+  /*package-private*/ JavaFileObject contents() {
+    if (contents == null) {
+      throw new IllegalStateException("SourceBuffer is empty");
+    }
+    return contents;
+  }
+
+  /** Empties this buffer, invalidating the previous source. */
+  private void clear() {
+    contents = null;
+    length = 0;
+  }
+
+  /**
+   * Decodes UTF-8 bytes into this buffer, which is empty.
+   *
+   * @param uri the URI of the source
+   * @param utf8 the bytes, from its position to its limit
+   * @throws CharacterCodingException if the bytes are not valid UTF-8
+   */
+  private void fill(URI uri, ByteBuffer utf8) throws CharacterCodingException {
+    // UTF-8 never decodes to more chars than it has bytes.
+    ensureCapacity(utf8.remaining());
+    length = FileJavaFileObject.decode(utf8, chars, CodingErrorAction.REPORT);
+    contents = new Contents(uri, this);
+  }
+
+  /**
+   * Ensures that {@link #chars} has at least the given number of elements. Its contents are not
+   * preserved.
+   *
+   * @param capacity the number of elements
+   */
+  private void ensureCapacity(int capacity) {
+    if (chars.length < capacity) {
+      // Grow geometrically, so that a sequence of ever-larger sources reallocates rarely.
+      int doubled = (int) Math.min(Integer.MAX_VALUE - 8, 2L * chars.length);
+      chars = new char[Math.max(capacity, doubled)];
+    }
+  }
+
+  /** The contents of a SourceBuffer between two fills. */
+  private static final class Contents extends SimpleJavaFileObject {
+
+    /** The buffer, which holds these contents until it is filled again. */
+    private final SourceBuffer buffer;
+
+    /**
+     * Creates the contents of a buffer that has just been filled.
+     *
+     * @param uri the URI of the source
+     * @param buffer the buffer
+     */
+    Contents(URI uri, SourceBuffer buffer) {
+      super(uri, JavaFileObject.Kind.SOURCE);
+      this.buffer = buffer;
+    }
+
+    @Override
+    public CharBuffer getCharContent(boolean ignoreEncodingErrors) {
+      if (buffer.contents != this) {
+        throw new IllegalStateException(
+            "The SourceBuffer that held " + toUri() + " has been filled again");
+      }
+      // javac's scanner uses the array of a heap CharBuffer as is.
+      return CharBuffer.wrap(buffer.chars, 0, buffer.length);
+    }
+  }
+}
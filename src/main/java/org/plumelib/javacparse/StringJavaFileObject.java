@@ -3,6 +3,7 @@ package org.plumelib.javacparse;
 import java.net.URI;
 import javax.tools.JavaFileObject;
 import javax.tools.SimpleJavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** A JavaFileObject constructed from a string. */
 class StringJavaFileObject extends SimpleJavaFileObject {
@@ -10,13 +11,29 @@ class StringJavaFileObject extends SimpleJavaFileObject {
   /** Java code for a file (= a compilation unit). */
   private final String javaCode;
 
+  /**
+   * The characters of {@link #javaCode}, or null if they have not been needed yet. Guarded by
+   * {@code this}.
+   */
+  private char @Nullable [] chars = null;
+
   /**
    * Creates a StringJavaFileObject for the given file contents.
    *
    * @param javaCode the contents of a Java file (= a compilation unit)
    */
   public StringJavaFileObject(String javaCode) {
-    super(URI.create("string"), JavaFileObject.Kind.SOURCE);
+    this(URI.create("string"), javaCode);
+  }
+
+  /**
+   * Creates a StringJavaFileObject with the given URI for the given file contents.
+   *
+   * @param uri the URI of the file object
+   * @param javaCode the contents of a Java file (= a compilation unit)
+   */
+  public StringJavaFileObject(URI uri, String javaCode) {
+    super(uri, JavaFileObject.Kind.SOURCE);
     this.javaCode = javaCode;
   }
 
@@ -24,4 +41,20 @@ class StringJavaFileObject extends SimpleJavaFileObject {
   public CharSequence getCharContent(boolean ignoreEncodingErrors) {
     return javaCode;
   }
+
+  /**
+   * Returns the characters of the contents. They are copied only once, so that parsing the method
+   * bodies of the file one at a time does not copy the whole file for each body. The caller must
+   * not modify the result.
+   *
+   * @return the characters of the contents
+   */
+  /*package-private*/ synchronized char[] toCharArray() {
+    char[] result = chars;
+    if (result == null) {
+      result = javaCode.toCharArray();
+      chars = result;
+    }
+    return result;
+  }
 }
@@ -0,0 +1,186 @@
+package org.plumelib.javacparse;
+
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.Tokens.Token;
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import com.sun.tools.javac.util.JCDiagnostic;
+import com.sun.tools.javac.util.Log;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The tokens of a Java source, read one at a time by javac's lexer. No tree is built. A TokenCursor
+ * reads a token only when {@link #next} is called and retains only the current token, so lexing a
+ * large source takes little memory beyond the source itself.
+ *
+ * <p>Use a TokenCursor like this:
+ *
+ * <pre>{@code
+ * TokenCursor tokens = session.lex(javaCode);
+ * while (tokens.next()) {
+ *   ... tokens.kind() ... tokens.start() ... tokens.end() ...
+ * }
+ * }</pre>
+ *
+ * <p>The last token is {@link TokenKind#EOF}, whose start and end are the length of the source. The
+ * text between one token's end and the next token's start is whitespace and comments; for example,
+ * a file's license header precedes its first token. A lexical error, such as an unclosed string
+ * literal, yields an {@link TokenKind#ERROR} token and increments {@link #errorCount}.
+ *
+ * <p>A TokenCursor is not thread-safe. It may be used while its session is used for parsing.
+ */
+public final class TokenCursor {
+
+  /** The lock that guards the javac state that the scanner uses. */
+  private final Object lock;
+
+  /** The log of the javac state, to which the lexer reports errors. */
+  private final Log log;
+
+  /** The scanner. */
+  private final Scanner scanner;
+
+  /** The source that is lexed. */
+  private final JavaFileObject source;
+
+  /** Counts the lexical errors. */
+  private final ErrorCounter errorCounter = new ErrorCounter();
+
+  /** The current token, or null before the first call to {@link #next}. */
+  private @MonotonicNonNull Token token = null;
+
+  /**
+   * Creates a TokenCursor.
+   *
+   * @param lock the lock that guards the javac state that the scanner uses
+   * @param log the log of the javac state
+   * @param scanner the scanner, which has not read a token yet
+   * @param source the source that is lexed
+   */
+  /*package-private*/ TokenCursor(Object lock, Log log, Scanner scanner, JavaFileObject source) {
+    this.lock = lock;
+    this.log = log;
+    this.scanner = scanner;
+    this.source = source;
+  }
+
+  /**
+   * Advances to the next token.
+   *
+   * @return true if there is a next token, false if the current token is the last one ({@link
+   *     TokenKind#EOF})
+   */
+  public boolean next() {
+    if (token != null && token.kind == TokenKind.EOF) {
+      return false;
+    }
+    synchronized (lock) {
+      JavaFileObject previousSource = log.useSource(source);
+      errorCounter.push(log);
+      try {
+        scanner.nextToken();
+      } finally {
+        log.popDiagnosticHandler(errorCounter);
+        log.useSource(previousSource);
+      }
+    }
+    token = scanner.token();
+    return true;
+  }
+
+  /**
+   * Returns the current token.
+   *
+   * @return the current token
+   * @throws IllegalStateException if {@link #next} has not been called
+   */
+  private Token token() {
+    if (token == null) {
+      throw new IllegalStateException("next() has not been called");
+    }
+    return token;
+  }
+
+  /**
+   * Returns the kind of the current token.
+   *
+   * @return the kind of the current token
+   * @throws IllegalStateException if {@link #next} has not been called
+   */
+  public TokenKind kind() {
+    return token().kind;
+  }
+
+  /**
+   * Returns the start offset of the current token: the index in the source of its first character.
+   *
+   * @return the start offset of the current token
+   * @throws IllegalStateException if {@link #next} has not been called
+   */
+  public int start() {
+    return token().pos;
+  }
+
+  /**
+   * Returns the end offset of the current token: the index in the source after its last character.
+   *
+   * @return the end offset of the current token
+   * @throws IllegalStateException if {@link #next} has not been called
+   */
+  public int end() {
+    return token().endPos;
+  }
+
+  /**
+   * Returns the name of the current token, if it is an identifier.
+   *
+   * @return the name of the current token, or null if it is not an identifier
+   * @throws IllegalStateException if {@link #next} has not been called
+   */
+  public @Nullable String name() {
+    Token t = token();
+    return t.kind == TokenKind.IDENTIFIER ? t.name().toString() : null;
+  }
+
+  /**
+   * Returns the number of lexical errors in the tokens so far.
+   *
+   * @return the number of lexical errors in the tokens so far
+   */
+  public int errorCount() {
+    return errorCounter.errors;
+  }
+
+  /**
+   * Counts the errors that the lexer reports, and discards all diagnostics. It is installed only
+   * while the lexer reads a token.
+   */
+  private static final class ErrorCounter extends Log.DiagnosticHandler {
+
+    /** The number of errors reported. */
+    int errors = 0;
+
+    /** Creates an ErrorCounter. */
+    ErrorCounter() {}
+
+    /**
+     * Installs this as the log's diagnostic handler, until {@link Log#popDiagnosticHandler} is
+     * called.
+     *
+     * @param log the log
+     */
+    void push(Log log) {
+      install(log);
+    }
+
+    @Override
+    public void report(JCDiagnostic diagnostic) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors++;
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CompactTreeTest {
+
+  /** Creates a CompactTreeTest. */
+  CompactTreeTest() {}
+
+  @Test
+  void structureTest() {
+    String source = "class C { int f(int x) { return x + 1; } }";
+    CompilationUnitTree cu = JavacParse.parseCompilationUnit(source).tree();
+    CompactTree tree = CompactTree.of(cu);
+
+    assertEquals(Tree.Kind.COMPILATION_UNIT, tree.kind(0));
+    assertEquals(CompactTree.NO_NODE, tree.parent(0));
+    assertEquals(tree.size(), tree.subtreeEnd(0));
+    assertEquals(0, tree.start(0));
+
+    int c = tree.firstChild(0);
+    assertEquals(Tree.Kind.CLASS, tree.kind(c));
+    assertEquals("C", tree.name(c));
+    assertEquals(0, tree.start(c));
+    assertEquals(source.length(), tree.end(c));
+    assertEquals(CompactTree.NO_NODE, tree.nextSibling(c));
+
+    // The class's modifiers, then the method.
+    int modifiers = tree.firstChild(c);
+    assertEquals(Tree.Kind.MODIFIERS, tree.kind(modifiers));
+    int f = tree.nextSibling(modifiers);
+    assertEquals(Tree.Kind.METHOD, tree.kind(f));
+    assertEquals("f", tree.name(f));
+    assertEquals(c, tree.parent(f));
+    assertEquals("int f(int x) { return x + 1; }", source.substring(tree.start(f), tree.end(f)));
+
+    // Both uses of "x" have the same name index.
+    List<Integer> xs = new ArrayList<>();
+    for (int node = 0; node < tree.size(); node++) {
+      if ("x".equals(tree.name(node))) {
+        xs.add(node);
+      }
+    }
+    assertEquals(2, xs.size());
+    assertEquals(Tree.Kind.VARIABLE, tree.kind(xs.get(0)));
+    assertEquals(Tree.Kind.IDENTIFIER, tree.kind(xs.get(1)));
+    assertEquals(tree.nameIndex(xs.get(0)), tree.nameIndex(xs.get(1)));
+    assertEquals("x", tree.nameAt(tree.nameIndex(xs.get(0))));
+    assertEquals(3, tree.nameCount());
+    assertNull(tree.name(0));
+
+    int plus = tree.parent(xs.get(1));
+    assertEquals(Tree.Kind.PLUS, tree.kind(plus));
+    assertEquals("x + 1", source.substring(tree.start(plus), tree.end(plus)));
+  }
+
+  @Test
+  void visitorTest() {
+    String source = "class C { Object o = new Object() { void m() { a: while (b) break a; } }; }";
+    CompactTree tree = CompactTree.of(JavacParse.parseCompilationUnit(source).tree());
+
+    // Enter and exit balance, and the descendants of a skipped node are not entered.
+    StringBuilder trace = new StringBuilder();
+    int[] depth = {0};
+    tree.accept(
+        new CompactTree.Visitor() {
+          @Override
+          public boolean enter(CompactTree t, int node) {
+            depth[0]++;
+            String name = t.name(node);
+            if (name != null) {
+              trace.append(name).append(' ');
+            }
+            return t.kind(node) != Tree.Kind.WHILE_LOOP;
+          }
+
+          @Override
+          public void exit(CompactTree t, int node) {
+            depth[0]--;
+          }
+        });
+    assertEquals(0, depth[0]);
+    // The anonymous class has no name, and the loop's condition and "break a" are skipped.
+    assertEquals("C o Object Object m a ", trace.toString());
+
+    int[] count = {0};
+    tree.accept(
+        (t, node) -> {
+          count[0]++;
+          return true;
+        });
+    assertEquals(tree.size(), count[0]);
+  }
+
+  @Test
+  void wildcardTest() {
+    String source = "class C { java.util.List<? extends Number> l; }";
+    CompactTree tree = CompactTree.of(JavacParse.parseCompilationUnit(source).tree());
+    int wildcard = tree.size() - 2;
+    assertEquals(Tree.Kind.EXTENDS_WILDCARD, tree.kind(wildcard));
+    assertEquals("? extends Number", source.substring(tree.start(wildcard), tree.end(wildcard)));
+    int bound = tree.firstChild(wildcard);
+    assertEquals("Number", tree.name(bound));
+    assertEquals(CompactTree.NO_NODE, tree.nextSibling(bound));
+  }
+
+  @Test
+  void lazyBodyTest() {
+    String source = "class C { void m() { int x = 1; } }";
+    CompilationUnitTree cu =
+        JavacParse.parseCompilationUnit(
+                source, ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.LAZY))
+            .tree();
+    CompactTree tree = CompactTree.of(cu);
+    int body = tree.size() - 1;
+    assertEquals(Tree.Kind.BLOCK, tree.kind(body));
+    assertEquals(CompactTree.NO_NODE, tree.firstChild(body));
+    assertEquals("{ int x = 1; }", source.substring(tree.start(body), tree.end(body)));
+  }
+}
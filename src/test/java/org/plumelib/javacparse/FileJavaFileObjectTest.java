@@ -0,0 +1,81 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileJavaFileObjectTest {
+
+  /** Creates a FileJavaFileObjectTest. */
+  FileJavaFileObjectTest() {}
+
+  @Test
+  void decodeTest() throws IOException {
+    String[] inputs = {
+      "",
+      "class C {}",
+      "class Caf\u00e9 { String s = \"\u00fcber\"; }",
+      "// \u4e2d\u6587\nclass C {}",
+      "class C { String s = \"\ud83d\ude00\"; }", // a supplementary character
+      "\u00e9 at the start",
+    };
+    for (String input : inputs) {
+      ByteBuffer bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+      assertEquals(input, FileJavaFileObject.decode(bytes, CodingErrorAction.REPORT).toString());
+    }
+
+    byte[] malformed = {'a', 'b', (byte) 0xff, 'c'};
+    assertThrows(
+        MalformedInputException.class,
+        () -> FileJavaFileObject.decode(ByteBuffer.wrap(malformed), CodingErrorAction.REPORT));
+    assertEquals(
+        "ab\ufffdc",
+        FileJavaFileObject.decode(ByteBuffer.wrap(malformed), CodingErrorAction.REPLACE)
+            .toString());
+  }
+
+  @Test
+  void getCharContentTest(@TempDir Path dir) throws IOException {
+    Path small = dir.resolve("Small.java");
+    Files.writeString(small, "class Small { String s = \"\u00e9\"; }");
+    assertEquals(
+        Files.readString(small), new FileJavaFileObject(small).getCharContent(false).toString());
+
+    // Large enough to be memory-mapped.
+    StringBuilder sb = new StringBuilder((int) FileJavaFileObject.MAP_THRESHOLD + 100);
+    sb.append("class Large {\n");
+    for (int i = 0; sb.length() < FileJavaFileObject.MAP_THRESHOLD; i++) {
+      sb.append("  int f").append(i).append(" = ").append(i).append("; // \u00e9\n");
+    }
+    sb.append("}\n");
+    Path large = dir.resolve("Large.java");
+    Files.writeString(large, sb);
+    FileJavaFileObject largeFile = new FileJavaFileObject(large);
+    assertEquals(sb.toString(), largeFile.getCharContent(false).toString());
+    JavacParseResult<?> result = JavacParse.parseCompilationUnit(largeFile);
+    assertFalse(result.hasParseError());
+
+    // The file is not read until its contents are needed.
+    Path missing = dir.resolve("Missing.java");
+    FileJavaFileObject missingFile = new FileJavaFileObject(missing);
+    assertThrows(NoSuchFileException.class, () -> missingFile.getCharContent(false));
+
+    Path malformed = dir.resolve("Malformed.java");
+    Files.write(malformed, new byte[] {'c', 'l', 'a', 's', 's', ' ', (byte) 0xc3, 'X', ' ', '{'});
+    FileJavaFileObject malformedFile = new FileJavaFileObject(malformed);
+    assertThrows(MalformedInputException.class, () -> malformedFile.getCharContent(false));
+    assertEquals("class \ufffdX {", malformedFile.getCharContent(true).toString());
+    assertThrows(MalformedInputException.class, () -> malformedFile.getCharContent(false));
+  }
+}
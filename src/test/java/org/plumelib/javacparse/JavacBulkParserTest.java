@@ -0,0 +1,214 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JavacBulkParserTest {
+
+  /** Creates a JavacBulkParserTest. */
+  JavacBulkParserTest() {}
+
+  /** The number of Java files that {@link #makeTree} creates. */
+  private static final int NUM_FILES = 60;
+
+  /**
+   * Creates Java files, some with parse errors, in subdirectories of {@code root}, plus a file that
+   * is not a Java file.
+   *
+   * @param root the directory in which to create files
+   * @return the expected printed result for each Java file
+   * @throws IOException if there is trouble creating the files
+   */
+  static Map<Path, String> makeTree(Path root) throws IOException {
+    Map<Path, String> expected = new HashMap<>();
+    for (int i = 0; i < NUM_FILES; i++) {
+      Path dir = root.resolve(i % 2 == 0 ? "main" : "test").resolve("p" + (i % 5));
+      Files.createDirectories(dir);
+      Path file = dir.resolve("C" + i + ".java");
+      String code =
+          i % 3 == 0
+              ? "class C" + i + " { void m() { int x = ; } }"
+              : "package p;\nclass C" + i + " { int f = " + i + "; }";
+      Files.writeString(file, code);
+      expected.put(file, JavacParsePoolTest.resultString(JavacParse.parseFile(file.toString())));
+    }
+    Files.writeString(root.resolve("main").resolve("README.txt"), "not Java");
+    return expected;
+  }
+
+  @Test
+  void parseDirectoryTest(@TempDir Path root) throws IOException {
+    Map<Path, String> expected = makeTree(root);
+    Map<Path, String> actual = new HashMap<>();
+    AtomicInteger concurrentCalls = new AtomicInteger();
+    List<Long> progress = new ArrayList<>();
+    JavacBulkParser.Summary summary =
+        new JavacBulkParser(4)
+            .parseDirectory(
+                root,
+                new JavacBulkParser.Listener() {
+                  @Override
+                  public void parsed(Path file, JavacParseResult<CompilationUnitTree> result) {
+                    assertEquals(1, concurrentCalls.incrementAndGet());
+                    actual.put(file, JavacParsePoolTest.resultString(result));
+                    concurrentCalls.decrementAndGet();
+                  }
+
+                  @Override
+                  public void progress(long done, long found) {
+                    assertTrue(done <= found);
+                    progress.add(done);
+                  }
+                });
+    assertEquals(new JavacBulkParser.Summary(NUM_FILES, 0, false), summary);
+    assertEquals(expected, actual);
+    assertEquals(NUM_FILES, progress.size());
+    assertEquals(NUM_FILES, progress.get(NUM_FILES - 1));
+  }
+
+  @Test
+  void globTest(@TempDir Path root) throws IOException {
+    makeTree(root);
+    List<Path> parsed = new ArrayList<>();
+    JavacBulkParser.Summary summary =
+        new JavacBulkParser(3)
+            .parseDirectory(root, "test/**.java", (file, result) -> parsed.add(file));
+    assertEquals(NUM_FILES / 2, summary.parsed());
+    for (Path file : parsed) {
+      assertTrue(root.relativize(file).startsWith("test"), file.toString());
+    }
+  }
+
+  @Test
+  void failureTest(@TempDir Path root) throws IOException {
+    Map<Path, String> expected = makeTree(root);
+    List<Path> files = new ArrayList<>(expected.keySet());
+    Path missing = root.resolve("Missing.java");
+    files.add(files.size() / 2, missing);
+    List<Path> failed = new ArrayList<>();
+    JavacBulkParser.Summary summary =
+        new JavacBulkParser(2)
+            .parse(
+                files.stream(),
+                new JavacBulkParser.Listener() {
+                  @Override
+                  public void parsed(Path file, JavacParseResult<CompilationUnitTree> result) {
+                    // Do nothing.
+                  }
+
+                  @Override
+                  public void failed(Path file, Exception e) {
+                    assertTrue(e instanceof NoSuchFileException, e.toString());
+                    failed.add(file);
+                  }
+                });
+    assertEquals(new JavacBulkParser.Summary(NUM_FILES, 1, false), summary);
+    assertEquals(List.of(missing), failed);
+  }
+
+  @Test
+  void unreadableDirectoryTest(@TempDir Path root) throws IOException {
+    makeTree(root);
+    Path unreadable = root.resolve("main").resolve("p0");
+    int unreadableFiles;
+    try (Stream<Path> files = Files.list(unreadable)) {
+      unreadableFiles = (int) files.count();
+    }
+    Files.setPosixFilePermissions(unreadable, PosixFilePermissions.fromString("---------"));
+    try {
+      // The superuser can read the directory regardless of its permissions.
+      assumeFalse(Files.isReadable(unreadable), "the directory is readable");
+      List<Path> failed = new ArrayList<>();
+      JavacBulkParser.Summary summary =
+          new JavacBulkParser(2)
+              .parseDirectory(
+                  root,
+                  new JavacBulkParser.Listener() {
+                    @Override
+                    public void parsed(Path file, JavacParseResult<CompilationUnitTree> result) {
+                      // Do nothing.
+                    }
+
+                    @Override
+                    public void failed(Path file, Exception e) {
+                      assertTrue(e instanceof AccessDeniedException, e.toString());
+                      failed.add(file);
+                    }
+                  });
+      assertEquals(new JavacBulkParser.Summary(NUM_FILES - unreadableFiles, 1, false), summary);
+      assertEquals(List.of(unreadable), failed);
+    } finally {
+      Files.setPosixFilePermissions(unreadable, PosixFilePermissions.fromString("rwx------"));
+    }
+  }
+
+  @Test
+  void missingRootTest(@TempDir Path root) {
+    assertThrows(
+        NoSuchFileException.class,
+        () -> new JavacBulkParser(1).parseDirectory(root.resolve("missing"), (file, result) -> {}));
+  }
+
+  @Test
+  void cancelTest(@TempDir Path root) throws IOException {
+    Path file = root.resolve("C.java");
+    Files.writeString(file, "class C {}");
+    JavacBulkParser parser = new JavacBulkParser(2);
+    // An infinite stream:  the run ends only because it is cancelled.
+    JavacBulkParser.Summary summary =
+        parser.parse(
+            Stream.generate(() -> file),
+            (f, result) -> {
+              if (!result.hasParseError() && f.equals(file)) {
+                parser.cancel();
+              }
+            });
+    assertTrue(summary.cancelled());
+    assertTrue(summary.parsed() >= 1);
+
+    // A later run is not affected by the cancellation.
+    summary = parser.parse(Stream.of(file, file), (f, result) -> {});
+    assertEquals(new JavacBulkParser.Summary(2, 0, false), summary);
+  }
+
+  @Test
+  void listenerExceptionTest(@TempDir Path root) throws IOException {
+    makeTree(root);
+    IllegalStateException thrown = new IllegalStateException("from listener");
+    AtomicInteger calls = new AtomicInteger();
+    IllegalStateException caught =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                new JavacBulkParser(4)
+                    .parseDirectory(
+                        root,
+                        (file, result) -> {
+                          calls.incrementAndGet();
+                          throw thrown;
+                        }));
+    assertSame(thrown, caught);
+    assertEquals(1, calls.get());
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+}
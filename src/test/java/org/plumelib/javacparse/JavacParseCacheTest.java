@@ -0,0 +1,137 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JavacParseCacheTest {
+
+  /** Creates a JavacParseCacheTest. */
+  JavacParseCacheTest() {}
+
+  @Test
+  void hitAndMissTest() {
+    try (JavacParseCache cache = new JavacParseCache(1 << 20)) {
+      ExpressionTree e1 = cache.parseExpression("a.b(1 + 2)");
+      ExpressionTree e2 = cache.parseExpression("a.b(1 + 2)");
+      assertSame(e1, e2);
+      assertNotSame(e1, cache.parseExpression("a.b(1 + 3)"));
+      assertEquals(
+          new JavacParseCache.Stats(1, 2, 0, 2, cache.stats().estimatedBytes()), cache.stats());
+
+      // The same string, parsed as a different kind, is a different entry.
+      assertEquals("String", cache.parseTypeUse("String").toString());
+      assertEquals("String", cache.parseExpression("String").toString());
+      assertEquals(4, cache.stats().entries());
+
+      JavacParseResult<CompilationUnitTree> cu1 =
+          cache.parseCompilationUnit("class C { int x = ; }");
+      JavacParseResult<CompilationUnitTree> cu2 =
+          cache.parseCompilationUnit("class C { int x = ; }");
+      assertSame(cu1, cu2);
+      assertTrue(cu1.hasParseError());
+
+      // Invalid input is cached too.
+      IllegalArgumentException ex1 =
+          assertThrows(IllegalArgumentException.class, () -> cache.parseMethod("int x = 5"));
+      IllegalArgumentException ex2 =
+          assertThrows(IllegalArgumentException.class, () -> cache.parseMethod("int x = 5"));
+      assertEquals(ex1.getMessage(), ex2.getMessage());
+      assertEquals(3, cache.stats().hits());
+
+      cache.clear();
+      assertEquals(0, cache.stats().entries());
+      assertEquals(0, cache.stats().estimatedBytes());
+      assertNotSame(e1, cache.parseExpression("a.b(1 + 2)"));
+    }
+  }
+
+  @Test
+  void evictionTest() {
+    // Room for a few small entries only.
+    try (JavacParseCache cache = new JavacParseCache(2000)) {
+      for (int i = 0; i < 100; i++) {
+        cache.parseExpression("x + " + i);
+        assertTrue(cache.stats().estimatedBytes() <= 2000);
+      }
+      JavacParseCache.Stats stats = cache.stats();
+      assertTrue(stats.evictions() > 0);
+      assertEquals(100, stats.entries() + stats.evictions());
+
+      // The most recently used entry is retained; the least recently used one is not.
+      long hits = stats.hits();
+      cache.parseExpression("x + 99");
+      assertEquals(hits + 1, cache.stats().hits());
+      cache.parseExpression("x + 0");
+      assertEquals(hits + 1, cache.stats().hits());
+    }
+
+    // An entry that is larger than the cache is not retained.
+    try (JavacParseCache cache = new JavacParseCache(10)) {
+      cache.parseExpression("1 + 2");
+      assertEquals(0, cache.stats().entries());
+    }
+  }
+
+  @Test
+  void parseFileTest(@TempDir Path dir) throws IOException {
+    Path a = dir.resolve("A.java");
+    Path b = dir.resolve("B.java");
+    Files.writeString(a, "class A {}");
+    Files.writeString(b, "class A {}");
+    try (JavacParseCache cache = new JavacParseCache(1 << 20)) {
+      JavacParseResult<CompilationUnitTree> ra = cache.parseFile(a.toString());
+      // Same contents, so the cached result is returned.
+      assertSame(ra, cache.parseFile(b.toString()));
+      // Changed contents, so the file is parsed again.
+      Files.writeString(a, "class A { int f; }");
+      assertNotSame(ra, cache.parseFile(a.toString()));
+      assertThrows(
+          IOException.class, () -> cache.parseFile(dir.resolve("Missing.java").toString()));
+    }
+  }
+
+  @Test
+  void concurrencyTest() throws Exception {
+    try (JavacParseCache cache = new JavacParseCache(20_000)) {
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+          futures.add(
+              executor.submit(
+                  () -> {
+                    for (int i = 0; i < 300; i++) {
+                      String expr = "a" + (i % 40) + " * b";
+                      assertEquals(expr, cache.parseExpression(expr).toString());
+                    }
+                    return null;
+                  }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      JavacParseCache.Stats stats = cache.stats();
+      assertEquals(8 * 300, stats.hits() + stats.misses());
+      assertTrue(stats.estimatedBytes() <= 20_000);
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JavacParseDiskCacheTest {
+
+  /** Creates a JavacParseDiskCacheTest. */
+  JavacParseDiskCacheTest() {}
+
+  /** Java files that exercise many kinds of trees, valid and invalid. */
+  private static final String[] SOURCES = {
+    "",
+    "class C {}",
+    """
+    package p;
+
+    import static java.util.Map.*;
+    import java.util.*;
+
+    /**
+     * A class.
+     *
+     * @deprecated use something else
+     */
+    @Deprecated
+    public abstract class C<T extends Comparable<? super T>> implements Runnable {
+      /** Two fields that share their modifiers and type. */
+      private static int a = 1, b[] = {2, 3};
+      long l = 0x7fffffffffffffffL;
+      float f = 1.5e10f;
+      double d = -0.0;
+      char c = '\\u00e9';
+      boolean z = true;
+      String s = "a\\tb" + "\\ud800";
+      String text = \"""
+          text block
+          \""";
+      Object o = null;
+
+      \t/**\tTabs\tbefore\tand\tin a comment. */
+      <U> U m(@SuppressWarnings("x") final U u, int... rest) throws Exception {
+        var v = new java.util.ArrayList<@A String>();
+        int[][] arr = new int @A [2] @B [];
+        a += b[0] >>> 2;
+        a = -a + ~a * (a++ - --a);
+        Runnable r = () -> {};
+        java.util.function.Function<String, Integer> fn = String::length;
+        label:
+        for (int i = 0; i < 10; i++) {
+          if (i % 2 == 0) continue label; else break;
+        }
+        switch (a) {
+          case 1, 2 -> System.out.println("x");
+          default -> {}
+        }
+        int y = switch (a) { case 1: yield 2; default: yield 3; };
+        try (var in = new java.io.StringReader("")) {
+          synchronized (this) { assert a > 0 : "msg"; }
+        } catch (RuntimeException | Error e) {
+          throw e;
+        } finally {
+          o = o instanceof String str ? str : (Object) c;
+        }
+        do { a--; } while (a > 0);
+        new Object() { @Override public String toString() { return ""; } };
+        return u;
+      }
+
+      enum E { A, B { void m() {} }; void m() {} }
+      record R(int x, @A String y) { R { assert x > 0; } }
+      @interface A { int value() default 0; String[] names() default {}; }
+      sealed interface S permits F {}
+      final class F implements S {}
+    }
+    """,
+    """
+    /** A module. */
+    @Deprecated
+    open module m.n {
+      requires transitive java.base;
+      exports p to q, r;
+      opens p;
+      uses p.S;
+      provides p.S with p.F;
+    }
+    """,
+    // Invalid code, which yields erroneous trees and diagnostics.
+    "class C { int x = ; void () {} }",
+    "package p\nimport q;\nclass { int[] a = {1, 2,; }",
+    "class C { void m() { x = y +; } } }",
+    "/** unterminated",
+    "class C { String s = \"unterminated; }",
+  };
+
+  @Test
+  void roundTripTest(@TempDir Path dir) throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < SOURCES.length; i++) {
+      Path file = dir.resolve("src" + i).resolve("C.java");
+      Files.createDirectories(file.getParent());
+      Files.writeString(file, SOURCES[i]);
+      files.add(file);
+    }
+    // This library's own sources.
+    try (Stream<Path> stream = Files.walk(Path.of("src"))) {
+      stream.filter(p -> p.toString().endsWith(".java")).forEach(files::add);
+    }
+
+    Path cacheDir = dir.resolve("cache");
+    try (JavacParseDiskCache cache = new JavacParseDiskCache(cacheDir)) {
+      for (Path file : files) {
+        cache.parseFile(file.toString());
+      }
+      assertEquals(new JavacParseDiskCache.Stats(0, files.size(), 0), cache.stats());
+    }
+    // A new cache, as in a new process, reads the results that the first one wrote.
+    try (JavacParseDiskCache cache = new JavacParseDiskCache(cacheDir)) {
+      for (Path file : files) {
+        JavacParseResult<CompilationUnitTree> expected = JavacParse.parseFile(file.toString());
+        JavacParseResult<CompilationUnitTree> actual = cache.parseFile(file.toString());
+        ParseResultAssertions.assertEquivalent(
+            expected, actual, file.toString(), Files.readString(file).length());
+      }
+      assertEquals(new JavacParseDiskCache.Stats(files.size(), 0, 0), cache.stats());
+    }
+  }
+
+  @Test
+  void invalidationTest(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("C.java");
+    Files.writeString(file, "class C { int x; }");
+    Path cacheDir = dir.resolve("cache");
+    try (JavacParseDiskCache cache = new JavacParseDiskCache(cacheDir)) {
+      cache.parseFile(file.toString());
+      JavacParseResult<CompilationUnitTree> r1 = cache.parseFile(file.toString());
+      JavacParseResult<CompilationUnitTree> r2 = cache.parseFile(file.toString());
+      assertEquals(new JavacParseDiskCache.Stats(2, 1, 0), cache.stats());
+      // Every call returns a new tree.
+      assertNotSame(r1.tree(), r2.tree());
+
+      // Changed contents.
+      Files.writeString(file, "class C { int y; }");
+      assertEquals("y", firstMemberName(cache.parseFile(file.toString())));
+      assertEquals(2, cache.stats().misses());
+      assertEquals("y", firstMemberName(cache.parseFile(file.toString())));
+      assertEquals(3, cache.stats().hits());
+
+      // The same contents at a different path.
+      Path other = dir.resolve("D.java");
+      Files.writeString(other, "class C { int y; }");
+      cache.parseFile(other.toString());
+      assertEquals(3, cache.stats().misses());
+
+      assertThrows(
+          IOException.class, () -> cache.parseFile(dir.resolve("Missing.java").toString()));
+    }
+  }
+
+  @Test
+  void versionTest(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("C.java");
+    Files.writeString(file, "class C { int x; }");
+    Path cacheDir = dir.resolve("cache");
+    try (JavacParseDiskCache cache = new JavacParseDiskCache(cacheDir)) {
+      cache.parseFile(file.toString());
+    }
+    Path entry;
+    try (Stream<Path> entries = Files.list(cacheDir)) {
+      entry = entries.findFirst().orElseThrow();
+    }
+    byte[] good = Files.readAllBytes(entry);
+
+    // An entry written by a different JDK is ignored and overwritten.
+    byte[] version = Runtime.version().toString().getBytes(StandardCharsets.UTF_8);
+    byte[] otherJdk = good.clone();
+    int versionIndex = indexOf(otherJdk, version);
+    assertTrue(versionIndex > 0);
+    otherJdk[versionIndex] = (byte) (otherJdk[versionIndex] == '9' ? '8' : '9');
+    Files.write(entry, otherJdk);
+    try (JavacParseDiskCache cache = new JavacParseDiskCache(cacheDir)) {
+      cache.parseFile(file.toString());
+      cache.parseFile(file.toString());
+      assertEquals(new JavacParseDiskCache.Stats(1, 1, 0), cache.stats());
+    }
+
+    // A truncated or corrupt entry is ignored and overwritten.
+    for (int length : new int[] {0, 10, good.length / 2, good.length - 1}) {
+      Files.write(entry, Arrays.copyOf(good, length));
+      try (JavacParseDiskCache cache = new JavacParseDiskCache(cacheDir)) {
+        assertEquals("x", firstMemberName(cache.parseFile(file.toString())));
+        assertEquals("x", firstMemberName(cache.parseFile(file.toString())));
+        assertEquals(new JavacParseDiskCache.Stats(1, 1, 0), cache.stats());
+      }
+    }
+  }
+
+  /**
+   * Returns the name of the first member of the first class in a compilation unit.
+   *
+   * @param result the result of parsing a compilation unit
+   * @return the name of the first member of the first class
+   */
+  private static String firstMemberName(JavacParseResult<CompilationUnitTree> result) {
+    JCTree.JCClassDecl c = (JCTree.JCClassDecl) result.tree().getTypeDecls().get(0);
+    return ((JCTree.JCVariableDecl) c.defs.head).name.toString();
+  }
+
+  /**
+   * Returns the index of the first occurrence of {@code target} in {@code bytes}, or -1.
+   *
+   * @param bytes an array
+   * @param target the bytes to find
+   * @return the index of the first occurrence of {@code target} in {@code bytes}, or -1
+   */
+  private static int indexOf(byte[] bytes, byte[] target) {
+    outer:
+    for (int i = 0; i + target.length <= bytes.length; i++) {
+      for (int j = 0; j < target.length; j++) {
+        if (bytes[i + j] != target[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,141 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.JCTree.JCMethodInvocation;
+import com.sun.tools.javac.tree.JCTree.JCTypeApply;
+import com.sun.tools.javac.util.Name;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class JavacParseInternerTest {
+
+  /** Creates a JavacParseInternerTest. */
+  JavacParseInternerTest() {}
+
+  @Test
+  void treeTest() {
+    try (JavacParseInterner interner = new JavacParseInterner(100)) {
+      Tree t1 = interner.parseTypeUse("List<String>");
+      assertSame(t1, interner.parseTypeUse("List<String>"));
+      assertNotSame(t1, interner.parseTypeUse("List<Object>"));
+      // The same string, parsed as a different kind, is a different tree.
+      assertNotSame(interner.parseTypeUse("String"), interner.parseExpression("String"));
+      assertEquals("a.b(c)", interner.parseExpression("a.b(c)").toString());
+      assertSame(interner.parseExpression("a.b(c)"), interner.parseExpression("a.b(c)"));
+
+      JavacParseInterner.Stats stats = interner.stats();
+      assertEquals(8, stats.lookups());
+      assertEquals(3, stats.hits());
+      assertEquals(5, stats.trees());
+      // List, String, List, Object, String, String, a, b, c
+      assertEquals(9, stats.nameReferences());
+      assertEquals(6, stats.names());
+    }
+  }
+
+  @Test
+  void nameTest() {
+    try (JavacParseInterner interner = new JavacParseInterner(0)) {
+      JCTypeApply list = (JCTypeApply) interner.parseTypeUse("List<String>");
+      Name string = ((JCIdent) list.arguments.head).name;
+      // Enough parses that the pool replaces its javac state, and thus its name table.
+      for (int i = 0; i < 2500; i++) {
+        interner.parseExpression("x" + i);
+      }
+      JCTypeApply map = (JCTypeApply) interner.parseTypeUse("Map<String, Object>");
+      assertSame(string, ((JCIdent) map.arguments.head).name);
+      JCMethodInvocation call = (JCMethodInvocation) interner.parseExpression("x0.String()");
+      JCFieldAccess select = (JCFieldAccess) call.meth;
+      assertSame(string, select.name);
+
+      // No tree is retained, but the names are.
+      assertNotSame(list, interner.parseTypeUse("List<String>"));
+      assertEquals(0, interner.stats().trees());
+      assertEquals(0, interner.stats().hits());
+      // List, String, x0 through x2499, Map, Object
+      assertEquals(2 + 2500 + 2, interner.stats().names());
+    }
+  }
+
+  @Test
+  void limitTest() {
+    try (JavacParseInterner interner = new JavacParseInterner(2)) {
+      Tree a = interner.parseTypeUse("A");
+      Tree b = interner.parseTypeUse("B");
+      Tree c = interner.parseTypeUse("C");
+      assertSame(a, interner.parseTypeUse("A"));
+      assertSame(b, interner.parseTypeUse("B"));
+      assertNotSame(c, interner.parseTypeUse("C"));
+      assertEquals(2, interner.stats().trees());
+    }
+    assertThrows(IllegalArgumentException.class, () -> new JavacParseInterner(-1));
+  }
+
+  @Test
+  void invalidTest() {
+    try (JavacParseInterner interner = new JavacParseInterner(10)) {
+      IllegalArgumentException e =
+          assertThrows(IllegalArgumentException.class, () -> interner.parseTypeUse("void"));
+      assertEquals("Invalid type use: void", e.getMessage());
+      assertThrows(IllegalArgumentException.class, () -> interner.parseExpression("1 +"));
+      SnippetResult.Failure<?> failure =
+          assertInstanceOf(SnippetResult.Failure.class, interner.tryParseExpression("a b"));
+      assertEquals(SnippetResult.Reason.TRAILING_INPUT, failure.reason());
+      assertEquals(0, interner.stats().trees());
+      JCExpression x = (JCExpression) interner.tryParseExpression("x").treeOrNull();
+      assertSame(x, interner.tryParseExpression("x").treeOrNull());
+    }
+  }
+
+  @Test
+  void concurrencyTest() throws Exception {
+    try (JavacParseInterner interner = new JavacParseInterner(1000)) {
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<List<Tree>> results = new ArrayList<>();
+      try {
+        List<Future<List<Tree>>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+          futures.add(
+              executor.submit(
+                  () -> {
+                    List<Tree> trees = new ArrayList<>();
+                    for (int i = 0; i < 40; i++) {
+                      trees.add(interner.parseTypeUse("Map<K" + i + ", List<V>>"));
+                    }
+                    return trees;
+                  }));
+        }
+        for (Future<List<Tree>> future : futures) {
+          results.add(future.get());
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      // Every thread got the canonical tree, even if it parsed the snippet itself.
+      for (List<Tree> trees : results) {
+        for (int i = 0; i < 40; i++) {
+          assertSame(results.get(0).get(i), trees.get(i));
+        }
+      }
+      JavacParseInterner.Stats stats = interner.stats();
+      assertEquals(8 * 40, stats.lookups());
+      assertEquals(40, stats.trees());
+      // Each snippet was parsed at least once.
+      assertTrue(stats.hits() <= 7 * 40, stats.toString());
+    }
+  }
+}
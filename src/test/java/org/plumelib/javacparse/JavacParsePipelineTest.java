@@ -0,0 +1,248 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+
+class JavacParsePipelineTest {
+
+  /** Creates a JavacParsePipelineTest. */
+  JavacParsePipelineTest() {}
+
+  /** The number of sources that the tests publish. */
+  private static final int NUM_SOURCES = 100;
+
+  /**
+   * Returns a source, some of which have parse errors and some of which are larger than others.
+   *
+   * @param i the number of the source
+   * @return the source
+   */
+  static String source(int i) {
+    StringBuilder sb = new StringBuilder(10_000);
+    sb.append("class C").append(i).append(" {\n");
+    for (int j = 0; j < (i % 7) * 50; j++) {
+      sb.append("  int f").append(j).append(" = ").append(j).append(";\n");
+    }
+    sb.append(i % 3 == 0 ? "  void m() { int x = ; }\n" : "").append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * Publishes {@link #NUM_SOURCES} sources to a pipeline and collects its results.
+   *
+   * @param pipeline the pipeline
+   * @return the results, as strings, in the order of delivery
+   * @throws ExecutionException if the pipeline signals an error
+   * @throws InterruptedException if interrupted while waiting for the pipeline
+   * @throws TimeoutException if the pipeline takes too long
+   */
+  static List<String> run(JavacParsePipeline<CharSequence> pipeline)
+      throws ExecutionException, InterruptedException, TimeoutException {
+    Collector collector = new Collector(Long.MAX_VALUE);
+    pipeline.subscribe(collector);
+    try (SubmissionPublisher<CharSequence> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(pipeline);
+      for (int i = 0; i < NUM_SOURCES; i++) {
+        publisher.submit(source(i));
+      }
+    }
+    collector.done.get(60, TimeUnit.SECONDS);
+    return collector.results;
+  }
+
+  @Test
+  void orderedTest() throws Exception {
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < NUM_SOURCES; i++) {
+      expected.add(JavacParsePoolTest.resultString(JavacParse.parseCompilationUnit(source(i))));
+    }
+    List<String> actual =
+        run(
+            JavacParsePipeline.ofCharSequences(
+                4, 8, JavacParsePipeline.Delivery.ORDERED, ParseOptions.DEFAULT));
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  void unorderedTest() throws Exception {
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < NUM_SOURCES; i++) {
+      expected.add(JavacParsePoolTest.resultString(JavacParse.parseCompilationUnit(source(i))));
+    }
+    List<String> actual =
+        new ArrayList<>(
+            run(
+                JavacParsePipeline.ofCharSequences(
+                    4, 8, JavacParsePipeline.Delivery.UNORDERED, ParseOptions.DEFAULT)));
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  void backpressureTest() throws Exception {
+    // The publisher counts how many sources the pipeline requests.
+    AtomicLong requested = new AtomicLong();
+    AtomicLong published = new AtomicLong();
+    JavacParsePipeline<CharSequence> pipeline =
+        JavacParsePipeline.ofCharSequences(
+            2, 5, JavacParsePipeline.Delivery.ORDERED, ParseOptions.DEFAULT);
+    // The subscriber requests only 3 results.
+    Collector collector = new Collector(3);
+    pipeline.subscribe(collector);
+    pipeline.onSubscribe(
+        new Flow.Subscription() {
+          @Override
+          public synchronized void request(long n) {
+            requested.addAndGet(n);
+            // Publish synchronously, as many sources as requested.
+            while (published.get() < requested.get()) {
+              pipeline.onNext(source((int) published.getAndIncrement()));
+            }
+          }
+
+          @Override
+          public void cancel() {
+            // Nothing to do.
+          }
+        });
+    // Wait until the 3 results have been delivered and the pipeline has requested a source for
+    // each, then give it time to request more than it should.
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while ((collector.count() < 3 || requested.get() < 5 + 3) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(3, collector.count());
+    // The pipeline requested the 5 sources that fit in flight, plus one per delivered result.
+    assertEquals(5 + 3, requested.get());
+    collector.subscription().cancel();
+  }
+
+  @Test
+  void errorTest() throws Exception {
+    JavaFileObject unreadable =
+        new SimpleJavaFileObject(URI.create("unreadable.java"), JavaFileObject.Kind.SOURCE) {
+          @Override
+          public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+            throw new IOException("unreadable");
+          }
+        };
+    JavacParsePipeline<JavaFileObject> pipeline = JavacParsePipeline.ofFileObjects();
+    Collector collector = new Collector(Long.MAX_VALUE);
+    pipeline.subscribe(collector);
+    try (SubmissionPublisher<JavaFileObject> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(pipeline);
+      publisher.submit(new StringJavaFileObject("class A {}"));
+      publisher.submit(unreadable);
+    }
+    Exception e = assertThrows(Exception.class, () -> collector.done.get(60, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, e.getCause());
+
+    // A second subscriber is rejected.
+    Collector second = new Collector(1);
+    pipeline.subscribe(second);
+    e = assertThrows(Exception.class, () -> second.done.get(60, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+  }
+
+  @Test
+  void illegalArgumentsTest() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            JavacParsePipeline.ofCharSequences(
+                0, 8, JavacParsePipeline.Delivery.ORDERED, ParseOptions.DEFAULT));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            JavacParsePipeline.ofCharSequences(
+                4, 3, JavacParsePipeline.Delivery.ORDERED, ParseOptions.DEFAULT));
+  }
+
+  /** A subscriber that collects the results it receives, as strings. */
+  static final class Collector implements Flow.Subscriber<JavacParseResult<CompilationUnitTree>> {
+
+    /** The number of results to request. */
+    private final long toRequest;
+
+    /** The results, in the order received. */
+    final List<String> results = Collections.synchronizedList(new ArrayList<>());
+
+    /** Completed when the pipeline completes or fails. */
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    /** The subscription, once received. The pipeline provides it during {@code subscribe()}. */
+    private Flow.@Nullable Subscription subscription;
+
+    /**
+     * Creates a Collector.
+     *
+     * @param toRequest the number of results to request
+     */
+    Collector(long toRequest) {
+      this.toRequest = toRequest;
+    }
+
+    /**
+     * Returns the number of results received.
+     *
+     * @return the number of results received
+     */
+    int count() {
+      return results.size();
+    }
+
+    /**
+     * Returns the subscription.
+     *
+     * @return the subscription
+     */
+    Flow.Subscription subscription() {
+      Flow.Subscription result = subscription;
+      assertTrue(result != null);
+      return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(toRequest);
+    }
+
+    @Override
+    public void onNext(JavacParseResult<CompilationUnitTree> result) {
+      results.add(JavacParsePoolTest.resultString(result));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      done.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      done.complete(null);
+    }
+  }
+}
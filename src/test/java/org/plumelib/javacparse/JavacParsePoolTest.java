@@ -0,0 +1,159 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.junit.jupiter.api.Test;
+
+class JavacParsePoolTest {
+
+  /** Creates a JavacParsePoolTest. */
+  JavacParsePoolTest() {}
+
+  /** The number of threads that parse concurrently in the stress test. */
+  private static final int THREADS = 8;
+
+  /** The number of parses that each thread performs in the stress test. */
+  private static final int PARSES_PER_THREAD = 400;
+
+  @Test
+  void stressTest() throws Exception {
+    // Distinct inputs, so that a tree or diagnostic that leaked from one parse into another would
+    // be detected.  Some have errors, and some have different numbers of errors.
+    List<String> compilationUnits = new ArrayList<>();
+    List<String> expectedCompilationUnits = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      String cu =
+          switch (i % 4) {
+            case 0 -> "class Valid" + i + " { int f" + i + " = " + i + "; }";
+            case 1 -> "class OneError" + i + " { void () {} }";
+            case 2 -> "package p" + i + ";\nclass TwoErrors { int x = ; int y = ; }";
+            default -> "import q.R" + i + ";\nclass C" + i + " { void m() { return " + i + "; } }";
+          };
+      compilationUnits.add(cu);
+      expectedCompilationUnits.add(resultString(JavacParse.parseCompilationUnit(cu)));
+    }
+    List<String> expressions = new ArrayList<>();
+    List<String> expectedExpressions = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      String expr = "a" + i + ".m(" + i + " + b)";
+      expressions.add(expr);
+      expectedExpressions.add(JavacParse.parseExpression(expr).toString());
+    }
+
+    try (JavacParsePool pool = new JavacParsePool(THREADS / 2)) {
+      CountDownLatch start = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+          long seed = t;
+          futures.add(
+              executor.submit(
+                  () -> {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int n = 0; n < PARSES_PER_THREAD; n++) {
+                      int i = random.nextInt(compilationUnits.size());
+                      switch (random.nextInt(4)) {
+                        case 0, 1 ->
+                            assertEquals(
+                                expectedCompilationUnits.get(i),
+                                resultString(pool.parseCompilationUnit(compilationUnits.get(i))));
+                        case 2 ->
+                            assertEquals(
+                                expectedExpressions.get(i),
+                                pool.parseExpression(expressions.get(i)).toString());
+                        default ->
+                            assertThrows(
+                                IllegalArgumentException.class,
+                                () -> pool.parseMethod("int x" + i + " = " + i));
+                      }
+                    }
+                    return null;
+                  }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      assertTrue(pool.idleCount() <= THREADS / 2);
+    }
+  }
+
+  @Test
+  void diagnosticsOnOtherThreadsTest() throws Exception {
+    String invalid = "class SyntaxError { void () {} int x = ; }";
+    String expected = resultString(JavacParse.parseCompilationUnit(invalid));
+    try (JavacParsePool pool = new JavacParsePool(1)) {
+      // All of these results come from the same session, but their diagnostics are formatted
+      // concurrently on different threads.
+      List<JavacParseResult<CompilationUnitTree>> results = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        results.add(pool.parseCompilationUnit(invalid));
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+      try {
+        List<Future<String>> futures = new ArrayList<>();
+        for (JavacParseResult<CompilationUnitTree> result : results) {
+          futures.add(executor.submit(() -> resultString(result)));
+        }
+        for (Future<String> future : futures) {
+          assertEquals(expected, future.get());
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  void closeTest() {
+    JavacParsePool pool = new JavacParsePool(2);
+    pool.parseExpression("1 + 2");
+    assertEquals(1, pool.idleCount());
+    pool.close();
+    assertEquals(0, pool.idleCount());
+    assertThrows(IllegalStateException.class, () -> pool.parseExpression("1 + 2"));
+    assertThrows(IllegalArgumentException.class, () -> new JavacParsePool(0));
+  }
+
+  /**
+   * Returns a printable representation of a parse result, including its tree and diagnostics.
+   *
+   * @param result a parse result
+   * @return a printable representation of the result
+   */
+  static String resultString(JavacParseResult<CompilationUnitTree> result) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(result.tree());
+    for (Diagnostic<? extends JavaFileObject> d : result.diagnostics()) {
+      sb.append(System.lineSeparator())
+          .append(d.getKind())
+          .append(' ')
+          .append(d.getPosition())
+          .append(' ')
+          .append(d.getLineNumber())
+          .append(':')
+          .append(d.getColumnNumber())
+          .append(' ')
+          .append(d.getMessage(Locale.ROOT));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,388 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JavacParseServerTest {
+
+  /** Creates a JavacParseServerTest. */
+  JavacParseServerTest() {}
+
+  /** A compilation unit. */
+  private static final String SOURCE =
+      """
+      package p;
+      import java.util.List;
+      class C {
+        int x;
+        void m() { int y = x; }
+        class D {}
+      }
+      """;
+
+  /**
+   * Returns the record lines of a successful response, checking its header.
+   *
+   * @param id the request's identifier
+   * @param response a response
+   * @return the record lines of {@code response}
+   */
+  private static List<String> records(String id, String response) {
+    assertTrue(response.endsWith("\n"), response);
+    List<String> lines = Arrays.asList(response.split("\n", -1));
+    lines = lines.subList(0, lines.size() - 1);
+    assertEquals(id + "\tOK\t" + (lines.size() - 1), lines.get(0), response);
+    return lines.subList(1, lines.size());
+  }
+
+  /**
+   * Returns the message of a failure response, checking its form.
+   *
+   * @param id the request's identifier
+   * @param response a response
+   * @return the unescaped message of {@code response}
+   */
+  private static String failure(String id, String response) {
+    assertTrue(response.startsWith(id + "\tFAILED\t"), response);
+    assertTrue(response.endsWith("\n"), response);
+    assertEquals(1, response.split("\n").length, response);
+    return JavacParseServer.unescape(
+        response.substring((id + "\tFAILED\t").length(), response.length() - 1));
+  }
+
+  @Test
+  void escapeTest() {
+    String s = "a\\b\nc\r\td\\n";
+    String escaped = JavacParseServer.escape(s);
+    assertEquals("a\\\\b\\nc\\r\\td\\\\n", escaped);
+    assertEquals(s, JavacParseServer.unescape(escaped));
+    assertEquals("plain", JavacParseServer.unescape("plain"));
+    assertThrows(IllegalArgumentException.class, () -> JavacParseServer.unescape("a\\"));
+    assertThrows(IllegalArgumentException.class, () -> JavacParseServer.unescape("a\\x"));
+  }
+
+  @Test
+  void compilationUnitTest() {
+    try (JavacParseServer server = new JavacParseServer(1, null)) {
+      String request = "1\tCOMPILATION_UNIT\tTREE\tSOURCE\t" + JavacParseServer.escape(SOURCE);
+      List<String> records = records("1", server.respond(request));
+      CompactTree expected =
+          CompactTree.of(
+              JavacParse.parseCompilationUnit(SOURCE, ParseOptions.TREE_ONLY.withEndPositions(true))
+                  .tree());
+      assertEquals(expected.size(), records.size());
+      for (int node = 0; node < expected.size(); node++) {
+        String name = expected.name(node);
+        assertEquals(
+            "NODE\t"
+                + expected.parent(node)
+                + "\t"
+                + expected.kind(node)
+                + "\t"
+                + expected.start(node)
+                + "\t"
+                + expected.end(node)
+                + "\t"
+                + (name == null ? "" : name),
+            records.get(node));
+      }
+
+      request = "2\tCOMPILATION_UNIT\tDIAGNOSTICS\tSOURCE\t" + JavacParseServer.escape(SOURCE);
+      assertEquals(List.of(), records("2", server.respond(request)));
+    }
+  }
+
+  @Test
+  void summaryTest() {
+    try (JavacParseServer server = new JavacParseServer(1, null)) {
+      String request = "s\tCOMPILATION_UNIT\tSUMMARY\tSOURCE\t" + JavacParseServer.escape(SOURCE);
+      List<String> records = records("s", server.respond(request));
+      List<String> kindsAndNames = new ArrayList<>();
+      for (String record : records) {
+        String[] fields = record.split("\t", -1);
+        assertEquals("NODE", fields[0]);
+        kindsAndNames.add(fields[1] + " " + fields[2] + " " + fields[5]);
+      }
+      assertEquals(
+          List.of(
+              "-1 COMPILATION_UNIT ",
+              "0 PACKAGE ",
+              "0 IMPORT ",
+              "0 CLASS C",
+              "3 VARIABLE x",
+              "3 METHOD m",
+              "3 CLASS D"),
+          kindsAndNames);
+      // The summary's positions are those of the whole file.
+      String[] method = records.get(5).split("\t", -1);
+      assertEquals(
+          "void m() { int y = x; }",
+          SOURCE.substring(Integer.parseInt(method[3]), Integer.parseInt(method[4])));
+    }
+  }
+
+  @Test
+  void diagnosticsTest() {
+    try (JavacParseServer server = new JavacParseServer(1, null)) {
+      String request = "d\tCOMPILATION_UNIT\tDIAGNOSTICS\tSOURCE\tclass C { int x }";
+      List<String> records = records("d", server.respond(request));
+      assertEquals(1, records.size());
+      String[] fields = records.get(0).split("\t", -1);
+      assertEquals(7, fields.length);
+      assertEquals("DIAGNOSTIC", fields[0]);
+      assertEquals("ERROR", fields[1]);
+      assertEquals("1", fields[4]);
+    }
+  }
+
+  /**
+   * Returns the parent, kind, start, and name of each NODE record.
+   *
+   * @param records NODE records
+   * @return the parent, kind, start, and name of each record, separated by spaces
+   */
+  private static List<String> withoutEnds(List<String> records) {
+    List<String> result = new ArrayList<>();
+    for (String record : records) {
+      String[] fields = record.split("\t", -1);
+      assertEquals("NODE", fields[0]);
+      result.add(fields[1] + " " + fields[2] + " " + fields[3] + " " + fields[5]);
+    }
+    return result;
+  }
+
+  @Test
+  void snippetTest() {
+    try (JavacParseServer server = new JavacParseServer(1, null)) {
+      // The end offsets of a snippet's nodes are estimates, so they are not checked.
+      assertEquals(
+          List.of("-1 PLUS 0 ", "0 IDENTIFIER 0 a", "0 IDENTIFIER 4 b"),
+          withoutEnds(records("e", server.respond("e\tEXPRESSION\tTREE\tSOURCE\ta + b"))));
+      assertEquals(
+          List.of("-1 METHOD 1 m", "0 MODIFIERS -1 ", "0 PRIMITIVE_TYPE 1 ", "0 BLOCK 10 "),
+          withoutEnds(records("m", server.respond("m\tMETHOD\tTREE\tSOURCE\t void m() {}\\n"))));
+      assertEquals(
+          List.of("-1 METHOD 1 m"),
+          withoutEnds(records("m", server.respond("m\tMETHOD\tSUMMARY\tSOURCE\t void m() {}\\n"))));
+      assertEquals(
+          List.of(), records("t", server.respond("t\tTYPE_USE\tDIAGNOSTICS\tSOURCE\tint")));
+
+      List<String> records = records("r", server.respond("r\tEXPRESSION\tTREE\tSOURCE\ta +"));
+      assertTrue(records.get(0).startsWith("DIAGNOSTIC\tERROR\t"), records.toString());
+      assertEquals("REJECTED\t" + SnippetResult.Reason.PARSE_ERROR, records.get(1));
+    }
+  }
+
+  @Test
+  void fileTest(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("C.java");
+    Files.writeString(file, SOURCE);
+    Path expression = dir.resolve("expression.txt");
+    Files.writeString(expression, "f(x)");
+    try (JavacParseServer server = new JavacParseServer(1, null)) {
+      assertEquals(
+          server.respond("1\tCOMPILATION_UNIT\tTREE\tSOURCE\t" + JavacParseServer.escape(SOURCE)),
+          server.respond("1\tCOMPILATION_UNIT\tTREE\tFILE\t" + file));
+      assertEquals(
+          server.respond("2\tEXPRESSION\tTREE\tSOURCE\tf(x)"),
+          server.respond("2\tEXPRESSION\tTREE\tFILE\t" + expression));
+      String message =
+          failure("3", server.respond("3\tEXPRESSION\tTREE\tFILE\t" + dir.resolve("missing")));
+      assertTrue(message.contains("missing"), message);
+    }
+  }
+
+  @Test
+  void malformedTest() {
+    try (JavacParseServer server = new JavacParseServer(1, null)) {
+      failure("1", server.respond("1\tEXPRESSION\tTREE\tSOURCE"));
+      failure("2", server.respond("2\tEXPRESSION\tTREE\tSOURCE\tx\textra"));
+      failure("3", server.respond("3\tSTATEMENT\tTREE\tSOURCE\tx"));
+      failure("4", server.respond("4\tEXPRESSION\tJSON\tSOURCE\tx"));
+      failure("5", server.respond("5\tEXPRESSION\tTREE\tURL\tx"));
+      failure("6", server.respond("6\tEXPRESSION\tTREE\tSOURCE\tx\\"));
+      failure("no tabs", server.respond("no tabs"));
+    }
+  }
+
+  @Test
+  void deepTest() throws IOException {
+    // Without limits, the parse overflows the stack; with them, the parse is aborted.
+    try (JavacParseServer server = new JavacParseServer(1, null)) {
+      checkDeep(server);
+    }
+    try (JavacParseServer server = new JavacParseServer(1, ParseLimits.UNLIMITED)) {
+      checkDeep(server);
+    }
+  }
+
+  /**
+   * Checks that a request whose text is nested too deeply to parse fails, and that the server
+   * carries out the next request.
+   *
+   * @param server a server with one worker thread
+   * @throws IOException if there is trouble serving the requests
+   */
+  private static void checkDeep(JavacParseServer server) throws IOException {
+    String input =
+        "r1\tEXPRESSION\tDIAGNOSTICS\tSOURCE\t"
+            + "(".repeat(200_000)
+            + "\nr2\tEXPRESSION\tDIAGNOSTICS\tSOURCE\t(x)\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    server.serve(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+    Map<String, String> responses =
+        responses(
+            new BufferedReader(
+                new InputStreamReader(
+                    new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8)));
+    failure("r1", Objects.requireNonNull(responses.get("r1")));
+    assertEquals("r2\tOK\t0\n", responses.get("r2"));
+  }
+
+  /**
+   * Splits a stream of responses by request identifier.
+   *
+   * @param responses the responses, as written by a server
+   * @return a map from each identifier to its response
+   * @throws IOException if there is trouble reading the responses
+   */
+  private static Map<String, String> responses(BufferedReader responses) throws IOException {
+    Map<String, String> result = new HashMap<>();
+    String header;
+    while ((header = responses.readLine()) != null) {
+      String[] fields = header.split("\t", -1);
+      StringBuilder response = new StringBuilder(header).append('\n');
+      if (fields[1].equals("OK")) {
+        for (int i = Integer.parseInt(fields[2]); i > 0; i--) {
+          response.append(responses.readLine()).append('\n');
+        }
+      }
+      assertEquals(null, result.put(fields[0], response.toString()));
+    }
+    return result;
+  }
+
+  /**
+   * Returns many requests, and the response that each should receive.
+   *
+   * @param server a server, used to compute the expected responses
+   * @return a map from each request to its response
+   */
+  private static Map<String, String> requests(JavacParseServer server) {
+    Map<String, String> result = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      String request;
+      if (i % 3 == 0) {
+        request = i + "\tCOMPILATION_UNIT\tSUMMARY\tSOURCE\t" + JavacParseServer.escape(SOURCE);
+      } else if (i % 3 == 1) {
+        request = i + "\tEXPRESSION\tTREE\tSOURCE\tx + " + i;
+      } else {
+        request = i + "\tTYPE_USE\tDIAGNOSTICS\tSOURCE\tList<";
+      }
+      result.put(request, server.respond(request));
+    }
+    return result;
+  }
+
+  @Test
+  void serveTest() throws IOException {
+    try (JavacParseServer server = new JavacParseServer(4, null)) {
+      Map<String, String> requests = requests(server);
+      StringBuilder input = new StringBuilder();
+      Map<String, String> expected = new HashMap<>();
+      for (Map.Entry<String, String> entry : requests.entrySet()) {
+        input.append(entry.getKey()).append("\n\n");
+        expected.put(entry.getKey().substring(0, entry.getKey().indexOf('\t')), entry.getValue());
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] in = input.toString().getBytes(StandardCharsets.UTF_8);
+      server.serve(new ByteArrayInputStream(in), out);
+      BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(
+                  new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8));
+      assertEquals(expected, responses(reader));
+    }
+  }
+
+  @Test
+  void socketTest(@TempDir Path dir) throws Exception {
+    Path socket = dir.resolve("server.sock");
+    JavacParseServer server = new JavacParseServer(2, null);
+    CountDownLatch listening = new CountDownLatch(1);
+    Thread serving =
+        new Thread(
+            () -> {
+              try {
+                server.serve(socket, listening::countDown);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    try {
+      serving.start();
+      assertTrue(listening.await(60, TimeUnit.SECONDS));
+      Map<String, String> requests = requests(server);
+      for (int client = 0; client < 2; client++) {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+          channel.connect(UnixDomainSocketAddress.of(socket));
+          Map<String, String> expected = new HashMap<>();
+          // Write the requests on another thread, so that the responses are read concurrently.
+          Thread writing =
+              new Thread(
+                  () -> {
+                    try {
+                      OutputStream out = new JavacParseServer.ChannelOutputStream(channel);
+                      for (String request : requests.keySet()) {
+                        out.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+                      }
+                      channel.shutdownOutput();
+                    } catch (IOException e) {
+                      throw new UncheckedIOException(e);
+                    }
+                  });
+          writing.start();
+          for (Map.Entry<String, String> entry : requests.entrySet()) {
+            expected.put(
+                entry.getKey().substring(0, entry.getKey().indexOf('\t')), entry.getValue());
+          }
+          BufferedReader reader =
+              new BufferedReader(
+                  new InputStreamReader(
+                      new JavacParseServer.ChannelInputStream(channel), StandardCharsets.UTF_8));
+          assertEquals(expected, responses(reader));
+          writing.join();
+        }
+      }
+    } finally {
+      server.close();
+    }
+    serving.join();
+    assertTrue(!Files.exists(socket));
+  }
+}
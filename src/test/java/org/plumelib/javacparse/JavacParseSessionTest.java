@@ -0,0 +1,385 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.Position;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.junit.jupiter.api.Test;
+
+class JavacParseSessionTest {
+
+  /** Creates a JavacParseSessionTest. */
+  JavacParseSessionTest() {}
+
+  /** Compilation units, some valid and some not. */
+  private static final String[] COMPILATION_UNITS = {
+    "class MyClass { void m() {} }",
+    "package x.y.z;\nimport a.b.C;\nclass D { String f = \"hello\"; }",
+    ";",
+    "Hello this is nonsense.",
+    "class SyntaxError { void () {} }",
+    "class A {}\nclass B { int x = ; }",
+  };
+
+  @Test
+  void sameAsStaticMethodsTest() {
+    try (JavacParseSession session = new JavacParseSession()) {
+      // Parse each input twice, to check that no state carries over from one parse to the next.
+      for (int i = 0; i < 2; i++) {
+        for (String s : COMPILATION_UNITS) {
+          assertSameResult(JavacParse.parseCompilationUnit(s), session.parseCompilationUnit(s));
+        }
+        assertEquals(
+            JavacParse.parseTypeDeclaration("class C { int f; }").toString(),
+            session.parseTypeDeclaration("class C { int f; }").toString());
+        assertEquals(
+            JavacParse.parseExpression("foo.m(1 + 2)").toString(),
+            session.parseExpression("foo.m(1 + 2)").toString());
+        assertEquals(
+            JavacParse.parseTypeUse("List<? extends Number>").toString(),
+            session.parseTypeUse("List<? extends Number>").toString());
+        assertEquals(
+            JavacParse.parseMethod("int add(int a, int b) { return a + b; }").toString(),
+            session.parseMethod("int add(int a, int b) { return a + b; }").toString());
+        assertThrows(IllegalArgumentException.class, () -> session.parseExpression("1 +"));
+        assertThrows(IllegalArgumentException.class, () -> session.parseTypeUse("int x; int"));
+        assertThrows(IllegalArgumentException.class, () -> session.parseMethod("int x = 5"));
+      }
+    }
+  }
+
+  @Test
+  void manyParsesTest() {
+    // javac stops reporting errors after 100 of them, and a session periodically discards its
+    // javac state.  Neither should affect the result of an individual parse.
+    String valid = "class Valid { void m() {} }";
+    String invalid = "class Invalid { void () {} }";
+    JavacParseResult<CompilationUnitTree> expectedValid = JavacParse.parseCompilationUnit(valid);
+    JavacParseResult<CompilationUnitTree> expectedInvalid =
+        JavacParse.parseCompilationUnit(invalid);
+    assertFalse(expectedValid.hasParseError());
+    assertTrue(expectedInvalid.hasParseError());
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (int i = 0; i < 2500; i++) {
+        assertSameResult(expectedInvalid, session.parseCompilationUnit(invalid));
+        if (i % 10 == 0) {
+          assertSameResult(expectedValid, session.parseCompilationUnit(valid));
+        }
+      }
+    }
+  }
+
+  @Test
+  void parseOptionsTest() throws Exception {
+    ParseOptions[] allOptions = {
+      ParseOptions.DEFAULT,
+      ParseOptions.TREE_ONLY,
+      ParseOptions.DEFAULT.withDocComments(false),
+      ParseOptions.DEFAULT.withEndPositions(false),
+      ParseOptions.DEFAULT.withLineMap(false),
+    };
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (String s : COMPILATION_UNITS) {
+        JavacParseResult<CompilationUnitTree> expected = JavacParse.parseCompilationUnit(s);
+        for (ParseOptions options : allOptions) {
+          JavacParseResult<CompilationUnitTree> result = session.parseCompilationUnit(s, options);
+          // The options affect only what is retained besides the tree.
+          assertSameResult(expected, result);
+          assertRetains(options, (JCCompilationUnit) result.tree());
+        }
+      }
+
+      // A re-parse retains what the previous result retained.
+      String code = "class A {\n  /** Doc. */\n  void m() {}\n}\n";
+      for (ParseOptions options : allOptions) {
+        JavacParseResult<CompilationUnitTree> previous =
+            session.parseCompilationUnit(code, options);
+        JavacParseResult<CompilationUnitTree> result =
+            session.reparseCompilationUnit(previous, code.indexOf('}'), 0, "int x;");
+        assertRetains(options, (JCCompilationUnit) result.tree());
+      }
+    }
+  }
+
+  @Test
+  void skeletonTest() throws Exception {
+    String code =
+        String.join(
+            "\n",
+            "class A {",
+            "  Runnable r = () -> { int inLambda = 1; };",
+            "  Object o = new Object() { public String toString() { return \"o\"; } };",
+            "  A() { super(); }",
+            "  /** Doc. */",
+            "  int m(int x) {",
+            "    /** Local doc. */",
+            "    class Local { void n() { if (x > 0) { return; } } }",
+            "    return x + ;",
+            "  }",
+            "  abstract void noBody();",
+            "  void lexError() { char c = '';  }",
+            "}",
+            "");
+    ParseOptions skeletonOptions =
+        ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.SKIP);
+    JavacParseResult<CompilationUnitTree> full = JavacParse.parseCompilationUnit(code);
+    try (JavacParseSession session = new JavacParseSession()) {
+      JavacParseResult<CompilationUnitTree> skeleton =
+          session.parseCompilationUnit(code, skeletonOptions);
+      // The errors within method bodies are not reported.
+      assertTrue(full.hasParseError());
+      assertFalse(
+          skeleton.hasParseError(), () -> diagnosticStrings(skeleton.diagnostics()).toString());
+      assertEquals(skeletonOptions, ParseOptions.of((JCCompilationUnit) skeleton.tree()));
+
+      JCCompilationUnit fullCu = (JCCompilationUnit) full.tree();
+      JCCompilationUnit skeletonCu = (JCCompilationUnit) skeleton.tree();
+      List<JCTree> fullMembers = ((JCClassDecl) fullCu.defs.head).defs;
+      List<JCTree> skeletonMembers = ((JCClassDecl) skeletonCu.defs.head).defs;
+      assertEquals(fullMembers.size(), skeletonMembers.size());
+      // The field initializers, including the lambda and the anonymous class, are parsed in full.
+      for (int i = 0; i < 2; i++) {
+        assertEquals(fullMembers.get(i).toString(), skeletonMembers.get(i).toString());
+      }
+      List<Diagnostic<? extends JavaFileObject>> bodyDiagnostics = new ArrayList<>();
+      for (int i = 2; i < fullMembers.size(); i++) {
+        JCMethodDecl fullMethod = (JCMethodDecl) fullMembers.get(i);
+        JCMethodDecl skeletonMethod = (JCMethodDecl) skeletonMembers.get(i);
+        if (fullMethod.body == null) {
+          assertEquals(null, skeletonMethod.body);
+          assertThrows(
+              IllegalArgumentException.class, () -> session.parseBody(skeletonCu, skeletonMethod));
+          continue;
+        }
+        // The placeholder has the body's span.
+        assertTrue(skeletonMethod.body.stats.isEmpty());
+        assertEquals(fullMethod.body.pos, skeletonMethod.body.pos);
+        assertEquals(
+            TreeInfo.getEndPos(fullMethod.body, fullCu.endPositions),
+            TreeInfo.getEndPos(skeletonMethod.body, skeletonCu.endPositions));
+        // The body, parsed on demand, is the same as in the full parse, with the same positions.
+        JavacParseResult<BlockTree> body = session.parseBody(skeletonCu, skeletonMethod);
+        JCBlock block = (JCBlock) body.tree();
+        assertEquals(fullMethod.body.toString(), block.toString());
+        assertEquals(fullMethod.body.pos, block.pos);
+        assertEquals(
+            TreeInfo.getEndPos(fullMethod.body, fullCu.endPositions),
+            TreeInfo.getEndPos(block, skeletonCu.endPositions));
+        assertEquals(
+            TreeInfo.getEndPos(fullMethod.body.stats.last(), fullCu.endPositions),
+            TreeInfo.getEndPos(block.stats.last(), skeletonCu.endPositions));
+        bodyDiagnostics.addAll(body.diagnostics());
+      }
+      // Together, the bodies have the diagnostics that the full parse has.
+      assertEquals(diagnosticStrings(full.diagnostics()), diagnosticStrings(bodyDiagnostics));
+      // The doc comment of the local class is recorded.
+      JCClassDecl fullLocal = (JCClassDecl) ((JCMethodDecl) fullMembers.get(3)).body.stats.head;
+      JCMethodDecl m = (JCMethodDecl) skeletonMembers.get(3);
+      JCClassDecl local =
+          (JCClassDecl) ((JCBlock) session.parseBody(skeletonCu, m).tree()).stats.head;
+      assertEquals(
+          fullCu.docComments.getCommentText(fullLocal),
+          skeletonCu.docComments.getCommentText(local));
+
+      // A re-parse of a skeleton is a skeleton.
+      JavacParseResult<CompilationUnitTree> reparsed =
+          session.reparseCompilationUnit(skeleton, code.indexOf("abstract"), 0, "int y;\n  ");
+      assertEquals(skeletonOptions, ParseOptions.of((JCCompilationUnit) reparsed.tree()));
+
+      // A body that is not closed is reported.
+      JavacParseResult<CompilationUnitTree> unclosed =
+          session.parseCompilationUnit("class B { void m() { {", skeletonOptions);
+      assertEquals(
+          diagnosticStrings(
+              JavacParse.parseCompilationUnit("class B { void m() { {").diagnostics()),
+          diagnosticStrings(unclosed.diagnostics()));
+    }
+  }
+
+  @Test
+  void skeletonInitializerTest() throws Exception {
+    String code =
+        String.join(
+            "\n",
+            "class A {",
+            "  static { if (c) { f(); } try { g(); } finally { h(); } }",
+            "  { synchronized (this) { i(); } while (d) { j(); } }",
+            "  void m() { try { k(); } catch (Exception e) { l(); } }",
+            "}",
+            "");
+    JavacParseResult<CompilationUnitTree> full = JavacParse.parseCompilationUnit(code);
+    try (JavacParseSession session = new JavacParseSession()) {
+      JavacParseResult<CompilationUnitTree> skeleton =
+          session.parseCompilationUnit(
+              code, ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.SKIP));
+      List<JCTree> fullMembers = ((JCClassDecl) ((JCCompilationUnit) full.tree()).defs.head).defs;
+      List<JCTree> skeletonMembers =
+          ((JCClassDecl) ((JCCompilationUnit) skeleton.tree()).defs.head).defs;
+      // The initializers, and the blocks within them, are parsed in full.
+      for (int i = 0; i < 2; i++) {
+        assertEquals(fullMembers.get(i).toString(), skeletonMembers.get(i).toString());
+      }
+      // The method's body is skipped.
+      assertTrue(((JCMethodDecl) skeletonMembers.get(2)).body instanceof SkippedBlock);
+    }
+  }
+
+  @Test
+  void lazyBodiesTest() throws Exception {
+    String code =
+        String.join(
+            "\n",
+            "class A {",
+            "  int f(int x) { return x + 1; }",
+            "  void g() {",
+            "    /** Local doc. */",
+            "    class Local {}",
+            "    int y = ;",
+            "  }",
+            "  void h() { for (int i = 0; i < 10; i++) { System.out.println(i); } }",
+            "}",
+            "");
+    ParseOptions lazyOptions =
+        ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.LAZY);
+    JavacParseResult<CompilationUnitTree> full = JavacParse.parseCompilationUnit(code);
+    JavacParseResult<CompilationUnitTree> lazy;
+    try (JavacParseSession session = new JavacParseSession()) {
+      lazy = session.parseCompilationUnit(code, lazyOptions);
+    }
+    // The error in g's body is not reported by the parse.
+    assertTrue(full.hasParseError());
+    assertFalse(lazy.hasParseError());
+    JCCompilationUnit fullCu = (JCCompilationUnit) full.tree();
+    JCCompilationUnit lazyCu = (JCCompilationUnit) lazy.tree();
+    List<JCTree> fullMembers = ((JCClassDecl) fullCu.defs.head).defs;
+    List<JCTree> lazyMembers = ((JCClassDecl) lazyCu.defs.head).defs;
+
+    // Determining the options does not parse the bodies.
+    assertEquals(lazyOptions, ParseOptions.of(lazyCu));
+    for (JCTree member : lazyMembers) {
+      assertTrue(((JCMethodDecl) member).body.stats.isEmpty());
+    }
+
+    // Many threads use f's body at once, even though the session is closed; it is parsed once.
+    JCBlock fBody = ((JCMethodDecl) lazyMembers.get(0)).body;
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Object>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(fBody::getStatements));
+      }
+      for (Future<Object> future : futures) {
+        // Wait for the body before reading it: until then, fBody.stats may be the placeholder.
+        Object statements = future.get();
+        assertSame(fBody.getStatements(), statements);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // The body of g, parsed on demand, has the diagnostics that the full parse has.
+    JCMethodDecl g = (JCMethodDecl) lazyMembers.get(1);
+    JavacParseResult<BlockTree> gBody = JavacParse.parseBody(lazyCu, g);
+    assertSame(g.body, gBody.tree());
+    assertEquals(diagnosticStrings(full.diagnostics()), diagnosticStrings(gBody.diagnostics()));
+    // Parsing again yields the same tree and diagnostics.
+    assertSame(gBody.diagnostics(), JavacParse.parseBody(lazyCu, g).diagnostics());
+    JCClassDecl fullLocal = (JCClassDecl) ((JCMethodDecl) fullMembers.get(1)).body.stats.head;
+    assertEquals(
+        fullCu.docComments.getCommentText(fullLocal),
+        lazyCu.docComments.getCommentText(g.body.stats.head));
+
+    // Visiting the tree parses the rest of the bodies, so the whole tree is as in a full parse.
+    assertEquals(fullCu.toString(), lazyCu.toString());
+    for (int i = 0; i < fullMembers.size(); i++) {
+      JCBlock fullBody = ((JCMethodDecl) fullMembers.get(i)).body;
+      JCBlock lazyBody = ((JCMethodDecl) lazyMembers.get(i)).body;
+      assertEquals(fullBody.pos, lazyBody.pos);
+      assertEquals(
+          TreeInfo.getEndPos(fullBody, fullCu.endPositions),
+          TreeInfo.getEndPos(lazyBody, lazyCu.endPositions));
+      assertEquals(
+          TreeInfo.getEndPos(fullBody.stats.last(), fullCu.endPositions),
+          TreeInfo.getEndPos(lazyBody.stats.last(), lazyCu.endPositions));
+    }
+  }
+
+  /**
+   * Asserts that a compilation unit retains exactly what the given options say.
+   *
+   * @param options the options with which the compilation unit was parsed
+   * @param cu the compilation unit
+   */
+  void assertRetains(ParseOptions options, JCCompilationUnit cu) {
+    assertEquals(options.docComments(), cu.docComments != null);
+    assertEquals(options.lineMap(), cu.getLineMap() != null);
+    if (!cu.defs.isEmpty()) {
+      assertEquals(
+          options.endPositions(),
+          TreeInfo.getEndPos(cu.defs.head, cu.endPositions) != Position.NOPOS);
+    }
+  }
+
+  @Test
+  void closeTest() {
+    JavacParseSession session = new JavacParseSession();
+    session.close();
+    // Closing twice is permitted.
+    session.close();
+  }
+
+  /**
+   * Asserts that two parse results have the same tree and the same diagnostics.
+   *
+   * @param expected the expected result
+   * @param actual the actual result
+   */
+  void assertSameResult(
+      JavacParseResult<CompilationUnitTree> expected,
+      JavacParseResult<CompilationUnitTree> actual) {
+    assertEquals(String.valueOf(expected.tree()), String.valueOf(actual.tree()));
+    assertEquals(
+        diagnosticStrings(expected.diagnostics()), diagnosticStrings(actual.diagnostics()));
+  }
+
+  /**
+   * Returns a printable representation of the given diagnostics.
+   *
+   * @param diagnostics a list of diagnostics
+   * @return the kind, position, and message of each diagnostic
+   */
+  List<String> diagnosticStrings(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+    return diagnostics.stream()
+        .map(
+            d ->
+                d.getKind()
+                    + " "
+                    + d.getPosition()
+                    + " "
+                    + d.getLineNumber()
+                    + ":"
+                    + d.getColumnNumber()
+                    + " "
+                    + d.getMessage(Locale.ROOT))
+        .toList();
+  }
+}
@@ -1,15 +1,29 @@
 package org.plumelib.javacparse;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.sun.source.tree.AnnotatedTypeTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.LiteralTree;
 import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.StringJoiner;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 import org.plumelib.util.SystemP;
@@ -186,6 +200,9 @@ class JavacParseTest {
       JavacParse.parseTypeUse(t);
     }
     assertTrue(JavacParse.parseTypeUse("java.lang.String") instanceof MemberSelectTree);
+    // A leading type annotation is part of the type use, not a declaration annotation.
+    assertTrue(JavacParse.parseTypeUse("@NonNegative Integer") instanceof AnnotatedTypeTree);
+    JavacParse.parseTypeUse("int // a comment");
 
     // These are not (whole) type uses. In particular, a type use followed by trailing text is
     // invalid: parseTypeUse must not silently parse only the prefix.
@@ -196,6 +213,9 @@ class JavacParseTest {
       "java.lang.String extra nonsense",
       "int x; int",
       "class MyClass {}",
+      "void",
+      "final int",
+      "int;",
     };
     for (String t : invalidTypeUses) {
       assertIllegalArgument(() -> JavacParse.parseTypeUse(t), t);
@@ -205,6 +225,74 @@ class JavacParseTest {
     assertIllegalArgument(() -> JavacParse.parseTypeUse(evil), evil);
   }
 
+  @Test
+  void batchTest() {
+    // More snippets than fit in one chunk, so that the batch is parsed on several threads.
+    List<String> expressions = new ArrayList<>();
+    List<String> typeUses = new ArrayList<>();
+    for (int i = 0; i < 1500; i++) {
+      expressions.add(i % 3 == 0 ? "a" + i + " +" : "a" + i + ".m(" + i + ")");
+      typeUses.add(i % 3 == 0 ? "List<T" + i + "> x" : "List<T" + i + ">");
+    }
+    List<SnippetResult<ExpressionTree>> expressionResults =
+        JavacParse.parseExpressions(expressions);
+    List<SnippetResult<Tree>> typeUseResults = JavacParse.parseTypeUses(typeUses);
+    assertEquals(expressions.size(), expressionResults.size());
+    assertEquals(typeUses.size(), typeUseResults.size());
+    for (int i = 0; i < 1500; i++) {
+      if (i % 3 == 0) {
+        SnippetResult.Failure<?> failure =
+            assertInstanceOf(SnippetResult.Failure.class, expressionResults.get(i));
+        assertFalse(failure.diagnostics().isEmpty());
+        // "List<T> x" is a type followed by extra text, which yields no diagnostic.
+        assertInstanceOf(SnippetResult.Failure.class, typeUseResults.get(i));
+        assertNull(typeUseResults.get(i).treeOrNull());
+      } else {
+        assertEquals(
+            JavacParse.parseExpression(expressions.get(i)).toString(),
+            String.valueOf(expressionResults.get(i).treeOrNull()));
+        assertEquals(
+            JavacParse.parseTypeUse(typeUses.get(i)).toString(),
+            String.valueOf(typeUseResults.get(i).treeOrNull()));
+      }
+    }
+    assertEquals(List.of(), JavacParse.parseExpressions(List.of()));
+  }
+
+  @Test
+  void diagnosticsTest() {
+    JavacParseResult<CompilationUnitTree> valid =
+        JavacParse.parseCompilationUnit("class C { int f; }");
+    assertFalse(valid.hasParseError());
+    assertEquals(0, valid.errorCount());
+    assertEquals(0, valid.warningCount());
+    assertEquals("", valid.getParseErrorMessages());
+
+    JavacParseResult<CompilationUnitTree> invalid =
+        JavacParse.parseCompilationUnit("class C { int f = ; void () {} }");
+    List<Diagnostic<? extends JavaFileObject>> diagnostics = invalid.diagnostics();
+    assertTrue(invalid.hasParseError());
+    assertEquals(2, invalid.errorCount());
+    assertEquals(2, diagnostics.size());
+    String messages = invalid.getParseErrorMessages();
+    assertEquals(
+        diagnostics.get(0).getMessage(Locale.getDefault())
+            + "; "
+            + diagnostics.get(1).getMessage(Locale.getDefault()),
+        messages);
+    // The messages are formatted only once.
+    assertSame(messages, invalid.getParseErrorMessages());
+
+    // The diagnostics are immutable, and a result does not share a caller's mutable list.
+    assertThrows(UnsupportedOperationException.class, () -> diagnostics.remove(0));
+    List<Diagnostic<? extends JavaFileObject>> mutable = new ArrayList<>(diagnostics);
+    JavacParseResult<CompilationUnitTree> copy = new JavacParseResult<>(invalid.tree(), mutable);
+    mutable.clear();
+    assertEquals(diagnostics, copy.diagnostics());
+    assertEquals(invalid, copy);
+    assertEquals(2, copy.errorCount());
+  }
+
   @Test
   void parseMethodTest() {
     // Valid methods (and annotation type elements) parse without error.
@@ -214,6 +302,8 @@ class JavacParseTest {
       "public static <T> T identity(T x) { return x; }",
       "abstract void foo();",
       "String value();",
+      "String value()",
+      "void m() {} // a comment",
     };
     for (String m : validMethods) {
       JavacParse.parseMethod(m);
@@ -229,12 +319,27 @@ class JavacParseTest {
       "class Nested {}", // a type declaration, not a method
       "void m() {", // unbalanced braces
       "void a() {} void b() {}", // two methods, not one
+      "DummyClass() {}", // a constructor
     };
     for (String m : invalidMethods) {
       assertIllegalArgument(() -> JavacParse.parseMethod(m), m);
     }
   }
 
+  @Test
+  void snippetPositionsTest() {
+    // The positions in a snippet's tree are relative to the snippet.
+    JCTree expr = (JCTree) JavacParse.parseExpression("a + b");
+    assertEquals(0, TreeInfo.getStartPos(expr));
+    assertEquals(2, expr.pos);
+    JCTree type = (JCTree) JavacParse.parseTypeUse("List<String>");
+    assertEquals(0, TreeInfo.getStartPos(type));
+    assertEquals(4, type.pos);
+    JCTree method = (JCTree) JavacParse.parseMethod("int size() { return 0; }");
+    assertEquals(0, TreeInfo.getStartPos(method));
+    assertEquals(4, method.pos);
+  }
+
   /**
    * Throws an error if the parse result has a parse error.
    *
@@ -0,0 +1,380 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+
+class MemberParserTest {
+
+  /** Creates a MemberParserTest. */
+  MemberParserTest() {}
+
+  /** A compilation unit with many kinds of declarations. */
+  private static final String SOURCE =
+      """
+      package p;
+
+      import java.util.List;
+
+      /** A class. */
+      public class C<T> extends Object implements @A({1, 2}) Runnable {
+        /** A field. */
+        int x = 1;
+        int a, b;
+        Runnable r = () -> { x++; };
+        Object o = new Object() { public String toString() { return "{"; } };
+        int[] array = {1, 2};
+        char brace = '}'; // {
+        /* } */ String s = "\\\"}";
+
+        /**
+         * A method.
+         *
+         * @param y a parameter
+         */
+        void m(int y) {
+          x = y + 1;
+        }
+
+        void m(List<String> list, int... rest) {}
+
+        C() {}
+
+        static {
+          System.out.println();
+        }
+
+        @Override
+        public void run() {}
+
+        class Inner {
+          /** Another method. */
+          void n() { int z = 2; }
+          class Innermost { int deep; }
+        }
+
+        record R(int i) {
+          R {
+            assert i > 0;
+          }
+        }
+
+        enum E { A, B { void e() {} }; void e() {} }
+
+        @interface Ann {
+          int value() default 1;
+        }
+
+        interface I {
+          default void d() {}
+        }
+      }
+
+      /** Another class. */
+      class D {}
+      """;
+
+  @Test
+  void memberTest() {
+    try (JavacParseSession session = new JavacParseSession()) {
+      assertMember(session, "C", "public class C<T>");
+      assertMember(session, "D", "class D");
+      assertMember(session, "C#x", "int x = 1");
+      assertMember(session, "C#b", "int a, b");
+      assertMember(session, "C#r", "Runnable r =");
+      assertMember(session, "C#o", "Object o =");
+      assertMember(session, "C#array", "int[] array");
+      assertMember(session, "C#s", "String s");
+      assertMember(session, "C#m", "void m(int y)");
+      assertMember(session, "C#m(int)", "void m(int y)");
+      assertMember(session, "C#m(java.util.List<String>, int[])", "void m(List<String>");
+      assertMember(session, "C#C", "C() {}");
+      assertMember(session, "C#C()", "C() {}");
+      assertMember(session, "C#run", "@Override");
+      assertMember(session, "C#Inner", "class Inner");
+      assertMember(session, "C.Inner", "class Inner");
+      assertMember(session, "C.Inner#n()", "void n()");
+      assertMember(session, "C.Inner.Innermost#deep", "int deep");
+      assertMember(session, "C.R#R", "R {");
+      assertMember(session, "C.E", "enum E");
+      assertMember(session, "C.E#e", "void e() {} }\n");
+      assertMember(session, "C.E#A", "A, B");
+      assertMember(session, "C.Ann#value", "int value()");
+      assertMember(session, "C.I#d", "default void d()");
+
+      for (String missing :
+          new String[] {"X", "C.X", "C#y", "C#m(long)", "C#x()", "C.Inner#x", "C.E#C", "D#x"}) {
+        assertNull(session.parseMember(SOURCE, MemberSelector.parse(missing)), missing);
+      }
+    }
+  }
+
+  @Test
+  void rangeTest() {
+    try (JavacParseSession session = new JavacParseSession()) {
+      JCCompilationUnit cu = (JCCompilationUnit) session.parseCompilationUnit(SOURCE).tree();
+      for (int start = 0; start <= SOURCE.length(); start++) {
+        for (int end : new int[] {start, Math.min(start + 10, SOURCE.length())}) {
+          assertRange(session, cu, SOURCE, start, end);
+        }
+      }
+      assertNull(session.parseRange(SOURCE, 0, 10));
+      int d = SOURCE.indexOf("class D");
+      JavacParseResult<Tree> result = session.parseRange(SOURCE, d, d);
+      assertNotNull(result);
+      assertTrue(result.tree() instanceof ClassTree);
+      assertThrows(IndexOutOfBoundsException.class, () -> session.parseRange(SOURCE, -1, 0));
+      assertThrows(IndexOutOfBoundsException.class, () -> session.parseRange(SOURCE, 5, 4));
+      assertThrows(
+          IndexOutOfBoundsException.class,
+          () -> session.parseRange(SOURCE, 0, SOURCE.length() + 1));
+    }
+  }
+
+  @Test
+  void corpusTest() throws IOException {
+    List<String> corpus = new ArrayList<>();
+    // This library's own sources.
+    try (Stream<Path> stream = Files.walk(Path.of("src"))) {
+      for (Path file : (Iterable<Path>) stream.sorted()::iterator) {
+        if (file.toString().endsWith(".java")) {
+          corpus.add(Files.readString(file));
+        }
+      }
+    }
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (String source : corpus) {
+        JCCompilationUnit cu = (JCCompilationUnit) session.parseCompilationUnit(source).tree();
+        for (JCTree def : cu.defs) {
+          if (def instanceof JCClassDecl c) {
+            assertMembers(session, source, new ArrayList<>(List.of(c.name.toString())), c);
+          }
+        }
+        for (int start = 0; start < source.length(); start += 97) {
+          assertRange(session, cu, source, start, start);
+        }
+      }
+    }
+  }
+
+  @Test
+  void fallbackTest() {
+    try (JavacParseSession session = new JavacParseSession()) {
+      // An unclosed string literal ends at the end of the line, so D is a member of C.
+      String source = "class C { String s = \"unclosed;\n class D { int y; }";
+      assertNull(session.parseMember(source, MemberSelector.parse("D#y")));
+      JavacParseResult<Tree> result = session.parseMember(source, MemberSelector.parse("C.D#y"));
+      assertNotNull(result);
+      assertEquals("int y", result.tree().toString());
+      assertTrue(result.hasParseError());
+      int y = source.indexOf("y;");
+      result = session.parseRange(source, y, y);
+      assertNotNull(result);
+      assertEquals("int y", result.tree().toString());
+
+      // A Unicode escape.
+      source = "class C { char c = '\\u007B'; }\nclass D { int y; }";
+      result = session.parseMember(source, MemberSelector.parse("D#y"));
+      assertNotNull(result);
+      assertEquals(source.indexOf("int y"), ((JCTree) result.tree()).getStartPosition());
+      assertFalse(result.hasParseError());
+
+      // An escaped line terminator in a comment ends the comment, so n is a method of C.
+      source = "class C {\n  void m() {} // note \\u000a void n() {}\n  int x;\n}";
+      result = session.parseMember(source, MemberSelector.parse("C#n"));
+      assertNotNull(result);
+      assertEquals(source.indexOf("void n()"), ((JCTree) result.tree()).getStartPosition());
+      assertFalse(result.hasParseError());
+    }
+  }
+
+  @Test
+  void entryPointsTest() throws IOException {
+    Path file = Files.createTempFile("MemberParserTest", ".java");
+    try (JavacParsePool pool = new JavacParsePool(2)) {
+      Files.writeString(file, SOURCE);
+      MemberSelector selector = MemberSelector.parse("C.Inner#n");
+      JavacParseResult<Tree> result = pool.parseFileMember(file.toString(), selector);
+      assertNotNull(result);
+      assertEquals(SOURCE.indexOf("void n()"), ((JCTree) result.tree()).getStartPosition());
+      assertFalse(result.hasParseError());
+      assertNotNull(pool.parseMember(SOURCE, selector));
+      int offset = SOURCE.indexOf("z = 2");
+      result = pool.parseFileRange(file.toString(), offset, offset);
+      assertNotNull(result);
+      assertTrue(result.tree() instanceof MethodTree);
+      assertNotNull(pool.parseRange(SOURCE, offset, offset));
+      try (JavacParseSession session = new JavacParseSession()) {
+        assertNotNull(session.parseFileMember(file.toString(), selector));
+        assertNotNull(session.parseFileRange(file.toString(), offset, offset));
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void selectorTest() {
+    MemberSelector s =
+        MemberSelector.parse("Outer.Inner#max(java.util.Map<K, V>, @NonNull int...)");
+    assertEquals(List.of("Outer", "Inner"), s.typeNames());
+    assertEquals("max", s.memberName());
+    assertEquals(List.of("Map", "int[]"), s.parameterTypes());
+    assertEquals("Outer.Inner#max(Map, int[])", s.toString());
+    assertEquals(s, MemberSelector.parse(s.toString()));
+    assertEquals("Outer", MemberSelector.parse("Outer").toString());
+    assertEquals("Outer#f", MemberSelector.parse("Outer#f").toString());
+    assertEquals("Outer#f()", MemberSelector.parse("Outer#f()").toString());
+
+    assertEquals("String[][]", MemberSelector.erasure("java.lang.String[] @A []"));
+    assertEquals("List", MemberSelector.erasure("@A(x = f(1)) List<? extends T>"));
+    assertEquals("Entry", MemberSelector.erasure("Map.Entry<K, V>"));
+
+    for (String bad : new String[] {"", "1C", "C#", "C#f(", "C#int", "C.#f", "C#f(<>)"}) {
+      assertThrows(IllegalArgumentException.class, () -> MemberSelector.parse(bad), bad);
+    }
+    assertThrows(IllegalArgumentException.class, () -> new MemberSelector(List.of(), "f", null));
+    assertThrows(
+        IllegalArgumentException.class, () -> new MemberSelector(List.of("C"), null, List.of()));
+  }
+
+  /**
+   * Asserts that parsing the member that a selector denotes yields the declaration that starts with
+   * the given text.
+   *
+   * @param session the session
+   * @param selector the selector
+   * @param prefix the text at which the declaration starts
+   */
+  private static void assertMember(JavacParseSession session, String selector, String prefix) {
+    JavacParseResult<Tree> result = session.parseMember(SOURCE, MemberSelector.parse(selector));
+    assertNotNull(result, selector);
+    assertEquals(SOURCE.indexOf(prefix), TreeInfo.getStartPos((JCTree) result.tree()), selector);
+    assertFalse(result.hasParseError(), selector);
+  }
+
+  /**
+   * Asserts that parsing each member of a type declaration, and the type declaration itself, yields
+   * the same tree as the full parse.
+   *
+   * @param session the session
+   * @param source the source
+   * @param typeNames the names of the type declaration and the ones that enclose it
+   * @param type the type declaration, from a full parse of {@code source}
+   */
+  private static void assertMembers(
+      JavacParseSession session, String source, List<String> typeNames, JCClassDecl type) {
+    assertSameTree(
+        type, session.parseMember(source, new MemberSelector(typeNames, null, null)), typeNames);
+    for (JCTree def : type.defs) {
+      if (def instanceof JCMethodDecl m) {
+        List<String> parameterTypes = new ArrayList<>();
+        for (JCVariableDecl param : m.params) {
+          parameterTypes.add(param.vartype.toString());
+        }
+        String name = TreeInfo.isConstructor(m) ? type.name.toString() : m.name.toString();
+        MemberSelector selector = new MemberSelector(typeNames, name, parameterTypes);
+        assertSameTree(m, session.parseMember(source, selector), selector);
+      } else if (def instanceof JCClassDecl c) {
+        typeNames.add(c.name.toString());
+        assertMembers(session, source, typeNames, c);
+        typeNames.remove(typeNames.size() - 1);
+      }
+    }
+  }
+
+  /**
+   * Asserts that a partial parse yields the same tree as a full parse.
+   *
+   * @param expected the tree from a full parse
+   * @param actual the result of a partial parse
+   * @param where a description of the tree, for failure messages
+   */
+  private static void assertSameTree(
+      @Nullable JCTree expected, @Nullable JavacParseResult<Tree> actual, Object where) {
+    if (expected == null) {
+      assertNull(actual, where.toString());
+      return;
+    }
+    assertNotNull(actual, where.toString());
+    JCTree tree = (JCTree) actual.tree();
+    assertEquals(expected.getClass(), tree.getClass(), where.toString());
+    assertEquals(TreeInfo.getStartPos(expected), TreeInfo.getStartPos(tree), where.toString());
+    assertEquals(expected.toString(), tree.toString(), where.toString());
+  }
+
+  /**
+   * Asserts that parsing the declaration that encloses a range yields the same tree as the full
+   * parse.
+   *
+   * @param session the session
+   * @param cu the full parse of {@code source}
+   * @param source the source
+   * @param start the start of the range
+   * @param end the end of the range
+   */
+  private static void assertRange(
+      JavacParseSession session, JCCompilationUnit cu, String source, int start, int end) {
+    assertSameTree(
+        enclosing(cu.defs, cu.endPositions, true, start, end),
+        session.parseRange(source, start, end),
+        "[" + start + ", " + end + ")");
+  }
+
+  /**
+   * Returns the smallest declaration that encloses a range.
+   *
+   * @param defs the members of a compilation unit or type declaration
+   * @param endPositions the end positions of the compilation unit
+   * @param topLevel true if {@code defs} are the members of a compilation unit
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the smallest declaration that encloses the range, or null
+   */
+  private static @Nullable JCTree enclosing(
+      List<JCTree> defs, EndPosTable endPositions, boolean topLevel, int start, int end) {
+    for (JCTree def : defs) {
+      boolean isDeclaration =
+          def instanceof JCClassDecl
+              || (!topLevel
+                  && (def instanceof JCMethodDecl
+                      || def instanceof JCBlock
+                      || (def instanceof JCVariableDecl v
+                          && (v.mods.flags & Flags.RECORD) == 0)));
+      if (isDeclaration
+          && TreeInfo.getStartPos(def) <= start
+          && end <= TreeInfo.getEndPos(def, endPositions)) {
+        if (def instanceof JCClassDecl c) {
+          JCTree inner = enclosing(c.defs, endPositions, false, start, end);
+          return inner == null ? def : inner;
+        }
+        return def;
+      }
+    }
+    return null;
+  }
+}
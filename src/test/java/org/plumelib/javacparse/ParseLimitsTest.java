@@ -0,0 +1,158 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ParseLimitsTest {
+
+  /** Creates a ParseLimitsTest. */
+  ParseLimitsTest() {}
+
+  @Test
+  void nestingTest() {
+    ParseLimits limits = ParseLimits.UNLIMITED.withMaxNestingDepth(100);
+    try (JavacParseSession session = new JavacParseSession(limits)) {
+      String deep = "(".repeat(1000) + "a" + ")".repeat(1000);
+      ParseAbortedException e =
+          assertThrows(ParseAbortedException.class, () -> session.parseExpression(deep));
+      assertEquals(ParseAbortedException.Reason.NESTING_TOO_DEEP, e.reason());
+      e =
+          assertThrows(
+              ParseAbortedException.class,
+              () -> session.parseCompilationUnit("class C { int[] a = " + "{".repeat(500)));
+      assertEquals(ParseAbortedException.Reason.NESTING_TOO_DEEP, e.reason());
+
+      // The session remains usable, and nesting up to the limit is allowed.
+      String shallow = "(".repeat(100) + "a" + ")".repeat(100);
+      assertEquals(shallow, session.parseExpression(shallow).toString());
+      assertFalse(session.parseCompilationUnit("class C { int x = (1); }").hasParseError());
+    }
+  }
+
+  @Test
+  void stackOverflowTest() {
+    // Unary operators nest without brackets; only the thread's stack limits them.
+    String deep = "-".repeat(200_000) + "a";
+    try (JavacParseSession session = new JavacParseSession(ParseLimits.UNLIMITED)) {
+      ParseAbortedException e =
+          assertThrows(ParseAbortedException.class, () -> session.parseExpression(deep));
+      assertEquals(ParseAbortedException.Reason.NESTING_TOO_DEEP, e.reason());
+      assertInstanceOf(StackOverflowError.class, e.getCause());
+      e =
+          assertThrows(
+              ParseAbortedException.class,
+              () -> session.parseCompilationUnit("class C { int x = " + deep + "; }"));
+      assertEquals(ParseAbortedException.Reason.NESTING_TOO_DEEP, e.reason());
+
+      // The session remains usable: the parse after an overflow sets up javac afresh.
+      List<ParseEvent> events = Collections.synchronizedList(new ArrayList<>());
+      ParseListener listener = events::add;
+      ParseMetrics.addListener(listener);
+      try {
+        assertEquals("-a", session.parseExpression("-a").toString());
+        assertEquals("-b", session.parseExpression("-b").toString());
+      } finally {
+        ParseMetrics.removeListener(listener);
+      }
+      assertEquals(2, events.size());
+      assertTrue(events.get(0).setupNanos() > 0);
+      assertEquals(0, events.get(1).setupNanos());
+    }
+    // Without limits, the error is not converted.
+    try (JavacParseSession session = new JavacParseSession()) {
+      assertThrows(StackOverflowError.class, () -> session.parseExpression(deep));
+    }
+  }
+
+  @Test
+  void inputLengthTest() {
+    ParseLimits limits = ParseLimits.UNLIMITED.withMaxInputLength(20);
+    try (JavacParseSession session = new JavacParseSession(limits)) {
+      ParseAbortedException e =
+          assertThrows(
+              ParseAbortedException.class,
+              () -> session.parseCompilationUnit("class C { int x = 1; }"));
+      assertEquals(ParseAbortedException.Reason.INPUT_TOO_LONG, e.reason());
+      e =
+          assertThrows(
+              ParseAbortedException.class,
+              () -> session.parseExpressions(List.of("a", "b + c + d + e + f + g + h")));
+      assertEquals(ParseAbortedException.Reason.INPUT_TOO_LONG, e.reason());
+      assertFalse(session.parseCompilationUnit("class C {}").hasParseError());
+    }
+  }
+
+  @Test
+  void timeoutTest() {
+    StringBuilder source = new StringBuilder("class C {\n");
+    for (int i = 0; i < 200_000; i++) {
+      source.append("  int f").append(i).append(" = ").append(i).append(";\n");
+    }
+    source.append("}\n");
+    ParseLimits limits = ParseLimits.UNLIMITED.withTimeout(Duration.ofMillis(1));
+    try (JavacParseSession session = new JavacParseSession(limits)) {
+      ParseAbortedException e =
+          assertThrows(
+              ParseAbortedException.class, () -> session.parseCompilationUnit(source.toString()));
+      assertEquals(ParseAbortedException.Reason.TIMEOUT, e.reason());
+    }
+  }
+
+  @Test
+  void interruptTest() throws Exception {
+    String source = "class C { void m() { int x = 1; } }";
+    ParseOptions lazy = ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.LAZY);
+    try (JavacParseSession session = new JavacParseSession(ParseLimits.UNLIMITED)) {
+      CompilationUnitTree cu = session.parseCompilationUnit(source, lazy).tree();
+      MethodTree m = (MethodTree) ((ClassTree) cu.getTypeDecls().get(0)).getMembers().get(0);
+      Thread.currentThread().interrupt();
+      try {
+        ParseAbortedException e =
+            assertThrows(ParseAbortedException.class, () -> session.parseExpression("a + b"));
+        assertEquals(ParseAbortedException.Reason.INTERRUPTED, e.reason());
+        // The later parse of a lazy body is also subject to the limits.
+        e = assertThrows(ParseAbortedException.class, () -> session.parseBody(cu, m));
+        assertEquals(ParseAbortedException.Reason.INTERRUPTED, e.reason());
+        assertTrue(Thread.currentThread().isInterrupted());
+      } finally {
+        Thread.interrupted();
+      }
+      assertEquals("a + b", session.parseExpression("a + b").toString());
+      assertFalse(session.parseBody(cu, m).hasParseError());
+    }
+  }
+
+  @Test
+  void poolTest() {
+    ParseLimits limits = ParseLimits.UNLIMITED.withMaxNestingDepth(10);
+    try (JavacParsePool pool = new JavacParsePool(2, limits)) {
+      ParseAbortedException e =
+          assertThrows(
+              ParseAbortedException.class,
+              () -> pool.parseExpression("f" + "(".repeat(20) + ")".repeat(20)));
+      assertEquals(ParseAbortedException.Reason.NESTING_TOO_DEEP, e.reason());
+      assertEquals("f(g(x))", pool.parseExpression("f(g(x))").toString());
+    }
+  }
+
+  @Test
+  void validationTest() {
+    assertThrows(IllegalArgumentException.class, () -> new ParseLimits(-1, 10, null));
+    assertThrows(IllegalArgumentException.class, () -> new ParseLimits(10, -1, null));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ParseLimits.UNLIMITED.withTimeout(Duration.ZERO));
+  }
+}
@@ -0,0 +1,116 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParseMetricsTest {
+
+  /** Creates a ParseMetricsTest. */
+  ParseMetricsTest() {}
+
+  @Test
+  void eventsTest(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("C.java");
+    Files.writeString(file, "class C { int f; }");
+    List<ParseEvent> events = Collections.synchronizedList(new ArrayList<>());
+    ParseListener listener = events::add;
+    ParseMetrics.addListener(listener);
+    try {
+      JavacParse.parseFile(file.toString());
+      JavacParse.parseCompilationUnit("class D { int f = ; }");
+      JavacParse.parseExpression("a + b");
+      JavacParse.parseTypeUses(List.of("int", "String"));
+      JavacParse.parseCompilationUnit(
+          "class E { void m() { int x = 1; } }",
+          ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.LAZY));
+    } finally {
+      assertTrue(ParseMetrics.removeListener(listener));
+    }
+    assertFalse(ParseMetrics.removeListener(listener));
+    assertEquals(6, events.size());
+
+    // "class C { int f ; }" and the end of input.
+    ParseEvent fileEvent = events.get(0);
+    assertEquals(ParseKind.COMPILATION_UNIT, fileEvent.kind());
+    assertEquals(18, fileEvent.inputLength());
+    assertEquals(8, fileEvent.tokenCount());
+    // The compilation unit, the class and its modifiers, and the field, its modifiers, and its
+    // type.
+    assertEquals(6, fileEvent.nodeCount());
+    assertEquals(0, fileEvent.diagnosticCount());
+    // Each static method sets up javac afresh.
+    assertTrue(fileEvent.setupNanos() > 0);
+    assertTrue(fileEvent.readNanos() > 0);
+    assertTrue(fileEvent.lexNanos() > 0);
+    assertTrue(fileEvent.parseNanos() > 0);
+    assertEquals(
+        fileEvent.setupNanos()
+            + fileEvent.readNanos()
+            + fileEvent.lexNanos()
+            + fileEvent.parseNanos(),
+        fileEvent.totalNanos());
+
+    assertEquals(1, events.get(1).diagnosticCount());
+
+    ParseEvent expressionEvent = events.get(2);
+    assertEquals(ParseKind.EXPRESSION, expressionEvent.kind());
+    assertEquals(4, expressionEvent.tokenCount());
+    assertEquals(3, expressionEvent.nodeCount());
+    assertEquals(0, expressionEvent.readNanos());
+
+    // A batch sets up javac once.
+    assertEquals(ParseKind.TYPE_USE, events.get(3).kind());
+    assertEquals(ParseKind.TYPE_USE, events.get(4).kind());
+    assertTrue(events.get(3).setupNanos() > 0);
+    assertEquals(0, events.get(4).setupNanos());
+
+    // A lazy body is not parsed to count its nodes, but its tokens are counted.
+    ParseEvent lazyEvent = events.get(5);
+    assertEquals(16, lazyEvent.tokenCount());
+    // The compilation unit, the class and its modifiers, and the method, its modifiers, its return
+    // type, and its body.
+    assertEquals(7, lazyEvent.nodeCount());
+  }
+
+  @Test
+  void aggregateTest() {
+    ParseMetrics metrics = new ParseMetrics();
+    ParseMetrics.addListener(metrics);
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (int i = 0; i < 10; i++) {
+        session.parseCompilationUnit("class C" + i + (i % 2 == 0 ? " {}" : " {"));
+      }
+    } finally {
+      ParseMetrics.removeListener(metrics);
+    }
+    assertEquals(10, metrics.parseCount());
+    assertEquals(5, metrics.parsesWithDiagnostics());
+    assertEquals(5, metrics.diagnosticCount());
+    assertEquals(10 * 11 - 5, metrics.inputLength());
+    assertEquals(10 * 5 - 5, metrics.tokenCount());
+    assertEquals(10 * 3, metrics.nodeCount());
+    ParseMetrics.Histogram total = metrics.histogram(ParseMetrics.Phase.TOTAL);
+    assertEquals(10, total.count());
+    assertTrue(total.percentile(0.5) <= total.percentile(1));
+    assertTrue(total.percentile(1) > total.totalNanos() / 10);
+    // The session set up javac once.
+    long[] setupBuckets = metrics.histogram(ParseMetrics.Phase.SETUP).bucketCounts();
+    assertEquals(9, setupBuckets[0]);
+    assertThrows(IllegalArgumentException.class, () -> total.percentile(1.5));
+
+    // No parse is measured after the listener is removed.
+    JavacParse.parseExpression("1");
+    assertEquals(10, metrics.parseCount());
+  }
+}
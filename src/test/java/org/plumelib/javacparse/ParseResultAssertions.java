@@ -0,0 +1,176 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.parser.Tokens.Comment;
+import com.sun.tools.javac.tree.DocCommentTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.TreeInfo;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/** Assertions about parse results. */
+final class ParseResultAssertions {
+
+  /** Do not instantiate. */
+  private ParseResultAssertions() {
+    throw new Error("Do not instantiate.");
+  }
+
+  /**
+   * Asserts that two results of parsing the same contents are equivalent: their trees have the same
+   * structure, positions, end positions, and doc comments, and their diagnostics are the same.
+   *
+   * @param expected the result of parsing the contents
+   * @param actual a result that should be equivalent to {@code expected}
+   * @param where a description of the contents, for failure messages
+   * @param length the length of the contents
+   */
+  static void assertEquivalent(
+      JavacParseResult<CompilationUnitTree> expected,
+      JavacParseResult<CompilationUnitTree> actual,
+      String where,
+      int length) {
+    JCCompilationUnit expectedCu = (JCCompilationUnit) expected.tree();
+    JCCompilationUnit actualCu = (JCCompilationUnit) actual.tree();
+    assertEquals(expectedCu.toString(), actualCu.toString(), where);
+    assertEquals(expectedCu.sourcefile.toUri(), actualCu.sourcefile.toUri(), where);
+
+    List<JCTree> expectedNodes = nodes(expectedCu);
+    List<JCTree> actualNodes = nodes(actualCu);
+    assertEquals(expectedNodes.size(), actualNodes.size(), where);
+    DocCommentTable expectedDocs = expectedCu.docComments;
+    DocCommentTable actualDocs = actualCu.docComments;
+    for (int i = 0; i < expectedNodes.size(); i++) {
+      JCTree e = expectedNodes.get(i);
+      JCTree a = actualNodes.get(i);
+      String node = where + " node " + i + ": " + e;
+      assertEquals(e.getClass(), a.getClass(), node);
+      assertEquals(e.getTag(), a.getTag(), node);
+      assertEquals(e.getKind(), a.getKind(), node);
+      assertEquals(e.pos, a.pos, node);
+      assertEquals(intFields(e), intFields(a), node);
+      assertEquals(TreeInfo.getStartPos(e), TreeInfo.getStartPos(a), node);
+      assertEquals(expectedCu.endPositions.getEndPos(e), actualCu.endPositions.getEndPos(a), node);
+      assertEquals(
+          TreeInfo.getEndPos(e, expectedCu.endPositions),
+          TreeInfo.getEndPos(a, actualCu.endPositions),
+          node);
+      assertEquals(expectedDocs.hasComment(e), actualDocs.hasComment(a), node);
+      if (expectedDocs.hasComment(e)) {
+        Comment ec = expectedDocs.getComment(e);
+        Comment ac = actualDocs.getComment(a);
+        assertEquals(ec.getText(), ac.getText(), node);
+        assertEquals(ec.getStyle(), ac.getStyle(), node);
+        assertEquals(ec.isDeprecated(), ac.isDeprecated(), node);
+        for (int j = 0; j <= ec.getText().length(); j++) {
+          assertEquals(ec.getSourcePos(j), ac.getSourcePos(j), node);
+        }
+        assertEquals(expectedDocs.getCommentText(e), actualDocs.getCommentText(a), node);
+        assertEquals(
+            expectedDocs.getCommentTree(e).toString(),
+            actualDocs.getCommentTree(a).toString(),
+            node);
+      }
+    }
+
+    LineMap expectedLines = expectedCu.getLineMap();
+    LineMap actualLines = actualCu.getLineMap();
+    // The line map of empty contents has no lines.
+    long lines = length == 0 ? 0 : expectedLines.getLineNumber(length);
+    assertEquals(lines, length == 0 ? 0 : actualLines.getLineNumber(length), where);
+    for (long line = 1; line <= lines; line++) {
+      long start = expectedLines.getStartPosition(line);
+      assertEquals(start, actualLines.getStartPosition(line), where);
+      // The column of the last character of the line depends on the tabs in the line.
+      long last = line < lines ? expectedLines.getStartPosition(line + 1) - 1 : length;
+      assertEquals(expectedLines.getColumnNumber(last), actualLines.getColumnNumber(last), where);
+    }
+
+    assertEquals(expected.diagnostics().size(), actual.diagnostics().size(), where);
+    for (int i = 0; i < expected.diagnostics().size(); i++) {
+      Diagnostic<? extends JavaFileObject> e = expected.diagnostics().get(i);
+      Diagnostic<? extends JavaFileObject> a = actual.diagnostics().get(i);
+      assertEquals(e.getKind(), a.getKind(), where);
+      assertEquals(e.getSource() == null, a.getSource() == null, where);
+      assertEquals(e.getPosition(), a.getPosition(), where);
+      assertEquals(e.getStartPosition(), a.getStartPosition(), where);
+      assertEquals(e.getEndPosition(), a.getEndPosition(), where);
+      assertEquals(e.getLineNumber(), a.getLineNumber(), where);
+      assertEquals(e.getColumnNumber(), a.getColumnNumber(), where);
+      assertEquals(e.getCode(), a.getCode(), where);
+      assertEquals(e.getMessage(null), a.getMessage(null), where);
+      assertEquals(e.toString(), a.toString(), where);
+    }
+    assertEquals(expected.hasParseError(), actual.hasParseError(), where);
+    assertEquals(expected.getParseErrorMessages(), actual.getParseErrorMessages(), where);
+  }
+
+  /**
+   * Returns the nodes of a tree, in preorder.
+   *
+   * @param tree a tree
+   * @return the nodes of the tree, in preorder
+   */
+  static List<JCTree> nodes(JCTree tree) {
+    List<JCTree> result = new ArrayList<>();
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void scan(Tree t, Void p) {
+        if (t != null) {
+          result.add((JCTree) t);
+        }
+        return super.scan(t, p);
+      }
+    }.scan(tree, null);
+    return result;
+  }
+
+  /** The int fields of each tree class, such as {@code JCBlock.endpos}, that can be read. */
+  private static final ClassValue<List<Field>> INT_FIELDS =
+      new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+          List<Field> result = new ArrayList<>();
+          for (Class<?> c = type; c != null && c != JCTree.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+              if (field.getType() == int.class
+                  && !Modifier.isStatic(field.getModifiers())
+                  && field.trySetAccessible()) {
+                result.add(field);
+              }
+            }
+          }
+          return result;
+        }
+      };
+
+  /**
+   * Returns the values of a tree node's int fields, such as {@code JCBlock.endpos}.
+   *
+   * @param tree a tree node
+   * @return the values of the node's int fields, by name
+   */
+  private static Map<String, Integer> intFields(JCTree tree) {
+    Map<String, Integer> result = new TreeMap<>();
+    for (Field field : INT_FIELDS.get(tree.getClass())) {
+      try {
+        result.put(field.getName(), field.getInt(tree));
+      } catch (IllegalAccessException e) {
+        throw new Error("Cannot read " + field, e);
+      }
+    }
+    return result;
+  }
+}
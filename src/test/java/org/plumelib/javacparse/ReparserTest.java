@@ -0,0 +1,374 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class ReparserTest {
+
+  /** Creates a ReparserTest. */
+  ReparserTest() {}
+
+  /** A compilation unit with many kinds of declarations. */
+  private static final String SOURCE =
+      """
+      package p;
+
+      import java.util.List;
+
+      /** A class. */
+      public class C<T> extends Object implements @A({1, 2}) Runnable {
+        /** A field. */
+        int x = 1;
+        int a, b;
+
+        /**
+         * A method.
+         *
+         * @param y a parameter
+         */
+        void m(int y) {
+          x = y + 1;
+        }
+
+        C() {}
+
+        static {
+          System.out.println();
+        }
+
+        @Override
+        public void run() {}
+
+        class Inner {
+          /** Another method. */
+          void n() { int z = 2; }
+        }
+
+        record R(int i) {
+          R {
+            assert i > 0;
+          }
+        }
+
+        enum E { A, B; void e() {} }
+
+        interface I {
+          default void d() {}
+        }
+      }
+
+      /** Another class. */
+      class D {}
+      """;
+
+  /** The number of random edits to make to each file of the corpus. */
+  private static final int EDITS_PER_FILE = 20;
+
+  /** Text that random edits insert. */
+  private static final String[] INSERTIONS = {
+    " ",
+    "\n",
+    "\t",
+    "/* c */",
+    "// c\n",
+    "/** d */ ",
+    "x++; ",
+    "{",
+    "}",
+    "(",
+    ")",
+    ";",
+    "\"",
+    "'",
+    "/*",
+    "*/",
+    "\"\"\"",
+    "@",
+    "class",
+    "int",
+    "<",
+    ">",
+    ",",
+    "\\u0041",
+    "/** @deprecated */",
+  };
+
+  @Test
+  void localEditTest() throws IOException {
+    try (JavacParseSession session = new JavacParseSession();
+        JavacParseSession checkSession = new JavacParseSession()) {
+      Reparse r = new Reparse(session, checkSession, SOURCE);
+      // Edits within a member.
+      r.replace("y + 1", "y + 2", true);
+      r.replace("y + 2", "y * 22222", true);
+      r.replace("int z = 2;", "int z = 2; z++;", true);
+      r.replace("assert i > 0;", "", true);
+      r.replace("default void d() {}", "default void d() { return; }", true);
+      r.replace("System.out.println()", "System.out.println(1)", true);
+      // Adding and changing doc comments.
+      r.replace("  C() {}", "  /** A constructor. */\n  C() {}", true);
+      r.replace("/** A field. */", "/** A field.\n   * @deprecated */", true);
+      r.replace("/** Another method. */", "", true);
+      // A member that changes kind.
+      r.replace("C() {}", "int c = 3;", true);
+      // A type declaration that is re-parsed as a whole.
+      r.replace("A, B;", "A, B, C;", true);
+      r.replace("class D {", "class D { int w;", true);
+      r.replace("extends Object", "extends Number", true);
+      r.replace("int y) {", "int y, int w) {", true);
+      // Edits that touch more than one member, or the end of a member, re-parse the enclosing type.
+      r.replace("int a, b;", "int a, c;", true);
+      r.replace("int x = 1;", "int q; int x = 1;", true);
+
+      // Edits that cannot be handled locally.
+      r.replace("java.util.List", "java.util.Map", false);
+      r.replace("package p;", "package q;", false);
+      r.replace("x = y * 22222;\n  }", "x = y;\n", false);
+      // An edit that fixes the errors of the previous result can be handled locally.
+      r.replace("x = y;", "x = y;\n  }", true);
+      r.replace("int w;}", "int w; } class E {}", false);
+    }
+  }
+
+  @Test
+  void fallbackTest() throws IOException {
+    try (JavacParseSession session = new JavacParseSession();
+        JavacParseSession checkSession = new JavacParseSession()) {
+      // A previous result whose errors are within the edited declaration is re-parsed locally.
+      Reparse r = new Reparse(session, checkSession, "class C { void m() { x = ; } void n() {} }");
+      r.replace("x = ;", "x = 1;", true);
+      r.replace("void n() {}", "void n() { y = 2; }", true);
+      // An edit that introduces an error.
+      r.replace("y = 2;", "y = ;", false);
+      assertTrue(r.result.hasParseError());
+      // An edit outside the declaration that has an error.
+      r.replace("x = 1;", "x = 2;", false);
+      r.replace("y = ;", "y = 3;", true);
+      assertFalse(r.result.hasParseError());
+
+      JavacParseResult<CompilationUnitTree> empty = session.parseCompilationUnit("");
+      assertFalse(session.reparseCompilationUnit(empty, 0, 0, "class C {}").hasParseError());
+      JavacParseResult<CompilationUnitTree> c = session.parseCompilationUnit("class C {}");
+      assertThrows(
+          IndexOutOfBoundsException.class, () -> session.reparseCompilationUnit(c, 5, 10, ""));
+      assertThrows(
+          IndexOutOfBoundsException.class, () -> session.reparseCompilationUnit(c, -1, 0, ""));
+    }
+  }
+
+  @Test
+  void sharedTest() throws IOException {
+    String code = "class C { int x = 1; }";
+    try (JavacParseCache cache = new JavacParseCache(1 << 20);
+        JavacParseSession session = new JavacParseSession()) {
+      JavacParseResult<CompilationUnitTree> cached = cache.parseCompilationUnit(code);
+      JavacParseResult<CompilationUnitTree> result =
+          session.reparseCompilationUnit(cached, 18, 1, "2");
+      // The cache's tree is not modified.
+      assertNotSame(cached.tree(), result.tree());
+      assertSame(cached.tree(), cache.parseCompilationUnit(code).tree());
+      ParseResultAssertions.assertEquivalent(
+          session.parseCompilationUnit(code), cached, "cached", code.length());
+      ParseResultAssertions.assertEquivalent(
+          session.parseCompilationUnit("class C { int x = 2; }"), result, "reparsed", 22);
+    }
+  }
+
+  @Test
+  void entryPointsTest() throws IOException {
+    JavacParseResult<CompilationUnitTree> previous =
+        JavacParse.parseCompilationUnit("class C { int x = 1; }");
+    JavacParseResult<CompilationUnitTree> result =
+        JavacParse.reparseCompilationUnit(previous, 18, 1, "2");
+    assertSame(previous.tree(), result.tree());
+    try (JavacParsePool pool = new JavacParsePool(2)) {
+      result = pool.reparseCompilationUnit(result, 18, 1, "3");
+    }
+    assertSame(previous.tree(), result.tree());
+    ParseResultAssertions.assertEquivalent(
+        JavacParse.parseCompilationUnit("class C { int x = 3; }"), result, "entry points", 22);
+  }
+
+  @Test
+  void randomEditTest() throws IOException {
+    List<String> corpus = new ArrayList<>();
+    corpus.add(SOURCE);
+    // This library's own sources.
+    try (Stream<Path> stream = Files.walk(Path.of("src"))) {
+      for (Path file : (Iterable<Path>) stream.sorted()::iterator) {
+        if (file.toString().endsWith(".java")) {
+          corpus.add(Files.readString(file));
+        }
+      }
+    }
+
+    Random random = new Random(20_260_818);
+    int local = 0;
+    int total = 0;
+    try (JavacParseSession session = new JavacParseSession();
+        JavacParseSession checkSession = new JavacParseSession()) {
+      for (String source : corpus) {
+        Reparse r = new Reparse(session, checkSession, source);
+        for (int i = 0; i < EDITS_PER_FILE; i++) {
+          Edit edit = randomEdit(random, r.text);
+          String before = r.text;
+          if (r.apply(edit)) {
+            local++;
+          }
+          total++;
+          if (r.result.hasParseError()) {
+            // Undo the edit, as a programmer might.
+            r.apply(
+                new Edit(
+                    edit.offset,
+                    edit.insertedText.length(),
+                    before.substring(edit.offset, edit.offset + edit.removedLength)));
+          }
+        }
+      }
+    }
+    assertTrue(local > total / 2, local + " of " + total + " edits were handled locally");
+  }
+
+  /**
+   * Returns a random edit of the given text. Many of the edits leave the text valid.
+   *
+   * @param random the source of randomness
+   * @param text the text to edit
+   * @return a random edit of {@code text}
+   */
+  private static Edit randomEdit(Random random, String text) {
+    int offset = random.nextInt(text.length() + 1);
+    int choice = random.nextInt(10);
+    if (choice < 3) {
+      // Change a letter or digit into another of the same kind.
+      while (offset < text.length() && !Character.isLetterOrDigit(text.charAt(offset))) {
+        offset++;
+      }
+      if (offset < text.length()) {
+        String replacement =
+            Character.isDigit(text.charAt(offset))
+                ? String.valueOf((char) ('0' + random.nextInt(10)))
+                : String.valueOf((char) ('a' + random.nextInt(26)));
+        return new Edit(offset, 1, replacement);
+      }
+      return new Edit(offset, 0, "");
+    } else if (choice < 6) {
+      // Insert whitespace or a comment where there is whitespace.
+      while (offset < text.length() && !Character.isWhitespace(text.charAt(offset))) {
+        offset++;
+      }
+      return new Edit(offset, 0, INSERTIONS[random.nextInt(6)]);
+    } else if (choice < 7) {
+      // Insert a statement after a statement or an open brace.
+      while (offset < text.length() && ";{".indexOf(text.charAt(offset)) < 0) {
+        offset++;
+      }
+      return new Edit(Math.min(offset + 1, text.length()), 0, "x++; ");
+    } else if (choice < 8) {
+      // Delete some text.
+      return new Edit(offset, Math.min(random.nextInt(20), text.length() - offset), "");
+    } else {
+      // Insert arbitrary text, possibly replacing some.
+      return new Edit(
+          offset,
+          Math.min(random.nextInt(3), text.length() - offset),
+          INSERTIONS[random.nextInt(INSERTIONS.length)]);
+    }
+  }
+
+  /**
+   * An edit: replaces {@code removedLength} characters at {@code offset} with {@code insertedText}.
+   *
+   * @param offset the index of the first character that the edit replaces
+   * @param removedLength the number of characters that the edit removes
+   * @param insertedText the text that the edit inserts
+   */
+  private record Edit(int offset, int removedLength, String insertedText) {}
+
+  /** A sequence of re-parses of edited text, each checked against a parse of the whole text. */
+  private static final class Reparse {
+
+    /** The session used for re-parsing. */
+    private final JavacParseSession session;
+
+    /** The session used for parsing the whole text, to check each re-parse. */
+    private final JavacParseSession checkSession;
+
+    /** The current text. */
+    String text;
+
+    /** The result of parsing the current text. */
+    JavacParseResult<CompilationUnitTree> result;
+
+    /**
+     * Creates a Reparse.
+     *
+     * @param session the session used for re-parsing
+     * @param checkSession the session used for parsing the whole text, to check each re-parse
+     * @param text the initial text
+     */
+    Reparse(JavacParseSession session, JavacParseSession checkSession, String text) {
+      this.session = session;
+      this.checkSession = checkSession;
+      this.text = text;
+      this.result = session.parseCompilationUnit(text);
+    }
+
+    /**
+     * Replaces the first occurrence of {@code target}, and checks whether the edit was handled
+     * locally.
+     *
+     * @param target the text to replace
+     * @param replacement the replacement
+     * @param expectLocal true if the edit should be handled locally
+     * @throws IOException if there is trouble re-parsing
+     */
+    void replace(String target, String replacement, boolean expectLocal) throws IOException {
+      int offset = text.indexOf(target);
+      assertTrue(offset >= 0, target);
+      JavacParseResult<CompilationUnitTree> previous = result;
+      boolean local = apply(new Edit(offset, target.length(), replacement));
+      if (expectLocal) {
+        assertSame(previous.tree(), result.tree(), target);
+      } else {
+        assertNotSame(previous.tree(), result.tree(), target);
+      }
+      assertTrue(local == expectLocal);
+    }
+
+    /**
+     * Applies an edit, re-parses, and checks the result against a parse of the whole text.
+     *
+     * @param edit the edit
+     * @return true if the edit was handled locally
+     * @throws IOException if there is trouble re-parsing
+     */
+    boolean apply(Edit edit) throws IOException {
+      JavacParseResult<CompilationUnitTree> previous = result;
+      result =
+          session.reparseCompilationUnit(
+              previous, edit.offset, edit.removedLength, edit.insertedText);
+      text =
+          text.substring(0, edit.offset)
+              + edit.insertedText
+              + text.substring(edit.offset + edit.removedLength);
+      ParseResultAssertions.assertEquivalent(
+          checkSession.parseCompilationUnit(text), result, edit.toString(), text.length());
+      return result.tree() == previous.tree();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceBufferTest {
+
+  /** Creates a SourceBufferTest. */
+  SourceBufferTest() {}
+
+  @Test
+  void fillTest(@TempDir Path dir) throws IOException {
+    List<String> sources =
+        List.of(
+            "class A { int x = 1; }",
+            "class Caf\u00e9 { String s = \"\u00fcber\"; }",
+            "class C { int[] a = {" + "1, ".repeat(20_000) + "}; }",
+            "class D {}");
+    SourceBuffer buffer = new SourceBuffer();
+    assertThrows(IllegalStateException.class, () -> buffer.contents());
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (String source : sources) {
+        String expected = session.parseCompilationUnit(source).tree().toString();
+
+        Path file = dir.resolve("F.java");
+        Files.writeString(file, source);
+        buffer.readFile(file);
+        assertEquals(source.length(), buffer.length());
+        JavacParseResult<CompilationUnitTree> result = session.parseCompilationUnit(buffer);
+        assertFalse(result.hasParseError());
+        assertEquals(expected, result.tree().toString());
+        assertEquals(file.toUri(), result.tree().getSourceFile().toUri());
+
+        buffer.decode(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(expected, session.parseCompilationUnit(buffer).tree().toString());
+
+        buffer.setText(new StringBuilder(source));
+        assertEquals(expected, session.parseCompilationUnit(buffer).tree().toString());
+      }
+    }
+  }
+
+  @Test
+  void largeFileTest(@TempDir Path dir) throws IOException {
+    // Large enough to be memory-mapped.
+    StringBuilder sb = new StringBuilder((int) FileJavaFileObject.MAP_THRESHOLD + 100);
+    sb.append("class Large {\n");
+    for (int i = 0; sb.length() < FileJavaFileObject.MAP_THRESHOLD; i++) {
+      sb.append("  int f").append(i).append(" = ").append(i).append("; // \u00e9\n");
+    }
+    sb.append("}\n");
+    Path large = dir.resolve("Large.java");
+    Files.writeString(large, sb);
+    SourceBuffer buffer = new SourceBuffer();
+    buffer.readFile(large);
+    assertEquals(sb.length(), buffer.length());
+    assertEquals(sb.toString(), buffer.contents().getCharContent(false).toString());
+    try (JavacParseSession session = new JavacParseSession()) {
+      assertFalse(session.parseCompilationUnit(buffer).hasParseError());
+    }
+  }
+
+  @Test
+  void refillTest() throws IOException {
+    SourceBuffer buffer = new SourceBuffer();
+    try (JavacParseSession session = new JavacParseSession()) {
+      buffer.setText("class A {\n  /** Doc. */\n  void m() { int x = 1; }\n  int y = ;\n}");
+      ParseOptions lazy = ParseOptions.DEFAULT.withMethodBodies(ParseOptions.MethodBodies.LAZY);
+      JavacParseResult<CompilationUnitTree> result = session.parseCompilationUnit(buffer, lazy);
+      CompilationUnitTree cu = result.tree();
+      MethodTree m = (MethodTree) ((ClassTree) cu.getTypeDecls().get(0)).getMembers().get(0);
+      JavaFileObject source = cu.getSourceFile();
+      assertEquals(buffer.length(), source.getCharContent(false).length());
+
+      String diagnostic = result.diagnostics().get(0).toString();
+      assertTrue(diagnostic.contains("int y = ;"), diagnostic);
+
+      buffer.setText("class B {\n  int a;\n  int b;\n  int c = 2;\n}");
+      assertFalse(session.parseCompilationUnit(buffer).hasParseError());
+
+      // The tree, its doc comments, and its diagnostics remain valid.
+      assertEquals("m", m.getName().toString());
+      assertEquals(
+          "Doc.", ((JCCompilationUnit) cu).docComments.getCommentText((JCMethodDecl) m).strip());
+      Diagnostic<? extends JavaFileObject> d = result.diagnostics().get(0);
+      assertEquals(4, d.getLineNumber());
+      assertEquals(11, d.getColumnNumber());
+      assertTrue(result.getParseErrorMessages().contains("illegal start of expression"));
+      assertEquals(diagnostic, d.toString());
+
+      // The source and the lazy body are gone.
+      assertThrows(IllegalStateException.class, () -> source.getCharContent(false));
+      assertThrows(IllegalStateException.class, () -> session.parseBody(cu, m));
+
+      // The string representation of a result does not change.
+      buffer.setText("class C {\n  int z = ;\n}");
+      JavacParseResult<CompilationUnitTree> eager = session.parseCompilationUnit(buffer);
+      String eagerString = eager.toString();
+      assertTrue(eagerString.contains("int z = ;"), eagerString);
+      buffer.setText("class D {\n  int w = 2;\n}");
+      assertEquals(eagerString, eager.toString());
+    }
+  }
+
+  @Test
+  void malformedTest(@TempDir Path dir) throws IOException {
+    SourceBuffer buffer = new SourceBuffer();
+    buffer.setText("class A {}");
+    Path malformed = dir.resolve("Malformed.java");
+    Files.write(malformed, new byte[] {'c', 'l', 'a', 's', 's', ' ', (byte) 0xc3, 'X', ' ', '{'});
+    assertThrows(MalformedInputException.class, () -> buffer.readFile(malformed));
+    assertEquals(0, buffer.length());
+    try (JavacParseSession session = new JavacParseSession()) {
+      assertThrows(IllegalStateException.class, () -> session.parseCompilationUnit(buffer));
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.tools.javac.parser.Tokens.TokenKind;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TokenCursorTest {
+
+  /** Creates a TokenCursorTest. */
+  TokenCursorTest() {}
+
+  @Test
+  void tokensTest() {
+    String source = "/* License */\n// More\nclass C { String s = \"a\"; }";
+    TokenCursor tokens = JavacParse.lex(source);
+    assertThrows(IllegalStateException.class, tokens::kind);
+
+    List<String> texts = new ArrayList<>();
+    List<TokenKind> kinds = new ArrayList<>();
+    while (tokens.next()) {
+      texts.add(source.substring(tokens.start(), tokens.end()));
+      kinds.add(tokens.kind());
+    }
+    assertEquals(List.of("class", "C", "{", "String", "s", "=", "\"a\"", ";", "}", ""), texts);
+    assertEquals(TokenKind.CLASS, kinds.get(0));
+    assertEquals(TokenKind.IDENTIFIER, kinds.get(1));
+    assertEquals(TokenKind.STRINGLITERAL, kinds.get(6));
+    assertEquals(TokenKind.EOF, tokens.kind());
+    assertEquals(source.length(), tokens.start());
+    assertFalse(tokens.next());
+    assertEquals(0, tokens.errorCount());
+  }
+
+  @Test
+  void namesTest() {
+    try (JavacParseSession session = new JavacParseSession()) {
+      String source = "/* License */\n// More\nclass C {}";
+      TokenCursor tokens = session.lex(source);
+      assertTrue(tokens.next());
+      assertNull(tokens.name());
+      // The comments precede the first token.
+      assertEquals("/* License */\n// More\n", source.substring(0, tokens.start()));
+      assertTrue(tokens.next());
+      assertEquals("C", tokens.name());
+
+      // Parsing with the session does not disturb the cursor, nor the cursor the parse.
+      assertTrue(session.parseCompilationUnit("class D { int x = ; }").hasParseError());
+      assertTrue(tokens.next());
+      assertEquals(TokenKind.LBRACE, tokens.kind());
+    }
+  }
+
+  @Test
+  void errorTest() {
+    try (JavacParseSession session = new JavacParseSession()) {
+      TokenCursor tokens = session.lex("int s = \"abc;\nint t = #;");
+      int errors = 0;
+      while (tokens.next()) {
+        if (tokens.kind() == TokenKind.ERROR) {
+          errors++;
+        }
+      }
+      assertEquals(2, errors);
+      assertEquals(2, tokens.errorCount());
+      // The lexer's errors do not go to the next parse.
+      assertFalse(session.parseCompilationUnit("class C {}").hasParseError());
+    }
+  }
+
+  @Test
+  void fileTest(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("C.java");
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      source.append("int f").append(i).append(" = ").append(i).append(";\n");
+    }
+    Files.writeString(file, source);
+    TokenCursor tokens = JavacParse.lexFile(file.toString());
+    int count = 0;
+    while (tokens.next()) {
+      count++;
+    }
+    assertEquals(10_000 * 5 + 1, count);
+    assertEquals(source.length(), tokens.end());
+  }
+}
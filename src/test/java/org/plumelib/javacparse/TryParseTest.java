@@ -0,0 +1,162 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.source.tree.Tree;
+import java.util.Map;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+class TryParseTest {
+
+  /** Creates a TryParseTest. */
+  TryParseTest() {}
+
+  @Test
+  void typeDeclarationTest() {
+    Map<String, SnippetResult.Reason> inputs =
+        Map.of(
+            "class C { int x = ; }", SnippetResult.Reason.PARSE_ERROR,
+            "import java.util.List; class C {}", SnippetResult.Reason.HAS_IMPORTS,
+            "package p; class C {}", SnippetResult.Reason.HAS_PACKAGE,
+            "module m {}", SnippetResult.Reason.HAS_MODULE,
+            "class C {};", SnippetResult.Reason.TOP_LEVEL_SEMICOLON,
+            "", SnippetResult.Reason.NO_DECLARATION,
+            "class C {} class D {}", SnippetResult.Reason.EXTRA_DECLARATIONS);
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (Map.Entry<String, SnippetResult.Reason> entry : inputs.entrySet()) {
+        String input = entry.getKey();
+        assertFailure(entry.getValue(), session.tryParseTypeDeclaration(input), input);
+        assertThrows(IllegalArgumentException.class, () -> session.parseTypeDeclaration(input));
+      }
+      SnippetResult<?> result = session.tryParseTypeDeclaration("class C { int x = ; }");
+      SnippetResult.Failure<?> failure = assertInstanceOf(SnippetResult.Failure.class, result);
+      assertFalse(failure.diagnostics().isEmpty());
+
+      String valid = "record R(int x) {}";
+      assertEquals(
+          session.parseTypeDeclaration(valid).tree().toString(),
+          assertSuccess(session.tryParseTypeDeclaration(valid)).toString());
+    }
+  }
+
+  @Test
+  void methodTest() {
+    Map<String, SnippetResult.Reason> inputs =
+        Map.of(
+            "void m() { int x = ; }", SnippetResult.Reason.PARSE_ERROR,
+            "void m() {} void n() {}", SnippetResult.Reason.TRAILING_INPUT,
+            "int x", SnippetResult.Reason.WRONG_KIND,
+            "", SnippetResult.Reason.NO_DECLARATION,
+            "int x, y", SnippetResult.Reason.EXTRA_DECLARATIONS);
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (Map.Entry<String, SnippetResult.Reason> entry : inputs.entrySet()) {
+        String input = entry.getKey();
+        SnippetResult<?> result = session.tryParseMethod(input);
+        if (SnippetParser.canParseMethod()) {
+          assertFailure(entry.getValue(), result, input);
+        } else {
+          assertInstanceOf(SnippetResult.Failure.class, result, input);
+        }
+        IllegalArgumentException e =
+            assertThrows(IllegalArgumentException.class, () -> session.parseMethod(input));
+        assertEquals("Invalid method: " + input, e.getMessage());
+      }
+      assertSuccess(session.tryParseMethod("abstract int m()"));
+      assertSuccess(session.tryParseMethod("<T> void m(T t) { t.hashCode(); }"));
+    }
+  }
+
+  @Test
+  void snippetTest() {
+    try (JavacParseSession session = new JavacParseSession()) {
+      assertFailure(SnippetResult.Reason.PARSE_ERROR, session.tryParseExpression("1 +"), "1 +");
+      assertFailure(SnippetResult.Reason.TRAILING_INPUT, session.tryParseExpression("a b"), "a b");
+      assertFailure(SnippetResult.Reason.WRONG_KIND, session.tryParseTypeUse("void"), "void");
+      assertFailure(
+          SnippetResult.Reason.TRAILING_INPUT, session.tryParseTypeUse("int x"), "int x");
+      assertEquals("a + b", assertSuccess(session.tryParseExpression("a + b")).toString());
+      assertEquals(
+          "List<? extends Number>",
+          assertSuccess(session.tryParseTypeUse("List<? extends Number>")).toString());
+
+      // A failure does not disturb the next parse.
+      assertEquals("f(x)", session.parseExpression("f(x)").toString());
+    }
+  }
+
+  @Test
+  void staticAndPoolTest() {
+    assertSuccess(JavacParse.tryParseExpression("x"));
+    assertFailure(SnippetResult.Reason.WRONG_KIND, JavacParse.tryParseTypeUse("void"), "void");
+    assertSuccess(JavacParse.tryParseMethod("void m() {}"));
+    assertSuccess(JavacParse.tryParseTypeDeclaration("interface I {}"));
+    try (JavacParsePool pool = new JavacParsePool(2)) {
+      assertFailure(SnippetResult.Reason.PARSE_ERROR, pool.tryParseExpression("f("), "f(");
+      assertSuccess(pool.tryParseTypeUse("int[]"));
+      assertSuccess(pool.tryParseMethod("void m();"));
+      assertFailure(
+          SnippetResult.Reason.HAS_IMPORTS,
+          pool.tryParseTypeDeclaration("import a.B; class C {}", ParseOptions.DEFAULT),
+          "import");
+    }
+  }
+
+  @Test
+  void consistencyTest() {
+    String[] expressions = {"1", "a.b()", "{1, 2}", "x -> x", "a b", "1 +", "a;", ";"};
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (String input : expressions) {
+        assertConsistent(input, session::parseExpression, session.tryParseExpression(input));
+        assertConsistent(input, session::parseTypeUse, session.tryParseTypeUse(input));
+      }
+    }
+  }
+
+  /**
+   * Asserts that a result-returning method succeeds exactly when its strict counterpart does.
+   *
+   * @param input the input
+   * @param strict the strict method
+   * @param result the result of the result-returning method
+   */
+  private static void assertConsistent(
+      String input, Function<String, ? extends Tree> strict, SnippetResult<?> result) {
+    boolean strictParses;
+    try {
+      strict.apply(input);
+      strictParses = true;
+    } catch (IllegalArgumentException e) {
+      strictParses = false;
+    }
+    assertEquals(strictParses, result instanceof SnippetResult.Success<?>, input);
+  }
+
+  /**
+   * Asserts that a result is a failure for the given reason.
+   *
+   * @param expected the expected reason
+   * @param result the result
+   * @param input the input, for the assertion message
+   */
+  private static void assertFailure(
+      SnippetResult.Reason expected, SnippetResult<?> result, String input) {
+    SnippetResult.Failure<?> failure = assertInstanceOf(SnippetResult.Failure.class, result, input);
+    assertEquals(expected, failure.reason(), input);
+    assertTrue(failure.treeOrNull() == null, input);
+  }
+
+  /**
+   * Asserts that a result is a success.
+   *
+   * @param result the result
+   * @return the tree of the result
+   */
+  private static Tree assertSuccess(SnippetResult<?> result) {
+    return assertInstanceOf(SnippetResult.Success.class, result).tree();
+  }
+}
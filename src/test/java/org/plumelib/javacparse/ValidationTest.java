@@ -0,0 +1,115 @@
+package org.plumelib.javacparse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.junit.jupiter.api.Test;
+
+class ValidationTest {
+
+  /** Creates a ValidationTest. */
+  ValidationTest() {}
+
+  @Test
+  void compilationUnitTest() {
+    List<String> inputs =
+        List.of(
+            "",
+            "class C {}",
+            "package p;\nimport java.util.*;\nclass C { int f() { return 1; } }",
+            "class C { int x = ; }",
+            "class C { void m() { int x = 1 } int y = ; }",
+            "class C { String s = \"abc; }",
+            "class C { int x = #; }",
+            "class C {",
+            "record R(int x) { R { } } enum E { A, B; } interface I { default void m() {} }",
+            "class C { void m() { Runnable r = () -> { return; }; } }");
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (String input : inputs) {
+        JavacParseResult<?> parsed = session.parseCompilationUnit(input);
+        Diagnostic<? extends JavaFileObject> error = session.validateCompilationUnit(input);
+        assertEquals(!parsed.hasParseError(), session.isValidCompilationUnit(input), input);
+        if (parsed.hasParseError()) {
+          // The first error is the one that a full parse reports first.
+          Diagnostic<? extends JavaFileObject> expected = firstError(parsed.diagnostics());
+          assertNotNull(error, input);
+          assertEquals(expected.getPosition(), error.getPosition(), input);
+          assertEquals(expected.getCode(), error.getCode(), input);
+          assertEquals(expected.getMessage(null), error.getMessage(null), input);
+          assertEquals(expected.getLineNumber(), error.getLineNumber(), input);
+        } else {
+          assertNull(error, input);
+        }
+      }
+    }
+    assertTrue(JavacParse.isValidCompilationUnit("class C {}"));
+    assertNotNull(JavacParse.validateCompilationUnit("class C { int x = ; }"));
+  }
+
+  @Test
+  void snippetTest() {
+    List<String> expressions =
+        List.of("1 + 2", "foo.bar(x, y)", "{1, 2}", "(x) -> x", "a b", "1 +", "f(", "x)", "a;");
+    List<String> typeUses =
+        List.of("int", "List<? extends Number>", "int[]", "void", "int x", "List<", "final int");
+    try (JavacParseSession session = new JavacParseSession()) {
+      for (String input : expressions) {
+        boolean parses = session.parseExpressions(List.of(input)).get(0).treeOrNull() != null;
+        assertEquals(parses, session.isValidExpression(input), input);
+        assertEquals(parses, session.validateExpression(input) == null, input);
+      }
+      for (String input : typeUses) {
+        boolean parses = session.parseTypeUses(List.of(input)).get(0).treeOrNull() != null;
+        assertEquals(parses, session.isValidTypeUse(input), input);
+        assertEquals(parses, session.validateTypeUse(input) == null, input);
+      }
+
+      // A snippet that is followed by more input.
+      Diagnostic<? extends JavaFileObject> error = session.validateExpression("a b");
+      assertNotNull(error);
+      assertEquals(2, error.getPosition());
+      assertEquals("compiler.err.expected", error.getCode());
+      error = session.validateTypeUse(" void");
+      assertNotNull(error);
+      assertEquals(1, error.getPosition());
+      assertEquals("compiler.err.illegal.start.of.type", error.getCode());
+
+      // Validation does not disturb the next parse.
+      assertFalse(session.parseCompilationUnit("class C { int x = 1; }").hasParseError());
+    }
+  }
+
+  @Test
+  void poolTest() {
+    try (JavacParsePool pool = new JavacParsePool(2)) {
+      assertTrue(pool.isValidExpression("a.b(c)"));
+      assertFalse(pool.isValidTypeUse("Map<String"));
+      Diagnostic<? extends JavaFileObject> error = pool.validateCompilationUnit("class C {");
+      assertNotNull(error);
+      assertEquals("compiler.err.premature.eof", error.getCode());
+      assertNull(pool.validateExpression("x"));
+    }
+  }
+
+  /**
+   * Returns the first error among the given diagnostics.
+   *
+   * @param diagnostics diagnostics, at least one of which is an error
+   * @return the first error
+   */
+  private static Diagnostic<? extends JavaFileObject> firstError(
+      List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+    for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+      if (d.getKind() == Diagnostic.Kind.ERROR) {
+        return d;
+      }
+    }
+    throw new AssertionError("No error in " + diagnostics);
+  }
+}